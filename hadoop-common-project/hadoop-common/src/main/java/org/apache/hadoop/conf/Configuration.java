@@ -871,6 +871,25 @@ public Configuration(Configuration other) {
     setQuietMode(other.getQuietMode());
   }
 
+  /**
+   * Get an immutable snapshot of the current settings of this configuration.
+   *
+   * The values of the snapshot are expanded once, when it is taken, and are
+   * then returned without handling deprecations or expanding variables
+   * again, and the integer values are parsed only once. This suits
+   * configurations which are read often and no longer changed, and which can
+   * be shared instead of being copied. Changes to this configuration, to the
+   * system properties or to the deprecations after the snapshot is taken are
+   * not seen by it, and it cannot be changed or reloaded.
+   *
+   * @return the snapshot, or this configuration if it is a snapshot.
+   * @throws UnsupportedOperationException on any change of the snapshot.
+   */
+  @InterfaceStability.Unstable
+  public Configuration snapshot() {
+    return new ImmutableConfiguration(this);
+  }
+
   /**
    * Reload existing configuration instances.
    */
@@ -1028,7 +1047,7 @@ public synchronized void reloadConfiguration() {
     finalParameters.clear();                      // clear site-limits
   }
 
-  private synchronized void addResourceObject(Resource resource) {
+  synchronized void addResourceObject(Resource resource) {
     resources.add(resource);                      // add to resources
     restrictSystemProps |= resource.isParserRestricted();
     loadProps(properties, resources.size() - 1, false);
@@ -4050,4 +4069,117 @@ private void putIntoUpdatingResource(String key, String[] value) {
     }
     localUR.put(key, value);
   }
+
+  /**
+   * An immutable snapshot of a configuration. See {@link #snapshot()}.
+   */
+  private static final class ImmutableConfiguration extends Configuration {
+    /** Stands for a property without value in {@link #values}. */
+    private static final Object NULL = new Object();
+
+    /** The expanded value of each property name which was looked up. */
+    private final ConcurrentHashMap<String, Object> values =
+        new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> intValues =
+        new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> longValues =
+        new ConcurrentHashMap<>();
+
+    ImmutableConfiguration(Configuration other) {
+      super(other);
+      // looking up a name may add the properties of its deprecated names
+      for (String name : new ArrayList<>(getProps().stringPropertyNames())) {
+        get(name);
+      }
+    }
+
+    @Override
+    public Configuration snapshot() {
+      return this;
+    }
+
+    @Override
+    public String get(String name) {
+      Object value = values.get(name);
+      if (value == null) {
+        String expanded = super.get(name);
+        value = expanded == null ? NULL : expanded;
+        values.putIfAbsent(name, value);
+      }
+      return value == NULL ? null : (String) value;
+    }
+
+    @Override
+    public String get(String name, String defaultValue) {
+      String value = get(name);
+      // the default value is expanded too
+      return value == null ? super.get(name, defaultValue) : value;
+    }
+
+    @Override
+    public int getInt(String name, int defaultValue) {
+      Integer value = intValues.get(name);
+      if (value == null) {
+        if (get(name) == null) {
+          return defaultValue;
+        }
+        value = super.getInt(name, defaultValue);
+        intValues.putIfAbsent(name, value);
+      }
+      return value;
+    }
+
+    @Override
+    public long getLong(String name, long defaultValue) {
+      Long value = longValues.get(name);
+      if (value == null) {
+        if (get(name) == null) {
+          return defaultValue;
+        }
+        value = super.getLong(name, defaultValue);
+        longValues.putIfAbsent(name, value);
+      }
+      return value;
+    }
+
+    private static UnsupportedOperationException immutable() {
+      return new UnsupportedOperationException(
+          "A configuration snapshot cannot be changed");
+    }
+
+    @Override
+    public void set(String name, String value, String source) {
+      throw immutable();
+    }
+
+    @Override
+    public synchronized void unset(String name) {
+      throw immutable();
+    }
+
+    @Override
+    public void clear() {
+      throw immutable();
+    }
+
+    @Override
+    public void setDeprecatedProperties() {
+      throw immutable();
+    }
+
+    @Override
+    synchronized void addResourceObject(Resource resource) {
+      throw immutable();
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      throw immutable();
+    }
+
+    /** A snapshot keeps its values when the default resources change. */
+    @Override
+    public synchronized void reloadConfiguration() {
+    }
+  }
 }
@@ -91,6 +91,17 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final int IPC_MAXIMUM_RESPONSE_LENGTH_DEFAULT =
       128 * 1024 * 1024;
 
+  /**
+   * Max size of a request or response an RPC server reads or writes with a
+   * pooled direct buffer, when the direct buffers are enabled by
+   * IPC_NAMESPACE + ".8020." + IPC_DIRECT_BUFFERS_ENABLE.
+   */
+  public static final String IPC_SERVER_DIRECT_BUFFERS_MAX_SIZE_KEY =
+      "ipc.server.direct-buffers.max-size";
+  /** Default value for IPC_SERVER_DIRECT_BUFFERS_MAX_SIZE_KEY. */
+  public static final int IPC_SERVER_DIRECT_BUFFERS_MAX_SIZE_DEFAULT =
+      64 * 1024;
+
   /** How many calls per handler are allowed in the queue. */
   public static final String  IPC_SERVER_HANDLER_QUEUE_SIZE_KEY =
     "ipc.server.handler.queue.size";
@@ -107,8 +118,12 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final String IPC_SCHEDULER_IMPL_KEY = "scheduler.impl";
   public static final String IPC_IDENTITY_PROVIDER_KEY = "identity-provider.impl";
   public static final String IPC_COST_PROVIDER_KEY = "cost-provider.impl";
+  public static final String IPC_COST_STORE_KEY = "cost-store.impl";
   public static final String IPC_BACKOFF_ENABLE = "backoff.enable";
   public static final boolean IPC_BACKOFF_ENABLE_DEFAULT = false;
+  public static final String IPC_DIRECT_BUFFERS_ENABLE =
+      "direct-buffers.enable";
+  public static final boolean IPC_DIRECT_BUFFERS_ENABLE_DEFAULT = false;
   // Callqueue overflow trigger failover for stateless servers.
   public static final String IPC_CALLQUEUE_SERVER_FAILOVER_ENABLE =
       "callqueue.overflow.trigger.failover";
@@ -184,6 +199,19 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final boolean IO_COMPRESSION_CODEC_LZ4_USELZ4HC_DEFAULT =
       false;
 
+  /**
+   * Whether the input streams of the codecs with a direct decompressor read
+   * the compressed data into direct buffers when the underlying stream
+   * supports it.
+   * @see org.apache.hadoop.io.compress.DirectDecompressorStream
+   */
+  public static final String IO_COMPRESSION_DIRECT_DECOMPRESSION_ENABLED_KEY =
+      "io.compression.direct.decompression.enabled";
+
+  /** Default value for IO_COMPRESSION_DIRECT_DECOMPRESSION_ENABLED_KEY. */
+  public static final boolean
+      IO_COMPRESSION_DIRECT_DECOMPRESSION_ENABLED_DEFAULT = false;
+
 
 
   /**
@@ -355,6 +383,14 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final String  IPC_CLIENT_ASYNC_CALLS_MAX_KEY =
       "ipc.client.async.calls.max";
   public static final int     IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT = 100;
+  /**
+   * The number of threads shared by the IPC clients of a JVM to read the
+   * responses and write the requests of all their connections. If 0, each
+   * connection has its own thread.
+   */
+  public static final String  IPC_CLIENT_IO_THREADS_KEY =
+      "ipc.client.io.threads";
+  public static final int     IPC_CLIENT_IO_THREADS_DEFAULT = 0;
   public static final String  IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_KEY = "ipc.client.fallback-to-simple-auth-allowed";
   public static final boolean IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_DEFAULT = false;
 
@@ -381,6 +417,10 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final boolean RPC_METRICS_QUANTILE_ENABLE_DEFAULT = false;
   public static final String  RPC_METRICS_PERCENTILES_INTERVALS_KEY =
       "rpc.metrics.percentiles.intervals";
+  public static final String RPC_METRICS_QUANTILE_HISTOGRAM_ENABLE =
+      "rpc.metrics.quantile.histogram.enable";
+  public static final boolean RPC_METRICS_QUANTILE_HISTOGRAM_ENABLE_DEFAULT =
+      false;
 
   public static final String RPC_METRICS_TIME_UNIT = "rpc.metrics.timeunit";
 
@@ -242,6 +242,15 @@ public class CommonConfigurationKeysPublic {
     "io.mapfile.bloom.error.rate" ;
   /** Default value for IO_MAPFILE_BLOOM_ERROR_RATE_KEY */
   public static final float   IO_MAPFILE_BLOOM_ERROR_RATE_DEFAULT = 0.005f;
+  /**
+   * @see
+   * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
+   * core-default.xml</a>
+   */
+  public static final String  IO_MAPFILE_BLOOM_TYPE_KEY =
+      "io.mapfile.bloom.type";
+  /** Default value for IO_MAPFILE_BLOOM_TYPE_KEY */
+  public static final String  IO_MAPFILE_BLOOM_TYPE_DEFAULT = "dynamic";
   /** Codec class that implements Lzo compression algorithm */
   public static final String  IO_COMPRESSION_CODEC_LZO_CLASS_KEY =
     "io.compression.codec.lzo.class";
@@ -271,6 +280,15 @@ public class CommonConfigurationKeysPublic {
     "io.seqfile.compress.blocksize";
   /** Default value for IO_SEQFILE_COMPRESS_BLOCKSIZE_KEY */
   public static final int     IO_SEQFILE_COMPRESS_BLOCKSIZE_DEFAULT = 1000000;
+  /**
+   * @see
+   * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
+   * core-default.xml</a>
+   */
+  public static final String  IO_SEQFILE_COMPRESS_THREADS_KEY =
+    "io.seqfile.compress.threads";
+  /** Default value for IO_SEQFILE_COMPRESS_THREADS_KEY */
+  public static final int     IO_SEQFILE_COMPRESS_THREADS_DEFAULT = 0;
   /**
    * @see
    * <a href="{@docRoot}/../hadoop-project-dist/hadoop-common/core-default.xml">
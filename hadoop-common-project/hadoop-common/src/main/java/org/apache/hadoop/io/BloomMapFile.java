@@ -18,18 +18,19 @@
 
 package org.apache.hadoop.io;
 
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.bloom.BlockedBloomFilter;
 import org.apache.hadoop.util.bloom.DynamicBloomFilter;
 import org.apache.hadoop.util.bloom.Filter;
 import org.apache.hadoop.util.bloom.Key;
@@ -41,6 +42,8 @@
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_MAPFILE_BLOOM_ERROR_RATE_KEY;
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_MAPFILE_BLOOM_SIZE_DEFAULT;
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_MAPFILE_BLOOM_SIZE_KEY;
+import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_MAPFILE_BLOOM_TYPE_DEFAULT;
+import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_MAPFILE_BLOOM_TYPE_KEY;
 
 /**
  * This class extends {@link MapFile} and provides very much the same
@@ -48,6 +51,10 @@
  * quick membership test for keys, and it offers a fast version of 
  * {@link Reader#get(WritableComparable, Writable)} operation, especially in
  * case of sparsely populated MapFile-s.
+ * <p>
+ * If io.mapfile.bloom.type is set to blocked, a {@link BlockedBloomFilter}
+ * is written instead, whose membership tests are cheaper on large files.
+ * The Reader reads either type of filter.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Stable
@@ -55,6 +62,14 @@ public class BloomMapFile {
   private static final Logger LOG = LoggerFactory.getLogger(BloomMapFile.class);
   public static final String BLOOM_FILE_NAME = "bloom";
   public static final int HASH_COUNT = 5;
+  /**
+   * Written before a {@link BlockedBloomFilter} in the bloom file. The
+   * filters are written with a negative version of -1, or with a positive
+   * number of hash functions in the old format, so a Reader can tell them
+   * apart, and the Readers which don't know this marker fall back to the
+   * MapFile lookup.
+   */
+  private static final int BLOCKED_FILTER_MARKER = -2;
   
   public static void delete(FileSystem fs, String name) throws IOException {
     Path dir = new Path(name);
@@ -79,8 +94,10 @@ private static byte[] byteArrayForBloomKey(DataOutputBuffer buf) {
   }
   
   public static class Writer extends MapFile.Writer {
-    private DynamicBloomFilter bloomFilter;
+    private Filter bloomFilter;
+    private boolean blocked;
     private int numKeys;
+    private long appended;
     private int vectorSize;
     private Key bloomKey = new Key();
     private DataOutputBuffer buf = new DataOutputBuffer();
@@ -175,8 +192,19 @@ private synchronized void initBloomFilter(Configuration conf) {
           IO_MAPFILE_BLOOM_ERROR_RATE_KEY, IO_MAPFILE_BLOOM_ERROR_RATE_DEFAULT);
       vectorSize = (int)Math.ceil((double)(-HASH_COUNT * numKeys) /
           Math.log(1.0 - Math.pow(errorRate, 1.0/HASH_COUNT)));
-      bloomFilter = new DynamicBloomFilter(vectorSize, HASH_COUNT,
-          Hash.getHashType(conf), numKeys);
+      String type = conf.getTrimmed(
+          IO_MAPFILE_BLOOM_TYPE_KEY, IO_MAPFILE_BLOOM_TYPE_DEFAULT);
+      if ("blocked".equalsIgnoreCase(type)) {
+        blocked = true;
+        bloomFilter = new BlockedBloomFilter(vectorSize, HASH_COUNT,
+            Hash.getHashType(conf));
+      } else if ("dynamic".equalsIgnoreCase(type)) {
+        bloomFilter = new DynamicBloomFilter(vectorSize, HASH_COUNT,
+            Hash.getHashType(conf), numKeys);
+      } else {
+        throw new IllegalArgumentException("Unknown " +
+            IO_MAPFILE_BLOOM_TYPE_KEY + ": " + type);
+      }
     }
 
     @Override
@@ -187,13 +215,23 @@ public synchronized void append(WritableComparable key, Writable val)
       key.write(buf);
       bloomKey.set(byteArrayForBloomKey(buf), 1.0);
       bloomFilter.add(bloomKey);
+      appended++;
     }
 
     @Override
     public synchronized void close() throws IOException {
       super.close();
+      if (blocked && appended > numKeys) {
+        LOG.warn("Appended " + appended + " keys to a Bloom filter sized for "
+            + numKeys + " keys, its false positive rate is higher than "
+            + IO_MAPFILE_BLOOM_ERROR_RATE_KEY + ". Increase "
+            + IO_MAPFILE_BLOOM_SIZE_KEY + ".");
+      }
       DataOutputStream out = fs.create(new Path(dir, BLOOM_FILE_NAME), true);
       try {
+        if (blocked) {
+          out.writeInt(BLOCKED_FILTER_MARKER);
+        }
         bloomFilter.write(out);
         out.flush();
         out.close();
@@ -206,7 +244,7 @@ public synchronized void close() throws IOException {
   }
   
   public static class Reader extends MapFile.Reader {
-    private DynamicBloomFilter bloomFilter;
+    private Filter bloomFilter;
     private DataOutputBuffer buf = new DataOutputBuffer();
     private Key bloomKey = new Key();
 
@@ -237,11 +275,16 @@ public Reader(FileSystem fs, String dirName, WritableComparator comparator,
     private void initBloomFilter(Path dirName, 
                                  Configuration conf) {
       
-      DataInputStream in = null;
+      FSDataInputStream in = null;
       try {
         FileSystem fs = dirName.getFileSystem(conf);
         in = fs.open(new Path(dirName, BLOOM_FILE_NAME));
-        bloomFilter = new DynamicBloomFilter();
+        if (in.readInt() == BLOCKED_FILTER_MARKER) {
+          bloomFilter = new BlockedBloomFilter();
+        } else {
+          in.seek(0);
+          bloomFilter = new DynamicBloomFilter();
+        }
         bloomFilter.readFields(in);
         in.close();
         in = null;
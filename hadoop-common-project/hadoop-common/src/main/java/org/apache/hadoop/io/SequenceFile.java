@@ -21,6 +21,9 @@
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.rmi.server.UID;
 import java.security.MessageDigest;
 
@@ -48,6 +51,8 @@
 import org.apache.hadoop.util.MergeSort;
 import org.apache.hadoop.util.PriorityQueue;
 import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.concurrent.HadoopExecutors;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +60,8 @@
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_FILE_BUFFER_SIZE_KEY;
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_BLOCKSIZE_DEFAULT;
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_BLOCKSIZE_KEY;
+import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_THREADS_DEFAULT;
+import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_THREADS_KEY;
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_SKIP_CHECKSUM_ERRORS_DEFAULT;
 import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_SKIP_CHECKSUM_ERRORS_KEY;
 import static org.apache.hadoop.fs.Options.OpenFileOptions.FS_OPTION_OPENFILE_BUFFER_SIZE;
@@ -1605,6 +1612,16 @@ static class BlockCompressWriter extends Writer {
     private DataOutputBuffer valBuffer = new DataOutputBuffer();
 
     private final int compressionBlockSize;
+
+    /**
+     * The number of threads which compress the blocks, or 0 to compress them
+     * in the writing thread.
+     */
+    private final int compressionThreads;
+    private ExecutorService compressionPool;
+    /** The blocks being compressed, in the order they are written. */
+    private final Deque<Future<DataOutputBuffer>> pendingBlocks =
+        new ArrayDeque<>();
     
     BlockCompressWriter(Configuration conf,
                         Option... options) throws IOException {
@@ -1613,6 +1630,8 @@ static class BlockCompressWriter extends Writer {
         conf.getInt(IO_SEQFILE_COMPRESS_BLOCKSIZE_KEY,
             IO_SEQFILE_COMPRESS_BLOCKSIZE_DEFAULT
         );
+      compressionThreads = conf.getInt(IO_SEQFILE_COMPRESS_THREADS_KEY,
+          IO_SEQFILE_COMPRESS_THREADS_DEFAULT);
       keySerializer.close();
       keySerializer.open(keyBuffer);
       uncompressedValSerializer.close();
@@ -1634,9 +1653,114 @@ void writeBuffer(DataOutputBuffer uncompressedDataBuffer)
       out.write(buffer.getData(), 0, buffer.getLength());
     }
     
+    /**
+     * Compress the buffered records in a pool thread, and write out the
+     * blocks which are compressed. Waits for the oldest block when all the
+     * threads are busy.
+     */
+    private void compressBlock() throws IOException {
+      if (compressionThreads <= 0) {
+        sync();
+        return;
+      }
+      submitBlock();
+      while (!pendingBlocks.isEmpty() &&
+          (pendingBlocks.size() > compressionThreads ||
+              pendingBlocks.peek().isDone())) {
+        writeBlock(pendingBlocks.poll());
+      }
+    }
+
+    private void submitBlock() {
+      final int records = noBufferedRecords;
+      final byte[][] buffers = {
+          Arrays.copyOf(keyLenBuffer.getData(), keyLenBuffer.getLength()),
+          Arrays.copyOf(keyBuffer.getData(), keyBuffer.getLength()),
+          Arrays.copyOf(valLenBuffer.getData(), valLenBuffer.getLength()),
+          Arrays.copyOf(valBuffer.getData(), valBuffer.getLength())};
+      keyLenBuffer.reset();
+      keyBuffer.reset();
+      valLenBuffer.reset();
+      valBuffer.reset();
+      noBufferedRecords = 0;
+
+      if (compressionPool == null) {
+        compressionPool = HadoopExecutors.newFixedThreadPool(
+            compressionThreads, new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("SequenceFile compressor %d").build());
+      }
+      pendingBlocks.add(compressionPool.submit(
+          () -> compress(records, buffers)));
+    }
+
+    /**
+     * Compress a block with a compressor from the {@link CodecPool}, like
+     * {@link #sync()} does.
+     * @return the block as it is written after the sync.
+     */
+    private DataOutputBuffer compress(int records, byte[][] buffers)
+        throws IOException {
+      DataOutputBuffer block = new DataOutputBuffer();
+      WritableUtils.writeVInt(block, records);
+      Compressor blockCompressor = CodecPool.getCompressor(codec);
+      try {
+        DataOutputBuffer compressed = new DataOutputBuffer();
+        CompressionOutputStream filter =
+            codec.createOutputStream(compressed, blockCompressor);
+        DataOutputStream filterOut =
+            new DataOutputStream(new BufferedOutputStream(filter));
+        for (byte[] data : buffers) {
+          filter.resetState();
+          compressed.reset();
+          filterOut.write(data);
+          filterOut.flush();
+          filter.finish();
+          WritableUtils.writeVInt(block, compressed.getLength());
+          block.write(compressed.getData(), 0, compressed.getLength());
+        }
+      } finally {
+        CodecPool.returnCompressor(blockCompressor);
+      }
+      return block;
+    }
+
+    /** Write out a block once it is compressed. */
+    private void writeBlock(Future<DataOutputBuffer> pending)
+        throws IOException {
+      DataOutputBuffer block;
+      try {
+        block = pending.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw (IOException) new InterruptedIOException(
+            "Interrupted while compressing a block").initCause(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof IOException ? (IOException) cause
+            : new IOException("Failed to compress a block", cause);
+      }
+      super.sync();
+      out.write(block.getData(), 0, block.getLength());
+      out.flush();
+    }
+
+    /** Write out all the blocks being compressed. */
+    private synchronized void writePendingBlocks() throws IOException {
+      while (!pendingBlocks.isEmpty()) {
+        writeBlock(pendingBlocks.poll());
+      }
+    }
+
     /** Compress and flush contents to dfs */
     @Override
     public synchronized void sync() throws IOException {
+      if (compressionThreads > 0) {
+        if (noBufferedRecords > 0) {
+          submitBlock();
+        }
+        writePendingBlocks();
+        return;
+      }
       if (noBufferedRecords > 0) {
         super.sync();
         
@@ -1664,11 +1788,36 @@ public synchronized void sync() throws IOException {
       
     }
     
+    @Override
+    public void hsync() throws IOException {
+      writePendingBlocks();
+      super.hsync();
+    }
+
+    @Override
+    public void hflush() throws IOException {
+      writePendingBlocks();
+      super.hflush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+      writePendingBlocks();
+      super.flush();
+    }
+
     /** Close the file. */
     @Override
     public synchronized void close() throws IOException {
-      if (out != null) {
-        sync();
+      try {
+        if (out != null) {
+          sync();
+        }
+      } finally {
+        if (compressionPool != null) {
+          compressionPool.shutdownNow();
+          compressionPool = null;
+        }
       }
       super.close();
     }
@@ -1702,7 +1851,7 @@ public synchronized void append(Object key, Object val)
       // Compress and flush?
       int currentBlockSize = keyBuffer.getLength() + valBuffer.getLength();
       if (currentBlockSize >= compressionBlockSize) {
-        sync();
+        compressBlock();
       }
     }
     
@@ -1728,7 +1877,7 @@ public synchronized void appendRaw(byte[] keyData, int keyOffset,
       // Compress and flush?
       int currentBlockSize = keyBuffer.getLength() + valBuffer.getLength(); 
       if (currentBlockSize >= compressionBlockSize) {
-        sync();
+        compressBlock();
       }
     }
   
@@ -143,7 +143,8 @@ static CompressionOutputStream createOutputStreamWithCodecPool(
     }
 
     /**
-     * Create an input stream with a codec taken from the global CodecPool.
+     * Create an input stream with a codec taken from the global CodecPool,
+     * or with a {@link DirectDecompressorStream} if it can be used.
      *
      * @param codec       The codec to use to create the input stream.
      * @param conf        The configuration to use if we need to create a new codec.
@@ -154,6 +155,11 @@ static CompressionOutputStream createOutputStreamWithCodecPool(
     static CompressionInputStream createInputStreamWithCodecPool(
         CompressionCodec codec,  Configuration conf, InputStream in)
           throws IOException {
+      CompressionInputStream direct =
+          DirectDecompressorStream.create(codec, in, conf);
+      if (direct != null) {
+        return direct;
+      }
       Decompressor decompressor = CodecPool.getDecompressor(codec);
       CompressionInputStream stream = null;
       try {
@@ -0,0 +1,300 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.StreamCapabilities;
+import org.apache.hadoop.util.Preconditions;
+
+/**
+ * A {@link DecompressorStream} which decompresses with a
+ * {@link DirectDecompressor}. The compressed data is read from the underlying
+ * stream into a direct buffer with {@link ByteBufferReadable#read(ByteBuffer)}
+ * and decompressed from there, so unlike with a {@link DecompressorStream}, it
+ * is not read into a heap buffer and then copied into the direct buffer of the
+ * decompressor.
+ *
+ * The streams of snappy and lz4, which are written in blocks by a
+ * {@link BlockCompressorStream}, are read block by block like a
+ * {@link BlockDecompressorStream} does. The other streams may be made of
+ * several concatenated members, like a {@link DecompressorStream} allows.
+ *
+ * The stream owns its decompressor, which is not taken from the
+ * {@link CodecPool}: closing the stream ends the decompressor and releases
+ * its native resources.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS", "MapReduce"})
+@InterfaceStability.Unstable
+public class DirectDecompressorStream extends DecompressorStream {
+  /** The initial size of the buffers. */
+  static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private final DirectDecompressor directDecompressor;
+  private final boolean blockFormat;
+  /** The compressed data read from the stream, flipped for reading. */
+  private ByteBuffer compressed;
+  /** The decompressed data not read yet, flipped for reading. */
+  private ByteBuffer uncompressed;
+  /** The uncompressed bytes of the current block not decompressed yet. */
+  private int blockRemaining;
+
+  /**
+   * @param in the stream to read the compressed data from. It must implement
+   * {@link ByteBufferReadable}.
+   * @param decompressor the direct decompressor of the codec.
+   * @param bufferSize the initial size of the buffers.
+   * @param blockFormat whether the data was written by a
+   * {@link BlockCompressorStream}.
+   * @throws IOException raised on errors performing I/O.
+   */
+  public DirectDecompressorStream(InputStream in,
+      DirectDecompressor decompressor, int bufferSize, boolean blockFormat)
+      throws IOException {
+    super(in);
+    Preconditions.checkArgument(in instanceof ByteBufferReadable,
+        "%s does not support reads into a ByteBuffer", in);
+    Preconditions.checkArgument(decompressor instanceof Decompressor,
+        "%s is not a Decompressor", decompressor);
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Illegal bufferSize");
+    }
+    this.decompressor = (Decompressor) decompressor;
+    this.directDecompressor = decompressor;
+    this.blockFormat = blockFormat;
+    compressed = ByteBuffer.allocateDirect(bufferSize);
+    compressed.flip();
+    uncompressed = ByteBuffer.allocateDirect(bufferSize);
+    uncompressed.flip();
+  }
+
+  /**
+   * Create a stream which decompresses the given stream with a
+   * {@link DirectDecompressor} of the codec, if
+   * io.compression.direct.decompression.enabled is set, the codec has a
+   * direct decompressor and the stream supports
+   * {@link StreamCapabilities#READBYTEBUFFER}.
+   *
+   * @param codec the codec of the compressed data.
+   * @param in the stream to read the compressed data from.
+   * @param conf the configuration, may be null.
+   * @return the stream, or null if it cannot be used.
+   * @throws IOException raised on errors performing I/O.
+   */
+  public static DirectDecompressorStream create(CompressionCodec codec,
+      InputStream in, Configuration conf) throws IOException {
+    if (conf == null || !conf.getBoolean(
+        CommonConfigurationKeys.IO_COMPRESSION_DIRECT_DECOMPRESSION_ENABLED_KEY,
+        CommonConfigurationKeys.
+            IO_COMPRESSION_DIRECT_DECOMPRESSION_ENABLED_DEFAULT)) {
+      return null;
+    }
+    if (!(codec instanceof DirectDecompressionCodec) ||
+        !(in instanceof ByteBufferReadable) ||
+        (in instanceof StreamCapabilities && !((StreamCapabilities) in)
+            .hasCapability(StreamCapabilities.READBYTEBUFFER))) {
+      return null;
+    }
+    if (codec instanceof ZStandardCodec &&
+        !ZStandardCodec.isNativeCodeLoaded()) {
+      return null;
+    }
+    DirectDecompressor decompressor =
+        ((DirectDecompressionCodec) codec).createDirectDecompressor();
+    if (decompressor == null) {
+      return null;
+    }
+    // the codecs which write their data with a BlockCompressorStream
+    boolean blockFormat =
+        codec instanceof SnappyCodec || codec instanceof Lz4Codec;
+    return new DirectDecompressorStream(in, decompressor,
+        DEFAULT_BUFFER_SIZE, blockFormat);
+  }
+
+  @Override
+  protected int decompress(byte[] b, int off, int len) throws IOException {
+    if (!fill()) {
+      eof = true;
+      return -1;
+    }
+    int n = Math.min(len, uncompressed.remaining());
+    uncompressed.get(b, off, n);
+    return n;
+  }
+
+  /**
+   * Decompress more data if all the decompressed data was read.
+   *
+   * @return false at the end of the stream.
+   */
+  private boolean fill() throws IOException {
+    if (uncompressed.hasRemaining()) {
+      return true;
+    }
+    return blockFormat ? decompressBlock() : decompressStream();
+  }
+
+  private boolean decompressStream() throws IOException {
+    boolean reset = false;
+    while (true) {
+      if (!compressed.hasRemaining() && readCompressed() < 0) {
+        if (decompressor.finished()) {
+          return false;
+        }
+        // the decompressor may still hold output which did not fit before
+        decompressInto();
+        if (uncompressed.hasRemaining()) {
+          return true;
+        }
+        throw new EOFException("Unexpected end of input stream");
+      }
+      int position = compressed.position();
+      decompressInto();
+      if (uncompressed.hasRemaining()) {
+        return true;
+      }
+      if (compressed.position() != position) {
+        reset = false;
+      } else if (!reset) {
+        // the end of a member which is followed by another one: reset the
+        // decompressor and decompress the next member
+        decompressor.reset();
+        reset = true;
+      } else {
+        throw new IOException("Unable to decompress the input stream");
+      }
+    }
+  }
+
+  private boolean decompressBlock() throws IOException {
+    while (!uncompressed.hasRemaining()) {
+      if (blockRemaining == 0) {
+        // the original size of the next block
+        try {
+          blockRemaining = readInt();
+        } catch (EOFException e) {
+          return false;
+        }
+        // a block of 0 bytes is only written for an empty stream
+        if (blockRemaining == 0) {
+          return false;
+        }
+      }
+
+      // the next compressed chunk of the block
+      int len = readInt();
+      if (compressed.capacity() < len) {
+        compressed = ByteBuffer.allocateDirect(len);
+      }
+      compressed.clear();
+      compressed.limit(len);
+      while (compressed.hasRemaining()) {
+        if (((ByteBufferReadable) in).read(compressed) < 0) {
+          throw new EOFException("Unexpected end of block in input stream");
+        }
+      }
+      compressed.flip();
+
+      // the chunk decompresses to at most the rest of the block
+      if (uncompressed.capacity() < blockRemaining) {
+        uncompressed = ByteBuffer.allocateDirect(blockRemaining);
+      }
+      decompressInto();
+      blockRemaining -= uncompressed.remaining();
+      if (blockRemaining < 0) {
+        throw new IOException("Block is larger than its original size");
+      }
+    }
+    return true;
+  }
+
+  /** Decompress the compressed data into the emptied uncompressed buffer. */
+  private void decompressInto() throws IOException {
+    uncompressed.clear();
+    directDecompressor.decompress(compressed, uncompressed);
+    uncompressed.flip();
+  }
+
+  /** @return the bytes read into the compressed buffer, or -1 at EOF. */
+  private int readCompressed() throws IOException {
+    checkStream();
+    compressed.clear();
+    int n = ((ByteBufferReadable) in).read(compressed);
+    compressed.flip();
+    return n;
+  }
+
+  private int readInt() throws IOException {
+    int b1 = in.read();
+    int b2 = in.read();
+    int b3 = in.read();
+    int b4 = in.read();
+    if ((b1 | b2 | b3 | b4) < 0) {
+      throw new EOFException();
+    }
+    return ((b1 << 24) + (b2 << 16) + (b3 << 8) + (b4 << 0));
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n < 0) {
+      throw new IllegalArgumentException("negative skip length");
+    }
+    checkStream();
+    long skipped = 0;
+    while (skipped < n && fill()) {
+      int len = (int) Math.min(n - skipped, uncompressed.remaining());
+      uncompressed.position(uncompressed.position() + len);
+      skipped += len;
+    }
+    if (skipped < n) {
+      eof = true;
+    }
+    return skipped;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      try {
+        super.close();
+      } finally {
+        decompressor.end();
+      }
+    }
+  }
+
+  @Override
+  public void resetState() throws IOException {
+    decompressor.reset();
+    compressed.clear();
+    compressed.flip();
+    uncompressed.clear();
+    uncompressed.flip();
+    blockRemaining = 0;
+  }
+}
@@ -26,12 +26,14 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.lz4.Lz4Compressor;
 import org.apache.hadoop.io.compress.lz4.Lz4Decompressor;
+import org.apache.hadoop.io.compress.lz4.Lz4Decompressor.Lz4DirectDecompressor;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 
 /**
  * This class creates lz4 compressors/decompressors.
  */
-public class Lz4Codec implements Configurable, CompressionCodec {
+public class Lz4Codec
+    implements Configurable, CompressionCodec, DirectDecompressionCodec {
 
   Configuration conf;
 
@@ -175,6 +177,14 @@ public Decompressor createDecompressor() {
     return new Lz4Decompressor(bufferSize);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public DirectDecompressor createDirectDecompressor() {
+    return new Lz4DirectDecompressor();
+  }
+
   /**
    * Get the default filename extension for this kind of compression.
    *
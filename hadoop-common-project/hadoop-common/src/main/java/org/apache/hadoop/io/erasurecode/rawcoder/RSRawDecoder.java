@@ -72,15 +72,14 @@ public RSRawDecoder(ErasureCoderOptions coderOptions) {
 
   @Override
   protected void doDecode(ByteBufferDecodingState decodingState) {
-    CoderUtil.resetOutputBuffers(decodingState.outputs,
-        decodingState.decodeLength);
     prepareDecoding(decodingState.inputs, decodingState.erasedIndexes);
 
     ByteBuffer[] realInputs = new ByteBuffer[getNumDataUnits()];
     for (int i = 0; i < getNumDataUnits(); i++) {
       realInputs[i] = decodingState.inputs[validIndexes[i]];
     }
-    RSUtil.encodeData(gfTables, realInputs, decodingState.outputs);
+    // Only direct buffers get here, heap ones are decoded as arrays.
+    RSUtil.encodeDataByLongs(gfTables, realInputs, decodingState.outputs);
   }
 
   @Override
@@ -62,9 +62,9 @@ public RSRawEncoder(ErasureCoderOptions coderOptions) {
 
   @Override
   protected void doEncode(ByteBufferEncodingState encodingState) {
-    CoderUtil.resetOutputBuffers(encodingState.outputs,
-        encodingState.encodeLength);
-    RSUtil.encodeData(gfTables, encodingState.inputs, encodingState.outputs);
+    // Only direct buffers get here, heap ones are encoded as arrays.
+    RSUtil.encodeDataByLongs(gfTables, encodingState.inputs,
+        encodingState.outputs);
   }
 
   @Override
@@ -20,6 +20,7 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Utilities for implementing Reed-Solomon code, used by RS coder. Some of the
@@ -199,4 +200,87 @@ public static void encodeData(byte[] gfTables, ByteBuffer[] inputs,
     }
   }
 
+  /**
+   * Encode a group of inputs data and generate the outputs, like
+   * {@link #encodeData(byte[], ByteBuffer[], ByteBuffer[])}, but 8 bytes at a
+   * time. Each input is read as longs once, instead of once per output, and
+   * the products of all the inputs are accumulated in a long which is written
+   * once to the output, instead of reading and writing the output byte by
+   * byte for each input. This is much faster for direct buffers, whose single
+   * byte accesses are not optimized like the ones of an array.
+   *
+   * The outputs are overwritten, so they need not be reset before.
+   *
+   * @param gfTables gfTables.
+   * @param inputs inputs.
+   * @param outputs outputs.
+   */
+  public static void encodeDataByLongs(byte[] gfTables, ByteBuffer[] inputs,
+      ByteBuffer[] outputs) {
+    int numInputs = inputs.length;
+    int numOutputs = outputs.length;
+    int dataLen = inputs[0].remaining();
+    byte[][] tables = new byte[numOutputs * numInputs][];
+    for (int l = 0; l < numOutputs; l++) {
+      for (int j = 0; j < numInputs; j++) {
+        byte s = gfTables[j * 32 + l * numInputs * 32 + 1];
+        tables[l * numInputs + j] = GF256.gfMulTab()[s & 0xff];
+      }
+    }
+
+    // views in the native order, so reading a long doesn't swap its bytes
+    ByteBuffer[] in = new ByteBuffer[numInputs];
+    int[] inPos = new int[numInputs];
+    for (int j = 0; j < numInputs; j++) {
+      in[j] = inputs[j].duplicate().order(ByteOrder.nativeOrder());
+      inPos[j] = inputs[j].position();
+    }
+    ByteBuffer[] out = new ByteBuffer[numOutputs];
+    int[] outPos = new int[numOutputs];
+    for (int l = 0; l < numOutputs; l++) {
+      out[l] = outputs[l].duplicate().order(ByteOrder.nativeOrder());
+      outPos[l] = outputs[l].position();
+    }
+
+    long[] words = new long[numInputs];
+    final int extra = dataLen - dataLen % 8;
+    for (int i = 0; i < extra; i += 8) {
+      for (int j = 0; j < numInputs; j++) {
+        words[j] = in[j].getLong(inPos[j] + i);
+      }
+      for (int l = 0, t = 0; l < numOutputs; l++) {
+        long word = 0;
+        for (int j = 0; j < numInputs; j++, t++) {
+          word ^= mulLong(tables[t], words[j]);
+        }
+        out[l].putLong(outPos[l] + i, word);
+      }
+    }
+
+    // For the left bytes, do it one by one.
+    for (int i = extra; i < dataLen; i++) {
+      for (int l = 0, t = 0; l < numOutputs; l++) {
+        int b = 0;
+        for (int j = 0; j < numInputs; j++, t++) {
+          b ^= tables[t][0xff & in[j].get(inPos[j] + i)];
+        }
+        out[l].put(outPos[l] + i, (byte) b);
+      }
+    }
+  }
+
+  /**
+   * @return the 8 bytes of the word each multiplied by the coefficient of the
+   * multiplication table.
+   */
+  private static long mulLong(byte[] table, long word) {
+    return (table[(int) word & 0xff] & 0xffL) |
+        (table[(int) (word >>> 8) & 0xff] & 0xffL) << 8 |
+        (table[(int) (word >>> 16) & 0xff] & 0xffL) << 16 |
+        (table[(int) (word >>> 24) & 0xff] & 0xffL) << 24 |
+        (table[(int) (word >>> 32) & 0xff] & 0xffL) << 32 |
+        (table[(int) (word >>> 40) & 0xff] & 0xffL) << 40 |
+        (table[(int) (word >>> 48) & 0xff] & 0xffL) << 48 |
+        (table[(int) (word >>> 56) & 0xff] & 0xffL) << 56;
+  }
 }
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Used by {@link DecayRpcScheduler} to keep the decayed and raw costs of the
+ * calls of each identity. This is configurable using
+ * {@link org.apache.hadoop.fs.CommonConfigurationKeys#IPC_COST_STORE_KEY}.
+ * <p>
+ * The methods may be called concurrently by the RPC handlers, except
+ * {@link #decay()}, which is only called by the decay sweep of the scheduler.
+ */
+public interface CallCostStore {
+
+  /** Receives the costs of an identity. */
+  interface CostVisitor {
+    void visit(Object identity, long decayedCost, long rawCost);
+  }
+
+  /**
+   * Initialize this store using the given configuration, examining only
+   * ones which fall within the provided namespace.
+   *
+   * @param namespace The namespace to use when looking up configurations.
+   * @param conf The configuration
+   * @param decayFactor The factor the costs are multiplied by on each decay.
+   */
+  void init(String namespace, Configuration conf, double decayFactor);
+
+  /**
+   * Add the cost of a call to the decayed and raw costs of the identity.
+   *
+   * @param identity The identity of the caller
+   * @param cost The cost of the call
+   */
+  void addCost(Object identity, long cost);
+
+  /**
+   * @param identity The identity of the caller
+   * @return the decayed cost of the identity, or 0 if it has none.
+   */
+  long getDecayedCost(Object identity);
+
+  /**
+   * Decay the costs of all the identities, and forget the identities whose
+   * decayed cost drops to 0.
+   */
+  void decay();
+
+  /**
+   * Visit the identities whose costs are kept individually.
+   *
+   * @param visitor The visitor of the costs
+   */
+  void forEach(CostVisitor visitor);
+
+  /**
+   * @return whether {@link #forEach(CostVisitor)} visits every identity
+   *         which has a cost, so the total costs can be summed from it.
+   */
+  boolean isExact();
+
+  /**
+   * @return the number of identities which have a cost, which may be an
+   *         estimate if the store is not exact.
+   */
+  int getIdentityCount();
+}
@@ -65,6 +65,9 @@
 import java.io.*;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.security.PrivilegedExceptionAction;
 import java.util.*;
 import java.util.Map.Entry;
@@ -74,6 +77,7 @@
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.apache.hadoop.ipc.RpcConstants.CONNECTION_CONTEXT_CALL_ID;
 import static org.apache.hadoop.ipc.RpcConstants.PING_CALL_ID;
@@ -98,6 +102,8 @@ public class Client implements AutoCloseable {
       = new ThreadLocal<>();
   private static final ThreadLocal<AsyncGet<? extends Writable, IOException>>
       ASYNC_RPC_RESPONSE = new ThreadLocal<>();
+  private static final ThreadLocal<Supplier<CompletableFuture<Writable>>>
+      ASYNC_RPC_FUTURE = new ThreadLocal<>();
   private static final ThreadLocal<Boolean> asynchronousMode =
       new ThreadLocal<Boolean>() {
         @Override
@@ -113,6 +119,21 @@ protected Boolean initialValue() {
     return (AsyncGet<T, IOException>) ASYNC_RPC_RESPONSE.get();
   }
 
+  /**
+   * Get a future of the response of the last asynchronous call of this
+   * thread. Unlike {@link #getAsyncRpcResponse()}, no thread waits for the
+   * response: the future is completed by the thread which reads it, so the
+   * dependent actions of the future should not block.
+   *
+   * @return the future of the response, or null if there was no call.
+   */
+  @Unstable
+  public static CompletableFuture<Writable> getAsyncRpcFuture() {
+    final Supplier<CompletableFuture<Writable>> future =
+        ASYNC_RPC_FUTURE.get();
+    return future == null ? null : future.get();
+  }
+
   /**
    * Set call id and retry count for the next call.
    * @param cid input cid.
@@ -160,6 +181,15 @@ public static void setCallIdAndRetryCount(int cid, int rc,
   private final static ClientExecutorServiceFactory clientExcecutorFactory =
       new ClientExecutorServiceFactory();
 
+  /**
+   * Threads which read the responses and write the requests of the
+   * connections, or null if each connection has its own thread.
+   */
+  private final IoThread[] ioThreads;
+  private final AtomicInteger nextIoThread = new AtomicInteger();
+  private final static IoThreadsFactory ioThreadsFactory =
+      new IoThreadsFactory();
+
   private static class ClientExecutorServiceFactory {
     private int executorRefCount = 0;
     private ExecutorService clientExecutor = null;
@@ -216,6 +246,134 @@ synchronized ExecutorService unrefAndCleanup() {
       return clientExecutor;
     }
   }
+
+  /**
+   * Creates the I/O threads shared by the clients of the JVM, and stops them
+   * when the last client using them is stopped.
+   */
+  private static class IoThreadsFactory {
+    private int refCount = 0;
+    private IoThread[] threads = null;
+
+    /**
+     * Get the I/O threads, starting them if no client uses them yet.
+     *
+     * @param numThreads the number of threads to start.
+     * @return the I/O threads.
+     * @throws IOException if the selectors can't be opened.
+     */
+    synchronized IoThread[] refAndGetInstance(int numThreads)
+        throws IOException {
+      if (refCount == 0) {
+        final IoThread[] newThreads = new IoThread[numThreads];
+        try {
+          for (int i = 0; i < numThreads; i++) {
+            newThreads[i] = new IoThread(i);
+          }
+        } catch (IOException e) {
+          for (IoThread t : newThreads) {
+            if (t != null) {
+              IOUtils.cleanupWithLogger(LOG, t.selector);
+            }
+          }
+          throw e;
+        }
+        for (IoThread t : newThreads) {
+          t.start();
+        }
+        threads = newThreads;
+      }
+      refCount++;
+      return threads;
+    }
+
+    /** Stop the I/O threads if no client uses them any more. */
+    synchronized void unrefAndCleanup() {
+      refCount--;
+      assert(refCount >= 0);
+      if (refCount == 0) {
+        for (IoThread t : threads) {
+          t.shutdown();
+        }
+        threads = null;
+      }
+    }
+  }
+
+  /**
+   * A thread which reads the responses and writes the requests of many
+   * connections with non-blocking I/O, instead of a thread per connection.
+   * A connection is set up and authenticated by its first caller with
+   * blocking I/O, and is then handed to one of these threads. Requests are
+   * queued by the callers and written by the thread, so callers neither wait
+   * for a send executor nor for each other, and responses complete their
+   * calls directly from the thread.
+   */
+  private static class IoThread extends Thread {
+    /** The maximum number of requests written to a socket at once. */
+    private static final int MAX_GATHERED_REQUESTS = 16;
+    /** The interval of the checks for idle and timed out connections. */
+    private static final long CHECK_INTERVAL_MS = 100;
+
+    private final Selector selector;
+    /** Connections to register, with requests to write, or to close. */
+    private final ConcurrentLinkedQueue<Connection> pending =
+        new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    IoThread(int index) throws IOException {
+      this.selector = Selector.open();
+      setName("IPC Client I/O thread #" + index);
+      setDaemon(true);
+    }
+
+    /** Have the thread process the connection. */
+    void wakeup(Connection connection) {
+      pending.add(connection);
+      selector.wakeup();
+    }
+
+    void shutdown() {
+      running = false;
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      LOG.debug("{}: starting", getName());
+      long lastCheck = Time.monotonicNow();
+      while (running) {
+        try {
+          Connection connection;
+          while ((connection = pending.poll()) != null) {
+            connection.processPending(selector);
+          }
+          selector.select(CHECK_INTERVAL_MS);
+          final Iterator<SelectionKey> it =
+              selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            final SelectionKey key = it.next();
+            it.remove();
+            ((Connection) key.attachment()).processReady(key);
+          }
+          final long now = Time.monotonicNow();
+          if (now - lastCheck >= CHECK_INTERVAL_MS) {
+            lastCheck = now;
+            for (SelectionKey key : selector.keys()) {
+              if (key.isValid()) {
+                ((Connection) key.attachment()).checkTimeouts();
+              }
+            }
+          }
+        } catch (Throwable t) {
+          // only unexpected errors, as the connections handle their own
+          LOG.warn("Unexpected error in " + getName(), t);
+        }
+      }
+      IOUtils.cleanupWithLogger(LOG, selector);
+      LOG.debug("{}: stopped", getName());
+    }
+  }
   
   /**
    * set the ping interval value in configuration
@@ -339,6 +497,10 @@ static class Call {
     boolean done;               // true when call is done
     private final Object externalHandler;
     private AlignmentContext alignmentContext;
+    /** Completed with the response of an asynchronous call. */
+    private CompletableFuture<Writable> future;
+    /** Whether the call no longer counts towards the asynchronous calls. */
+    private boolean asyncCallReleased;
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
@@ -394,9 +556,12 @@ public synchronized void setAlignmentContext(AlignmentContext ac) {
      * 
      * @param error exception thrown by the call; either local or remote
      */
-    public synchronized void setException(IOException error) {
-      this.error = error;
-      callComplete();
+    public void setException(IOException error) {
+      synchronized (this) {
+        this.error = error;
+        callComplete();
+      }
+      completeFuture();
     }
     
     /** Set the return value when there is no error. 
@@ -404,14 +569,43 @@ public synchronized void setException(IOException error) {
      * 
      * @param rpcResponse return value of the rpc call.
      */
-    public synchronized void setRpcResponse(Writable rpcResponse) {
-      this.rpcResponse = rpcResponse;
-      callComplete();
+    public void setRpcResponse(Writable rpcResponse) {
+      synchronized (this) {
+        this.rpcResponse = rpcResponse;
+        callComplete();
+      }
+      completeFuture();
     }
     
     public synchronized Writable getRpcResponse() {
       return rpcResponse;
     }
+
+    synchronized void setFuture(CompletableFuture<Writable> future) {
+      this.future = future;
+    }
+
+    /**
+     * Complete the future of an asynchronous call. This is done without
+     * holding the lock of the call, as it runs the dependent actions.
+     */
+    private void completeFuture() {
+      final CompletableFuture<Writable> f;
+      final IOException e;
+      final Writable response;
+      synchronized (this) {
+        f = future;
+        e = error;
+        response = rpcResponse;
+      }
+      if (f != null) {
+        if (e != null) {
+          f.completeExceptionally(e);
+        } else {
+          f.complete(response);
+        }
+      }
+    }
   }
 
   /** Thread that reads responses and notifies callers.  Each connection owns a
@@ -452,6 +646,22 @@ private class Connection extends Thread {
     private AtomicReference<Thread> connectingThread = new AtomicReference<>();
     private final Consumer<Connection> removeMethod;
 
+    // The state of a connection served by a shared I/O thread.
+    private boolean saslWrapped;    // if the RPC stream is wrapped by SASL
+    private IoThread ioThread;      // null for a connection with own thread
+    private SocketChannel channel;
+    private ConcurrentLinkedQueue<ByteBuffer> requests; // to be written
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    // when the connection started to wait for the next byte of a response
+    private volatile long readWaitStart;
+    // only used by the I/O thread
+    private SelectionKey key;
+    private ArrayDeque<ByteBuffer> writing;
+    private ByteBuffer responseLength;
+    private ByteBuffer response;
+    private boolean firstResponse = true;
+    private boolean closedByIoThread;
+
     Connection(ConnectionId remoteId, int serviceClass,
         Consumer<Connection> removeMethod) {
       this.remoteId = remoteId;
@@ -527,6 +737,9 @@ private void touch() {
     private synchronized boolean addCall(Call call) {
       if (shouldCloseConnection.get())
         return false;
+      if (calls.isEmpty()) {
+        readWaitStart = Time.now();
+      }
       calls.put(call.id, call);
       notify();
       return true;
@@ -866,6 +1079,8 @@ public AuthMethod run()
             if (authMethod != AuthMethod.SIMPLE) {
               // Sasl connect is successful. Let's set up Sasl i/o streams.
               ipcStreams.setSaslClient(saslRpcClient);
+              // QoP auth authenticates the connection without wrapping it
+              saslWrapped = saslRpcClient.useWrap();
               // for testing
               remoteId.saslQop =
                   (String)saslRpcClient.getNegotiatedProperty(Sasl.QOP);
@@ -888,9 +1103,11 @@ public AuthMethod run()
             span.addTimelineAnnotation("IPC client connected to " + server);
           }
 
-          // start the receiver thread after the socket connection has been set
-          // up
-          start();
+          // start the receiver thread, or hand the connection to a shared
+          // I/O thread, after the socket connection has been set up
+          if (!registerWithIoThread()) {
+            start();
+          }
           return;
         }
       } catch (Throwable t) {
@@ -1185,6 +1402,18 @@ public void sendRpcRequest(final Call call)
       header.writeDelimitedTo(buf);
       RpcWritable.wrap(call.rpcRequest).writeTo(buf);
 
+      if (ioThread != null) {
+        // the I/O thread writes the request, so the caller neither waits
+        // for the socket nor is exposed to interrupts closing the channel
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(getName() + " queueing #" + call.id
+              + " " + call.rpcRequest);
+        }
+        requests.add(ByteBuffer.wrap(buf.toByteArray()));
+        scheduleWrite();
+        return;
+      }
+
       synchronized (sendRpcRequestLock) {
         Future<?> senderFuture = sendParamsExecutor.submit(new Runnable() {
           @Override
@@ -1241,51 +1470,55 @@ private void receiveRpcResponse() {
       touch();
       
       try {
-        ByteBuffer bb = ipcStreams.readResponse();
-        RpcWritable.Buffer packet = RpcWritable.Buffer.wrap(bb);
-        RpcResponseHeaderProto header =
-            packet.getValue(RpcResponseHeaderProto.getDefaultInstance());
-        checkResponse(header);
-
-        int callId = header.getCallId();
-        if (LOG.isDebugEnabled())
-          LOG.debug(getName() + " got value #" + callId);
-
-        RpcStatusProto status = header.getStatus();
-        if (status == RpcStatusProto.SUCCESS) {
-          Writable value = packet.newInstance(valueClass, conf);
-          final Call call = calls.remove(callId);
-          call.setRpcResponse(value);
-          if (call.alignmentContext != null) {
-            call.alignmentContext.receiveResponseState(header);
-          }
+        processRpcResponse(ipcStreams.readResponse());
+      } catch (IOException e) {
+        markClosed(e);
+      }
+    }
+
+    /** Complete the call of a response read from the connection. */
+    private void processRpcResponse(ByteBuffer bb) throws IOException {
+      RpcWritable.Buffer packet = RpcWritable.Buffer.wrap(bb);
+      RpcResponseHeaderProto header =
+          packet.getValue(RpcResponseHeaderProto.getDefaultInstance());
+      checkResponse(header);
+
+      int callId = header.getCallId();
+      if (LOG.isDebugEnabled())
+        LOG.debug(getName() + " got value #" + callId);
+
+      RpcStatusProto status = header.getStatus();
+      if (status == RpcStatusProto.SUCCESS) {
+        Writable value = packet.newInstance(valueClass, conf);
+        final Call call = calls.remove(callId);
+        call.setRpcResponse(value);
+        if (call.alignmentContext != null) {
+          call.alignmentContext.receiveResponseState(header);
         }
-        // verify that packet length was correct
-        if (packet.remaining() > 0) {
-          throw new RpcClientException("RPC response length mismatch");
+      }
+      // verify that packet length was correct
+      if (packet.remaining() > 0) {
+        throw new RpcClientException("RPC response length mismatch");
+      }
+      if (status != RpcStatusProto.SUCCESS) { // Rpc Request failed
+        final String exceptionClassName = header.hasExceptionClassName() ?
+              header.getExceptionClassName() : 
+                "ServerDidNotSetExceptionClassName";
+        final String errorMsg = header.hasErrorMsg() ? 
+              header.getErrorMsg() : "ServerDidNotSetErrorMsg" ;
+        final RpcErrorCodeProto erCode = 
+                  (header.hasErrorDetail() ? header.getErrorDetail() : null);
+        if (erCode == null) {
+           LOG.warn("Detailed error code not set by server on rpc error");
         }
-        if (status != RpcStatusProto.SUCCESS) { // Rpc Request failed
-          final String exceptionClassName = header.hasExceptionClassName() ?
-                header.getExceptionClassName() : 
-                  "ServerDidNotSetExceptionClassName";
-          final String errorMsg = header.hasErrorMsg() ? 
-                header.getErrorMsg() : "ServerDidNotSetErrorMsg" ;
-          final RpcErrorCodeProto erCode = 
-                    (header.hasErrorDetail() ? header.getErrorDetail() : null);
-          if (erCode == null) {
-             LOG.warn("Detailed error code not set by server on rpc error");
-          }
-          RemoteException re = new RemoteException(exceptionClassName, errorMsg, erCode);
-          if (status == RpcStatusProto.ERROR) {
-            final Call call = calls.remove(callId);
-            call.setException(re);
-          } else if (status == RpcStatusProto.FATAL) {
-            // Close the connection
-            markClosed(re);
-          }
+        RemoteException re = new RemoteException(exceptionClassName, errorMsg, erCode);
+        if (status == RpcStatusProto.ERROR) {
+          final Call call = calls.remove(callId);
+          call.setException(re);
+        } else if (status == RpcStatusProto.FATAL) {
+          // Close the connection
+          markClosed(re);
         }
-      } catch (IOException e) {
-        markClosed(e);
       }
     }
     
@@ -1293,6 +1526,7 @@ private synchronized void markClosed(IOException e) {
       if (shouldCloseConnection.compareAndSet(false, true)) {
         closeException = e;
         notifyAll();
+        wakeupIoThread();
       }
     }
 
@@ -1353,6 +1587,221 @@ private void cleanupCalls() {
         c.setException(closeException); // local exception
       }
     }
+
+    /**
+     * Hand the connection to a shared I/O thread, if the client has them,
+     * and the RPC stream is neither wrapped by SASL nor partly read.
+     *
+     * @return true if the connection was handed to an I/O thread.
+     */
+    private boolean registerWithIoThread() throws IOException {
+      if (ioThreads == null || saslWrapped || socket.getChannel() == null
+          || ipcStreams.in.available() > 0) {
+        return false;
+      }
+      // the I/O thread writes the calls, so the connection header and
+      // context are sent on their own
+      ipcStreams.flush();
+      channel = socket.getChannel();
+      channel.configureBlocking(false);
+      requests = new ConcurrentLinkedQueue<>();
+      writing = new ArrayDeque<>();
+      responseLength = ByteBuffer.allocate(4);
+      ioThread = ioThreads[(nextIoThread.getAndIncrement() & 0x7FFFFFFF)
+          % ioThreads.length];
+      LOG.debug("{}: served by {}", getName(), ioThread.getName());
+      ioThread.wakeup(this);
+      return true;
+    }
+
+    private void wakeupIoThread() {
+      if (ioThread != null) {
+        ioThread.wakeup(this);
+      }
+    }
+
+    /** Have the I/O thread write the queued requests. */
+    private void scheduleWrite() {
+      if (writeScheduled.compareAndSet(false, true)) {
+        ioThread.wakeup(this);
+      }
+    }
+
+    /**
+     * Register the connection with the selector, write its queued requests
+     * or close it. Only called by the I/O thread.
+     */
+    private void processPending(Selector selector) {
+      if (closeIfNeeded()) {
+        return;
+      }
+      try {
+        if (key == null) {
+          key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+        writeRequests();
+      } catch (IOException e) {
+        markClosed(e);
+      }
+      closeIfNeeded();
+    }
+
+    /**
+     * Read the responses or write the requests the socket is ready for.
+     * Only called by the I/O thread.
+     */
+    private void processReady(SelectionKey selected) {
+      try {
+        if (selected.isReadable()) {
+          readResponses();
+        }
+        if (selected.isValid() && selected.isWritable()) {
+          writeRequests();
+        }
+      } catch (IOException e) {
+        markClosed(e);
+      }
+      closeIfNeeded();
+    }
+
+    /** Read and process the responses available on the socket. */
+    private void readResponses() throws IOException {
+      while (!shouldCloseConnection.get()) {
+        if (response == null) {
+          if (!read(responseLength)) {
+            return;
+          }
+          responseLength.flip();
+          final int length = responseLength.getInt();
+          responseLength.clear();
+          if (firstResponse) {
+            firstResponse = false;
+            if (length == -1) {
+              // pre-rpcv9 exception, almost certainly a version mismatch.
+              throw new RpcException("RPC response has invalid length of " +
+                  "-1, the server probably runs an older version of Hadoop");
+            }
+          }
+          IpcStreams.checkResponseLength(length, maxResponseLength);
+          response = ByteBuffer.allocate(length);
+        }
+        if (!read(response)) {
+          return;
+        }
+        final ByteBuffer bb = response;
+        response = null;
+        bb.flip();
+        processRpcResponse(bb);
+      }
+    }
+
+    /** @return true if the buffer was filled. */
+    private boolean read(ByteBuffer buf) throws IOException {
+      final int n = channel.read(buf);
+      if (n < 0) {
+        throw new EOFException("Connection to " + server + " closed");
+      } else if (n > 0) {
+        touch();
+        readWaitStart = Time.now();
+      }
+      return !buf.hasRemaining();
+    }
+
+    /** Write the queued requests until the socket buffer is full. */
+    private void writeRequests() throws IOException {
+      while (true) {
+        ByteBuffer request;
+        while (writing.size() < IoThread.MAX_GATHERED_REQUESTS &&
+            (request = requests.poll()) != null) {
+          writing.add(request);
+        }
+        if (writing.isEmpty()) {
+          writeScheduled.set(false);
+          // a caller may have queued a request before the flag was cleared
+          if (requests.isEmpty() ||
+              !writeScheduled.compareAndSet(false, true)) {
+            key.interestOps(SelectionKey.OP_READ);
+            return;
+          }
+          continue;
+        }
+        try {
+          channel.write(writing.toArray(new ByteBuffer[writing.size()]));
+        } catch (IOException e) {
+          // the server may have sent the reason, e.g. a failed authorization,
+          // before closing the connection
+          try {
+            readResponses();
+          } catch (IOException ignored) {
+          }
+          throw e;
+        }
+        touch();
+        while (!writing.isEmpty() && !writing.peek().hasRemaining()) {
+          writing.poll();
+        }
+        if (!writing.isEmpty()) {
+          // write the rest when the socket buffer has room again
+          key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+          return;
+        }
+      }
+    }
+
+    /**
+     * Close the connection if it is idle or its calls timed out, or send a
+     * ping if it has been waiting for responses for the ping interval. Only
+     * called by the I/O thread.
+     */
+    private void checkTimeouts() {
+      final long now = Time.now();
+      synchronized (this) {
+        // synchronized with addCall, so no call is added to an idle
+        // connection while it is closed
+        if (calls.isEmpty()) {
+          if (now - lastActivity.get() >= maxIdleTime) {
+            markClosed(null);
+          }
+        } else if (rpcTimeout > 0 && now - readWaitStart >= rpcTimeout) {
+          markClosed(new SocketTimeoutException(rpcTimeout +
+              " millis timeout while waiting for a response from " + server));
+        } else if (doPing && now - lastActivity.get() >= pingInterval) {
+          lastActivity.set(now);
+          requests.add(ByteBuffer.wrap(pingRequest));
+          scheduleWrite();
+        }
+      }
+      closeIfNeeded();
+    }
+
+    /**
+     * Close the connection if it was marked closed or the client is stopped.
+     * Only called by the I/O thread.
+     *
+     * @return true if the connection is closed.
+     */
+    private boolean closeIfNeeded() {
+      if (closedByIoThread) {
+        return true;
+      }
+      if (!running.get()) {
+        if (calls.isEmpty()) {
+          markClosed(null);
+        } else {
+          markClosed((IOException)new IOException().initCause(
+              new InterruptedException()));
+        }
+      }
+      if (!shouldCloseConnection.get()) {
+        return false;
+      }
+      closedByIoThread = true;
+      if (key != null) {
+        key.cancel();
+      }
+      close();
+      return true;
+    }
   }
 
   /**
@@ -1381,6 +1830,23 @@ public Client(Class<? extends Writable> valueClass, Configuration conf,
     this.maxAsyncCalls = conf.getInt(
         CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_KEY,
         CommonConfigurationKeys.IPC_CLIENT_ASYNC_CALLS_MAX_DEFAULT);
+    this.ioThreads = getIoThreads(conf);
+  }
+
+  private static IoThread[] getIoThreads(Configuration conf) {
+    final int numIoThreads = conf.getInt(
+        CommonConfigurationKeys.IPC_CLIENT_IO_THREADS_KEY,
+        CommonConfigurationKeys.IPC_CLIENT_IO_THREADS_DEFAULT);
+    if (numIoThreads <= 0) {
+      return null;
+    }
+    try {
+      return ioThreadsFactory.refAndGetInstance(numIoThreads);
+    } catch (IOException e) {
+      LOG.warn("Failed to start the IPC client I/O threads, using a thread " +
+          "per connection", e);
+      return null;
+    }
   }
 
   /**
@@ -1422,6 +1888,7 @@ public void stop() {
     for (Connection conn : connections.values()) {
       conn.interrupt();
       conn.interruptConnectingThread();
+      conn.wakeupIoThread();
     }
     
     // wait until all connections are closed
@@ -1438,6 +1905,9 @@ public void stop() {
       }
     }
     clientExcecutorFactory.unrefAndCleanup();
+    if (ioThreads != null) {
+      ioThreadsFactory.unrefAndCleanup();
+    }
   }
 
   /** 
@@ -1512,6 +1982,9 @@ Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       throws IOException {
     final Call call = createCall(rpcKind, rpcRequest);
     call.setAlignmentContext(alignmentContext);
+    if (isAsynchronousMode()) {
+      call.setFuture(new CompletableFuture<>());
+    }
     final Connection connection = getConnection(remoteId, call, serviceClass,
         fallbackToSimpleAuth);
 
@@ -1530,7 +2003,7 @@ Writable call(RPC.RpcKind rpcKind, Writable rpcRequest,
       }
     } catch(Exception e) {
       if (isAsynchronousMode()) {
-        releaseAsyncCall();
+        releaseAsyncCall(call);
       }
       throw e;
     }
@@ -1552,7 +2025,7 @@ public Writable get(long timeout, TimeUnit unit)
             return w;
           } finally {
             if (done) {
-              releaseAsyncCall();
+              releaseAsyncCall(call);
             }
           }
         }
@@ -1566,6 +2039,7 @@ public boolean isDone() {
       };
 
       ASYNC_RPC_RESPONSE.set(asyncGet);
+      ASYNC_RPC_FUTURE.set(() -> getRpcFuture(call, connection));
       return null;
     } else {
       return getRpcResponse(call, connection, -1, null);
@@ -1595,7 +2069,13 @@ public static void setAsynchronousMode(boolean async) {
     asynchronousMode.set(async);
   }
 
-  private void releaseAsyncCall() {
+  private void releaseAsyncCall(Call call) {
+    synchronized (call) {
+      if (call.asyncCallReleased) {
+        return;
+      }
+      call.asyncCallReleased = true;
+    }
     asyncCallCounter.decrementAndGet();
   }
 
@@ -1621,24 +2101,49 @@ private Writable getRpcResponse(final Call call, final Connection connection,
       }
 
       if (call.error != null) {
-        if (call.error instanceof RemoteException ||
-            call.error instanceof SaslException) {
-          call.error.fillInStackTrace();
-          throw call.error;
-        } else { // local exception
-          InetSocketAddress address = connection.getRemoteAddress();
-          throw NetUtils.wrapException(address.getHostName(),
-                  address.getPort(),
-                  NetUtils.getHostname(),
-                  0,
-                  call.error);
-        }
+        throw getCallException(call.error, connection);
       } else {
         return call.getRpcResponse();
       }
     }
   }
 
+  /**
+   * @return a future of the response of an asynchronous call, which
+   * releases the call from the limit of asynchronous calls once completed.
+   */
+  private CompletableFuture<Writable> getRpcFuture(final Call call,
+      final Connection connection) {
+    final CompletableFuture<Writable> result = new CompletableFuture<>();
+    call.future.whenComplete((response, error) -> {
+      releaseAsyncCall(call);
+      if (error == null) {
+        result.complete(response);
+      } else {
+        result.completeExceptionally(
+            getCallException((IOException) error, connection));
+      }
+    });
+    return result;
+  }
+
+  /** @return the exception to throw to the caller for a failed call. */
+  private static IOException getCallException(IOException error,
+      Connection connection) {
+    if (error instanceof RemoteException ||
+        error instanceof SaslException) {
+      error.fillInStackTrace();
+      return error;
+    } else { // local exception
+      InetSocketAddress address = connection.getRemoteAddress();
+      return NetUtils.wrapException(address.getHostName(),
+              address.getPort(),
+              NetUtils.getHostname(),
+              0,
+              error);
+    }
+  }
+
   // for unit testing only
   @InterfaceAudience.Private
   @InterfaceStability.Unstable
@@ -1947,6 +2452,14 @@ public ByteBuffer readResponse() throws IOException {
                                     WritableUtils.readString(in));
         }
       }
+      checkResponseLength(length, maxResponseLength);
+      ByteBuffer bb = ByteBuffer.allocate(length);
+      in.readFully(bb.array());
+      return bb;
+    }
+
+    static void checkResponseLength(int length, int maxResponseLength)
+        throws RpcException {
       if (length <= 0) {
         throw new RpcException(String.format("RPC response has " +
             "invalid length of %d", length));
@@ -1955,9 +2468,6 @@ public ByteBuffer readResponse() throws IOException {
         throw new RpcException(String.format("RPC response has a " +
             "length of %d exceeds maximum data length", length));
       }
-      ByteBuffer bb = ByteBuffer.allocate(length);
-      in.readFully(bb.array());
-      return bb;
     }
 
     public void sendRequest(byte[] buf) throws IOException {
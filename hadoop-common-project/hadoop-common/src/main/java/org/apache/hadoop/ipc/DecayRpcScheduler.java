@@ -19,18 +19,15 @@
 package org.apache.hadoop.ipc;
 
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicLongArray;
@@ -65,10 +62,10 @@
 import static org.apache.hadoop.ipc.ProcessingDetails.Timing;
 
 /**
- * The decay RPC scheduler tracks the cost of incoming requests in a map, then
- * decays the costs at a fixed time interval. The scheduler is optimized
- * for large periods (on the order of seconds), as it offloads work to the
- * decay sweep.
+ * The decay RPC scheduler tracks the cost of incoming requests in a
+ * {@link CallCostStore}, by default a map, then decays the costs at a fixed
+ * time interval. The scheduler is optimized for large periods (on the order
+ * of seconds), as it offloads work to the decay sweep.
  */
 public class DecayRpcScheduler implements RpcScheduler,
     DecayRpcSchedulerMXBean, MetricsSource {
@@ -148,20 +145,17 @@ public class DecayRpcScheduler implements RpcScheduler,
 
   private static final ObjectWriter WRITER = new ObjectMapper().writer();
 
-  // Track the decayed and raw (no decay) number of calls for each schedulable
-  // identity from all previous decay windows: idx 0 for decayed call cost and
-  // idx 1 for the raw call cost
-  private final ConcurrentHashMap<Object, List<AtomicLong>> callCosts =
-      new ConcurrentHashMap<Object, List<AtomicLong>>();
+  // Track the decayed and raw (no decay) cost of the calls of each schedulable
+  // identity from all previous decay windows
+  private final CallCostStore callCosts;
 
-  // Should be the sum of all AtomicLongs in decayed callCosts except
-  // service-user.
+  // Should be the sum of the decayed callCosts except service-user.
   private final AtomicLong totalDecayedCallCost = new AtomicLong();
-  // The sum of all AtomicLongs in raw callCosts except service-user.
+  // The sum of the raw callCosts except service-user.
   private final AtomicLong totalRawCallCost = new AtomicLong();
-  // Should be the sum of all AtomicLongs in decayed callCosts of service-user.
+  // Should be the sum of the decayed callCosts of service-user.
   private final AtomicLong totalServiceUserDecayedCallCost = new AtomicLong();
-  // The sum of all AtomicLongs in raw callCosts of service-user.
+  // The sum of the raw callCosts of service-user.
   private final AtomicLong totalServiceUserRawCallCost = new AtomicLong();
 
 
@@ -244,6 +238,7 @@ public DecayRpcScheduler(int numLevels, String ns, Configuration conf) {
     this.decayPeriodMillis = parseDecayPeriodMillis(ns, conf);
     this.identityProvider = this.parseIdentityProvider(ns, conf);
     this.costProvider = this.parseCostProvider(ns, conf);
+    this.callCosts = this.parseCostStore(ns, conf);
     this.thresholds = parseThresholds(ns, conf, numLevels);
     this.backOffByResponseTimeEnabled = parseBackOffByResponseTimeEnabled(ns,
         conf);
@@ -308,6 +303,39 @@ private CostProvider parseCostProvider(String ns, Configuration conf) {
     return provider;
   }
 
+  private CallCostStore parseCostStore(String ns, Configuration conf) {
+    List<CallCostStore> stores = conf.getInstances(
+        ns + "." + CommonConfigurationKeys.IPC_COST_STORE_KEY,
+        CallCostStore.class);
+
+    if (stores.size() < 1) {
+      String[] nsPort = ns.split("\\.");
+      if (nsPort.length == 2) {
+        // Only if ns is split with ".", we can separate namespace and port.
+        // In the absence of "ipc.<port>.cost-store.impl" property,
+        // we look up "ipc.cost-store.impl" property.
+        stores = conf.getInstances(
+            nsPort[0] + "." + CommonConfigurationKeys.IPC_COST_STORE_KEY,
+            CallCostStore.class);
+      }
+    }
+
+    CallCostStore store;
+    if (stores.size() < 1) {
+      LOG.info("CallCostStore not specified, defaulting to " +
+          "DefaultCallCostStore");
+      store = new DefaultCallCostStore();
+    } else {
+      if (stores.size() > 1) {
+        LOG.warn("Found multiple CallCostStores; using: {}",
+            stores.get(0).getClass());
+      }
+      store = stores.get(0); // use the first
+    }
+    store.init(ns, conf, decayFactor);
+    return store;
+  }
+
   // Load configs
   private IdentityProvider parseIdentityProvider(String ns,
       Configuration conf) {
@@ -479,42 +507,37 @@ private static Boolean parseBackOffByResponseTimeEnabled(String ns,
   private void decayCurrentCosts() {
     LOG.debug("Start to decay current costs.");
     try {
-      long totalDecayedCost = 0;
-      long totalRawCost = 0;
-      long totalServiceUserDecayedCost = 0;
-      long totalServiceUserRawCost = 0;
-      Iterator<Map.Entry<Object, List<AtomicLong>>> it =
-          callCosts.entrySet().iterator();
-
-      while (it.hasNext()) {
-        Map.Entry<Object, List<AtomicLong>> entry = it.next();
-        AtomicLong decayedCost = entry.getValue().get(0);
-        AtomicLong rawCost = entry.getValue().get(1);
-
-
-        // Compute the next value by reducing it by the decayFactor
-        long currentValue = decayedCost.get();
-        long nextValue = (long) (currentValue * decayFactor);
-        if (isServiceUser((String) entry.getKey())) {
-          totalServiceUserRawCost += rawCost.get();
-          totalServiceUserDecayedCost += nextValue;
-        } else {
-          totalRawCost += rawCost.get();
-          totalDecayedCost += nextValue;
-        }
-        decayedCost.set(nextValue);
-
-        LOG.debug(
-            "Decaying costs for the user: {}, its decayedCost: {}, rawCost: {}",
-            entry.getKey(), nextValue, rawCost.get());
-        if (nextValue == 0) {
-          LOG.debug("The decayed cost for the user {} is zero " +
-              "and being cleaned.", entry.getKey());
-          // We will clean up unused keys here. An interesting optimization
-          // might be to have an upper bound on keyspace in callCosts and only
-          // clean once we pass it.
-          it.remove();
-        }
+      callCosts.decay();
+
+      final long totalDecayedCost;
+      final long totalRawCost;
+      final long totalServiceUserDecayedCost;
+      final long totalServiceUserRawCost;
+      if (callCosts.isExact()) {
+        // Sum the costs like they were rounded down, so the totals don't
+        // drift from them
+        final long[] totals = new long[4];
+        callCosts.forEach((identity, decayedCost, rawCost) -> {
+          if (isServiceUser((String) identity)) {
+            totals[2] += decayedCost;
+            totals[3] += rawCost;
+          } else {
+            totals[0] += decayedCost;
+            totals[1] += rawCost;
+          }
+        });
+        totalDecayedCost = totals[0];
+        totalRawCost = totals[1];
+        totalServiceUserDecayedCost = totals[2];
+        totalServiceUserRawCost = totals[3];
+      } else {
+        // Not all the identities are visited, so decay the totals like the
+        // costs, and keep the raw totals
+        totalDecayedCost = (long) (totalDecayedCallCost.get() * decayFactor);
+        totalRawCost = totalRawCallCost.get();
+        totalServiceUserDecayedCost =
+            (long) (totalServiceUserDecayedCallCost.get() * decayFactor);
+        totalServiceUserRawCost = totalServiceUserRawCallCost.get();
       }
 
       // Update the total so that we remain in sync
@@ -545,15 +568,11 @@ private void decayCurrentCosts() {
   private void recomputeScheduleCache() {
     Map<Object, Integer> nextCache = new HashMap<Object, Integer>();
 
-    for (Map.Entry<Object, List<AtomicLong>> entry : callCosts.entrySet()) {
-      Object id = entry.getKey();
-      AtomicLong value = entry.getValue().get(0);
-
-      long snapshot = value.get();
-      int computedLevel = computePriorityLevel(snapshot, id);
+    callCosts.forEach((id, decayedCost, rawCost) -> {
+      int computedLevel = computePriorityLevel(decayedCost, id);
 
       nextCache.put(id, computedLevel);
-    }
+    });
 
     // Swap in to activate
     scheduleCacheRef.set(Collections.unmodifiableMap(nextCache));
@@ -566,23 +585,6 @@ private void recomputeScheduleCache() {
    * @param costDelta the cost to add for the given identity
    */
   private void addCost(Object identity, long costDelta) {
-    // We will increment the cost, or create it if no such cost exists
-    List<AtomicLong> cost = this.callCosts.get(identity);
-    if (cost == null) {
-      // Create the costs since no such cost exists.
-      // idx 0 for decayed call cost
-      // idx 1 for the raw call cost
-      cost = new ArrayList<AtomicLong>(2);
-      cost.add(new AtomicLong(0));
-      cost.add(new AtomicLong(0));
-
-      // Put it in, or get the AtomicInteger that was put in by another thread
-      List<AtomicLong> otherCost = callCosts.putIfAbsent(identity, cost);
-      if (otherCost != null) {
-        cost = otherCost;
-      }
-    }
-
     // Update the total
     if (!isServiceUser((String) identity)) {
       totalDecayedCallCost.getAndAdd(costDelta);
@@ -592,11 +594,7 @@ private void addCost(Object identity, long costDelta) {
       totalServiceUserRawCallCost.getAndAdd(costDelta);
     }
 
-    // At this point value is guaranteed to be not null. It may however have
-    // been clobbered from callCosts. Nonetheless, we return what
-    // we have.
-    cost.get(1).getAndAdd(costDelta);
-    cost.get(0).getAndAdd(costDelta);
+    callCosts.addCost(identity, costDelta);
   }
 
   /**
@@ -652,8 +650,7 @@ private int cachedOrComputedPriorityLevel(Object identity) {
     }
 
     // Cache was no good, compute it
-    List<AtomicLong> costList = callCosts.get(identity);
-    long currentCost = costList == null ? 0 : costList.get(0).get();
+    long currentCost = callCosts.getDecayedCost(identity);
     int priority = computePriorityLevel(currentCost, identity);
     LOG.debug("compute priority for identity: {}={}", identity,
         priority);
@@ -828,9 +825,8 @@ void forceDecay() {
   Map<Object, Long> getCallCostSnapshot() {
     HashMap<Object, Long> snapshot = new HashMap<Object, Long>();
 
-    for (Map.Entry<Object, List<AtomicLong>> entry : callCosts.entrySet()) {
-      snapshot.put(entry.getKey(), entry.getValue().get(0).get());
-    }
+    callCosts.forEach((identity, decayedCost, rawCost) ->
+        snapshot.put(identity, decayedCost));
 
     return Collections.unmodifiableMap(snapshot);
   }
@@ -970,7 +966,7 @@ public void getMetrics(MetricsCollector collector, boolean all) {
   }
 
   public int getUniqueIdentityCount() {
-    return callCosts.size();
+    return callCosts.getIdentityCount();
   }
 
   public long getTotalCallVolume() {
@@ -1098,16 +1094,11 @@ private void addTopNCallerSummary(MetricsRecordBuilder rb) {
   // Get the top N callers' raw call cost and scheduler decision
   private TopN getTopCallers(int n) {
     TopN topNCallers = new TopN(n);
-    Iterator<Map.Entry<Object, List<AtomicLong>>> it =
-        callCosts.entrySet().iterator();
-    while (it.hasNext()) {
-      Map.Entry<Object, List<AtomicLong>> entry = it.next();
-      String caller = entry.getKey().toString();
-      Long cost = entry.getValue().get(1).get();
-      if (cost > 0) {
-        topNCallers.offer(new NameValuePair(caller, cost));
+    callCosts.forEach((identity, decayedCost, rawCost) -> {
+      if (rawCost > 0) {
+        topNCallers.offer(new NameValuePair(identity.toString(), rawCost));
       }
-    }
+    });
     return topNCallers;
   }
 
@@ -1133,17 +1124,12 @@ public String getCallVolumeSummary() {
   }
 
   private Map<Object, Long> getDecayedCallCosts() {
-    Map<Object, Long> decayedCallCosts = new HashMap<>(callCosts.size());
-    Iterator<Map.Entry<Object, List<AtomicLong>>> it =
-        callCosts.entrySet().iterator();
-    while (it.hasNext()) {
-      Map.Entry<Object, List<AtomicLong>> entry = it.next();
-      Object user = entry.getKey();
-      Long decayedCost = entry.getValue().get(0).get();
+    Map<Object, Long> decayedCallCosts = new HashMap<>();
+    callCosts.forEach((user, decayedCost, rawCost) -> {
       if (decayedCost > 0) {
         decayedCallCosts.put(user, decayedCost);
       }
-    }
+    });
     return decayedCallCosts;
   }
 
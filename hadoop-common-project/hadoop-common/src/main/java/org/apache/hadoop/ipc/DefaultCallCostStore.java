@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The default {@link CallCostStore}, which keeps the exact costs of every
+ * identity in a map. The memory and the time of a decay grow with the number
+ * of identities which called within the last few decay periods.
+ */
+public class DefaultCallCostStore implements CallCostStore {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(DefaultCallCostStore.class);
+
+  // Track the decayed and raw (no decay) number of calls for each schedulable
+  // identity from all previous decay windows: idx 0 for decayed call cost and
+  // idx 1 for the raw call cost
+  private final ConcurrentHashMap<Object, AtomicLong[]> callCosts =
+      new ConcurrentHashMap<>();
+  private double decayFactor;
+
+  @Override
+  public void init(String namespace, Configuration conf, double factor) {
+    this.decayFactor = factor;
+  }
+
+  @Override
+  public void addCost(Object identity, long cost) {
+    // We will increment the cost, or create it if no such cost exists
+    AtomicLong[] costs = callCosts.get(identity);
+    if (costs == null) {
+      costs = new AtomicLong[] {new AtomicLong(), new AtomicLong()};
+      // Put it in, or get the costs that were put in by another thread
+      AtomicLong[] otherCosts = callCosts.putIfAbsent(identity, costs);
+      if (otherCosts != null) {
+        costs = otherCosts;
+      }
+    }
+
+    // At this point value is guaranteed to be not null. It may however have
+    // been clobbered from callCosts. Nonetheless, we return what
+    // we have.
+    costs[1].getAndAdd(cost);
+    costs[0].getAndAdd(cost);
+  }
+
+  @Override
+  public long getDecayedCost(Object identity) {
+    AtomicLong[] costs = callCosts.get(identity);
+    return costs == null ? 0 : costs[0].get();
+  }
+
+  @Override
+  public void decay() {
+    Iterator<Map.Entry<Object, AtomicLong[]>> it =
+        callCosts.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Object, AtomicLong[]> entry = it.next();
+      AtomicLong decayedCost = entry.getValue()[0];
+
+      // Compute the next value by reducing it by the decayFactor
+      long nextValue = (long) (decayedCost.get() * decayFactor);
+      decayedCost.set(nextValue);
+
+      LOG.debug(
+          "Decaying costs for the user: {}, its decayedCost: {}, rawCost: {}",
+          entry.getKey(), nextValue, entry.getValue()[1].get());
+      if (nextValue == 0) {
+        LOG.debug("The decayed cost for the user {} is zero " +
+            "and being cleaned.", entry.getKey());
+        // We will clean up unused keys here. An interesting optimization
+        // might be to have an upper bound on keyspace in callCosts and only
+        // clean once we pass it.
+        it.remove();
+      }
+    }
+  }
+
+  @Override
+  public void forEach(CostVisitor visitor) {
+    for (Map.Entry<Object, AtomicLong[]> entry : callCosts.entrySet()) {
+      visitor.visit(entry.getKey(), entry.getValue()[0].get(),
+          entry.getValue()[1].get());
+    }
+  }
+
+  @Override
+  public boolean isExact() {
+    return true;
+  }
+
+  @Override
+  public int getIdentityCount() {
+    return callCosts.size();
+  }
+}
@@ -22,6 +22,7 @@
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -53,6 +54,16 @@ byte[] toByteArray() {
     return getFramedBuffer().toByteArray();
   }
 
+  // the number of bytes including the framing bytes.
+  int framedSize() {
+    return written + FramedBuffer.FRAMING_BYTES;
+  }
+
+  // copy the framed bytes into a buffer with framedSize() bytes remaining.
+  void writeTo(ByteBuffer bb) {
+    getFramedBuffer().writeTo(bb);
+  }
+
   int capacity() {
     return ((FramedBuffer)out).capacity();
   }
@@ -89,6 +100,9 @@ void setSize(int size) {
       buf[2] = (byte)((size >>>  8) & 0xFF);
       buf[3] = (byte)((size >>>  0) & 0xFF);
     }
+    void writeTo(ByteBuffer bb) {
+      bb.put(buf, 0, count);
+    }
     int capacity() {
       return buf.length - FRAMING_BYTES;
     }
@@ -18,12 +18,18 @@
 package org.apache.hadoop.ipc;
 
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.ipc.metrics.RetryCacheMetrics;
+import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightCache;
 import org.apache.hadoop.util.LightWeightGSet;
 import org.apache.hadoop.util.LightWeightGSet.LinkedElement;
@@ -40,6 +46,10 @@
  * On receiving retried request, an entry will be found in the
  * {@link RetryCache} and the previous response is sent back to the request.
  * <p>
+ * The entries may be split by the hash of their client ID and call ID into
+ * a number of segments, each with its own lock and expiry, so that handlers
+ * adding entries to different segments don't contend on one lock.
+ * <p>
  * To look an implementation using this cache, see HDFS FSNamesystem class.
  */
 @InterfaceAudience.Private
@@ -181,12 +191,24 @@ public Object getPayload() {
     }
   }
 
-  private final LightWeightGSet<CacheEntry, CacheEntry> set;
+  /** A part of the entries of the cache, guarded by its own lock. */
+  private static final class Segment {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LightWeightCache<CacheEntry, CacheEntry> set;
+
+    Segment(int capacity, long expirationTime) {
+      set = new LightWeightCache<CacheEntry, CacheEntry>(capacity, capacity,
+          expirationTime, 0);
+    }
+  }
+
+  private final Segment[] segments;
+  /** The shift of the hash of an entry to the index of its segment. */
+  private final int segmentShift;
+  private final GSet<CacheEntry, CacheEntry> set;
   private final long expirationTime;
   private final String cacheName;
 
-  private final ReentrantLock lock = new ReentrantLock();
-
   /**
    * Constructor
    * @param cacheName name to identify the cache by
@@ -194,15 +216,52 @@ public Object getPayload() {
    * @param expirationTime time for an entry to expire in nanoseconds
    */
   public RetryCache(String cacheName, double percentage, long expirationTime) {
+    this(cacheName, percentage, expirationTime, 1);
+  }
+
+  /**
+   * Constructor
+   * @param cacheName name to identify the cache by
+   * @param percentage percentage of total java heap space used by this cache
+   * @param expirationTime time for an entry to expire in nanoseconds
+   * @param numSegments the number of segments the entries are split into,
+   *                    rounded up to a power of 2
+   */
+  public RetryCache(String cacheName, double percentage, long expirationTime,
+      int numSegments) {
+    Preconditions.checkArgument(numSegments > 0,
+        "numSegments must be positive, but is %s", numSegments);
+    numSegments = Integer.highestOneBit(numSegments - 1) << 1;
+    if (numSegments == 0) {
+      numSegments = 1;
+    }
     int capacity = LightWeightGSet.computeCapacity(percentage, cacheName);
     capacity = Math.max(capacity, MAX_CAPACITY);
-    this.set = new LightWeightCache<CacheEntry, CacheEntry>(capacity, capacity,
-        expirationTime, 0);
+    // the segments share the capacity of the cache
+    int segmentCapacity = Math.max(capacity / numSegments, MAX_CAPACITY);
+    this.segments = new Segment[numSegments];
+    for (int i = 0; i < numSegments; i++) {
+      segments[i] = new Segment(segmentCapacity, expirationTime);
+    }
+    // the sets of the segments index the entries by the low bits of their
+    // hash, up to the bits of the capacity, so the segment is chosen by the
+    // bits above them. Like with a single set, the entries of consecutive
+    // calls of a client are then in nearby slots of the same segment.
+    this.segmentShift = Math.min(
+        Integer.SIZE - Integer.numberOfLeadingZeros(segmentCapacity - 1),
+        Integer.SIZE - Integer.numberOfTrailingZeros(numSegments));
+    this.set = numSegments == 1 ? segments[0].set : new SegmentedSet();
     this.expirationTime = expirationTime;
     this.cacheName = cacheName;
     this.retryCacheMetrics =  RetryCacheMetrics.create(this);
   }
 
+  /** @return the segment of the entry. */
+  private Segment getSegment(CacheEntry entry) {
+    return segments[(entry.hashCode() >>> segmentShift)
+        & (segments.length - 1)];
+  }
+
   private static boolean skipRetryCache(byte[] clientId, int callId) {
     // Do not track non RPC invocation or RPC requests with
     // invalid callId or clientId in retry cache
@@ -210,12 +269,17 @@ private static boolean skipRetryCache(byte[] clientId, int callId) {
         || Arrays.equals(clientId, RpcConstants.DUMMY_CLIENT_ID);
   }
 
+  /** Lock all the segments, so no entry can be added or looked up. */
   public void lock() {
-    this.lock.lock();
+    for (Segment segment : segments) {
+      segment.lock.lock();
+    }
   }
 
   public void unlock() {
-    this.lock.unlock();
+    for (int i = segments.length - 1; i >= 0; i--) {
+      segments[i].lock.unlock();
+    }
   }
 
   private void incrCacheClearedCounter() {
@@ -223,10 +287,15 @@ private void incrCacheClearedCounter() {
   }
 
   @VisibleForTesting
-  public LightWeightGSet<CacheEntry, CacheEntry> getCacheSet() {
+  public GSet<CacheEntry, CacheEntry> getCacheSet() {
     return set;
   }
 
+  @VisibleForTesting
+  int getNumSegments() {
+    return segments.length;
+  }
+
   @VisibleForTesting
   public RetryCacheMetrics getMetricsForTests() {
     return retryCacheMetrics;
@@ -258,9 +327,10 @@ public String getCacheName() {
    */
   private CacheEntry waitForCompletion(CacheEntry newEntry) {
     CacheEntry mapEntry = null;
-    lock.lock();
+    final Segment segment = getSegment(newEntry);
+    segment.lock.lock();
     try {
-      mapEntry = set.get(newEntry);
+      mapEntry = segment.set.get(newEntry);
       // If an entry in the cache does not exist, add a new one
       if (mapEntry == null) {
         if (LOG.isTraceEnabled()) {
@@ -268,14 +338,14 @@ private CacheEntry waitForCompletion(CacheEntry newEntry) {
               + newEntry.clientIdMsb + newEntry.clientIdLsb + " callId "
               + newEntry.callId + " to retryCache");
         }
-        set.put(newEntry);
+        segment.set.put(newEntry);
         retryCacheMetrics.incrCacheUpdated();
         return newEntry;
       } else {
         retryCacheMetrics.incrCacheHit();
       }
     } finally {
-      lock.unlock();
+      segment.lock.unlock();
     }
     // Entry already exists in cache. Wait for completion and return its state
     Preconditions.checkNotNull(mapEntry,
@@ -309,12 +379,7 @@ private CacheEntry waitForCompletion(CacheEntry newEntry) {
   public void addCacheEntry(byte[] clientId, int callId) {
     CacheEntry newEntry = new CacheEntry(clientId, callId, System.nanoTime()
         + expirationTime, true);
-    lock.lock();
-    try {
-      set.put(newEntry);
-    } finally {
-      lock.unlock();
-    }
+    put(newEntry);
     retryCacheMetrics.incrCacheUpdated();
   }
   
@@ -323,13 +388,18 @@ public void addCacheEntryWithPayload(byte[] clientId, int callId,
     // since the entry is loaded from editlog, we can assume it succeeded.    
     CacheEntry newEntry = new CacheEntryWithPayload(clientId, callId, payload,
         System.nanoTime() + expirationTime, true);
-    lock.lock();
+    put(newEntry);
+    retryCacheMetrics.incrCacheUpdated();
+  }
+
+  private void put(CacheEntry newEntry) {
+    final Segment segment = getSegment(newEntry);
+    segment.lock.lock();
     try {
-      set.put(newEntry);
+      segment.set.put(newEntry);
     } finally {
-      lock.unlock();
+      segment.lock.unlock();
     }
-    retryCacheMetrics.incrCacheUpdated();
   }
 
   private static CacheEntry newEntry(long expirationTime,
@@ -397,8 +467,71 @@ public static void setState(CacheEntryWithPayload e, boolean success,
 
   public static void clear(RetryCache cache) {
     if (cache != null) {
-      cache.set.clear();
+      for (Segment segment : cache.segments) {
+        segment.lock.lock();
+        try {
+          segment.set.clear();
+        } finally {
+          segment.lock.unlock();
+        }
+      }
       cache.incrCacheClearedCounter();
     }
   }
+
+  /**
+   * A view of the entries of all the segments. Like the set of a cache with
+   * one segment, it is not thread safe.
+   */
+  private final class SegmentedSet implements GSet<CacheEntry, CacheEntry> {
+    @Override
+    public int size() {
+      int size = 0;
+      for (Segment segment : segments) {
+        size += segment.set.size();
+      }
+      return size;
+    }
+
+    @Override
+    public boolean contains(CacheEntry key) {
+      return getSegment(key).set.contains(key);
+    }
+
+    @Override
+    public CacheEntry get(CacheEntry key) {
+      return getSegment(key).set.get(key);
+    }
+
+    @Override
+    public CacheEntry put(CacheEntry element) {
+      return getSegment(element).set.put(element);
+    }
+
+    @Override
+    public CacheEntry remove(CacheEntry key) {
+      return getSegment(key).set.remove(key);
+    }
+
+    @Override
+    public void clear() {
+      for (Segment segment : segments) {
+        segment.set.clear();
+      }
+    }
+
+    @Override
+    public Collection<CacheEntry> values() {
+      List<CacheEntry> values = new ArrayList<>(size());
+      for (Segment segment : segments) {
+        values.addAll(segment.set.values());
+      }
+      return values;
+    }
+
+    @Override
+    public Iterator<CacheEntry> iterator() {
+      return Collections.unmodifiableCollection(values()).iterator();
+    }
+  }
 }
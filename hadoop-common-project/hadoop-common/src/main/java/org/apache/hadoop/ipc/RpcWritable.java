@@ -64,6 +64,21 @@ public final void write(DataOutput out) throws IOException {
   abstract void writeTo(ResponseBuffer out) throws IOException;
   abstract <T> T readFrom(ByteBuffer bb) throws IOException;
 
+  // read from a heap copy of a direct buffer, for the writables that are
+  // only read from arrays.
+  static <T> T readFromCopy(RpcWritable writable, ByteBuffer bb)
+      throws IOException {
+    ByteBuffer copy = ByteBuffer.allocate(bb.remaining());
+    copy.put(bb.duplicate());
+    copy.flip();
+    try {
+      return writable.readFrom(copy);
+    } finally {
+      // advance over the bytes read.
+      bb.position(bb.position() + copy.position());
+    }
+  }
+
   // adapter for Writables.
   static class WritableWrapper extends RpcWritable {
     private final Writable writable;
@@ -80,6 +95,9 @@ public void writeTo(ResponseBuffer out) throws IOException {
     @SuppressWarnings("unchecked")
     @Override
     <T> T readFrom(ByteBuffer bb) throws IOException {
+      if (!bb.hasArray()) {
+        return readFromCopy(this, bb);
+      }
       // create a stream that may consume up to the entire ByteBuffer.
       DataInputStream in = new DataInputStream(new ByteArrayInputStream(
           bb.array(), bb.position() + bb.arrayOffset(), bb.remaining()));
@@ -119,9 +137,12 @@ <T> T readFrom(ByteBuffer bb) throws IOException {
       // using the parser with a byte[]-backed coded input stream is the
       // most efficient way to deserialize a protobuf.  it has a direct
       // path to the PB ctor that doesn't create multi-layered streams
-      // that internally buffer.
-      CodedInputStream cis = CodedInputStream.newInstance(
-          bb.array(), bb.position() + bb.arrayOffset(), bb.remaining());
+      // that internally buffer.  a direct buffer is decoded in place,
+      // without copying it to the heap.
+      CodedInputStream cis = bb.hasArray()
+          ? CodedInputStream.newInstance(bb.array(),
+              bb.position() + bb.arrayOffset(), bb.remaining())
+          : CodedInputStream.newInstance(bb.duplicate());
       try {
         cis.pushLimit(cis.readRawVarint32());
         message = message.getParserForType().parseFrom(cis);
@@ -158,6 +179,9 @@ void writeTo(ResponseBuffer out) throws IOException {
     @SuppressWarnings("unchecked")
     @Override
     <T> T readFrom(ByteBuffer bb) throws IOException {
+      if (!bb.hasArray()) {
+        return readFromCopy(this, bb);
+      }
       // using the parser with a byte[]-backed coded input stream is the
       // most efficient way to deserialize a protobuf.  it has a direct
       // path to the PB ctor that doesn't create multi-layered streams
@@ -200,7 +224,14 @@ ByteBuffer getByteBuffer() {
     @Override
     void writeTo(ResponseBuffer out) throws IOException {
       out.ensureCapacity(bb.remaining());
-      out.write(bb.array(), bb.position() + bb.arrayOffset(), bb.remaining());
+      if (bb.hasArray()) {
+        out.write(bb.array(), bb.position() + bb.arrayOffset(),
+            bb.remaining());
+      } else {
+        byte[] bytes = new byte[bb.remaining()];
+        bb.duplicate().get(bytes);
+        out.write(bytes);
+      }
     }
 
     @SuppressWarnings("unchecked")
@@ -119,6 +119,7 @@
 import org.apache.hadoop.security.token.SecretManager;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.TokenIdentifier;
+import org.apache.hadoop.util.DirectBufferPool;
 import org.apache.hadoop.util.ExitUtil;
 import org.apache.hadoop.util.ProtoUtil;
 import org.apache.hadoop.util.StringUtils;
@@ -485,6 +486,11 @@ protected ResponseBuffer initialValue() {
   };
   private int socketSendBufferSize;
   private final int maxDataLength;
+  // if T then read requests into and write responses from pooled direct
+  // buffers, instead of allocating heap buffers for each call
+  private final boolean directBuffers;
+  private final int maxDirectBufferSize;
+  private final DirectBufferPool directBufferPool = new DirectBufferPool();
   private final boolean tcpNoDelay; // if T then disable Nagle's Algorithm
 
   volatile private boolean running = true;         // true while server runs
@@ -916,6 +922,29 @@ static boolean getClientBackoffEnable(
         CommonConfigurationKeys.IPC_BACKOFF_ENABLE_DEFAULT);
   }
 
+  /**
+   * Return boolean value configured by property
+   * 'ipc.&lt;port&gt;.direct-buffers.enable' if it is present. If the config
+   * is not present, the value of 'ipc.direct-buffers.enable' is returned.
+   * @param namespace Namespace "ipc".
+   * @param port Server's listener port.
+   * @param conf Configuration properties.
+   * @return Value returned based on configuration.
+   */
+  static boolean getDirectBuffersEnable(
+      String namespace, int port, Configuration conf) {
+    String name = namespace + "." + port + "." +
+        CommonConfigurationKeys.IPC_DIRECT_BUFFERS_ENABLE;
+    String valueWithPort = conf.get(name);
+    if (valueWithPort != null) {
+      return conf.getBoolean(name,
+          CommonConfigurationKeys.IPC_DIRECT_BUFFERS_ENABLE_DEFAULT);
+    }
+    return conf.getBoolean(namespace + "."
+            + CommonConfigurationKeys.IPC_DIRECT_BUFFERS_ENABLE,
+        CommonConfigurationKeys.IPC_DIRECT_BUFFERS_ENABLE_DEFAULT);
+  }
+
   /** A generic call queued for handling. */
   public static class Call implements Schedulable,
   PrivilegedExceptionAction<Void> {
@@ -1114,6 +1143,9 @@ private class RpcCall extends Call {
     final Connection connection;  // connection to client
     final Writable rpcRequest;    // Serialized Rpc request from client
     ByteBuffer rpcResponse;       // the response for this call
+    // the pooled buffer the request was read into, which rpcRequest may
+    // still read from until the call has run
+    private ByteBuffer requestBuffer;
 
     private ResponseParams responseParams; // the response params
     private Writable rv;                   // the byte response
@@ -1248,6 +1280,18 @@ void setResponse(ByteBuffer response) throws IOException {
       this.rpcResponse = response;
     }
 
+    void setRequestBuffer(ByteBuffer buffer) {
+      this.requestBuffer = buffer;
+    }
+
+    /** Return the pooled buffer of the request, once the call has run. */
+    void releaseRequestBuffer() {
+      if (requestBuffer != null) {
+        returnDirectBuffer(requestBuffer);
+        requestBuffer = null;
+      }
+    }
+
     @Override
     void doResponse(Throwable t, RpcStatusProto status) throws IOException {
       RpcCall call = this;
@@ -1811,19 +1855,20 @@ private boolean processResponse(LinkedList<RpcCall> responseQueue,
           //
           // Send as much data as we can in the non-blocking fashion
           //
-          int numBytes = channelWrite(channel, call.rpcResponse);
+          int numBytes = inHandler ? channelWrite(channel, call.rpcResponse)
+              : channelWrite(channel, call, responseQueue);
           if (numBytes < 0) {
             return true;
           }
           if (!call.rpcResponse.hasRemaining()) {
-            //Clear out the response buffer so it can be collected
-            call.rpcResponse = null;
-            call.connection.decRpcCount();
-            if (numElements == 1) {    // last call fully processes.
-              done = true;             // no more data for this channel.
-            } else {
-              done = false;            // more calls pending to be sent.
+            completeResponse(call);
+            // the queued responses written together with this one
+            while (!responseQueue.isEmpty() &&
+                !responseQueue.getFirst().rpcResponse.hasRemaining()) {
+              completeResponse(responseQueue.removeFirst());
             }
+            // done if there is no more data for this channel.
+            done = responseQueue.isEmpty();
             LOG.debug("{}: responding to {} Wrote {} bytes.",
                 Thread.currentThread().getName(), call, numBytes);
           } else {
@@ -1865,6 +1910,13 @@ private boolean processResponse(LinkedList<RpcCall> responseQueue,
       return done;
     }
 
+    private void completeResponse(RpcCall call) {
+      //Clear out the response buffer so it can be collected or reused
+      returnDirectBuffer(call.rpcResponse);
+      call.rpcResponse = null;
+      call.connection.decRpcCount();
+    }
+
     //
     // Enqueue a response from the application.
     //
@@ -1956,6 +2008,9 @@ public class Connection {
 
     private SocketChannel channel;
     private ByteBuffer data;
+    // the pooled buffer of the request being processed, until the call of
+    // the request takes it
+    private ByteBuffer directRequest;
     private final ByteBuffer dataLengthBuffer;
     private LinkedList<RpcCall> responseQueue;
     // number of outstanding rpcs
@@ -2456,7 +2511,10 @@ public int readAndProcess() throws IOException, InterruptedException {
           dataLength = dataLengthBuffer.getInt();
           checkDataLength(dataLength);
           // Set buffer for reading EXACTLY the RPC-packet length and no more.
-          data = ByteBuffer.allocate(dataLength);
+          data = getDirectBuffer(dataLength);
+          if (data == null) {
+            data = ByteBuffer.allocate(dataLength);
+          }
         }
         // Now read the RPC packet
         count = channelRead(channel, data);
@@ -2467,7 +2525,16 @@ public int readAndProcess() throws IOException, InterruptedException {
           ByteBuffer requestData = data;
           data = null; // null out in case processOneRpc throws.
           boolean isHeaderRead = connectionContextRead;
-          processOneRpc(requestData);
+          if (requestData.isDirect()) {
+            directRequest = requestData;
+          }
+          try {
+            processOneRpc(requestData);
+          } finally {
+            // unless the call of the request has taken the buffer
+            returnDirectBuffer(directRequest);
+            directRequest = null;
+          }
           // the last rpc-request we processed could have simply been the
           // connectionContext; if so continue to read the first RPC.
           if (!isHeaderRead) {
@@ -2842,6 +2909,12 @@ private void processRpcRequest(RpcRequestHeaderProto header,
           ProtoUtil.convert(header.getRpcKind()),
           header.getClientId().toByteArray(), span, callerContext);
 
+      if (directRequest != null && directRequest == buffer.getByteBuffer()) {
+        // the request may be decoded from the buffer by the handler
+        call.setRequestBuffer(directRequest);
+        directRequest = null;
+      }
+
       // Save the priority level assignment by the scheduler
       call.setPriorityLevel(callQueue.getPriorityLevel(call));
       call.markCallCoordinated(false);
@@ -3128,6 +3201,9 @@ public void run() {
                 call, (call.isResponseDeferred() ? ", deferred" : ""),
                 call.getDetailedMetricsName(), call.getRemoteUser(),
                 call.getProcessingDetails());
+            if (call instanceof RpcCall) {
+              ((RpcCall) call).releaseRequestBuffer();
+            }
           }
         }
       }
@@ -3236,6 +3312,11 @@ protected Server(String bindAddress, int port,
     this.maxRespSize = conf.getInt(
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_KEY,
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_DEFAULT);
+    this.directBuffers = getDirectBuffersEnable(
+        CommonConfigurationKeys.IPC_NAMESPACE, port, conf);
+    this.maxDirectBufferSize = conf.getInt(
+        CommonConfigurationKeys.IPC_SERVER_DIRECT_BUFFERS_MAX_SIZE_KEY,
+        CommonConfigurationKeys.IPC_SERVER_DIRECT_BUFFERS_MAX_SIZE_DEFAULT);
     if (numReaders != -1) {
       this.readThreads = numReaders;
     } else {
@@ -3428,20 +3509,20 @@ private void setupResponse(
 
   private void setupResponse(RpcCall call,
       RpcResponseHeaderProto header, Writable rv) throws IOException {
-    final byte[] response;
+    final ByteBuffer response;
     if (rv == null || (rv instanceof RpcWritable.ProtobufWrapper)) {
       response = setupResponseForProtobuf(header, rv);
     } else {
       response = setupResponseForWritable(header, rv);
     }
-    if (response.length > maxRespSize) {
-      LOG.warn("Large response size " + response.length + " for call "
+    if (response.remaining() > maxRespSize) {
+      LOG.warn("Large response size " + response.remaining() + " for call "
           + call.toString());
     }
-    call.setResponse(ByteBuffer.wrap(response));
+    call.setResponse(response);
   }
 
-  private byte[] setupResponseForWritable(
+  private ByteBuffer setupResponseForWritable(
       RpcResponseHeaderProto header, Writable rv) throws IOException {
     ResponseBuffer buf = responseBuffer.get().reset();
     try {
@@ -3449,7 +3530,13 @@ private byte[] setupResponseForWritable(
       if (rv != null) {
         RpcWritable.wrap(rv).writeTo(buf);
       }
-      return buf.toByteArray();
+      ByteBuffer response = getDirectBuffer(buf.framedSize());
+      if (response == null) {
+        return ByteBuffer.wrap(buf.toByteArray());
+      }
+      buf.writeTo(response);
+      response.flip();
+      return response;
     } finally {
       // Discard a large buf and reset it back to smaller size
       // to free up heap.
@@ -3462,7 +3549,7 @@ private byte[] setupResponseForWritable(
 
   // writing to a pre-allocated array is the most efficient way to construct
   // a protobuf response.
-  private byte[] setupResponseForProtobuf(
+  private ByteBuffer setupResponseForProtobuf(
       RpcResponseHeaderProto header, Writable rv) throws IOException {
     Message payload = (rv != null)
         ? ((RpcWritable.ProtobufWrapper)rv).getMessage() : null;
@@ -3470,6 +3557,27 @@ private byte[] setupResponseForProtobuf(
     if (payload != null) {
       length += getDelimitedLength(payload);
     }
+    ByteBuffer response = getDirectBuffer(length + 4);
+    if (response != null) {
+      try {
+        // the stream encodes directly into the native memory of the buffer
+        response.putInt(length);
+        CodedOutputStream cos = CodedOutputStream.newInstance(response);
+        cos.writeUInt32NoTag(header.getSerializedSize());
+        header.writeTo(cos);
+        if (payload != null) {
+          cos.writeUInt32NoTag(payload.getSerializedSize());
+          payload.writeTo(cos);
+        }
+        cos.flush();
+        cos.checkNoSpaceLeft();
+        response.rewind();
+        return response;
+      } catch (IOException | RuntimeException e) {
+        returnDirectBuffer(response);
+        throw e;
+      }
+    }
     byte[] buf = new byte[length + 4];
     CodedOutputStream cos = CodedOutputStream.newInstance(buf);
     // the stream only supports little endian ints
@@ -3483,7 +3591,7 @@ private byte[] setupResponseForProtobuf(
       cos.writeUInt32NoTag(payload.getSerializedSize());
       payload.writeTo(cos);
     }
-    return buf;
+    return ByteBuffer.wrap(buf);
   }
 
   private static int getDelimitedLength(Message message) {
@@ -3520,7 +3628,14 @@ private void setupResponseOldVersionFatal(ByteArrayOutputStream response,
 
   private void wrapWithSasl(RpcCall call) throws IOException {
     if (call.connection.saslServer != null) {
-      byte[] token = call.rpcResponse.array();
+      byte[] token;
+      if (call.rpcResponse.hasArray()) {
+        token = call.rpcResponse.array();
+      } else {
+        token = new byte[call.rpcResponse.remaining()];
+        call.rpcResponse.get(token);
+        returnDirectBuffer(call.rpcResponse);
+      }
       // synchronization may be needed since there can be multiple Handler
       // threads using saslServer to wrap responses.
       synchronized (call.connection.saslServer) {
@@ -3779,6 +3894,12 @@ public int getNumReaders() {
    * be smaller.
    */
   private static int NIO_BUFFER_LIMIT = 8*1024; //should not be more than 64KB.
+
+  /** The smallest pooled direct buffer. */
+  private static final int MIN_DIRECT_BUFFER_SIZE = 512;
+
+  /** The maximum number of responses written by one gathering write. */
+  private static final int MAX_GATHERED_RESPONSES = 16;
   
   /**
    * This is a wrapper around {@link WritableByteChannel#write(ByteBuffer)}.
@@ -3793,7 +3914,8 @@ public int getNumReaders() {
   private int channelWrite(WritableByteChannel channel, 
                            ByteBuffer buffer) throws IOException {
     
-    int count =  (buffer.remaining() <= NIO_BUFFER_LIMIT) ?
+    // the jdk doesn't copy direct buffers
+    int count =  (buffer.isDirect() || buffer.remaining() <= NIO_BUFFER_LIMIT) ?
                  channel.write(buffer) : channelIO(null, channel, buffer);
     if (count > 0) {
       rpcMetrics.incrSentBytes(count);
@@ -3813,7 +3935,7 @@ private int channelWrite(WritableByteChannel channel,
   private int channelRead(ReadableByteChannel channel, 
                           ByteBuffer buffer) throws IOException {
     
-    int count = (buffer.remaining() <= NIO_BUFFER_LIMIT) ?
+    int count = (buffer.isDirect() || buffer.remaining() <= NIO_BUFFER_LIMIT) ?
                 channel.read(buffer) : channelIO(channel, null, buffer);
     if (count > 0) {
       rpcMetrics.incrReceivedBytes(count);
@@ -3821,6 +3943,74 @@ private int channelRead(ReadableByteChannel channel,
     return count;
   }
   
+  /**
+   * Write the response of a call together with the direct buffer responses
+   * queued after it with a single gathering write, so a busy connection
+   * needs fewer system calls. Heap buffer responses are written on their
+   * own, by {@link #channelWrite(WritableByteChannel, ByteBuffer)}.
+   *
+   * @param channel the channel of the connection of the call
+   * @param call the call removed from the head of the response queue
+   * @param responseQueue the calls queued after the call
+   * @return the number of bytes written
+   */
+  private int channelWrite(SocketChannel channel, RpcCall call,
+      LinkedList<RpcCall> responseQueue) throws IOException {
+    if (!call.rpcResponse.isDirect() || responseQueue.isEmpty() ||
+        !responseQueue.getFirst().rpcResponse.isDirect()) {
+      return channelWrite(channel, call.rpcResponse);
+    }
+    List<ByteBuffer> buffers = new ArrayList<>(MAX_GATHERED_RESPONSES);
+    buffers.add(call.rpcResponse);
+    for (RpcCall next : responseQueue) {
+      if (buffers.size() == MAX_GATHERED_RESPONSES ||
+          !next.rpcResponse.isDirect()) {
+        break;
+      }
+      buffers.add(next.rpcResponse);
+    }
+    // at most MAX_GATHERED_RESPONSES buffers of maxDirectBufferSize bytes
+    int count = (int) channel.write(buffers.toArray(new ByteBuffer[0]));
+    if (count > 0) {
+      rpcMetrics.incrSentBytes(count);
+    }
+    return count;
+  }
+
+  /**
+   * Get a pooled direct buffer for a request or response.
+   * @param length the length of the request or response
+   * @return a direct buffer with length bytes remaining, or null if the
+   *         server doesn't use direct buffers or the length is too large.
+   */
+  private ByteBuffer getDirectBuffer(int length) {
+    if (!directBuffers || length > maxDirectBufferSize) {
+      return null;
+    }
+    // round the size up to a power of two, so the buffers are reused for
+    // calls of similar sizes
+    int size = length <= MIN_DIRECT_BUFFER_SIZE ? MIN_DIRECT_BUFFER_SIZE
+        : Integer.highestOneBit(length - 1) << 1;
+    ByteBuffer buffer = directBufferPool.getBuffer(size);
+    buffer.limit(length);
+    return buffer;
+  }
+
+  /**
+   * Return a buffer from {@link #getDirectBuffer(int)} to the pool. Heap
+   * buffers and null are ignored.
+   */
+  private void returnDirectBuffer(ByteBuffer buffer) {
+    if (buffer != null && buffer.isDirect()) {
+      directBufferPool.returnBuffer(buffer);
+    }
+  }
+
+  @VisibleForTesting
+  boolean isDirectBuffersEnabled() {
+    return directBuffers;
+  }
+
   /**
    * Helper for {@link #channelRead(ReadableByteChannel, ByteBuffer)}
    * and {@link #channelWrite(WritableByteChannel, ByteBuffer)}. Only
@@ -0,0 +1,247 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Preconditions;
+
+/**
+ * A {@link CallCostStore} which keeps the decayed costs in a count-min sketch
+ * of fixed size, and the raw costs only for a small table of the heaviest
+ * callers. Its memory, the time to look up or add a cost, and the time of a
+ * decay don't depend on the number of callers, which suits servers with a
+ * large number of distinct callers. This can be used by specifying the
+ * {@link org.apache.hadoop.fs.CommonConfigurationKeys#IPC_COST_STORE_KEY}
+ * configuration key.
+ * <p>
+ * The sketch has {@link #DEPTH_KEY} rows of {@link #WIDTH_KEY} counters, and
+ * the cost of an identity is added to one counter of each row. The decayed
+ * cost of an identity is the minimum of its counters, which never
+ * underestimates it, and overestimates it by less than
+ * e / width of the total cost with a probability of 1 - e^-depth. A decay
+ * multiplies each counter by the decay factor.
+ * <p>
+ * Only the identities in the heavy hitter table, which holds up to
+ * {@link #HEAVY_HITTERS_KEY} identities with the largest decayed costs, are
+ * visited by {@link #forEach(CostVisitor)}, so only they appear in the
+ * scheduling decision and call volume summaries and the top callers metrics.
+ * Their raw costs count from the time they entered the table, starting from
+ * their decayed cost at that time.
+ * <p>
+ * For example, to use a sketch of 4 rows of 2048 counters, set:
+ * <pre>
+ *   ipc.8020.cost-store.impl=org.apache.hadoop.ipc.SketchCallCostStore
+ *   ipc.8020.cost-store.sketch.width=2048
+ *   ipc.8020.cost-store.sketch.depth=4
+ * </pre>
+ */
+public class SketchCallCostStore implements CallCostStore {
+
+  /** The number of counters in each row of the sketch. */
+  public static final String WIDTH_KEY = "cost-store.sketch.width";
+  public static final int WIDTH_DEFAULT = 1024;
+  /** The number of rows of the sketch. */
+  public static final String DEPTH_KEY = "cost-store.sketch.depth";
+  public static final int DEPTH_DEFAULT = 4;
+  /** The maximum number of identities in the heavy hitter table. */
+  public static final String HEAVY_HITTERS_KEY =
+      "cost-store.sketch.heavy-hitters";
+  public static final int HEAVY_HITTERS_DEFAULT = 64;
+
+  private int width;
+  private int depth;
+  private int mask;
+  private double decayFactor;
+  /** The counters of the sketch, row after row. */
+  private AtomicLongArray counters;
+
+  private int maxHeavyHitters;
+  /** The raw costs of the heaviest identities. */
+  private final ConcurrentHashMap<Object, AtomicLong> heavyHitters =
+      new ConcurrentHashMap<>();
+  /**
+   * The decayed cost an identity must exceed to enter the full heavy hitter
+   * table, i.e. the smallest decayed cost in the table, or 0 if the table
+   * is not full.
+   */
+  private volatile long admissionCost;
+
+  @Override
+  public void init(String namespace, Configuration conf, double factor) {
+    width = conf.getInt(namespace + "." + WIDTH_KEY, WIDTH_DEFAULT);
+    depth = conf.getInt(namespace + "." + DEPTH_KEY, DEPTH_DEFAULT);
+    maxHeavyHitters = conf.getInt(namespace + "." + HEAVY_HITTERS_KEY,
+        HEAVY_HITTERS_DEFAULT);
+    Preconditions.checkArgument(width > 0 && (width & (width - 1)) == 0,
+        "%s must be a power of 2, but is %s", WIDTH_KEY, width);
+    Preconditions.checkArgument(depth > 0,
+        "%s must be positive, but is %s", DEPTH_KEY, depth);
+    Preconditions.checkArgument(maxHeavyHitters > 0,
+        "%s must be positive, but is %s", HEAVY_HITTERS_KEY, maxHeavyHitters);
+    mask = width - 1;
+    decayFactor = factor;
+    counters = new AtomicLongArray(width * depth);
+  }
+
+  /** @return a 64-bit hash of the identity, from which the rows index. */
+  private static long hash(Object identity) {
+    // the finalizer of SplitMix64 spreads the bits of the hash code
+    long z = identity.hashCode() * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /** @return the index of the counter of the identity in the row. */
+  private int index(long hash, int row) {
+    // derive the hash of each row from two halves of the hash
+    int h = (int) hash + row * ((int) (hash >>> 32) | 1);
+    return row * width + (h & mask);
+  }
+
+  @Override
+  public void addCost(Object identity, long cost) {
+    final long hash = hash(identity);
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate,
+          counters.addAndGet(index(hash, row), cost));
+    }
+
+    AtomicLong rawCost = heavyHitters.get(identity);
+    if (rawCost != null) {
+      rawCost.getAndAdd(cost);
+    } else if (estimate > admissionCost ||
+        heavyHitters.size() < maxHeavyHitters) {
+      admit(identity, estimate);
+    }
+  }
+
+  /**
+   * Add an identity to the heavy hitter table, evicting the identity with the
+   * smallest decayed cost if the table is full and its cost is smaller.
+   */
+  private synchronized void admit(Object identity, long decayedCost) {
+    if (heavyHitters.containsKey(identity)) {
+      return;
+    }
+    if (heavyHitters.size() >= maxHeavyHitters) {
+      Object lightest = null;
+      long lightestCost = Long.MAX_VALUE;
+      for (Object id : heavyHitters.keySet()) {
+        long cost = getDecayedCost(id);
+        if (cost < lightestCost) {
+          lightest = id;
+          lightestCost = cost;
+        }
+      }
+      if (lightestCost >= decayedCost) {
+        admissionCost = lightestCost;
+        return;
+      }
+      heavyHitters.remove(lightest);
+    }
+    heavyHitters.put(identity, new AtomicLong(decayedCost));
+    updateAdmissionCost();
+  }
+
+  private synchronized void updateAdmissionCost() {
+    long cost = 0;
+    if (heavyHitters.size() >= maxHeavyHitters) {
+      cost = Long.MAX_VALUE;
+      for (Object id : heavyHitters.keySet()) {
+        cost = Math.min(cost, getDecayedCost(id));
+      }
+    }
+    admissionCost = cost;
+  }
+
+  @Override
+  public long getDecayedCost(Object identity) {
+    final long hash = hash(identity);
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, counters.get(index(hash, row)));
+    }
+    return estimate;
+  }
+
+  @Override
+  public void decay() {
+    for (int i = 0; i < counters.length(); i++) {
+      long value;
+      do {
+        value = counters.get(i);
+      } while (value != 0 &&
+          !counters.compareAndSet(i, value, (long) (value * decayFactor)));
+    }
+    synchronized (this) {
+      Iterator<Object> it = heavyHitters.keySet().iterator();
+      while (it.hasNext()) {
+        if (getDecayedCost(it.next()) == 0) {
+          it.remove();
+        }
+      }
+      updateAdmissionCost();
+    }
+  }
+
+  @Override
+  public void forEach(CostVisitor visitor) {
+    for (Map.Entry<Object, AtomicLong> entry : heavyHitters.entrySet()) {
+      visitor.visit(entry.getKey(), getDecayedCost(entry.getKey()),
+          entry.getValue().get());
+    }
+  }
+
+  @Override
+  public boolean isExact() {
+    return false;
+  }
+
+  /**
+   * Estimate the number of identities from the number of zero counters in
+   * the first row of the sketch, by linear counting.
+   */
+  @Override
+  public int getIdentityCount() {
+    int zeros = 0;
+    for (int i = 0; i < width; i++) {
+      if (counters.get(i) == 0) {
+        zeros++;
+      }
+    }
+    // with no zero counters, the row only tells there are many identities
+    double estimate = zeros == 0 ? width * Math.log(width)
+        : -width * Math.log((double) zeros / width);
+    return Math.max(heavyHitters.size(), (int) Math.round(estimate));
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(width=" + width + ", depth=" +
+        depth + ", heavyHitters=" + maxHeavyHitters + ")";
+  }
+}
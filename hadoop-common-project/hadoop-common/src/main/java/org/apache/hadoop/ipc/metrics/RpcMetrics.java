@@ -33,6 +33,7 @@
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.util.HistogramQuantiles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,6 +69,9 @@ public class RpcMetrics {
         CommonConfigurationKeys.RPC_METRICS_QUANTILE_ENABLE,
         CommonConfigurationKeys.RPC_METRICS_QUANTILE_ENABLE_DEFAULT);
     metricsTimeUnit = getMetricsTimeUnit(conf);
+    boolean histogram = conf.getBoolean(
+        CommonConfigurationKeys.RPC_METRICS_QUANTILE_HISTOGRAM_ENABLE,
+        CommonConfigurationKeys.RPC_METRICS_QUANTILE_HISTOGRAM_ENABLE_DEFAULT);
     if (rpcQuantileEnable) {
       rpcQueueTimeQuantiles =
           new MutableQuantiles[intervals.length];
@@ -94,11 +98,22 @@ public class RpcMetrics {
             "deferredRpcProcessingTime" + interval + "s",
             "deferred rpc processing time in " + metricsTimeUnit, "ops",
             "latency", interval);
+        if (histogram) {
+          useHistogram(rpcQueueTimeQuantiles[i]);
+          useHistogram(rpcLockWaitTimeQuantiles[i]);
+          useHistogram(rpcProcessingTimeQuantiles[i]);
+          useHistogram(deferredRpcProcessingTimeQuantiles[i]);
+        }
       }
     }
     LOG.debug("Initialized " + registry);
   }
 
+  private static void useHistogram(MutableQuantiles quantiles) {
+    quantiles.setEstimator(
+        new HistogramQuantiles(MutableQuantiles.quantiles));
+  }
+
   public String name() { return name; }
 
   public static RpcMetrics create(Server server, Configuration conf) {
@@ -31,6 +31,7 @@
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.metrics2.MetricsInfo;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.util.HistogramQuantiles;
 import org.apache.hadoop.metrics2.util.Quantile;
 import org.apache.hadoop.metrics2.util.QuantileEstimator;
 import org.apache.hadoop.metrics2.util.SampleQuantiles;
@@ -56,7 +57,7 @@ public class MutableQuantiles extends MutableMetric {
   private final MetricsInfo[] quantileInfos;
   private final int interval;
 
-  private QuantileEstimator estimator;
+  private volatile QuantileEstimator estimator;
   private long previousCount = 0;
   private ScheduledFuture<?> scheduledTask = null;
 
@@ -129,7 +130,14 @@ public synchronized void snapshot(MetricsRecordBuilder builder, boolean all) {
     }
   }
 
-  public synchronized void add(long value) {
+  /**
+   * Add a value to the estimator. This takes no lock of its own, so values
+   * are added concurrently if the estimator allows it, like
+   * {@link HistogramQuantiles} does.
+   *
+   * @param value the value.
+   */
+  public void add(long value) {
     estimator.insert(value);
   }
 
@@ -173,9 +181,14 @@ public RolloverSample(MutableQuantiles parent) {
     @Override
     public void run() {
       synchronized (parent) {
-        parent.previousCount = parent.estimator.getCount();
-        parent.previousSnapshot = parent.estimator.snapshot();
-        parent.estimator.clear();
+        QuantileEstimator estimator = parent.estimator;
+        // estimators like SampleQuantiles synchronize on themselves, so this
+        // keeps values from being added between the snapshot and the clear
+        synchronized (estimator) {
+          parent.previousCount = estimator.getCount();
+          parent.previousSnapshot = estimator.snapshot();
+          estimator.clear();
+        }
       }
       parent.setChanged();
     }
@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.metrics2.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.thirdparty.com.google.common.base.Joiner;
+
+/**
+ * A {@link QuantileEstimator} which counts the values in a log-linear
+ * histogram, like HdrHistogram does. Unlike {@link SampleQuantiles}, inserting
+ * a value takes no lock: it increments one counter of a stripe of the
+ * histogram, chosen by the inserting thread, so many threads can insert
+ * concurrently. The stripes are merged when a snapshot is taken.
+ *
+ * Values below 2^{@value #SUB_BUCKET_BITS} are counted exactly. Larger values
+ * are counted in buckets which split each power of two into
+ * 2^{@value #SUB_BUCKET_BITS} equal ranges, and are reported as the middle of
+ * their range, so the error of a quantile is below 1% of its value. Unlike
+ * the error of {@link SampleQuantiles}, it is relative to the value and not
+ * to the rank.
+ * Negative values are counted as 0, and values of 2^{@value #MAX_VALUE_BITS}
+ * or more, e.g. 68.7 seconds in nanoseconds, are counted in the last bucket.
+ *
+ * A stripe has 1985 counters, i.e. about 16 KB, and there are at most
+ * {@value #MAX_STRIPES} stripes, so an estimator takes at most 64 KB. A
+ * stripe is only allocated once a thread inserts in it, so an estimator
+ * updated by a single thread takes 16 KB.
+ *
+ * A value inserted while a snapshot or a clear is in progress may be counted
+ * in the current or in the next interval.
+ */
+@InterfaceAudience.Private
+public class HistogramQuantiles implements QuantileEstimator {
+
+  /** The bits of a value below its highest bit which select its bucket. */
+  static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /** The values from 2^MAX_VALUE_BITS on share the last bucket. */
+  static final int MAX_VALUE_BITS = 36;
+  /** One bucket per value below SUB_BUCKETS, then SUB_BUCKETS per power. */
+  static final int BUCKETS =
+      SUB_BUCKETS + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKETS;
+  /** The maximum number of stripes. */
+  static final int MAX_STRIPES = 4;
+  /** The index of the count of the values in a stripe. */
+  private static final int COUNT = BUCKETS;
+
+  private final Quantile[] quantiles;
+  /**
+   * The stripes of the histogram, allocated when a thread first inserts in
+   * them. Each has a counter per bucket, followed by the count of its values.
+   */
+  private final AtomicReferenceArray<AtomicLongArray> stripes;
+  private final int stripeShift;
+
+  public HistogramQuantiles(Quantile[] quantiles) {
+    this(quantiles, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param quantiles the quantiles to report.
+   * @param numStripes the number of stripes, which is rounded up to a power
+   * of 2 and capped at {@value #MAX_STRIPES}. It bounds the number of threads
+   * which insert without contention.
+   */
+  public HistogramQuantiles(Quantile[] quantiles, int numStripes) {
+    this.quantiles = quantiles;
+    int bits = Integer.SIZE - Integer.numberOfLeadingZeros(
+        Math.min(Math.max(1, numStripes), MAX_STRIPES) - 1);
+    this.stripes = new AtomicReferenceArray<>(1 << bits);
+    this.stripeShift = Integer.SIZE - bits;
+  }
+
+  /** @return the index of the bucket of the value. */
+  @VisibleForTesting
+  static int getBucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return value < 0 ? 0 : (int) value;
+    } else if (value >>> MAX_VALUE_BITS != 0) {
+      return BUCKETS - 1;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+  }
+
+  /** @return the value reported for the values in the bucket. */
+  @VisibleForTesting
+  static long getValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + ((1L << shift) >>> 1);
+  }
+
+  private AtomicLongArray getStripe() {
+    int index = stripes.length() == 1 ? 0 :
+        ((int) Thread.currentThread().getId() * 0x9E3779B9) >>> stripeShift;
+    AtomicLongArray stripe = stripes.get(index);
+    if (stripe == null) {
+      stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS + 1));
+      stripe = stripes.get(index);
+    }
+    return stripe;
+  }
+
+  @Override
+  public void insert(long value) {
+    AtomicLongArray stripe = getStripe();
+    stripe.incrementAndGet(getBucket(value));
+    stripe.incrementAndGet(COUNT);
+  }
+
+  /**
+   * Get a snapshot of the current values of all the tracked quantiles.
+   *
+   * @return snapshot of the tracked quantiles. If no items are added
+   * to the estimator, returns null.
+   */
+  @Override
+  public Map<Quantile, Long> snapshot() {
+    long[] counts = new long[BUCKETS];
+    long total = 0;
+    for (int s = 0; s < stripes.length(); s++) {
+      AtomicLongArray stripe = stripes.get(s);
+      if (stripe != null) {
+        for (int b = 0; b < BUCKETS; b++) {
+          long count = stripe.get(b);
+          counts[b] += count;
+          total += count;
+        }
+      }
+    }
+    if (total == 0) {
+      return null;
+    }
+
+    Map<Quantile, Long> values = new TreeMap<Quantile, Long>();
+    for (Quantile q : quantiles) {
+      // the value of the given rank, counting from 1
+      long rank = Math.max(1, (long) Math.ceil(q.quantile * total));
+      long seen = 0;
+      int b = 0;
+      for (; b < BUCKETS - 1; b++) {
+        seen += counts[b];
+        if (seen >= rank) {
+          break;
+        }
+      }
+      values.put(q, getValue(b));
+    }
+    return values;
+  }
+
+  @Override
+  public long getCount() {
+    long count = 0;
+    for (int s = 0; s < stripes.length(); s++) {
+      AtomicLongArray stripe = stripes.get(s);
+      if (stripe != null) {
+        count += stripe.get(COUNT);
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void clear() {
+    for (int s = 0; s < stripes.length(); s++) {
+      AtomicLongArray stripe = stripes.get(s);
+      if (stripe != null) {
+        for (int b = 0; b <= BUCKETS; b++) {
+          stripe.set(b, 0);
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    Map<Quantile, Long> data = snapshot();
+    if (data == null) {
+      return "[no samples]";
+    } else {
+      return Joiner.on("\n").withKeyValueSeparator(": ").join(data);
+    }
+  }
+}
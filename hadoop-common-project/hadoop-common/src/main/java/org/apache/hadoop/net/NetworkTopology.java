@@ -88,6 +88,7 @@ protected NetworkTopology init(InnerNode.Factory factory) {
       // again if another factory is specified.
       this.factory = factory;
       this.clusterMap = factory.newInnerNode(NodeBase.ROOT);
+      invalidateSnapshot();
     }
     return this;
   }
@@ -118,6 +119,81 @@ protected NetworkTopology init(InnerNode.Factory factory) {
   /** the lock used to manage access */
   protected ReadWriteLock netlock = new ReentrantReadWriteLock(true);
 
+  /**
+   * The immutable view of the cluster tree used by the readers without the
+   * {@link #netlock}. It is dropped whenever the tree changes and rebuilt by
+   * the next reader which needs it; null if it has not been built since.
+   */
+  private volatile Snapshot snapshot;
+
+  /**
+   * An immutable copy of the leaves of the cluster tree in the order of
+   * {@link InnerNode#getLeaf(int, Node)}, where the leaves under each node
+   * are a contiguous range, and of the nodes of the tree by path.
+   */
+  private static final class Snapshot {
+    /** A node of the tree and the range of its leaves. */
+    private static final class Entry {
+      private final Node node;
+      private final int start;
+      private final int end;
+
+      Entry(Node node, int start, int end) {
+        this.node = node;
+        this.start = start;
+        this.end = end;
+      }
+
+      int getNumOfLeaves() {
+        return end - start;
+      }
+    }
+
+    private final Node[] leaves;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    Snapshot(InnerNode root) {
+      leaves = new Node[root.getNumOfLeaves()];
+      int end = addEntries(root, NodeBase.ROOT, 0);
+      Preconditions.checkState(end == leaves.length,
+          "Found %s leaves in a tree of %s leaves", end, leaves.length);
+    }
+
+    /** @return the end of the leaves of the node. */
+    private int addEntries(Node node, String path, int start) {
+      int end = start;
+      if (node instanceof InnerNode) {
+        for (Node child : ((InnerNode) node).getChildren()) {
+          end = addEntries(child,
+              path + NodeBase.PATH_SEPARATOR_STR + child.getName(), end);
+        }
+      } else {
+        leaves[end++] = node;
+      }
+      entries.put(path, new Entry(node, start, end));
+      return end;
+    }
+
+    /** @return the node at the given location, or null. */
+    Entry get(String loc) {
+      // the paths of the nodes are normalized already
+      Entry entry = entries.get(loc);
+      return entry != null ? entry : entries.get(NodeBase.normalize(loc));
+    }
+
+    /**
+     * @return the leaf at the given index of the leaves of the scope that
+     *         are not under the excluded scope, or null.
+     */
+    Node getLeaf(Entry scope, Entry excludedScope, int index) {
+      int i = scope.start + index;
+      if (excludedScope != null && i >= excludedScope.start) {
+        i += excludedScope.getNumOfLeaves();
+      }
+      return index < 0 || i >= scope.end ? null : leaves[i];
+    }
+  }
+
   // keeping the constructor because other components like MR still uses this.
   public NetworkTopology() {
     this.factory = InnerNodeImpl.FACTORY;
@@ -152,7 +228,10 @@ public void add(Node node) {
                                            + node.toString() 
                                            + " at an illegal network location");
       }
-      if (clusterMap.add(node)) {
+      boolean added = clusterMap.add(node);
+      // a node replacing another one of the same name changes the tree too
+      invalidateSnapshot();
+      if (added) {
         LOG.info("Adding a new node: "+NodeBase.getPath(node));
         if (rack == null) {
           incrementRacks();
@@ -175,6 +254,34 @@ protected void incrementRacks() {
     }
   }
 
+  /**
+   * Drop the snapshot of the cluster tree read without the lock. To be
+   * called with the write lock held, right after the tree has changed.
+   */
+  protected void invalidateSnapshot() {
+    snapshot = null;
+  }
+
+  /** @return the snapshot of the cluster tree, built if there is none. */
+  private Snapshot getSnapshot() {
+    Snapshot s = snapshot;
+    if (s == null) {
+      netlock.readLock().lock();
+      try {
+        // the writers drop the snapshot with the write lock held, so one
+        // built with the read lock held is current when it is published
+        s = snapshot;
+        if (s == null) {
+          s = new Snapshot(clusterMap);
+          snapshot = s;
+        }
+      } finally {
+        netlock.readLock().unlock();
+      }
+    }
+    return s;
+  }
+
   /**
    * Return a reference to the node given its string representation.
    * Default implementation delegates to {@link #getNode(String)}.
@@ -227,7 +334,9 @@ public void remove(Node node) {
     LOG.info("Removing a node: "+NodeBase.getPath(node));
     netlock.writeLock().lock();
     try {
-      if (clusterMap.remove(node)) {
+      boolean removed = clusterMap.remove(node);
+      invalidateSnapshot();
+      if (removed) {
         InnerNode rack = (InnerNode)getNode(node.getNetworkLocation());
         if (rack == null) {
           numOfRacks--;
@@ -269,6 +378,11 @@ public boolean contains(Node node) {
    * @return a reference to the node; null if the node is not in the tree
    */
   public Node getNode(String loc) {
+    Snapshot s = snapshot;
+    if (s != null) {
+      Snapshot.Entry entry = s.get(loc);
+      return entry == null ? null : entry.node;
+    }
     netlock.readLock().lock();
     try {
       loc = NodeBase.normalize(loc);
@@ -482,15 +596,10 @@ public Node chooseRandom(final String scope) {
    */
   public Node chooseRandom(final String scope,
       final Collection<Node> excludedNodes) {
-    netlock.readLock().lock();
-    try {
-      if (scope.startsWith("~")) {
-        return chooseRandom(NodeBase.ROOT, scope.substring(1), excludedNodes);
-      } else {
-        return chooseRandom(scope, null, excludedNodes);
-      }
-    } finally {
-      netlock.readLock().unlock();
+    if (scope.startsWith("~")) {
+      return chooseRandom(NodeBase.ROOT, scope.substring(1), excludedNodes);
+    } else {
+      return chooseRandom(scope, null, excludedNodes);
     }
   }
 
@@ -504,21 +613,21 @@ protected Node chooseRandom(final String scope, String excludedScope,
         excludedScope = null;
       }
     }
-    Node node = getNode(scope);
-    if (!(node instanceof InnerNode)) {
+    final Snapshot s = getSnapshot();
+    final Snapshot.Entry scopeEntry = s.get(scope);
+    if (scopeEntry == null || !(scopeEntry.node instanceof InnerNode)) {
+      Node node = scopeEntry == null ? null : scopeEntry.node;
       return excludedNodes != null && excludedNodes.contains(node) ?
           null : node;
     }
-    InnerNode innerNode = (InnerNode)node;
-    int numOfDatanodes = innerNode.getNumOfLeaves();
-    if (excludedScope == null) {
-      node = null;
-    } else {
-      node = getNode(excludedScope);
-      if (!(node instanceof InnerNode)) {
+    int numOfDatanodes = scopeEntry.getNumOfLeaves();
+    Snapshot.Entry excludedEntry = null;
+    if (excludedScope != null) {
+      excludedEntry = s.get(excludedScope);
+      if (excludedEntry == null) {
         numOfDatanodes -= 1;
       } else {
-        numOfDatanodes -= ((InnerNode)node).getNumOfLeaves();
+        numOfDatanodes -= excludedEntry.getNumOfLeaves();
       }
     }
     if (numOfDatanodes <= 0) {
@@ -528,26 +637,21 @@ protected Node chooseRandom(final String scope, String excludedScope,
     }
     final int availableNodes;
     if (excludedScope == null) {
-      availableNodes = countNumOfAvailableNodes(scope, excludedNodes);
+      availableNodes = countNumOfAvailableNodes(s, scope, excludedNodes);
     } else {
-      netlock.readLock().lock();
-      try {
-        availableNodes = countNumOfAvailableNodes(scope, excludedNodes) -
-            countNumOfAvailableNodes(excludedScope, excludedNodes);
-      } finally {
-        netlock.readLock().unlock();
-      }
+      availableNodes = countNumOfAvailableNodes(s, scope, excludedNodes) -
+          countNumOfAvailableNodes(s, excludedScope, excludedNodes);
     }
     if (LOG.isDebugEnabled()) {
       LOG.debug("Choosing random from {} available nodes on node {}, scope={},"
               + " excludedScope={}, excludeNodes={}. numOfDatanodes={}.",
-          availableNodes, innerNode, scope, excludedScope, excludedNodes,
-          numOfDatanodes);
+          availableNodes, scopeEntry.node, scope, excludedScope,
+          excludedNodes, numOfDatanodes);
     }
     Node ret = null;
     if (availableNodes > 0) {
-      ret = chooseRandom(innerNode, node, excludedNodes, numOfDatanodes,
-          availableNodes);
+      ret = chooseRandom(s, scopeEntry, excludedEntry, excludedNodes,
+          numOfDatanodes, availableNodes);
     }
     LOG.debug("chooseRandom returning {}", ret);
     return ret;
@@ -555,8 +659,9 @@ protected Node chooseRandom(final String scope, String excludedScope,
 
   /**
    * Randomly choose one node under <i>parentNode</i>, considering the exclude
-   * nodes and scope. Should be called with {@link #netlock}'s readlock held.
+   * nodes and scope.
    *
+   * @param s                 the snapshot of the cluster tree
    * @param parentNode        the parent node
    * @param excludedScopeNode the node corresponding to the exclude scope.
    * @param excludedNodes     a collection of nodes to be excluded from
@@ -566,9 +671,10 @@ protected Node chooseRandom(final String scope, String excludedScope,
    *                          could be chosen, excluding excludedNodes
    * @return the chosen node, or null if none can be chosen
    */
-  private Node chooseRandom(final InnerNode parentNode,
-      final Node excludedScopeNode, final Collection<Node> excludedNodes,
-      final int totalInScopeNodes, final int availableNodes) {
+  private Node chooseRandom(final Snapshot s,
+      final Snapshot.Entry parentNode, final Snapshot.Entry excludedScopeNode,
+      final Collection<Node> excludedNodes, final int totalInScopeNodes,
+      final int availableNodes) {
     if (totalInScopeNodes < availableNodes) {
       LOG.warn("Total Nodes in scope : {} are less than Available Nodes : {}",
           totalInScopeNodes, availableNodes);
@@ -578,7 +684,7 @@ private Node chooseRandom(final InnerNode parentNode,
     if (excludedNodes == null || excludedNodes.isEmpty()) {
       // if there are no excludedNodes, randomly choose a node
       final int index = r.nextInt(totalInScopeNodes);
-      return parentNode.getLeaf(index, excludedScopeNode);
+      return s.getLeaf(parentNode, excludedScopeNode, index);
     }
 
     // excludedNodes non empty.
@@ -602,8 +708,8 @@ private Node chooseRandom(final InnerNode parentNode,
     // totalInScopeNodes=10 and availableNodes=7 in this example.
     int nthValidToReturn = r.nextInt(availableNodes);
     LOG.debug("nthValidToReturn is {}", nthValidToReturn);
-    Node ret =
-        parentNode.getLeaf(r.nextInt(totalInScopeNodes), excludedScopeNode);
+    Node ret = s.getLeaf(parentNode, excludedScopeNode,
+        r.nextInt(totalInScopeNodes));
     if (!excludedNodes.contains(ret)) {
       // return if we're lucky enough to get a valid node at a random first pick
       LOG.debug("Chosen node {} from first random", ret);
@@ -613,7 +719,7 @@ private Node chooseRandom(final InnerNode parentNode,
     }
     Node lastValidNode = null;
     for (int i = 0; i < totalInScopeNodes; ++i) {
-      ret = parentNode.getLeaf(i, excludedScopeNode);
+      ret = s.getLeaf(parentNode, excludedScopeNode, i);
       if (!excludedNodes.contains(ret)) {
         if (nthValidToReturn == 0) {
           break;
@@ -629,7 +735,9 @@ private Node chooseRandom(final InnerNode parentNode,
       LOG.error("BUG: Found lastValidNode {} but not nth valid node. "
               + "parentNode={}, excludedScopeNode={}, excludedNodes={}, "
               + "totalInScopeNodes={}, availableNodes={}, nthValidToReturn={}.",
-          lastValidNode, parentNode, excludedScopeNode, excludedNodes,
+          lastValidNode, parentNode.node,
+          excludedScopeNode == null ? null : excludedScopeNode.node,
+          excludedNodes,
           totalInScopeNodes, availableNodes, nthValidToReturn);
       ret = lastValidNode;
     }
@@ -641,15 +749,14 @@ private Node chooseRandom(final InnerNode parentNode,
    * @return leaves nodes under specific scope
    */
   public List<Node> getLeaves(String scope) {
-    Node node = getNode(scope);
+    Snapshot s = getSnapshot();
+    Snapshot.Entry entry = s.get(scope);
     List<Node> leafNodes = new ArrayList<Node>();
-    if (!(node instanceof InnerNode)) {
-      leafNodes.add(node);
+    if (entry == null || !(entry.node instanceof InnerNode)) {
+      leafNodes.add(entry == null ? null : entry.node);
     } else {
-      InnerNode innerNode = (InnerNode) node;
-      for (int i=0;i<innerNode.getNumOfLeaves();i++) {
-        leafNodes.add(innerNode.getLeaf(i, null));
-      }
+      leafNodes.addAll(
+          Arrays.asList(s.leaves).subList(entry.start, entry.end));
     }
     return leafNodes;
   }
@@ -664,6 +771,11 @@ public List<Node> getLeaves(String scope) {
   @VisibleForTesting
   public int countNumOfAvailableNodes(String scope,
                                       Collection<Node> excludedNodes) {
+    return countNumOfAvailableNodes(getSnapshot(), scope, excludedNodes);
+  }
+
+  private static int countNumOfAvailableNodes(Snapshot s, String scope,
+      Collection<Node> excludedNodes) {
     boolean isExcluded=false;
     if (scope.startsWith("~")) {
       isExcluded=true;
@@ -672,41 +784,25 @@ public int countNumOfAvailableNodes(String scope,
     scope = NodeBase.normalize(scope);
     int excludedCountInScope = 0; // the number of nodes in both scope & excludedNodes
     int excludedCountOffScope = 0; // the number of nodes outside scope & excludedNodes
-    netlock.readLock().lock();
-    try {
-      if (excludedNodes != null) {
-        for (Node node : excludedNodes) {
-          node = getNode(NodeBase.getPath(node));
-          if (node == null) {
-            continue;
-          }
-          if (isNodeInScope(node, scope)) {
-            if (node instanceof InnerNode) {
-              excludedCountInScope += ((InnerNode) node).getNumOfLeaves();
-            } else {
-              excludedCountInScope++;
-            }
-          } else {
-            excludedCountOffScope++;
-          }
+    if (excludedNodes != null) {
+      for (Node node : excludedNodes) {
+        Snapshot.Entry entry = s.get(NodeBase.getPath(node));
+        if (entry == null) {
+          continue;
+        }
+        if (isNodeInScope(entry.node, scope)) {
+          excludedCountInScope += entry.getNumOfLeaves();
+        } else {
+          excludedCountOffScope++;
         }
       }
-      Node n = getNode(scope);
-      int scopeNodeCount = 0;
-      if (n != null) {
-        scopeNodeCount++;
-      }
-      if (n instanceof InnerNode) {
-        scopeNodeCount=((InnerNode)n).getNumOfLeaves();
-      }
-      if (isExcluded) {
-        return clusterMap.getNumOfLeaves() - scopeNodeCount
-            - excludedCountOffScope;
-      } else {
-        return scopeNodeCount - excludedCountInScope;
-      }
-    } finally {
-      netlock.readLock().unlock();
+    }
+    Snapshot.Entry n = s.get(scope);
+    int scopeNodeCount = n == null ? 0 : n.getNumOfLeaves();
+    if (isExcluded) {
+      return s.leaves.length - scopeNodeCount - excludedCountOffScope;
+    } else {
+      return scopeNodeCount - excludedCountInScope;
     }
   }
 
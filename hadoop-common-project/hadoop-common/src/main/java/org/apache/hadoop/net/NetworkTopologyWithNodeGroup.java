@@ -206,7 +206,10 @@ public void add(Node node) {
             + node.toString() 
             + " at an illegal network location");
       }
-      if (clusterMap.add(node)) {
+      boolean added = clusterMap.add(node);
+      // a node replacing another one of the same name changes the tree too
+      invalidateSnapshot();
+      if (added) {
         LOG.info("Adding a new node: " + NodeBase.getPath(node));
         if (rack == null) {
           // We only track rack number here
@@ -235,7 +238,9 @@ public void remove(Node node) {
     LOG.info("Removing a node: "+NodeBase.getPath(node));
     netlock.writeLock().lock();
     try {
-      if (clusterMap.remove(node)) {
+      boolean removed = clusterMap.remove(node);
+      invalidateSnapshot();
+      if (removed) {
         Node nodeGroup = getNode(node.getNetworkLocation());
         if (nodeGroup == null) {
           nodeGroup = factory.newInnerNode(node.getNetworkLocation());
@@ -513,7 +513,13 @@ private RpcSaslProto.Builder createSaslReply(SaslState state,
     return response;
   }
 
-  private boolean useWrap() {
+  /**
+   * Whether the negotiated SASL QoP wraps the RPC stream. Can be called
+   * only after saslConnect() has been called.
+   *
+   * @return true for QoP auth-int and auth-conf, false for auth.
+   */
+  public boolean useWrap() {
     // getNegotiatedProperty throws if client isn't complete
     String qop = (String) saslClient.getNegotiatedProperty(Sasl.QOP);
     // SASL wrapping is only used if the connection has a QOP, and
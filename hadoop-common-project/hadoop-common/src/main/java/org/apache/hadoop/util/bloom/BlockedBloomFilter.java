@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util.bloom;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.util.hash.Hash;
+
+/**
+ * Implements a <i>blocked Bloom filter</i>, whose vector is split into
+ * blocks of 512 bits, the size of a cache line.
+ * <p>
+ * A key is hashed into a 64-bit value, from two hashes of the configured
+ * type. The upper half of the value selects a block, and all the
+ * <code>nbHash</code> bits of the key are derived from the value and set in
+ * that block. So a membership test reads a single block of the vector,
+ * instead of <code>nbHash</code> positions scattered over the vector like a
+ * {@link BloomFilter} does, and computes two hashes instead of
+ * <code>nbHash</code>.
+ * <p>
+ * The bits of a block are less uniformly distributed than the bits of the
+ * whole vector, so for the same vector size and number of keys the false
+ * positive rate is a little higher than the one of a {@link BloomFilter}.
+ * <p>
+ * The vector size is rounded up to a multiple of the block size.
+ *
+ * @see Filter The general behavior of a filter
+ *
+ * @see <a href="https://dl.acm.org/doi/10.1145/1498698.1594230">Cache-,
+ * Hash- and Space-Efficient Bloom Filters</a>
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class BlockedBloomFilter extends Filter {
+  /** The number of bits of a block. */
+  public static final int BLOCK_BITS = 512;
+
+  private static final int LONGS_PER_BLOCK = BLOCK_BITS / Long.SIZE;
+
+  /** The bit vector, {@link #LONGS_PER_BLOCK} longs per block. */
+  long[] bits;
+
+  /** The number of blocks. */
+  private int nbBlocks;
+
+  /** The hash function of the keys. */
+  private Hash hashFunction;
+
+  /** Default constructor - use with readFields */
+  public BlockedBloomFilter() {
+    super();
+  }
+
+  /**
+   * Constructor
+   * @param vectorSize The vector size of <i>this</i> filter, rounded up to a
+   * multiple of {@link #BLOCK_BITS}.
+   * @param nbHash The number of hash function to consider.
+   * @param hashType type of the hashing function (see
+   * {@link org.apache.hadoop.util.hash.Hash}).
+   */
+  public BlockedBloomFilter(int vectorSize, int nbHash, int hashType) {
+    super(roundToBlocks(vectorSize), nbHash, hashType);
+    init();
+  }
+
+  private static int roundToBlocks(int vectorSize) {
+    long blocks = ((long) vectorSize + BLOCK_BITS - 1) / BLOCK_BITS;
+    return (int) Math.min(blocks, Integer.MAX_VALUE / BLOCK_BITS) * BLOCK_BITS;
+  }
+
+  private void init() {
+    nbBlocks = vectorSize / BLOCK_BITS;
+    bits = new long[nbBlocks * LONGS_PER_BLOCK];
+    hashFunction = Hash.getInstance(hashType);
+  }
+
+  /**
+   * @return the 64-bit hash of the key.
+   */
+  private long hash(Key key) {
+    if (key == null) {
+      throw new NullPointerException("key cannot be null");
+    }
+    byte[] b = key.getBytes();
+    if (b == null) {
+      throw new NullPointerException("buffer reference is null");
+    }
+    if (b.length == 0) {
+      throw new IllegalArgumentException("key length must be > 0");
+    }
+    int h1 = hashFunction.hash(b, 0);
+    int h2 = hashFunction.hash(b, h1);
+    return ((long) h1 << 32) | (h2 & 0xffffffffL);
+  }
+
+  /**
+   * @return the index of the first long of the block of the hash.
+   */
+  private int block(long h) {
+    return (int) (((h >>> 32) * nbBlocks) >>> 32) * LONGS_PER_BLOCK;
+  }
+
+  /**
+   * @return the bit of the block for the i-th hash function, the top 9 bits
+   * of h2 + i * reverse(h1), where h1 and h2 are the upper and lower halves
+   * of the hash. h1 is reversed so that the keys of a block, whose h1 have
+   * the same top bits, don't share the same step.
+   */
+  private static int bit(long h, int i) {
+    return ((int) h + i * (Integer.reverse((int) (h >>> 32)) | 1)) >>> 23;
+  }
+
+  @Override
+  public void add(Key key) {
+    long h = hash(key);
+    int block = block(h);
+    for (int i = 0; i < nbHash; i++) {
+      int bit = bit(h, i);
+      bits[block + (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  @Override
+  public boolean membershipTest(Key key) {
+    long h = hash(key);
+    int block = block(h);
+    for (int i = 0; i < nbHash; i++) {
+      int bit = bit(h, i);
+      if ((bits[block + (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long[] bitsOf(Filter filter, String op) {
+    if (filter == null
+        || !(filter instanceof BlockedBloomFilter)
+        || filter.vectorSize != this.vectorSize
+        || filter.nbHash != this.nbHash
+        || filter.hashType != this.hashType) {
+      throw new IllegalArgumentException("filters cannot be " + op);
+    }
+    return ((BlockedBloomFilter) filter).bits;
+  }
+
+  @Override
+  public void and(Filter filter) {
+    long[] other = bitsOf(filter, "and-ed");
+    for (int i = 0; i < bits.length; i++) {
+      bits[i] &= other[i];
+    }
+  }
+
+  @Override
+  public void or(Filter filter) {
+    long[] other = bitsOf(filter, "or-ed");
+    for (int i = 0; i < bits.length; i++) {
+      bits[i] |= other[i];
+    }
+  }
+
+  @Override
+  public void xor(Filter filter) {
+    long[] other = bitsOf(filter, "xor-ed");
+    for (int i = 0; i < bits.length; i++) {
+      bits[i] ^= other[i];
+    }
+  }
+
+  @Override
+  public void not() {
+    for (int i = 0; i < bits.length; i++) {
+      bits[i] = ~bits[i];
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "BlockedBloomFilter[vectorSize=" + vectorSize + ", nbHash="
+        + nbHash + ", hashType=" + hashType + "]";
+  }
+
+  /**
+   * @return size of the the bloomfilter
+   */
+  public int getVectorSize() {
+    return this.vectorSize;
+  }
+
+  // Writable
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    super.write(out);
+    for (long word : bits) {
+      out.writeLong(word);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    super.readFields(in);
+    if (vectorSize % BLOCK_BITS != 0) {
+      throw new IOException("Vector size " + vectorSize
+          + " is not a multiple of " + BLOCK_BITS);
+    }
+    init();
+    for (int i = 0; i < bits.length; i++) {
+      bits[i] = in.readLong();
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.conf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of reading and copying a {@link Configuration}, compared with
+ * its {@link Configuration#snapshot()}.
+ *
+ * The configuration holds the default resources and a few properties with
+ * variables. The benchmark first reads all its properties as strings, and
+ * the numeric ones as integers, many times from the configuration and from
+ * a snapshot. It then runs a number of tasks which each read some properties
+ * of the configuration, like the tasks of a job do: with a copy of the
+ * configuration per task, and with a snapshot shared by all the tasks.
+ *
+ * Usage: ConfigurationBenchmark [-rounds R] [-tasks T] [-reads N]
+ */
+public class ConfigurationBenchmark {
+  static final String USAGE = "Usage: ConfigurationBenchmark [-rounds R] " +
+      "[-tasks T] [-reads N]";
+
+  private final int rounds;
+  private final int tasks;
+  private final int reads;
+  private final Configuration conf;
+  private final String[] names;
+  private final String[] intNames;
+
+  ConfigurationBenchmark(int rounds, int tasks, int reads) {
+    this.rounds = rounds;
+    this.tasks = tasks;
+    this.reads = reads;
+    conf = new Configuration();
+    conf.set("bench.dir", "/tmp/bench");
+    for (int i = 0; i < 100; i++) {
+      conf.set("bench.dir." + i, "${bench.dir}/" + i + "/${user.name}");
+    }
+    List<String> all = new ArrayList<>();
+    List<String> ints = new ArrayList<>();
+    for (Map.Entry<String, String> e : conf) {
+      all.add(e.getKey());
+      if (e.getValue().trim().matches("-?[0-9]+")) {
+        ints.add(e.getKey());
+      }
+    }
+    names = all.toArray(new String[0]);
+    intNames = ints.toArray(new String[0]);
+  }
+
+  /** @return the nanoseconds per read of the properties. */
+  private double readAll(Configuration c) {
+    long checksum = 0;
+    long start = System.nanoTime();
+    for (int r = 0; r < rounds; r++) {
+      for (String name : names) {
+        String value = c.get(name);
+        checksum += value == null ? 0 : value.length();
+      }
+      for (String name : intNames) {
+        checksum += c.getInt(name, 0);
+      }
+    }
+    long nanos = System.nanoTime() - start;
+    if (checksum == 42) {
+      System.out.println();
+    }
+    return (double) nanos / rounds / (names.length + intNames.length);
+  }
+
+  private long readSome(Configuration c, int task) {
+    long checksum = 0;
+    for (int i = 0; i < reads; i++) {
+      String value = c.get(names[(task * 31 + i) % names.length]);
+      checksum += value == null ? 0 : value.length();
+    }
+    return checksum;
+  }
+
+  void run() {
+    System.out.printf("%d properties, %d integers%n", names.length,
+        intNames.length);
+    Configuration snapshot = conf.snapshot();
+    // warm up
+    readAll(conf);
+    readAll(snapshot);
+    System.out.printf("Configuration: %.0f ns per read%n", readAll(conf));
+    System.out.printf("Snapshot: %.0f ns per read%n", readAll(snapshot));
+
+    long checksum = 0;
+    long start = System.nanoTime();
+    for (int t = 0; t < tasks; t++) {
+      checksum += readSome(new Configuration(conf), t);
+    }
+    long copyNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    Configuration shared = conf.snapshot();
+    for (int t = 0; t < tasks; t++) {
+      checksum += readSome(shared, t);
+    }
+    long sharedNanos = System.nanoTime() - start;
+    System.out.printf("%d tasks reading %d properties: %d ms with a copy " +
+        "per task, %d ms with a shared snapshot (checksum %d)%n", tasks,
+        reads, TimeUnit.NANOSECONDS.toMillis(copyNanos),
+        TimeUnit.NANOSECONDS.toMillis(sharedNanos), checksum);
+  }
+
+  public static void main(String[] args) {
+    int rounds = 200;
+    int tasks = 10000;
+    int reads = 50;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+      if (args[i].equals("-rounds")) {
+        rounds = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-tasks")) {
+        tasks = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-reads")) {
+        reads = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+    }
+    new ConfigurationBenchmark(rounds, tasks, reads).run();
+  }
+}
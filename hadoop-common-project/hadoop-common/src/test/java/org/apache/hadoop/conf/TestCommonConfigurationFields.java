@@ -150,6 +150,10 @@ public void initializeMemberVariables() {
     xmlPropsToSkipCompare.add("fs.azure.saskey.usecontainersaskeyforallaccess");
     xmlPropsToSkipCompare.add("fs.azure.user.agent.prefix");
 
+    // RPC server configs that include dynamic ports in their keys
+    xmlPropsToSkipCompare.add("ipc.[port_number].direct-buffers.enable");
+    xmlPropsToSkipCompare.add("ipc.direct-buffers.enable");
+
     // FairCallQueue configs that includes dynamic ports in its keys
     xmlPropsToSkipCompare.add("ipc.[port_number].backoff.enable");
     xmlPropsToSkipCompare.add("ipc.backoff.enable");
@@ -164,6 +168,8 @@ public void initializeMemberVariables() {
     xmlPropsToSkipCompare.add("ipc.identity-provider.impl");
     xmlPropsToSkipCompare.add("ipc.[port_number].cost-provider.impl");
     xmlPropsToSkipCompare.add("ipc.cost-provider.impl");
+    xmlPropsToSkipCompare.add("ipc.[port_number].cost-store.impl");
+    xmlPropsToSkipCompare.add("ipc.cost-store.impl");
     xmlPropsToSkipCompare.add("ipc.[port_number].decay-scheduler.period-ms");
     xmlPropsToSkipCompare.add("ipc.[port_number].decay-scheduler.decay-factor");
     xmlPropsToSkipCompare.add("ipc.[port_number].decay-scheduler.thresholds");
@@ -180,6 +186,10 @@ public void initializeMemberVariables() {
     xmlPropsToSkipCompare.add("ipc.[port_number].weighted-cost.handler");
     xmlPropsToSkipCompare.add("ipc.[port_number].weighted-cost.lockfree");
     xmlPropsToSkipCompare.add("ipc.[port_number].weighted-cost.response");
+    xmlPropsToSkipCompare.add("ipc.[port_number].cost-store.sketch.width");
+    xmlPropsToSkipCompare.add("ipc.[port_number].cost-store.sketch.depth");
+    xmlPropsToSkipCompare.add(
+        "ipc.[port_number].cost-store.sketch.heavy-hitters");
 
     // Deprecated properties.  These should eventually be removed from the
     // class.
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Benchmark of the write throughput of block compressed
+ * {@link SequenceFile}s with a number of compression threads.
+ *
+ * For each codec and number of threads, the benchmark appends records of
+ * random words to a local file, and reports the megabytes of records written
+ * per second and the compressed size. A codec which can't be loaded, e.g.
+ * without the native library, is skipped.
+ *
+ * Usage: SequenceFileCompressBenchmark [-megabytes M] [-threads N[,N...]]
+ *                                      [-codecs C[,C...]]
+ */
+public class SequenceFileCompressBenchmark {
+  static final String USAGE = "Usage: SequenceFileCompressBenchmark " +
+      "[-megabytes M] [-threads N[,N...]] [-codecs C[,C...]]";
+
+  private static final String[] WORDS = new String[1024];
+
+  static {
+    Random random = new Random(0);
+    for (int i = 0; i < WORDS.length; i++) {
+      char[] word = new char[3 + random.nextInt(8)];
+      for (int c = 0; c < word.length; c++) {
+        word[c] = (char) ('a' + random.nextInt(26));
+      }
+      WORDS[i] = new String(word);
+    }
+  }
+
+  private final long bytes;
+  private final FileSystem fs;
+  private final Path file;
+
+  SequenceFileCompressBenchmark(int megabytes) throws IOException {
+    this.bytes = megabytes * 1024L * 1024L;
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.file = new Path(
+        GenericTestUtils.getTempPath("SequenceFileCompressBenchmark.seq"));
+  }
+
+  void run(Class<? extends CompressionCodec> codecClass, int threads)
+      throws IOException {
+    Configuration conf = new Configuration();
+    conf.setInt(CommonConfigurationKeysPublic.IO_SEQFILE_COMPRESS_THREADS_KEY,
+        threads);
+    CompressionCodec codec = ReflectionUtils.newInstance(codecClass, conf);
+    Random random = new Random(0);
+    LongWritable key = new LongWritable();
+    Text value = new Text();
+    StringBuilder line = new StringBuilder();
+    long written = 0;
+    long start = System.nanoTime();
+    try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(fs.makeQualified(file)),
+        SequenceFile.Writer.keyClass(LongWritable.class),
+        SequenceFile.Writer.valueClass(Text.class),
+        SequenceFile.Writer.compression(CompressionType.BLOCK, codec))) {
+      for (long i = 0; written < bytes; i++) {
+        line.setLength(0);
+        for (int w = 0; w < 20; w++) {
+          line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        key.set(i);
+        value.set(line.toString());
+        writer.append(key, value);
+        written += 8 + value.getLength();
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%s, %d threads: %.1f MB/s, %.1f MB compressed%n",
+        codecClass.getSimpleName(), threads,
+        written / 1048576.0 / seconds,
+        fs.getFileStatus(file).getLen() / 1048576.0);
+    fs.delete(file, false);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static void main(String[] args) throws Exception {
+    int megabytes = 256;
+    String threads = "0,1,2,4";
+    String codecs = "org.apache.hadoop.io.compress.ZStandardCodec," +
+        "org.apache.hadoop.io.compress.GzipCodec," +
+        "org.apache.hadoop.io.compress.Lz4Codec";
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+      if (args[i].equals("-megabytes")) {
+        megabytes = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-threads")) {
+        threads = args[++i];
+      } else if (args[i].equals("-codecs")) {
+        codecs = args[++i];
+      } else {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+    }
+
+    System.out.printf("%d MB of records per file%n", megabytes);
+    SequenceFileCompressBenchmark bench =
+        new SequenceFileCompressBenchmark(megabytes);
+    for (String codec : codecs.split(",")) {
+      Class<? extends CompressionCodec> codecClass =
+          (Class<? extends CompressionCodec>) Class.forName(codec.trim());
+      for (String n : threads.split(",")) {
+        try {
+          bench.run(codecClass, Integer.parseInt(n.trim()));
+        } catch (RuntimeException | IOException | LinkageError e) {
+          System.out.printf("%s: skipped, %s%n", codecClass.getSimpleName(),
+              e);
+          break;
+        }
+      }
+    }
+  }
+}
@@ -42,6 +42,10 @@
 import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.bloom.BlockedBloomFilter;
+import org.apache.hadoop.util.bloom.DynamicBloomFilter;
+import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_MAPFILE_BLOOM_SIZE_KEY;
+import static org.apache.hadoop.fs.CommonConfigurationKeysPublic.IO_MAPFILE_BLOOM_TYPE_KEY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -115,6 +119,60 @@ public void testMembershipTest() throws Exception {
     }
   }
 
+  @Test
+  public void testBlockedBloomFilter() throws Exception {
+    Configuration blockedConf = new Configuration(conf);
+    blockedConf.set(IO_MAPFILE_BLOOM_TYPE_KEY, "blocked");
+    blockedConf.setInt(IO_MAPFILE_BLOOM_SIZE_KEY, 2048);
+    FileSystem fs = FileSystem.getLocal(blockedConf);
+    Path qualifiedDirName = fs.makeQualified(TEST_DIR);
+    BloomMapFile.Writer writer = null;
+    BloomMapFile.Reader reader = null;
+    try {
+      writer = new BloomMapFile.Writer(blockedConf, qualifiedDirName,
+          MapFile.Writer.keyClass(IntWritable.class),
+          MapFile.Writer.valueClass(Text.class));
+      IntWritable key = new IntWritable();
+      Text value = new Text();
+      for (int i = 0; i < 2000; i += 2) {
+        key.set(i);
+        value.set("00" + i);
+        writer.append(key, value);
+      }
+      writer.close();
+
+      // the type of the filter is read from the file, not the configuration
+      reader = new BloomMapFile.Reader(qualifiedDirName, new Configuration());
+      assertTrue(reader.getBloomFilter() instanceof BlockedBloomFilter);
+      int falsePos = 0;
+      for (int i = 0; i < 2000; i++) {
+        key.set(i);
+        if (i % 2 == 0) {
+          assertTrue("False negative for " + i, reader.probablyHasKey(key));
+          assertEquals("00" + i, reader.get(key, value).toString());
+        } else if (reader.probablyHasKey(key)) {
+          falsePos++;
+        }
+      }
+      reader.close();
+      assertTrue("False positives: " + falsePos, falsePos < 2);
+
+      // a dynamic filter is read with the blocked type configured
+      writer = new BloomMapFile.Writer(conf, qualifiedDirName,
+          MapFile.Writer.keyClass(IntWritable.class),
+          MapFile.Writer.valueClass(Text.class));
+      writer.append(key, value);
+      writer.close();
+      reader = new BloomMapFile.Reader(qualifiedDirName, blockedConf);
+      assertTrue(reader.getBloomFilter() instanceof DynamicBloomFilter);
+      assertTrue(reader.probablyHasKey(key));
+      reader.close();
+      fs.delete(qualifiedDirName, true);
+    } finally {
+      IOUtils.cleanupWithLogger(LOG, writer, reader);
+    }
+  }
+
   @SuppressWarnings("deprecation")
   private void checkMembershipVaryingSizedKeys(List<Text> keys)
       throws Exception {
@@ -756,6 +756,44 @@ public void testSequenceFileWriter() throws Exception {
     }
   }
 
+  @Test
+  public void testParallelBlockCompression() throws Exception {
+    Configuration config = new Configuration(conf);
+    config.setInt(CommonConfigurationKeysPublic
+        .IO_SEQFILE_COMPRESS_BLOCKSIZE_KEY, 4096);
+    FileSystem fs = FileSystem.getLocal(config);
+    CompressionCodec codec =
+        ReflectionUtils.newInstance(DefaultCodec.class, config);
+    int count = 2000;
+    int seed = new Random().nextInt();
+    Path[] files = new Path[2];
+    int[] threads = {0, 3};
+    for (int f = 0; f < files.length; f++) {
+      config.setInt(CommonConfigurationKeysPublic
+          .IO_SEQFILE_COMPRESS_THREADS_KEY, threads[f]);
+      files[f] = new Path(GenericTestUtils.getTempPath(
+          "testParallelBlockCompression." + threads[f] + ".seq"));
+      try (SequenceFile.Writer writer = SequenceFile.createWriter(config,
+          SequenceFile.Writer.file(files[f]),
+          SequenceFile.Writer.keyClass(RandomDatum.class),
+          SequenceFile.Writer.valueClass(RandomDatum.class),
+          SequenceFile.Writer.compression(CompressionType.BLOCK, codec))) {
+        RandomDatum.Generator generator = new RandomDatum.Generator(seed);
+        for (int i = 0; i < count; i++) {
+          generator.next();
+          writer.append(generator.getKey(), generator.getValue());
+          if (i == count / 2) {
+            writer.hflush();
+          }
+        }
+      }
+    }
+    // the blocks are the same, only the sync markers differ
+    assertEquals(fs.getFileStatus(files[0]).getLen(),
+        fs.getFileStatus(files[1]).getLen());
+    readTest(fs, count, seed, files[1]);
+  }
+
   /** For debugging and testing. */
   public static void main(String[] args) throws Exception {
     int count = 1024 * 1024;
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Benchmark of the read throughput of compressed streams, with and without
+ * a {@link DirectDecompressorStream}.
+ *
+ * For each codec, the benchmark writes a local file of random words, then
+ * reads it a number of times through the input stream of the codec, first
+ * from a plain file stream which is decompressed by a
+ * {@link DecompressorStream}, then from a stream which reads the file into
+ * ByteBuffers, like an HDFS stream does, with direct decompression enabled.
+ * It reports the megabytes of decompressed data read per second. A codec
+ * which can't be loaded, e.g. without the native library, is skipped.
+ *
+ * Usage: DecompressionBenchmark [-megabytes M] [-iterations N]
+ *                               [-codecs C[,C...]]
+ */
+public class DecompressionBenchmark {
+  static final String USAGE = "Usage: DecompressionBenchmark " +
+      "[-megabytes M] [-iterations N] [-codecs C[,C...]]";
+
+  /** A file stream which can also be read into ByteBuffers. */
+  private static class ChannelInputStream extends FileInputStream
+      implements ByteBufferReadable {
+    private final FileChannel channel;
+
+    ChannelInputStream(File file) throws IOException {
+      super(file);
+      this.channel = getChannel();
+    }
+
+    @Override
+    public int read(ByteBuffer buf) throws IOException {
+      return channel.read(buf);
+    }
+  }
+
+  private final long bytes;
+  private final int iterations;
+  private final File file;
+  private final byte[] readBuffer = new byte[64 * 1024];
+
+  DecompressionBenchmark(int megabytes, int iterations) {
+    this.bytes = megabytes * 1024L * 1024L;
+    this.iterations = iterations;
+    this.file = GenericTestUtils.getTestDir("DecompressionBenchmark.data");
+  }
+
+  private void write(CompressionCodec codec) throws IOException {
+    Random random = new Random(0);
+    String[] words = new String[1024];
+    for (int i = 0; i < words.length; i++) {
+      char[] word = new char[3 + random.nextInt(8)];
+      for (int c = 0; c < word.length; c++) {
+        word[c] = (char) ('a' + random.nextInt(26));
+      }
+      words[i] = new String(word);
+    }
+    file.getParentFile().mkdirs();
+    try (OutputStream out = codec.createOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)))) {
+      StringBuilder line = new StringBuilder();
+      for (long written = 0; written < bytes;) {
+        line.setLength(0);
+        for (int w = 0; w < 20; w++) {
+          line.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        byte[] b = line.append('\n').toString()
+            .getBytes(StandardCharsets.UTF_8);
+        out.write(b);
+        written += b.length;
+      }
+    }
+  }
+
+  /** @return the megabytes read per second. */
+  private double read(CompressionCodec codec, boolean direct)
+      throws IOException {
+    long read = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      InputStream file = direct ? new ChannelInputStream(this.file) :
+          new FileInputStream(this.file);
+      try (CompressionInputStream in = codec.createInputStream(file)) {
+        if (direct != in instanceof DirectDecompressorStream) {
+          throw new IOException("Unexpected stream " + in);
+        }
+        for (int n; (n = in.read(readBuffer)) >= 0;) {
+          read += n;
+        }
+      }
+    }
+    return read / 1048576.0 / ((System.nanoTime() - start) / 1e9);
+  }
+
+  void run(Class<? extends CompressionCodec> codecClass) throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(
+        CommonConfigurationKeys.IO_COMPRESSION_DIRECT_DECOMPRESSION_ENABLED_KEY,
+        true);
+    CompressionCodec codec = ReflectionUtils.newInstance(codecClass, conf);
+    if (!(codec instanceof DirectDecompressionCodec) ||
+        ((DirectDecompressionCodec) codec).createDirectDecompressor() == null) {
+      throw new IOException("No direct decompressor");
+    }
+    write(codec);
+    try {
+      // warm up both paths before they are measured
+      read(codec, false);
+      read(codec, true);
+      double heap = read(codec, false);
+      double direct = read(codec, true);
+      System.out.printf("%s: %.1f MB/s from heap buffers, " +
+          "%.1f MB/s from direct buffers, %.1f MB compressed%n",
+          codecClass.getSimpleName(), heap, direct,
+          file.length() / 1048576.0);
+    } finally {
+      file.delete();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public static void main(String[] args) throws Exception {
+    int megabytes = 64;
+    int iterations = 5;
+    String codecs = "org.apache.hadoop.io.compress.ZStandardCodec," +
+        "org.apache.hadoop.io.compress.GzipCodec," +
+        "org.apache.hadoop.io.compress.SnappyCodec," +
+        "org.apache.hadoop.io.compress.Lz4Codec";
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+      if (args[i].equals("-megabytes")) {
+        megabytes = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-iterations")) {
+        iterations = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-codecs")) {
+        codecs = args[++i];
+      } else {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+    }
+
+    System.out.printf("%d MB of text per file, read %d times%n", megabytes,
+        iterations);
+    DecompressionBenchmark bench =
+        new DecompressionBenchmark(megabytes, iterations);
+    for (String codec : codecs.split(",")) {
+      Class<? extends CompressionCodec> codecClass =
+          (Class<? extends CompressionCodec>) Class.forName(codec.trim());
+      try {
+        bench.run(codecClass);
+      } catch (RuntimeException | IOException | LinkageError e) {
+        System.out.printf("%s: skipped, %s%n", codecClass.getSimpleName(), e);
+      }
+    }
+  }
+}
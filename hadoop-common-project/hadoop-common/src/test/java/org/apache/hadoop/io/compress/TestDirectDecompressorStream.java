@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.compress.lz4.Lz4Decompressor;
+import org.apache.hadoop.io.compress.zlib.ZlibFactory;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/** Tests for {@link DirectDecompressorStream}. */
+public class TestDirectDecompressorStream {
+
+  private Configuration conf;
+
+  /** A stream over a byte array which can also be read into ByteBuffers. */
+  private static class ByteBufferReadableStream extends ByteArrayInputStream
+      implements ByteBufferReadable {
+    ByteBufferReadableStream(byte[] data) {
+      super(data);
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer buf) {
+      // read less than the buffer can hold, like a network stream may
+      int len = Math.min(buf.remaining(), Math.max(1, available() / 2));
+      if (available() == 0) {
+        return -1;
+      }
+      buf.put(this.buf, pos, len);
+      pos += len;
+      return len;
+    }
+  }
+
+  @Before
+  public void setup() {
+    conf = new Configuration();
+    conf.setBoolean(
+        CommonConfigurationKeys.IO_COMPRESSION_DIRECT_DECOMPRESSION_ENABLED_KEY,
+        true);
+  }
+
+  private CompressionCodec newCodec(Class<? extends CompressionCodec> clazz) {
+    return ReflectionUtils.newInstance(clazz, conf);
+  }
+
+  private static byte[] generate(int size) {
+    byte[] data = new byte[size];
+    Random r = new Random(size);
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) ('a' + r.nextInt(8));
+    }
+    return data;
+  }
+
+  private static byte[] compress(CompressionCodec codec, byte[] data)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = codec.createOutputStream(bytes)) {
+      out.write(data);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static byte[] readFully(InputStream in, int size)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+    byte[] buf = new byte[4096];
+    for (int n; (n = in.read(buf, 0, buf.length)) >= 0;) {
+      bytes.write(buf, 0, n);
+    }
+    return bytes.toByteArray();
+  }
+
+  private void checkRoundTrip(CompressionCodec codec) throws IOException {
+    for (int size : new int[] {0, 1, 1000, 300 * 1024, 1024 * 1024}) {
+      byte[] data = generate(size);
+      byte[] compressed = compress(codec, data);
+      try (CompressionInputStream in =
+          codec.createInputStream(new ByteBufferReadableStream(compressed))) {
+        assertTrue(in instanceof DirectDecompressorStream);
+        assertArrayEquals("Codec " + codec + ", " + size + " bytes",
+            data, readFully(in, size));
+        assertEquals(-1, in.read());
+      }
+    }
+  }
+
+  @Test
+  public void testDefaultCodec() throws IOException {
+    assumeTrue(ZlibFactory.isNativeZlibLoaded(conf));
+    checkRoundTrip(newCodec(DefaultCodec.class));
+  }
+
+  @Test
+  public void testGzipCodec() throws IOException {
+    assumeTrue(ZlibFactory.isNativeZlibLoaded(conf));
+    checkRoundTrip(newCodec(GzipCodec.class));
+  }
+
+  @Test
+  public void testSnappyCodec() throws IOException {
+    checkRoundTrip(newCodec(SnappyCodec.class));
+  }
+
+  @Test
+  public void testLz4Codec() throws IOException {
+    checkRoundTrip(newCodec(Lz4Codec.class));
+  }
+
+  @Test
+  public void testZStandardCodec() throws IOException {
+    assumeTrue(ZStandardCodec.isNativeCodeLoaded());
+    checkRoundTrip(newCodec(ZStandardCodec.class));
+  }
+
+  @Test
+  public void testConcatenatedGzipMembers() throws IOException {
+    assumeTrue(ZlibFactory.isNativeZlibLoaded(conf));
+    CompressionCodec codec = newCodec(GzipCodec.class);
+    byte[] first = generate(100 * 1024);
+    byte[] second = generate(1000);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(compress(codec, first));
+    bytes.write(compress(codec, second));
+
+    try (CompressionInputStream in = codec.createInputStream(
+        new ByteBufferReadableStream(bytes.toByteArray()))) {
+      byte[] data = readFully(in, first.length + second.length);
+      assertArrayEquals(first, Arrays.copyOfRange(data, 0, first.length));
+      assertArrayEquals(second,
+          Arrays.copyOfRange(data, first.length, data.length));
+    }
+  }
+
+  @Test
+  public void testSkip() throws IOException {
+    CompressionCodec codec = newCodec(Lz4Codec.class);
+    byte[] data = generate(600 * 1024);
+    try (CompressionInputStream in = codec.createInputStream(
+        new ByteBufferReadableStream(compress(codec, data)))) {
+      assertEquals(500 * 1024, in.skip(500 * 1024));
+      assertEquals(data[500 * 1024] & 0xff, in.read());
+      assertEquals(data.length - 500 * 1024 - 1, in.skip(data.length));
+      assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  public void testTruncatedStream() throws IOException {
+    for (Class<? extends CompressionCodec> clazz : Arrays.asList(
+        GzipCodec.class, SnappyCodec.class, Lz4Codec.class)) {
+      if (clazz == GzipCodec.class && !ZlibFactory.isNativeZlibLoaded(conf)) {
+        continue;
+      }
+      CompressionCodec codec = newCodec(clazz);
+      byte[] compressed = compress(codec, generate(100 * 1024));
+      compressed = Arrays.copyOf(compressed, compressed.length / 2);
+      try (CompressionInputStream in = codec.createInputStream(
+          new ByteBufferReadableStream(compressed))) {
+        readFully(in, 100 * 1024);
+        fail("Read a truncated " + codec + " stream");
+      } catch (EOFException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testCloseEndsDecompressor() throws IOException {
+    CompressionCodec codec = newCodec(Lz4Codec.class);
+    byte[] data = generate(1000);
+    final int[] ends = new int[1];
+    DirectDecompressor decompressor =
+        new Lz4Decompressor.Lz4DirectDecompressor() {
+          @Override
+          public void end() {
+            ends[0]++;
+            super.end();
+          }
+        };
+    CompressionInputStream in = new DirectDecompressorStream(
+        new ByteBufferReadableStream(compress(codec, data)), decompressor,
+        DirectDecompressorStream.DEFAULT_BUFFER_SIZE, true);
+    assertArrayEquals(data, readFully(in, data.length));
+    in.close();
+    assertEquals(1, ends[0]);
+    // closing again does not end the decompressor twice
+    in.close();
+    assertEquals(1, ends[0]);
+  }
+
+  @Test
+  public void testFallbackToDecompressorStream() throws IOException {
+    CompressionCodec codec = newCodec(Lz4Codec.class);
+    byte[] data = generate(1000);
+    byte[] compressed = compress(codec, data);
+
+    // a stream without reads into ByteBuffers
+    try (CompressionInputStream in =
+        codec.createInputStream(new ByteArrayInputStream(compressed))) {
+      assertFalse(in instanceof DirectDecompressorStream);
+      assertArrayEquals(data, readFully(in, data.length));
+    }
+
+    // disabled direct decompression
+    conf.setBoolean(
+        CommonConfigurationKeys.IO_COMPRESSION_DIRECT_DECOMPRESSION_ENABLED_KEY,
+        false);
+    codec = newCodec(Lz4Codec.class);
+    try (CompressionInputStream in =
+        codec.createInputStream(new ByteBufferReadableStream(compressed))) {
+      assertFalse(in instanceof DirectDecompressorStream);
+      assertArrayEquals(data, readFully(in, data.length));
+    }
+
+    // a codec without a direct decompressor
+    assertEquals(null, DirectDecompressorStream.create(
+        newCodec(BZip2Codec.class), new ByteBufferReadableStream(compressed),
+        conf));
+  }
+}
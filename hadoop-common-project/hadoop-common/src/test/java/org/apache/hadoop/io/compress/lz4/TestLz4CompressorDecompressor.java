@@ -25,6 +25,7 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
@@ -40,6 +41,7 @@
 import org.apache.hadoop.io.compress.CompressionOutputStream;
 import org.apache.hadoop.io.compress.lz4.Lz4Compressor;
 import org.apache.hadoop.io.compress.lz4.Lz4Decompressor;
+import org.apache.hadoop.io.compress.lz4.Lz4Decompressor.Lz4DirectDecompressor;
 import org.apache.hadoop.test.MultithreadedTestUtil;
 import org.junit.Test;
 import static org.junit.Assume.*;
@@ -360,4 +362,36 @@ public void testLz4Compatibility() throws Exception {
     }
     assertEquals(lines, lc);
   }
+
+  @Test
+  public void testLz4DirectDecompression() throws IOException {
+    for (int rawDataSize : new int[] {4 * 1024, 64 * 1024, 1024 * 1024}) {
+      byte[] rawData = generate(rawDataSize);
+      byte[] compressed = new byte[rawDataSize + rawDataSize / 255 + 16];
+      Lz4Compressor compressor = new Lz4Compressor(rawDataSize * 2);
+      compressor.setInput(rawData, 0, rawDataSize);
+      compressor.finish();
+      int compressedSize =
+          compressor.compress(compressed, 0, compressed.length);
+      assertTrue(compressor.finished());
+
+      Lz4DirectDecompressor decompressor = new Lz4DirectDecompressor();
+      ByteBuffer inBuf = ByteBuffer.allocateDirect(compressedSize);
+      inBuf.put(compressed, 0, compressedSize);
+      inBuf.flip();
+      // leave room before the output, which must not be overwritten
+      ByteBuffer outBuf = ByteBuffer.allocateDirect(rawDataSize + 8);
+      outBuf.position(8);
+      decompressor.decompress(inBuf, outBuf);
+      assertTrue(decompressor.finished());
+      assertFalse(inBuf.hasRemaining());
+      assertEquals(rawDataSize + 8, outBuf.position());
+
+      outBuf.flip();
+      outBuf.position(8);
+      byte[] decompressed = new byte[rawDataSize];
+      outBuf.get(decompressed);
+      assertArrayEquals(rawData, decompressed);
+    }
+  }
 }
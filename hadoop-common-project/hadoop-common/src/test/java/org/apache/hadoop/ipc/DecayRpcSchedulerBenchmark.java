@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.security.UserGroupInformation;
+
+/**
+ * Benchmark of {@link DecayRpcScheduler} with many callers, comparing the
+ * {@link CallCostStore}s.
+ *
+ * The calls come from a number of identities whose call rates follow a Zipf
+ * distribution. For each store, a few threads get the priority of each call
+ * and add its cost, like the RPC handlers do, and the scheduler decays the
+ * costs after each period of calls. The benchmark reports the time of a call
+ * and of a decay, the heap taken by the scheduler, and the share of the calls
+ * of the last period in each priority level, i.e. the queue of
+ * {@link FairCallQueue} they would enter. It then compares the priorities
+ * the schedulers give to each identity.
+ *
+ * Usage: DecayRpcSchedulerBenchmark [-identities N] [-calls C] [-threads T]
+ *                                   [-periods P] [-zipf S]
+ */
+public class DecayRpcSchedulerBenchmark {
+  static final String USAGE = "Usage: DecayRpcSchedulerBenchmark " +
+      "[-identities N] [-calls C] [-threads T] [-periods P] [-zipf S]";
+
+  private static final int LEVELS = 4;
+
+  /** The results of the calls with one store. */
+  static final class Result {
+    private long calls;
+    private long callNanos;
+    private long decays;
+    private long totalDecayNanos;
+    private long maxDecayNanos;
+    private long heapBytes;
+    private AtomicLongArray levelCalls = new AtomicLongArray(LEVELS);
+
+    void addDecay(long nanos) {
+      decays++;
+      totalDecayNanos += nanos;
+      maxDecayNanos = Math.max(maxDecayNanos, nanos);
+    }
+
+    void print(String store) {
+      long lastPeriodCalls = 0;
+      for (int i = 0; i < LEVELS; i++) {
+        lastPeriodCalls += levelCalls.get(i);
+      }
+      StringBuilder levels = new StringBuilder();
+      for (int i = 0; i < LEVELS; i++) {
+        levels.append(String.format(" %.1f%%",
+            100.0 * levelCalls.get(i) / Math.max(1, lastPeriodCalls)));
+      }
+      System.out.printf("%s: %.0f ns per call, decay avg %.3f ms, " +
+          "max %.3f ms, ~%d KB heap, calls per level:%s%n", store,
+          (double) callNanos / Math.max(1, calls),
+          decays == 0 ? 0 : totalDecayNanos / 1e6 / decays,
+          maxDecayNanos / 1e6, heapBytes / 1024, levels);
+    }
+  }
+
+  private final int numIdentities;
+  private final int numThreads;
+  private final int numPeriods;
+  private final Schedulable[] schedulables;
+  /** The identity of each call of a period. */
+  private final int[] calls;
+  private final ProcessingDetails details =
+      new ProcessingDetails(TimeUnit.MILLISECONDS);
+
+  DecayRpcSchedulerBenchmark(int numIdentities, int numCalls, int numThreads,
+      int numPeriods, double zipfExponent) {
+    this.numIdentities = numIdentities;
+    this.numThreads = numThreads;
+    this.numPeriods = numPeriods;
+    schedulables = new Schedulable[numIdentities];
+    for (int i = 0; i < numIdentities; i++) {
+      schedulables[i] = newSchedulable(
+          UserGroupInformation.createRemoteUser("user" + i));
+    }
+
+    double[] cdf = new double[numIdentities];
+    double sum = 0;
+    for (int i = 0; i < numIdentities; i++) {
+      sum += 1 / Math.pow(i + 1, zipfExponent);
+      cdf[i] = sum;
+    }
+    Random random = new Random(0);
+    calls = new int[numCalls];
+    for (int c = 0; c < numCalls; c++) {
+      int i = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+      calls[c] = Math.min(numIdentities - 1, i < 0 ? -i - 1 : i);
+    }
+  }
+
+  private static Schedulable newSchedulable(UserGroupInformation ugi) {
+    return new Schedulable() {
+      @Override
+      public UserGroupInformation getUserGroupInformation() {
+        return ugi;
+      }
+
+      @Override
+      public int getPriorityLevel() {
+        return 0;
+      }
+    };
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  DecayRpcScheduler newScheduler(String ns,
+      Class<? extends CallCostStore> store) {
+    Configuration conf = new Configuration();
+    conf.setClass(ns + "." + CommonConfigurationKeys.IPC_COST_STORE_KEY,
+        store, CallCostStore.class);
+    // the benchmark decays the costs itself
+    conf.setLong(ns + "."
+        + DecayRpcScheduler.IPC_SCHEDULER_DECAYSCHEDULER_PERIOD_KEY,
+        Integer.MAX_VALUE);
+    return new DecayRpcScheduler(LEVELS, ns, conf);
+  }
+
+  Result run(DecayRpcScheduler scheduler, long heapBefore)
+      throws InterruptedException {
+    final Result result = new Result();
+    for (int p = 0; p < numPeriods; p++) {
+      final boolean last = p == numPeriods - 1;
+      Thread[] threads = new Thread[numThreads];
+      for (int t = 0; t < numThreads; t++) {
+        final int first = t;
+        threads[t] = new Thread(() -> {
+          for (int c = first; c < calls.length; c += numThreads) {
+            Schedulable s = schedulables[calls[c]];
+            int level = scheduler.getPriorityLevel(s);
+            scheduler.addResponseTime("bench", s, details);
+            if (last) {
+              result.levelCalls.incrementAndGet(level);
+            }
+          }
+        });
+      }
+      long start = System.nanoTime();
+      for (Thread t : threads) {
+        t.start();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+      result.callNanos += (System.nanoTime() - start) * numThreads;
+      result.calls += calls.length;
+
+      start = System.nanoTime();
+      scheduler.forceDecay();
+      result.addDecay(System.nanoTime() - start);
+    }
+    result.heapBytes = usedHeap() - heapBefore;
+    return result;
+  }
+
+  void run() throws InterruptedException {
+    long heap = usedHeap();
+    DecayRpcScheduler exact = newScheduler("ipc.1001",
+        DefaultCallCostStore.class);
+    run(exact, heap).print("DefaultCallCostStore");
+    heap = usedHeap();
+    DecayRpcScheduler sketch = newScheduler("ipc.1002",
+        SketchCallCostStore.class);
+    run(sketch, heap).print("SketchCallCostStore");
+
+    // compare the priorities of the identities
+    int[][] levels = new int[LEVELS][LEVELS];
+    int differ = 0;
+    for (Schedulable s : schedulables) {
+      int e = exact.getPriorityLevel(s);
+      int k = sketch.getPriorityLevel(s);
+      levels[e][k]++;
+      if (e != k) {
+        differ++;
+      }
+    }
+    System.out.printf("%d of %d identities get a different priority%n",
+        differ, numIdentities);
+    for (int e = 0; e < LEVELS; e++) {
+      System.out.printf("  exact level %d -> sketch levels %s%n", e,
+          Arrays.toString(levels[e]));
+    }
+    exact.stop();
+    sketch.stop();
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numIdentities = 100000;
+    int numCalls = 2000000;
+    int numThreads = 4;
+    int numPeriods = 5;
+    double zipfExponent = 1.2;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+      if (args[i].equals("-identities")) {
+        numIdentities = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-calls")) {
+        numCalls = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-threads")) {
+        numThreads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-periods")) {
+        numPeriods = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-zipf")) {
+        zipfExponent = Double.parseDouble(args[++i]);
+      } else {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+    }
+
+    System.out.printf("%d identities with Zipf exponent %.2f, %d calls per " +
+        "period on %d threads, %d periods%n", numIdentities, zipfExponent,
+        numCalls, numThreads, numPeriods);
+    new DecayRpcSchedulerBenchmark(numIdentities, numCalls, numThreads,
+        numPeriods, zipfExponent).run();
+  }
+}
@@ -45,6 +45,7 @@
 import java.net.InetSocketAddress;
 import java.security.PrivilegedExceptionAction;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Benchmark for protobuf RPC.
@@ -53,6 +54,10 @@
 public class RPCCallBenchmark extends TestRpcBase implements Tool {
   private Configuration conf;
   private AtomicLong callCount = new AtomicLong(0);
+  /** The width in microseconds of the buckets of the call latencies. */
+  private static final int LATENCY_BUCKET_MICROS = 10;
+  /** The number of calls by their latency, up to 10 seconds. */
+  private final AtomicLongArray latencyMicros = new AtomicLongArray(1000000);
   private static ThreadMXBean threadBean =
     ManagementFactory.getThreadMXBean();
   
@@ -61,10 +66,12 @@ private static class MyOptions {
     private int serverThreads = 0;
     private int serverReaderThreads = 1;
     private int clientThreads = 0;
+    private int clientIoThreads = 0;
     private String host = "0.0.0.0";
     private int port = 0;
     public int secondsToRun = 15;
     private int msgSize = 1024;
+    private boolean directBuffers = false;
     public Class<? extends RpcEngine> rpcEngine =
         ProtobufRpcEngine2.class;
     
@@ -137,6 +144,18 @@ private Options buildOptions() {
           .withDescription("engine to use")
           .create('e'));
       
+      opts.addOption(
+          OptionBuilder.withLongOpt("directBuffers").hasArg(false)
+          .withDescription("use pooled direct buffers in the server")
+          .create('d'));
+
+      opts.addOption(
+          OptionBuilder.withLongOpt("clientIoThreads").hasArg(true)
+          .withArgName("threads")
+          .withDescription("number of client I/O threads shared by the " +
+              "connections (or 0 for a thread per connection)")
+          .create('i'));
+
       opts.addOption(
           OptionBuilder.withLongOpt("help").hasArg(false)
           .withDescription("show this screen")
@@ -178,6 +197,12 @@ private void processOptions(CommandLine line, Options opts)
       if (line.hasOption('h')) {
         host = line.getOptionValue('h');
       }
+      if (line.hasOption('d')) {
+        directBuffers = true;
+      }
+      if (line.hasOption('i')) {
+        clientIoThreads = Integer.parseInt(line.getOptionValue('i'));
+      }
       if (line.hasOption('e')) {
         String eng = line.getOptionValue('e');
         if ("protobuf".equals(eng)) {
@@ -209,7 +234,9 @@ public String toString() {
       return "rpcEngine=" + rpcEngine + "\nserverThreads=" + serverThreads
           + "\nserverReaderThreads=" + serverReaderThreads + "\nclientThreads="
           + clientThreads + "\nhost=" + host + "\nport=" + getPort()
-          + "\nsecondsToRun=" + secondsToRun + "\nmsgSize=" + msgSize;
+          + "\nsecondsToRun=" + secondsToRun + "\nmsgSize=" + msgSize
+          + "\ndirectBuffers=" + directBuffers
+          + "\nclientIoThreads=" + clientIoThreads;
     }
   }
 
@@ -221,6 +248,9 @@ private Server startServer(MyOptions opts) throws IOException {
     }
     conf.setInt(CommonConfigurationKeys.IPC_SERVER_RPC_READ_THREADS_KEY,
         opts.serverReaderThreads);
+    conf.setBoolean(CommonConfigurationKeys.IPC_NAMESPACE + "." +
+        opts.getPort() + "." + CommonConfigurationKeys.IPC_DIRECT_BUFFERS_ENABLE,
+        opts.directBuffers);
     
     RPC.Server server;
     // Get RPC server for server side implementation
@@ -240,6 +270,42 @@ private Server startServer(MyOptions opts) throws IOException {
     return server;
   }
   
+  /**
+   * @return the bytes allocated by the threads of the server, or -1 if the
+   * JVM doesn't measure them.
+   */
+  private static long getServerAllocatedBytes() {
+    if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    long total = 0;
+    for (Thread t : Thread.getAllStackTraces().keySet()) {
+      // the listener, readers, handlers and responder of the server
+      if (t.getName().startsWith("IPC Server") ||
+          t.getName().startsWith("Socket Reader")) {
+        total += ((com.sun.management.ThreadMXBean) threadBean)
+            .getThreadAllocatedBytes(t.getId());
+      }
+    }
+    return total;
+  }
+
+  /** @return the latency below which the fraction of the calls completed. */
+  private long getLatencyPercentile(double fraction) {
+    long total = 0;
+    for (int i = 0; i < latencyMicros.length(); i++) {
+      total += latencyMicros.get(i);
+    }
+    long count = 0;
+    for (int i = 0; i < latencyMicros.length(); i++) {
+      count += latencyMicros.get(i);
+      if (count >= total * fraction) {
+        return (long) i * LATENCY_BUCKET_MICROS;
+      }
+    }
+    return (long) latencyMicros.length() * LATENCY_BUCKET_MICROS;
+  }
+
   private long getTotalCpuTime(Iterable<? extends Thread> threads) {
     long total = 0;
     for (Thread t : threads) {
@@ -258,6 +324,8 @@ public int run(String[] args) throws Exception {
     
     // Set RPC engine to the configured RPC engine
     RPC.setProtocolEngine(conf, TestRpcService.class, opts.rpcEngine);
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_IO_THREADS_KEY,
+        opts.clientIoThreads);
 
     Server server = startServer(opts);
     try {
@@ -267,6 +335,7 @@ public int run(String[] args) throws Exception {
         long totalCalls = 0;
         ctx.startThreads();
         long veryStart = System.nanoTime();
+        long allocatedStart = getServerAllocatedBytes();
 
         // Loop printing results every second until the specified
         // time has elapsed
@@ -291,6 +360,7 @@ public int run(String[] args) throws Exception {
           if (server != null) {
             cpuNanosServer = getTotalCpuTime(server.getHandlers());
           }
+          long allocated = getServerAllocatedBytes() - allocatedStart;
           System.out.println("====== Results ======");
           System.out.println("Options:\n" + opts);
           System.out.println("Total calls per second: " + callsPerSec);
@@ -299,7 +369,24 @@ public int run(String[] args) throws Exception {
           if (server != null) {
             System.out.println("CPU time per call on server: " +
                 (cpuNanosServer / totalCalls) + " ns");
+            if (allocatedStart >= 0) {
+              System.out.println("Bytes allocated per call on server: " +
+                  (allocated / totalCalls) + ", " +
+                  (allocated * 1000 / (veryEnd - veryStart)) +
+                  " MB per second");
+            }
           }
+          System.out.println("Call latency p50: " +
+              getLatencyPercentile(0.5) + " us, p99: " +
+              getLatencyPercentile(0.99) + " us");
+          // each caller has its own connection, which has its own thread
+          // unless the client uses shared I/O threads
+          Runtime runtime = Runtime.getRuntime();
+          System.gc();
+          System.out.println("Live threads: " + threadBean.getThreadCount() +
+              ", heap used: " +
+              (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024) +
+              " MB");
         } else {
           System.out.println("No calls!");
         }
@@ -356,7 +443,11 @@ public RpcServiceWrapper run() throws Exception {
       ctx.addThread(new MultithreadedTestUtil.RepeatingTestThread(ctx) {
         @Override
         public void doAnAction() throws Exception {
+          long start = System.nanoTime();
           proxy.doEcho(echoMessage);
+          int bucket = (int) Math.min((System.nanoTime() - start) / 1000 /
+              LATENCY_BUCKET_MICROS, latencyMicros.length() - 1);
+          latencyMicros.incrementAndGet(bucket);
           callCount.incrementAndGet();
         }
       });
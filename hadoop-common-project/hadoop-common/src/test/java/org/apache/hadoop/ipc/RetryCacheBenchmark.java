@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.ipc.RPC.RpcKind;
+import org.apache.hadoop.ipc.RetryCache.CacheEntryWithPayload;
+
+/**
+ * Benchmark of {@link RetryCache} with many RPC handlers.
+ *
+ * Each handler thread processes non-idempotent calls of its own client, like
+ * the NameNode does for creates or renames: it adds the entry of each call to
+ * the retry cache, and marks it completed with a payload. Once the cache is
+ * full, each new entry evicts the oldest entry of its segment. The benchmark
+ * reports the entries added per second with each number of segments.
+ *
+ * Usage: RetryCacheBenchmark [-handlers H] [-seconds S] [-heapPercent P]
+ *                            [-segments N[,N...]]
+ */
+public class RetryCacheBenchmark {
+  static final String USAGE = "Usage: RetryCacheBenchmark [-handlers H] " +
+      "[-seconds S] [-heapPercent P] [-segments N[,N...]]";
+
+  private static final long EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+  private final int numHandlers;
+  private final int seconds;
+  private final double heapPercent;
+
+  RetryCacheBenchmark(int numHandlers, int seconds, double heapPercent) {
+    this.numHandlers = numHandlers;
+    this.seconds = seconds;
+    this.heapPercent = heapPercent;
+  }
+
+  /** @return the number of entries added per second. */
+  long run(int numSegments) throws InterruptedException {
+    final RetryCache cache = new RetryCache(
+        "RetryCacheBenchmark" + numSegments, heapPercent, EXPIRY_NANOS,
+        numSegments);
+    final AtomicLong entries = new AtomicLong();
+    final CountDownLatch start = new CountDownLatch(1);
+    final long[] end = new long[1];
+    Thread[] handlers = new Thread[numHandlers];
+    for (int h = 0; h < numHandlers; h++) {
+      handlers[h] = new Thread(() -> {
+        final byte[] clientId = ClientId.getClientId();
+        // the retry cache only tracks the calls of RPC handlers
+        Server.getCurCall().set(new Server.Call(0, 0, null, null,
+            RpcKind.RPC_PROTOCOL_BUFFER, clientId));
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        long added = 0;
+        for (int callId = 0; System.nanoTime() < end[0]; callId++) {
+          CacheEntryWithPayload entry = RetryCache.waitForCompletion(cache,
+              null, clientId, callId);
+          RetryCache.setState(entry, true, clientId);
+          added++;
+        }
+        entries.addAndGet(added);
+      }, "Handler-" + h);
+      handlers[h].start();
+    }
+    end[0] = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    start.countDown();
+    for (Thread t : handlers) {
+      t.join();
+    }
+    System.out.printf("%d segments: %d entries per second, %d entries in " +
+        "the cache%n", cache.getNumSegments(), entries.get() / seconds,
+        cache.getCacheSet().size());
+    return entries.get() / seconds;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numHandlers = 200;
+    int seconds = 10;
+    double heapPercent = 0.03;
+    String segments = "1,16,64";
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+      if (args[i].equals("-handlers")) {
+        numHandlers = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-seconds")) {
+        seconds = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-heapPercent")) {
+        heapPercent = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("-segments")) {
+        segments = args[++i];
+      } else {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+    }
+
+    System.out.printf("%d handlers for %d seconds, %.3f%% of the heap%n",
+        numHandlers, seconds, heapPercent);
+    RetryCacheBenchmark bench = new RetryCacheBenchmark(numHandlers, seconds,
+        heapPercent);
+    for (String n : segments.split(",")) {
+      bench.run(Integer.parseInt(n.trim()));
+    }
+  }
+}
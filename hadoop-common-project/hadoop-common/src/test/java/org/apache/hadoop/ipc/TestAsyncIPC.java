@@ -38,6 +38,8 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -234,6 +236,52 @@ public void testAsyncCall() throws IOException, InterruptedException,
     internalTestAsyncCall(3, true, 2, 5, 10);
   }
 
+  @Test(timeout = 60000)
+  public void testAsyncCallWithIoThreads() throws IOException,
+      InterruptedException, ExecutionException {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_IO_THREADS_KEY, 2);
+    internalTestAsyncCall(3, false, 2, 5, 100);
+    internalTestAsyncCall(3, true, 2, 5, 10);
+  }
+
+  @Test(timeout = 60000)
+  public void testAsyncRpcFuture() throws IOException,
+      InterruptedException, ExecutionException {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_IO_THREADS_KEY, 2);
+    final Server server = new TestIPC.TestServer(10, false, conf);
+    final InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    final Client client = new Client(LongWritable.class, conf);
+    try {
+      final int count = 100;
+      final List<CompletableFuture<Writable>> futures = new ArrayList<>();
+      final List<Long> expectedValues = new ArrayList<>();
+      final Set<String> completingThreads = ConcurrentHashMap.newKeySet();
+      // the test runs in its own thread because of its timeout
+      Client.setAsynchronousMode(true);
+      for (int i = 0; i < count; i++) {
+        final long param = TestIPC.RANDOM.nextLong();
+        TestIPC.call(client, param, addr, conf);
+        futures.add(Client.getAsyncRpcFuture().whenComplete((value, e) ->
+            completingThreads.add(Thread.currentThread().getName())));
+        expectedValues.add(param);
+      }
+      for (int i = 0; i < count; i++) {
+        assertEquals("call" + i + " failed.", expectedValues.get(i).longValue(),
+            ((LongWritable) futures.get(i).get()).get());
+      }
+      // the calls are released from the limit without getting their AsyncGet
+      assertEquals(0, client.getAsyncCallCount());
+      for (String name : completingThreads) {
+        Assert.assertTrue(name, name.startsWith("IPC Client I/O thread") ||
+            name.equals(Thread.currentThread().getName()));
+      }
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test(timeout = 60000)
   public void testAsyncCallLimit() throws IOException,
       InterruptedException, ExecutionException {
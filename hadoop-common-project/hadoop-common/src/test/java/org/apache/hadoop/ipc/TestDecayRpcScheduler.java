@@ -538,4 +538,82 @@ public void testServiceUsersCase2() {
     // test priority of normal user.
     assertEquals(level - 1, scheduler.getPriorityLevel(mockCall("user1")));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testSketchCostStore() throws Exception {
+    Configuration conf = new Configuration();
+    final String namespace = "ipc.21";
+    conf.setClass(namespace + "." + CommonConfigurationKeys.IPC_COST_STORE_KEY,
+        SketchCallCostStore.class, CallCostStore.class);
+    conf.setLong(namespace + "."
+        + DecayRpcScheduler.IPC_SCHEDULER_DECAYSCHEDULER_PERIOD_KEY, 999999);
+    conf.set(namespace + "." + IPC_DECAYSCHEDULER_THRESHOLDS_KEY,
+        "25, 50, 75");
+    scheduler = new DecayRpcScheduler(4, namespace, conf);
+
+    // the same decisions as the default store, as the few identities are
+    // very unlikely to collide in all the rows of the sketch
+    assertEquals(0, getPriorityIncrementCallCount("A")); // 0 out of 0 calls
+    assertEquals(3, getPriorityIncrementCallCount("A")); // 1 out of 1 calls
+    assertEquals(0, getPriorityIncrementCallCount("B")); // 0 out of 2 calls
+    assertEquals(1, getPriorityIncrementCallCount("B")); // 1 out of 3 calls
+    assertEquals(0, getPriorityIncrementCallCount("C")); // 0 out of 4 calls
+    assertEquals(0, getPriorityIncrementCallCount("C")); // 1 out of 5 calls
+    assertEquals(1, getPriorityIncrementCallCount("A")); // 2 out of 6 calls
+    assertEquals(1, getPriorityIncrementCallCount("A")); // 3 out of 7 calls
+    assertEquals(2, getPriorityIncrementCallCount("A")); // 4 out of 8 calls
+    assertEquals(2, getPriorityIncrementCallCount("A")); // 5 out of 9 calls
+    assertEquals("{\"A\":6,\"B\":2,\"C\":2}",
+        scheduler.getCallVolumeSummary());
+    assertEquals(3, scheduler.getUniqueIdentityCount());
+    assertEquals(10, scheduler.getTotalCallVolume());
+
+    scheduler.forceDecay();
+    assertEquals("{\"A\":3,\"B\":1,\"C\":1}",
+        scheduler.getCallVolumeSummary());
+    assertEquals(5, scheduler.getTotalCallVolume());
+    assertEquals(10, scheduler.getTotalRawCallVolume());
+    assertEquals(2, scheduler.getPriorityLevel(mockCall("A")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("B")));
+
+    for (int i = 0; i < 4; i++) {
+      scheduler.forceDecay();
+    }
+    assertEquals(0, scheduler.getTotalCallVolume());
+    assertEquals(0, scheduler.getCallCostSnapshot().size());
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("A")));
+  }
+
+  @Test
+  public void testSketchCostStoreWithPortLessKey() {
+    Configuration conf = new Configuration();
+    final String namespace = "ipc.22";
+    conf.unset(namespace + "." + CommonConfigurationKeys.IPC_COST_STORE_KEY);
+    conf.setClass("ipc." + CommonConfigurationKeys.IPC_COST_STORE_KEY,
+        SketchCallCostStore.class, CallCostStore.class);
+    conf.setInt(namespace + "." + SketchCallCostStore.HEAVY_HITTERS_KEY, 2);
+    conf.setLong(namespace + "."
+        + DecayRpcScheduler.IPC_SCHEDULER_DECAYSCHEDULER_PERIOD_KEY, 999999);
+    scheduler = new DecayRpcScheduler(4, namespace, conf);
+
+    for (int i = 0; i < 20; i++) {
+      getPriorityIncrementCallCount("light" + i);
+    }
+    for (int i = 0; i < 20; i++) {
+      getPriorityIncrementCallCount("heavy");
+    }
+
+    // only the heavy hitters are tracked individually
+    Map<Object, Long> costs = scheduler.getCallCostSnapshot();
+    assertEquals(2, costs.size());
+    assertEquals(20, costs.get("heavy").longValue());
+    assertEquals(40, scheduler.getTotalCallVolume());
+    assertEquals(3, scheduler.getPriorityLevel(mockCall("heavy")));
+    assertEquals(0, scheduler.getPriorityLevel(mockCall("light0")));
+
+    scheduler.forceDecay();
+    String summary = scheduler.getSchedulingDecisionSummary();
+    Map<String, Object> summaryMap = (Map<String, Object>) JSON.parse(summary);
+    assertEquals(3L, summaryMap.get("heavy"));
+  }
+}
@@ -364,6 +364,49 @@ public void internalTestSerial(int handlerCount, boolean handlerSleep,
     server.stop();
   }
 
+  @Test(timeout=60000)
+  public void testSerialWithIoThreads()
+      throws IOException, InterruptedException {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_IO_THREADS_KEY, 2);
+    internalTestSerial(3, false, 2, 5, 100);
+    internalTestSerial(3, true, 2, 5, 10);
+  }
+
+  /**
+   * Check that the connections of a client with I/O threads don't have
+   * their own thread, and are closed once idle.
+   */
+  @Test(timeout=60000)
+  public void testConnectionsWithIoThreads() throws Exception {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_IO_THREADS_KEY, 1);
+    conf.setInt(
+        CommonConfigurationKeysPublic.IPC_CLIENT_CONNECTION_MAXIDLETIME_KEY,
+        500);
+    Server server = new TestServer(1, false);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      call(client, RANDOM.nextLong(), addr, conf);
+      call(client, RANDOM.nextLong(), addr, conf);
+      assertEquals(1, client.getConnectionIds().size());
+      boolean ioThread = false;
+      for (Thread t : Thread.getAllStackTraces().keySet()) {
+        assertFalse(t.getName(), t.getName().startsWith("IPC Client ("));
+        ioThread |= t.getName().startsWith("IPC Client I/O thread");
+      }
+      assertTrue(ioThread);
+      GenericTestUtils.waitFor(() -> client.getConnectionIds().isEmpty(),
+          100, 10000);
+      // a new connection is set up for the next call
+      call(client, RANDOM.nextLong(), addr, conf);
+    } finally {
+      client.stop();
+      server.stop();
+    }
+    assertTrue(client.getConnectionIds().isEmpty());
+  }
+
   @Test
   public void testAuxiliaryPorts() throws IOException, InterruptedException {
     int defaultPort = 9000;
@@ -722,6 +765,12 @@ public void testIpcTimeout() throws IOException {
     client.stop();
   }
 
+  @Test(timeout=60000)
+  public void testIpcTimeoutWithIoThreads() throws IOException {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_IO_THREADS_KEY, 1);
+    testIpcTimeout();
+  }
+
   @Test(timeout=60000)
   public void testIpcConnectTimeout() throws IOException {
     // start server
@@ -99,6 +99,7 @@
 import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
 import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -596,6 +597,48 @@ private void testCallsInternal(Configuration myConf) throws Exception {
     }
   }
 
+  @Test
+  public void testCallsWithDirectBuffers() throws Exception {
+    Configuration myConf = new Configuration(conf);
+    myConf.setBoolean(CommonConfigurationKeys.IPC_NAMESPACE + "." +
+        CommonConfigurationKeys.IPC_DIRECT_BUFFERS_ENABLE, true);
+    // the large transfers are written in parts with gathering writes
+    myConf.setInt(
+        CommonConfigurationKeys.IPC_SERVER_DIRECT_BUFFERS_MAX_SIZE_KEY,
+        256 * 1024);
+    testCallsInternal(myConf);
+
+    // the large transfers use heap buffers and the small calls don't
+    myConf.setInt(
+        CommonConfigurationKeys.IPC_SERVER_DIRECT_BUFFERS_MAX_SIZE_KEY, 1024);
+    testCallsInternal(myConf);
+  }
+
+  @Test
+  public void testDirectBuffersEnable() throws Exception {
+    Configuration myConf = new Configuration();
+    assertFalse(Server.getDirectBuffersEnable(
+        CommonConfigurationKeys.IPC_NAMESPACE, 8020, myConf));
+    myConf.setBoolean(CommonConfigurationKeys.IPC_NAMESPACE + "." +
+        CommonConfigurationKeys.IPC_DIRECT_BUFFERS_ENABLE, true);
+    assertTrue(Server.getDirectBuffersEnable(
+        CommonConfigurationKeys.IPC_NAMESPACE, 8020, myConf));
+    // the value for the port overrides the value for all the servers
+    myConf.setBoolean(CommonConfigurationKeys.IPC_NAMESPACE + ".8020." +
+        CommonConfigurationKeys.IPC_DIRECT_BUFFERS_ENABLE, false);
+    assertFalse(Server.getDirectBuffersEnable(
+        CommonConfigurationKeys.IPC_NAMESPACE, 8020, myConf));
+    assertTrue(Server.getDirectBuffersEnable(
+        CommonConfigurationKeys.IPC_NAMESPACE, 8021, myConf));
+
+    Server server = setupTestServer(myConf, 1);
+    try {
+      assertTrue(server.isDirectBuffersEnabled());
+    } finally {
+      server.stop();
+    }
+  }
+
   @Test
   public void testClientWithoutServer() throws Exception {
     TestRpcService proxy;
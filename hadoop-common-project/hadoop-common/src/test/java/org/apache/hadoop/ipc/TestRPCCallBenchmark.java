@@ -37,4 +37,32 @@ public void testBenchmarkWithProto() throws Exception {
       "--engine", "protobuf"});
     assertEquals(0, rc);
   }
+
+  @Test(timeout=20000)
+  public void testBenchmarkWithDirectBuffers() throws Exception {
+    int rc = ToolRunner.run(new RPCCallBenchmark(),
+        new String[] {
+      "--clientThreads", "30",
+      "--serverThreads", "30",
+      "--time", "5",
+      "--serverReaderThreads", "4",
+      "--messageSize", "1024",
+      "--engine", "protobuf",
+      "--directBuffers"});
+    assertEquals(0, rc);
+  }
+
+  @Test(timeout=20000)
+  public void testBenchmarkWithClientIoThreads() throws Exception {
+    int rc = ToolRunner.run(new RPCCallBenchmark(),
+        new String[] {
+      "--clientThreads", "30",
+      "--serverThreads", "30",
+      "--time", "5",
+      "--serverReaderThreads", "4",
+      "--messageSize", "1024",
+      "--engine", "protobuf",
+      "--clientIoThreads", "2"});
+    assertEquals(0, rc);
+  }
 }
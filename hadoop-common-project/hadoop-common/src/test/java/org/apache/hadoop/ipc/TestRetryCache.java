@@ -209,4 +209,58 @@ public void testOperations(final int input, final int numberOfThreads,
       Assert.assertEquals(0, testServer.retryCount.get());
     }
   }
+
+  @Test
+  public void testSegmentedCache() throws Exception {
+    RetryCache cache = new RetryCache("TestSegmentedRetryCache", 1,
+        100 * 1000 * 1000 * 1000L, 10);
+    // rounded up to a power of 2
+    Assert.assertEquals(16, cache.getNumSegments());
+
+    List<byte[]> clientIds = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      byte[] clientId = ClientId.getClientId();
+      clientIds.add(clientId);
+      for (int c = 0; c < 10; c++) {
+        cache.addCacheEntry(clientId, c);
+      }
+    }
+    Assert.assertEquals(1000, cache.getCacheSet().size());
+    int entries = 0;
+    for (RetryCache.CacheEntry entry : cache.getCacheSet()) {
+      Assert.assertTrue(entry.isSuccess());
+      entries++;
+    }
+    Assert.assertEquals(1000, entries);
+
+    // a retry of a completed call finds its entry in its segment
+    Server.Call call = new Server.Call(5, 1, null, null,
+        RpcKind.RPC_PROTOCOL_BUFFER, clientIds.get(7));
+    Server.getCurCall().set(call);
+    try {
+      RetryCache.CacheEntry entry = RetryCache.waitForCompletion(cache,
+          clientIds.get(7), 5);
+      Assert.assertTrue(entry.isSuccess());
+      Assert.assertEquals(1, cache.getMetricsForTests().getCacheHit());
+
+      // a new call adds an entry, which its retry then waits for
+      CacheEntryWithPayload newEntry = RetryCache.waitForCompletion(cache,
+          null, clientIds.get(7), 10);
+      Assert.assertFalse(newEntry.isSuccess());
+      RetryCache.setState(newEntry, true, "done");
+      CacheEntryWithPayload retried = RetryCache.waitForCompletion(cache,
+          null, clientIds.get(7), 10);
+      Assert.assertSame(newEntry, retried);
+      Assert.assertEquals("done", retried.getPayload());
+      Assert.assertEquals(1001, cache.getCacheSet().size());
+    } finally {
+      Server.getCurCall().set(null);
+    }
+
+    cache.lock();
+    cache.unlock();
+    RetryCache.clear(cache);
+    Assert.assertEquals(0, cache.getCacheSet().size());
+    Assert.assertEquals(1, cache.getMetricsForTests().getCacheCleared());
+  }
 }
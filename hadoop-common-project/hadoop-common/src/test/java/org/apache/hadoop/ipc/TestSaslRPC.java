@@ -785,6 +785,52 @@ public void testKerberosServerWithInvalidTokens() throws Exception {
     assertAuthEquals(KrbFailed,    getAuthMethod(KERBEROS, KERBEROS, UseToken.INVALID));
   }
 
+  /**
+   * Check that with shared client I/O threads, a connection only keeps its
+   * own thread if its SASL QoP wraps the stream, which QoP auth does not.
+   */
+  @Test(timeout=30000)
+  public void testClientIoThreadsWithQop() throws Exception {
+    conf.setInt(CommonConfigurationKeys.IPC_CLIENT_IO_THREADS_KEY, 1);
+    SecurityUtil.setAuthenticationMethod(
+        AuthenticationMethod.TOKEN, conf);
+    UserGroupInformation.setConfiguration(conf);
+
+    TestTokenSecretManager sm = new TestTokenSecretManager();
+    Server server = setupTestServer(conf, 1, sm);
+    try {
+      final InetSocketAddress addr = NetUtils.getConnectAddress(server);
+      final UserGroupInformation clientUgi =
+          UserGroupInformation.createRemoteUser("client");
+      clientUgi.setAuthenticationMethod(AuthenticationMethod.TOKEN);
+
+      TestTokenIdentifier tokenId = new TestTokenIdentifier(
+          new Text(clientUgi.getUserName()));
+      Token<?> token = new Token<>(tokenId, sm);
+      SecurityUtil.setTokenService(token, addr);
+      clientUgi.addToken(token);
+      clientUgi.doAs((PrivilegedExceptionAction<Void>) () -> {
+        final TestRpcService proxy = getClient(addr, conf);
+        try {
+          proxy.ping(null, newEmptyRequest());
+          proxy.ping(null, newEmptyRequest());
+          boolean ownThread = false;
+          for (Thread t : Thread.getAllStackTraces().keySet()) {
+            ownThread |= t.getName().startsWith("IPC Client (") &&
+                t.getName().endsWith(":" + addr.getPort() + " from client");
+          }
+          assertEquals("QoP " + expectedQop,
+              expectedQop != QualityOfProtection.AUTHENTICATION, ownThread);
+        } finally {
+          RPC.stopProxy(proxy);
+        }
+        return null;
+      });
+    } finally {
+      server.stop();
+    }
+  }
+
   // ensure that for all qop settings, client can handle postponed rpc
   // responses.  basically ensures that the rpc server isn't encrypting
   // and queueing the responses out of order.
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Tests for {@link SketchCallCostStore}. */
+public class TestSketchCallCostStore {
+
+  private static final String NAMESPACE = "ipc.8020";
+
+  private Configuration conf;
+
+  @Before
+  public void setup() {
+    conf = new Configuration();
+  }
+
+  private SketchCallCostStore newStore() {
+    SketchCallCostStore store = new SketchCallCostStore();
+    store.init(NAMESPACE, conf, 0.5);
+    return store;
+  }
+
+  private static Map<Object, long[]> getCosts(CallCostStore store) {
+    Map<Object, long[]> costs = new HashMap<>();
+    store.forEach((identity, decayedCost, rawCost) ->
+        costs.put(identity, new long[] {decayedCost, rawCost}));
+    return costs;
+  }
+
+  @Test
+  public void testAddAndDecay() {
+    SketchCallCostStore store = newStore();
+    assertFalse(store.isExact());
+    assertEquals(0, store.getDecayedCost("A"));
+
+    store.addCost("A", 8);
+    store.addCost("B", 3);
+    store.addCost("A", 4);
+    // the sketch never underestimates, and the few identities are very
+    // unlikely to collide in all the rows
+    assertEquals(12, store.getDecayedCost("A"));
+    assertEquals(3, store.getDecayedCost("B"));
+    assertEquals(0, store.getDecayedCost("C"));
+
+    store.decay();
+    assertEquals(6, store.getDecayedCost("A"));
+    assertEquals(1, store.getDecayedCost("B"));
+    Map<Object, long[]> costs = getCosts(store);
+    assertEquals(2, costs.size());
+    assertEquals(6, costs.get("A")[0]);
+    assertEquals(12, costs.get("A")[1]);
+
+    store.decay();
+    assertEquals(3, store.getDecayedCost("A"));
+    assertEquals(0, store.getDecayedCost("B"));
+    // the identities without a decayed cost leave the heavy hitters
+    costs = getCosts(store);
+    assertEquals(1, costs.size());
+    assertTrue(costs.containsKey("A"));
+  }
+
+  @Test
+  public void testHeavyHitters() {
+    conf.setInt(NAMESPACE + "." + SketchCallCostStore.HEAVY_HITTERS_KEY, 2);
+    SketchCallCostStore store = newStore();
+    for (int i = 0; i < 100; i++) {
+      store.addCost("light" + i, 1);
+    }
+    for (int i = 0; i < 50; i++) {
+      store.addCost("heavy1", 2);
+      store.addCost("heavy2", 1);
+    }
+
+    Map<Object, long[]> costs = getCosts(store);
+    assertEquals(2, costs.size());
+    assertTrue(costs.containsKey("heavy1"));
+    assertTrue(costs.containsKey("heavy2"));
+    // the raw cost counts from the admission, so it is at most the cost
+    assertTrue(costs.get("heavy1")[1] <= 100);
+    assertTrue(costs.get("heavy1")[1] >= 90);
+
+    // 102 identities, estimated from the counters of the first row
+    int count = store.getIdentityCount();
+    assertTrue("Unexpected count " + count, count >= 85 && count <= 120);
+  }
+
+  @Test
+  public void testSizeIsFixed() {
+    conf.setInt(NAMESPACE + "." + SketchCallCostStore.WIDTH_KEY, 64);
+    conf.setInt(NAMESPACE + "." + SketchCallCostStore.HEAVY_HITTERS_KEY, 8);
+    SketchCallCostStore store = newStore();
+    for (int i = 0; i < 10000; i++) {
+      store.addCost("user" + i, 1);
+    }
+    store.addCost("heavy", 5000);
+    assertEquals(8, getCosts(store).size());
+    assertTrue(getCosts(store).containsKey("heavy"));
+    // all the counters are taken, so the count is only a lower bound
+    assertTrue(store.getIdentityCount() >= 64);
+    // the cost of an identity is overestimated by the collisions
+    assertTrue(store.getDecayedCost("heavy") >= 5000);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWidthMustBePowerOfTwo() {
+    conf.setInt(NAMESPACE + "." + SketchCallCostStore.WIDTH_KEY, 1000);
+    newStore();
+  }
+}
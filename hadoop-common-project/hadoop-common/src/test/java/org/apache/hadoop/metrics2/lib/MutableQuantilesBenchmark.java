@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.lib;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.hadoop.metrics2.util.HistogramQuantiles;
+import org.apache.hadoop.metrics2.util.Quantile;
+import org.apache.hadoop.metrics2.util.QuantileEstimator;
+import org.apache.hadoop.metrics2.util.SampleQuantiles;
+
+/**
+ * Benchmark of {@link MutableQuantiles} with the {@link SampleQuantiles} and
+ * the {@link HistogramQuantiles} estimators.
+ *
+ * Many threads add latencies to a {@link MutableQuantiles}, like the RPC
+ * handlers do, and the benchmark reports the values added per second with
+ * each estimator. It then inserts a stream of latencies with a log-normal
+ * distribution in each estimator, and compares their quantiles with the exact
+ * ones.
+ *
+ * Usage: MutableQuantilesBenchmark [-threads T] [-seconds S] [-values N]
+ */
+public class MutableQuantilesBenchmark {
+  static final String USAGE = "Usage: MutableQuantilesBenchmark " +
+      "[-threads T] [-seconds S] [-values N]";
+
+  private final int numThreads;
+  private final int seconds;
+  private final int numValues;
+
+  MutableQuantilesBenchmark(int numThreads, int seconds, int numValues) {
+    this.numThreads = numThreads;
+    this.seconds = seconds;
+    this.numValues = numValues;
+  }
+
+  /** @return a latency in microseconds, with a median of 1ms. */
+  private static long nextLatency(Random random) {
+    return (long) (1000 * Math.exp(random.nextGaussian()));
+  }
+
+  /** @return the number of values added per second. */
+  long runThroughput(String name, QuantileEstimator estimator)
+      throws InterruptedException {
+    // the interval is longer than the run, so the window doesn't roll over
+    final MutableQuantiles quantiles = new MutableQuantiles(name, "bench",
+        "ops", "latency", 3600);
+    quantiles.setEstimator(estimator);
+    final AtomicLong added = new AtomicLong();
+    final CountDownLatch start = new CountDownLatch(1);
+    final long[] end = new long[1];
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final Random random = new Random(t);
+      threads[t] = new Thread(() -> {
+        long[] latencies = new long[1024];
+        for (int i = 0; i < latencies.length; i++) {
+          latencies[i] = nextLatency(random);
+        }
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        long n = 0;
+        while (System.nanoTime() < end[0]) {
+          for (long latency : latencies) {
+            quantiles.add(latency);
+          }
+          n += latencies.length;
+        }
+        added.addAndGet(n);
+      });
+      threads[t].start();
+    }
+    end[0] = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    start.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+    quantiles.stop();
+    System.out.printf("%s: %d values per second%n", name,
+        added.get() / seconds);
+    return added.get() / seconds;
+  }
+
+  void runAccuracy(Map<String, Supplier<QuantileEstimator>> estimators) {
+    Random random = new Random(0);
+    long[] values = new long[numValues];
+    for (int i = 0; i < numValues; i++) {
+      values[i] = nextLatency(random);
+    }
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+
+    for (Map.Entry<String, Supplier<QuantileEstimator>> e :
+        estimators.entrySet()) {
+      QuantileEstimator estimator = e.getValue().get();
+      for (long value : values) {
+        estimator.insert(value);
+      }
+      Map<Quantile, Long> snapshot = estimator.snapshot();
+      StringBuilder errors = new StringBuilder();
+      for (Quantile q : MutableQuantiles.quantiles) {
+        long exact = sorted[(int) Math.ceil(q.quantile * numValues) - 1];
+        long estimate = snapshot.get(q);
+        // the rank of the estimate, to compare with the rank error target
+        int rank = Arrays.binarySearch(sorted, estimate);
+        rank = rank < 0 ? -rank - 1 : rank;
+        errors.append(String.format(" p%d=%d (exact %d, value error %.2f%%, " +
+            "rank error %.3f%%)", (int) (100 * q.quantile), estimate, exact,
+            100.0 * Math.abs(estimate - exact) / exact,
+            100.0 * Math.abs((double) rank / numValues - q.quantile)));
+      }
+      System.out.printf("%s:%s%n", e.getKey(), errors);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numThreads = 64;
+    int seconds = 10;
+    int numValues = 1000000;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+      if (args[i].equals("-threads")) {
+        numThreads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-seconds")) {
+        seconds = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-values")) {
+        numValues = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+    }
+
+    System.out.printf("%d threads for %d seconds, %d values for accuracy%n",
+        numThreads, seconds, numValues);
+    MutableQuantilesBenchmark bench = new MutableQuantilesBenchmark(
+        numThreads, seconds, numValues);
+    bench.runThroughput("SampleQuantiles",
+        new SampleQuantiles(MutableQuantiles.quantiles));
+    bench.runThroughput("HistogramQuantiles",
+        new HistogramQuantiles(MutableQuantiles.quantiles));
+
+    Map<String, Supplier<QuantileEstimator>> estimators =
+        new LinkedHashMap<>();
+    estimators.put("SampleQuantiles",
+        () -> new SampleQuantiles(MutableQuantiles.quantiles));
+    estimators.put("HistogramQuantiles",
+        () -> new HistogramQuantiles(MutableQuantiles.quantiles));
+    bench.runAccuracy(estimators);
+  }
+}
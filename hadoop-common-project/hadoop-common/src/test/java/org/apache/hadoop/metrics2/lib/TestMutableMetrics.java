@@ -35,6 +35,7 @@
 import java.util.concurrent.CountDownLatch;
 
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.util.HistogramQuantiles;
 import org.apache.hadoop.metrics2.util.Quantile;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -369,6 +370,53 @@ public void testMutableQuantilesError() throws Exception {
     }
   }
 
+  /**
+   * Ensure that {@link MutableQuantiles} with a {@link HistogramQuantiles}
+   * estimator counts the values added by many threads, and that its estimates
+   * are within 1% of the quantiles.
+   */
+  @Test(timeout = 30000)
+  public void testMutableQuantilesWithHistogram() throws Exception {
+    MetricsRecordBuilder mb = mockMetricsRecordBuilder();
+    MetricsRegistry registry = new MetricsRegistry("test");
+    // Use a 5s rollover period
+    MutableQuantiles quantiles = registry.newQuantiles("foo", "stat", "Ops",
+        "Latency", 5);
+    quantiles.setEstimator(new HistogramQuantiles(MutableQuantiles.quantiles));
+    long start = System.nanoTime() / 1000000;
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (long i = 1; i <= 10000; i++) {
+          quantiles.add(i);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    long end = System.nanoTime() / 1000000;
+
+    Thread.sleep(6000 - (end - start));
+
+    registry.snapshot(mb, false);
+
+    verify(mb).addGauge(
+        info("FooNumOps", "Number of ops for stat with 5s interval"),
+        (long) 80000);
+    String name = "Foo%dthPercentileLatency";
+    String desc = "%d percentile latency with 5 second interval for stat";
+    for (Quantile q : MutableQuantiles.quantiles) {
+      int percentile = (int) (100 * q.quantile);
+      String n = String.format(name, percentile);
+      String d = String.format(desc, percentile);
+      long expected = (long) (q.quantile * 10000);
+      verify(mb).addGauge(eq(info(n, d)), leq(expected + expected / 100));
+      verify(mb).addGauge(eq(info(n, d)), geq(expected - expected / 100));
+    }
+  }
+
   /**
    * Test that {@link MutableQuantiles} rolls the window over at the specified
    * interval.
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestHistogramQuantiles {
+
+  static final Quantile[] quantiles = TestSampleQuantiles.quantiles;
+
+  private HistogramQuantiles estimator;
+
+  @Before
+  public void init() {
+    estimator = new HistogramQuantiles(quantiles, 4);
+  }
+
+  @Test
+  public void testCount() {
+    assertThat(estimator.getCount()).isZero();
+    assertThat(estimator.snapshot()).isNull();
+
+    estimator.insert(1337);
+    assertThat(estimator.getCount()).isOne();
+    // 1337 is counted in the bucket of 1328 to 1343
+    assertThat(estimator.toString()).isEqualTo(
+        "50.00 %ile +/- 5.00%: 1336\n" +
+        "75.00 %ile +/- 2.50%: 1336\n" +
+        "90.00 %ile +/- 1.00%: 1336\n" +
+        "95.00 %ile +/- 0.50%: 1336\n" +
+        "99.00 %ile +/- 0.10%: 1336");
+  }
+
+  @Test
+  public void testClear() {
+    for (int i = 0; i < 1000; i++) {
+      estimator.insert(i);
+    }
+    estimator.clear();
+    assertThat(estimator.getCount()).isZero();
+    assertThat(estimator.snapshot()).isNull();
+  }
+
+  /**
+   * Check that the buckets are ordered like the values, and that the value
+   * reported for a bucket is within 1% of the values counted in it.
+   */
+  @Test
+  public void testBuckets() {
+    for (long v = 0; v < 64; v++) {
+      assertThat(HistogramQuantiles.getValue(HistogramQuantiles.getBucket(v)))
+          .isEqualTo(v);
+    }
+    assertThat(HistogramQuantiles.getBucket(-5)).isZero();
+
+    final int minShift = Long.SIZE - HistogramQuantiles.MAX_VALUE_BITS;
+    Random r = new Random(0);
+    for (int i = 0; i < 100000; i++) {
+      long v = r.nextLong() >>> (minShift + r.nextInt(Long.SIZE - minShift));
+      long w = r.nextLong() >>> (minShift + r.nextInt(Long.SIZE - minShift));
+      if (v <= w) {
+        assertThat(HistogramQuantiles.getBucket(v))
+            .isLessThanOrEqualTo(HistogramQuantiles.getBucket(w));
+      }
+      long reported =
+          HistogramQuantiles.getValue(HistogramQuantiles.getBucket(v));
+      assertThat(Math.abs(reported - v)).isLessThanOrEqualTo(v / 100);
+    }
+
+    // the larger values share the last bucket
+    long max = (1L << HistogramQuantiles.MAX_VALUE_BITS) - 1;
+    assertThat(HistogramQuantiles.getBucket(max))
+        .isEqualTo(HistogramQuantiles.BUCKETS - 1);
+    assertThat(HistogramQuantiles.getBucket(max + 1))
+        .isEqualTo(HistogramQuantiles.BUCKETS - 1);
+    assertThat(HistogramQuantiles.getBucket(Long.MAX_VALUE))
+        .isEqualTo(HistogramQuantiles.BUCKETS - 1);
+    long reported =
+        HistogramQuantiles.getValue(HistogramQuantiles.BUCKETS - 1);
+    assertThat(reported).isLessThan(max)
+        .isGreaterThanOrEqualTo(max - max / 100);
+  }
+
+  /**
+   * Check that the relative error of the estimates is within 1% for some
+   * randomly permuted streams of items.
+   */
+  @Test
+  public void testQuantileError() {
+    final int count = 100000;
+    Random r = new Random(0xDEADDEAD);
+    Long[] values = new Long[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = (long) (i + 1);
+    }
+    for (int i = 0; i < 10; i++) {
+      Collections.shuffle(Arrays.asList(values), r);
+      estimator.clear();
+      for (int j = 0; j < count; j++) {
+        estimator.insert(values[j]);
+      }
+      Map<Quantile, Long> snapshot = estimator.snapshot();
+      for (Quantile q : quantiles) {
+        long actual = (long) (q.quantile * count);
+        long estimate = snapshot.get(q);
+        assertThat(Math.abs(estimate - actual))
+            .isLessThanOrEqualTo(actual / 100);
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentInsert() throws InterruptedException {
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 1; i <= 10000; i++) {
+          estimator.insert(i);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertThat(estimator.getCount()).isEqualTo(80000);
+    Map<Quantile, Long> snapshot = estimator.snapshot();
+    assertThat(snapshot.get(quantiles[0])).isBetween(4950L, 5050L);
+    assertThat(snapshot.get(quantiles[4])).isBetween(9801L, 9999L);
+  }
+}
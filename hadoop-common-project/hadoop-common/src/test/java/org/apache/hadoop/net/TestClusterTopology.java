@@ -235,6 +235,41 @@ public void testChooseRandomExcluded() {
     assertSame("node3", node.getName());
   }
 
+  /**
+   * Test that the lookups without the lock see the nodes added and removed.
+   */
+  @Test
+  public void testChooseRandomAfterTopologyChange() {
+    NetworkTopology cluster = NetworkTopology.getInstance(new Configuration());
+    NodeElement node1 = getNewNode(cluster, "node1", "/r1");
+    NodeElement node2 = getNewNode(cluster, "node2", "/r1");
+    assertEquals(2, cluster.getLeaves("/r1").size());
+    assertSame(node1, cluster.getNode("/r1/node1"));
+
+    NodeElement node3 = getNewNode(cluster, "node3", "/r2");
+    assertEquals(3, cluster.countNumOfAvailableNodes(NodeBase.ROOT, null));
+    assertSame(node3, cluster.chooseRandom("~/r1", null));
+    assertSame(node3, cluster.getNode("/r2/node3"));
+
+    cluster.remove(node1);
+    assertNull(cluster.getNode("/r1/node1"));
+    assertEquals(Arrays.asList(node2), cluster.getLeaves("/r1"));
+    for (int i = 0; i < 10; i++) {
+      assertSame(node2, cluster.chooseRandom("/r1", null));
+      assertSame(node2,
+          cluster.chooseRandom(NodeBase.ROOT, Arrays.asList(node3)));
+    }
+
+    // a node of the same name replaces the one in the tree
+    NodeElement newNode2 = getNewNode(cluster, "node2", "/r1");
+    assertSame(newNode2, cluster.chooseRandom("/r1", null));
+
+    cluster.remove(node3);
+    assertNull(cluster.getNode("/r2"));
+    assertEquals(1, cluster.getNumOfRacks());
+    assertNull(cluster.chooseRandom("~/r1", null));
+  }
+
   @Test
   public void testNodeBaseNormalizeRemoveLeadingSlash() {
     assertEquals("/d1", NodeBase.normalize("/d1///"));
@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util.bloom;
+
+import org.apache.hadoop.io.BloomMapFile;
+import org.apache.hadoop.util.hash.Hash;
+
+/**
+ * Benchmark of the membership tests of the filters used by
+ * {@link BloomMapFile}: a {@link DynamicBloomFilter} of a single row, as
+ * BloomMapFile writes when the keys fit in io.mapfile.bloom.size, a plain
+ * {@link BloomFilter} and a {@link BlockedBloomFilter}.
+ *
+ * Each filter is sized like BloomMapFile sizes it, for the number of keys,
+ * {@link BloomMapFile#HASH_COUNT} hash functions and the error rate. The
+ * benchmark adds the keys, then tests the same number of present keys and
+ * of absent keys, in a scattered order. It reports the millions of tests
+ * per second and the false positive rate of the absent keys.
+ *
+ * Usage: BloomFilterBenchmark [-keys N] [-errorRate R]
+ *                             [-hash murmur|jenkins] [-iterations N]
+ */
+public class BloomFilterBenchmark {
+  static final String USAGE = "Usage: BloomFilterBenchmark " +
+      "[-keys N] [-errorRate R] [-hash murmur|jenkins] [-iterations N]";
+
+  /** A prime to scatter the order of the tested keys. */
+  private static final long STRIDE = 1_000_000_007L;
+
+  private final int keys;
+  private final int vectorSize;
+  private final int hashType;
+  private final int iterations;
+  private final byte[] bytes = new byte[8];
+  private final Key key = new Key(bytes);
+
+  BloomFilterBenchmark(int keys, double errorRate, int hashType,
+      int iterations) {
+    this.keys = keys;
+    // the vector size of BloomMapFile.Writer
+    this.vectorSize = (int) Math.ceil((double) (-BloomMapFile.HASH_COUNT *
+        keys) / Math.log(1.0 - Math.pow(errorRate,
+        1.0 / BloomMapFile.HASH_COUNT)));
+    this.hashType = hashType;
+    this.iterations = iterations;
+  }
+
+  /** @return the key of the number n, reusing the same bytes. */
+  private Key key(long n) {
+    for (int i = 0; i < 8; i++) {
+      bytes[i] = (byte) (n >>> (8 * i));
+    }
+    return key;
+  }
+
+  /** @return the number of positive tests of keys from first on. */
+  private int test(Filter filter, long first) {
+    int positives = 0;
+    for (long i = 0; i < keys; i++) {
+      if (filter.membershipTest(key(first + i * STRIDE % keys))) {
+        positives++;
+      }
+    }
+    return positives;
+  }
+
+  void run(String name, Filter filter) {
+    long start = System.nanoTime();
+    for (int i = 0; i < keys; i++) {
+      filter.add(key(i));
+    }
+    double addSeconds = (System.nanoTime() - start) / 1e9;
+
+    double presentSeconds = Double.MAX_VALUE;
+    double absentSeconds = Double.MAX_VALUE;
+    int falsePositives = 0;
+    for (int i = 0; i < iterations; i++) {
+      start = System.nanoTime();
+      if (test(filter, 0) != keys) {
+        throw new IllegalStateException(name + " has false negatives");
+      }
+      presentSeconds = Math.min(presentSeconds,
+          (System.nanoTime() - start) / 1e9);
+      start = System.nanoTime();
+      falsePositives = test(filter, keys);
+      absentSeconds = Math.min(absentSeconds,
+          (System.nanoTime() - start) / 1e9);
+    }
+    System.out.printf("%-20s add %6.2f M/s, present %6.2f M/s, " +
+        "absent %6.2f M/s, false positives %.4f%%%n", name,
+        keys / addSeconds / 1e6, keys / presentSeconds / 1e6,
+        keys / absentSeconds / 1e6, 100.0 * falsePositives / keys);
+  }
+
+  public static void main(String[] args) {
+    int keys = 10 * 1000 * 1000;
+    double errorRate = 0.005;
+    int hashType = Hash.MURMUR_HASH;
+    int iterations = 3;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+      if (args[i].equals("-keys")) {
+        keys = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-errorRate")) {
+        errorRate = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("-hash")) {
+        hashType = Hash.parseHashType(args[++i]);
+      } else if (args[i].equals("-iterations")) {
+        iterations = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+    }
+    if (keys <= 0 || iterations <= 0 || hashType == Hash.INVALID_HASH) {
+      System.err.println(USAGE);
+      System.exit(-1);
+    }
+
+    BloomFilterBenchmark bench =
+        new BloomFilterBenchmark(keys, errorRate, hashType, iterations);
+    System.out.printf("%d keys, %d bits, %d hash functions, " +
+        "error rate %s%n", keys, bench.vectorSize, BloomMapFile.HASH_COUNT,
+        errorRate);
+    bench.run("DynamicBloomFilter", new DynamicBloomFilter(bench.vectorSize,
+        BloomMapFile.HASH_COUNT, hashType, keys));
+    bench.run("BloomFilter", new BloomFilter(bench.vectorSize,
+        BloomMapFile.HASH_COUNT, hashType));
+    bench.run("BlockedBloomFilter", new BlockedBloomFilter(bench.vectorSize,
+        BloomMapFile.HASH_COUNT, hashType));
+  }
+}
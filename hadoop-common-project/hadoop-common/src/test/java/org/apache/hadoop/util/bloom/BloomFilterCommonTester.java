@@ -132,6 +132,8 @@ private static Filter getSymmetricFilter(Class<?> filterClass,
       return new RetouchedBloomFilter(bitSetSize, hashFunctionNumber, hashType);
     } else if (filterClass == DynamicBloomFilter.class) {
       return new DynamicBloomFilter(bitSetSize, hashFunctionNumber, hashType, 3);
+    } else if (filterClass == BlockedBloomFilter.class) {
+      return new BlockedBloomFilter(bitSetSize, hashFunctionNumber, hashType);
     } else {
       //fail fast
       assertFalse("unexpected filterClass", true);
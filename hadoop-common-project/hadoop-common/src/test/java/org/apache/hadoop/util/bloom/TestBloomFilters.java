@@ -18,14 +18,18 @@
 
 package org.apache.hadoop.util.bloom;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.util.AbstractCollection;
 import java.util.BitSet;
 import java.util.Iterator;
 
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.util.bloom.BloomFilterCommonTester.BloomFilterTestStrategy;
 import org.apache.hadoop.util.hash.Hash;
 import org.junit.Assert;
@@ -251,6 +255,60 @@ public void testFiltersWithLargeVectorSize() {
         )).test();
   }
 
+  @Test
+  public void testBlockedBloomFilter() {
+    for (int hashId : new int[] {Hash.JENKINS_HASH, Hash.MURMUR_HASH}) {
+      BloomFilterCommonTester.of(hashId, numInsertions)
+          .withFilterInstance(
+              new BlockedBloomFilter(bitSize, hashFunctionNumber, hashId))
+          .withTestCases(ImmutableSet.of(
+              BloomFilterTestStrategy.KEY_TEST_STRATEGY,
+              BloomFilterTestStrategy.ADD_KEYS_STRATEGY,
+              BloomFilterTestStrategy.EXCEPTIONS_CHECK_STRATEGY,
+              BloomFilterTestStrategy.WRITE_READ_STRATEGY,
+              BloomFilterTestStrategy.FILTER_OR_STRATEGY,
+              BloomFilterTestStrategy.FILTER_AND_STRATEGY,
+              BloomFilterTestStrategy.FILTER_XOR_STRATEGY)).test();
+    }
+  }
+
+  @Test
+  public void testBlockedBloomFilterFalsePositives() throws IOException {
+    int keys = 10000;
+    BlockedBloomFilter filter = new BlockedBloomFilter(
+        BloomFilterCommonTester.optimalNumOfBits(keys, 0.01), 7,
+        Hash.MURMUR_HASH);
+    assertEquals(0, filter.getVectorSize() % BlockedBloomFilter.BLOCK_BITS);
+    for (int i = 0; i < keys; i++) {
+      filter.add(new Key(("key" + i).getBytes()));
+    }
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    filter.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    BlockedBloomFilter read = new BlockedBloomFilter();
+    read.readFields(in);
+    assertEquals(filter.getVectorSize(), read.getVectorSize());
+    for (int i = 0; i < keys; i++) {
+      assertTrue("false negative " + i,
+          read.membershipTest(new Key(("key" + i).getBytes())));
+    }
+
+    // the rate is a little higher than the 1% of a BloomFilter
+    int falsePositives = 0;
+    for (int i = 0; i < 10 * keys; i++) {
+      if (read.membershipTest(new Key(("absent" + i).getBytes()))) {
+        falsePositives++;
+      }
+    }
+    assertTrue("false positives " + falsePositives,
+        falsePositives < 10 * keys * 0.02);
+
+    read.not();
+    assertFalse(read.membershipTest(new Key("key0".getBytes())));
+  }
+
   @Test
   public void testNot() {
     BloomFilter bf = new BloomFilter(8, 1, Hash.JENKINS_HASH);
@@ -238,6 +238,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long    DFS_NAMENODE_CHECKPOINT_PERIOD_DEFAULT = 3600;
   public static final String  DFS_NAMENODE_CHECKPOINT_TXNS_KEY = "dfs.namenode.checkpoint.txns";
   public static final long    DFS_NAMENODE_CHECKPOINT_TXNS_DEFAULT = 1000000;
+  public static final String  DFS_NAMENODE_CHECKPOINT_PERIOD_MIN_TXNS_KEY =
+      "dfs.namenode.checkpoint.period.min-txns";
+  public static final long    DFS_NAMENODE_CHECKPOINT_PERIOD_MIN_TXNS_DEFAULT =
+      0;
   public static final String  DFS_NAMENODE_CHECKPOINT_MAX_RETRIES_KEY = "dfs.namenode.checkpoint.max-retries";
   public static final int     DFS_NAMENODE_CHECKPOINT_MAX_RETRIES_DEFAULT = 3;
   public static final String  DFS_NAMENODE_MISSING_CHECKPOINT_PERIODS_BEFORE_SHUTDOWN_KEY = "dfs.namenode.missing.checkpoint.periods.before.shutdown";
@@ -247,6 +251,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_HEARTBEAT_RECHECK_INTERVAL_DEFAULT = 5*60*1000;
   public static final String  DFS_NAMENODE_TOLERATE_HEARTBEAT_MULTIPLIER_KEY = "dfs.namenode.tolerate.heartbeat.multiplier";
   public static final int     DFS_NAMENODE_TOLERATE_HEARTBEAT_MULTIPLIER_DEFAULT = 4;
+  public static final String DFS_NAMENODE_HEARTBEAT_SHARDS_KEY =
+      "dfs.namenode.heartbeat.shards";
+  public static final int    DFS_NAMENODE_HEARTBEAT_SHARDS_DEFAULT = 16;
   public static final String  DFS_NAMENODE_ACCESSTIME_PRECISION_KEY =
       HdfsClientConfigKeys.DeprecatedKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_KEY;
   public static final long    DFS_NAMENODE_ACCESSTIME_PRECISION_DEFAULT = 3600000;
@@ -314,6 +321,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       = "dfs.namenode.blockreport.max.lock.hold.time";
   public static final long
       DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_DEFAULT = 4;
+  public static final String DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY
+      = "dfs.namenode.blockreport.diff.threads";
+  public static final int    DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_DEFAULT
+      = 1;
 
   public static final String
       DFS_NAMENODE_CORRUPT_BLOCK_DELETE_IMMEDIATELY_ENABLED =
@@ -399,6 +410,11 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.edits.asynclogging.pending.queue.size";
   public static final int
       DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE_DEFAULT = 4096;
+  public static final String
+      DFS_NAMENODE_EDITS_ASYNC_LOGGING_OVERLAP_SYNC =
+      "dfs.namenode.edits.asynclogging.overlap.sync";
+  public static final boolean
+      DFS_NAMENODE_EDITS_ASYNC_LOGGING_OVERLAP_SYNC_DEFAULT = false;
 
   public static final String DFS_NAMENODE_PROVIDED_ENABLED = "dfs.namenode.provided.enabled";
   public static final boolean DFS_NAMENODE_PROVIDED_ENABLED_DEFAULT = false;
@@ -431,6 +447,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
   public static final long    DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT = 500;
+  public static final String  DFS_CONTENT_SUMMARY_CACHE_ENABLED_KEY =
+      "dfs.content-summary.cache.enabled";
+  public static final boolean DFS_CONTENT_SUMMARY_CACHE_ENABLED_DEFAULT = false;
+  public static final String  DFS_CONTENT_SUMMARY_CACHE_SIZE_KEY =
+      "dfs.content-summary.cache.size";
+  public static final int     DFS_CONTENT_SUMMARY_CACHE_SIZE_DEFAULT = 1000;
   public static final String  DFS_DATANODE_FAILED_VOLUMES_TOLERATED_KEY = "dfs.datanode.failed.volumes.tolerated";
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String
@@ -516,6 +538,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int
       DFS_NAMENODE_SNAPSHOT_DIFF_LISTING_LIMIT_DEFAULT = 1000;
 
+  public static final String
+      DFS_NAMENODE_SNAPSHOT_DIFF_SKIP_UNCHANGED_SUBTREES =
+      "dfs.namenode.snapshotdiff.skip-unchanged-subtrees";
+  public static final boolean
+      DFS_NAMENODE_SNAPSHOT_DIFF_SKIP_UNCHANGED_SUBTREES_DEFAULT = true;
+
   public static final String DFS_NAMENODE_SNAPSHOT_MAX_LIMIT =
       "dfs.namenode.snapshot.max.limit";
   public static final int DFS_NAMENODE_SNAPSHOT_MAX_LIMIT_DEFAULT = 65536;
@@ -574,6 +602,11 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_REPLICATION_WORK_MULTIPLIER_PER_ITERATION =
       "dfs.namenode.replication.work.multiplier.per.iteration";
   public static final int DFS_NAMENODE_REPLICATION_WORK_MULTIPLIER_PER_ITERATION_DEFAULT = 2;
+  public static final String
+      DFS_NAMENODE_REDUNDANCY_CHOOSE_TARGETS_THREADS_KEY =
+      "dfs.namenode.redundancy.choose-targets.threads";
+  public static final int
+      DFS_NAMENODE_REDUNDANCY_CHOOSE_TARGETS_THREADS_DEFAULT = 1;
 
   //Delegation token related keys
   public static final String  DFS_NAMENODE_DELEGATION_KEY_UPDATE_INTERVAL_KEY = "dfs.namenode.delegation.key.update-interval";
@@ -613,6 +646,32 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_FSLOCK_FAIR_KEY =
       "dfs.namenode.fslock.fair";
   public static final boolean DFS_NAMENODE_FSLOCK_FAIR_DEFAULT = true;
+  public static final String DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_KEY =
+      "dfs.namenode.fslock.partitioned.enabled";
+  public static final boolean DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_NAMENODE_FSLOCK_PARTITIONS_KEY =
+      "dfs.namenode.fslock.partitions";
+  public static final int DFS_NAMENODE_FSLOCK_PARTITIONS_DEFAULT = 16;
+  public static final String DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY =
+      "dfs.namenode.fslock.partition.depth";
+  public static final int DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_DEFAULT = 1;
+  public static final String DFS_NAMENODE_BLOCKSMAP_OFFHEAP_ENABLED_KEY =
+      "dfs.namenode.blocksmap.offheap.enabled";
+  public static final boolean DFS_NAMENODE_BLOCKSMAP_OFFHEAP_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_NAMENODE_BLOCKSMAP_OFFHEAP_CAPACITY_KEY =
+      "dfs.namenode.blocksmap.offheap.initial.capacity";
+  public static final int DFS_NAMENODE_BLOCKSMAP_OFFHEAP_CAPACITY_DEFAULT =
+      1 << 20;
+  public static final String DFS_NAMENODE_INODEMAP_OFFHEAP_ENABLED_KEY =
+      "dfs.namenode.inodemap.offheap.enabled";
+  public static final boolean DFS_NAMENODE_INODEMAP_OFFHEAP_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_NAMENODE_INODEMAP_OFFHEAP_CAPACITY_KEY =
+      "dfs.namenode.inodemap.offheap.initial.capacity";
+  public static final int DFS_NAMENODE_INODEMAP_OFFHEAP_CAPACITY_DEFAULT =
+      1 << 20;
 
   public static final String  DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY =
       "dfs.namenode.lock.detailed-metrics.enabled";
@@ -681,6 +740,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_METRICS_SESSION_ID_KEY =
       HdfsClientConfigKeys.DeprecatedKeys.DFS_METRICS_SESSION_ID_KEY;
   public static final String  DFS_METRICS_PERCENTILES_INTERVALS_KEY = "dfs.metrics.percentiles.intervals";
+  public static final String  DFS_METRICS_QUANTILE_HISTOGRAM_ENABLE_KEY =
+      "dfs.metrics.quantile.histogram.enable";
+  public static final boolean DFS_METRICS_QUANTILE_HISTOGRAM_ENABLE_DEFAULT =
+      false;
 
   public static final String  DFS_DATANODE_PEER_STATS_ENABLED_KEY =
       "dfs.datanode.peer.stats.enabled";
@@ -740,6 +803,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_BUFFER_SIZE_KEY = "dfs.namenode.audit.log.async.buffer.size";
   public static final int     DFS_NAMENODE_AUDIT_LOG_ASYNC_BUFFER_SIZE_DEFAULT = 128;
   public static final String  DFS_NAMENODE_AUDIT_LOG_DEBUG_CMDLIST = "dfs.namenode.audit.log.debug.cmdlist";
+  public static final String  DFS_NAMENODE_AUDIT_ASYNC_LOGGER_QUEUE_SIZE_KEY =
+      "dfs.namenode.audit.async.logger.queue.size";
+  public static final int     DFS_NAMENODE_AUDIT_ASYNC_LOGGER_QUEUE_SIZE_DEFAULT =
+      8192;
   public static final String  DFS_NAMENODE_METRICS_LOGGER_PERIOD_SECONDS_KEY =
       "dfs.namenode.metrics.logger.period.seconds";
   public static final int     DFS_NAMENODE_METRICS_LOGGER_PERIOD_SECONDS_DEFAULT =
@@ -1129,6 +1196,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.image.parallel.threads";
   public static final int DFS_IMAGE_PARALLEL_THREADS_DEFAULT = 4;
 
+  public static final String DFS_IMAGE_PARALLEL_SAVE_THREADS_KEY =
+      "dfs.image.parallel.save.threads";
+  public static final int DFS_IMAGE_PARALLEL_SAVE_THREADS_DEFAULT = 0;
+
   // Edit Log segment transfer timeout
   public static final String DFS_EDIT_LOG_TRANSFER_TIMEOUT_KEY =
       "dfs.edit.log.transfer.timeout";
@@ -1431,6 +1502,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY =
       "dfs.journalnode.edit-cache-size.bytes";
   public static final int DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT = 1024 * 1024;
+  public static final String DFS_JOURNALNODE_EDIT_CACHE_OFFHEAP_KEY =
+      "dfs.journalnode.edit-cache.offheap.enabled";
+  public static final boolean DFS_JOURNALNODE_EDIT_CACHE_OFFHEAP_DEFAULT =
+      false;
 
   // Journal-node related configs for the client side.
   public static final String  DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY = "dfs.qjournal.queued-edits.limit.mb";
@@ -1471,6 +1546,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_DEFAULT = 600000; // 10 minutes
   public static final String DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_KEY = "dfs.namenode.retrycache.heap.percent";
   public static final float DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_DEFAULT = 0.03f;
+  public static final String DFS_NAMENODE_RETRY_CACHE_SEGMENTS_KEY =
+      "dfs.namenode.retrycache.segments";
+  public static final int DFS_NAMENODE_RETRY_CACHE_SEGMENTS_DEFAULT = 1;
   
   // Hidden configuration undocumented in hdfs-site. xml
   // Timeout to wait for block receiver and responder thread to stop
@@ -106,40 +106,40 @@ public Node chooseRandomWithStorageType(final String scope,
    */
   public Node chooseRandomWithStorageTypeTwoTrial(final String scope,
       final Collection<Node> excludedNodes, StorageType type) {
-    netlock.readLock().lock();
-    try {
-      String searchScope;
-      String excludedScope;
-      if (scope.startsWith("~")) {
-        searchScope = NodeBase.ROOT;
-        excludedScope = scope.substring(1);
-      } else {
-        searchScope = scope;
-        excludedScope = null;
-      }
-      // next do a two-trial search
-      // first trial, call the old method, inherited from NetworkTopology
-      Node n = chooseRandom(searchScope, excludedScope, excludedNodes);
-      if (n == null) {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("No node to choose.");
-        }
-        // this means there is simply no node to choose from
-        return null;
+    String searchScope;
+    String excludedScope;
+    if (scope.startsWith("~")) {
+      searchScope = NodeBase.ROOT;
+      excludedScope = scope.substring(1);
+    } else {
+      searchScope = scope;
+      excludedScope = null;
+    }
+    // next do a two-trial search
+    // first trial, call the old method, inherited from NetworkTopology,
+    // which reads the snapshot of the cluster without the lock
+    Node n = chooseRandom(searchScope, excludedScope, excludedNodes);
+    if (n == null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("No node to choose.");
       }
-      Preconditions.checkArgument(n instanceof DatanodeDescriptor);
-      DatanodeDescriptor dnDescriptor = (DatanodeDescriptor)n;
+      // this means there is simply no node to choose from
+      return null;
+    }
+    Preconditions.checkArgument(n instanceof DatanodeDescriptor);
+    DatanodeDescriptor dnDescriptor = (DatanodeDescriptor)n;
 
-      if (dnDescriptor.hasStorageType(type)) {
-        // the first trial succeeded, just return
-        return dnDescriptor;
-      } else {
-        // otherwise, make the second trial by calling the new method
-        LOG.debug("First trial failed, node has no type {}, " +
-            "making second trial carrying this type", type);
-        return chooseRandomWithStorageType(searchScope, excludedScope,
-            excludedNodes, type);
-      }
+    if (dnDescriptor.hasStorageType(type)) {
+      // the first trial succeeded, just return
+      return dnDescriptor;
+    }
+    // otherwise, make the second trial by calling the new method
+    LOG.debug("First trial failed, node has no type {}, " +
+        "making second trial carrying this type", type);
+    netlock.readLock().lock();
+    try {
+      return chooseRandomWithStorageType(searchScope, excludedScope,
+          excludedNodes, type);
     } finally {
       netlock.readLock().unlock();
     }
@@ -24,11 +24,7 @@
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -40,6 +36,7 @@
 import org.apache.hadoop.hdfs.server.namenode.FSEditLogLoader;
 import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
 import org.apache.hadoop.util.AutoCloseableLock;
+import org.apache.hadoop.util.Preconditions;
 
 /**
  * An in-memory cache of edits in their serialized form. This is used to serve
@@ -54,10 +51,15 @@
  * edits to avoid gaps. This decision is made because gaps are only handled
  * when in recovery mode, which the cache is not intended to be used for.
  *
- * <p>Batches of edits are stored in a {@link TreeMap} mapping the starting
- * transaction ID of the batch to the data buffer. Upon retrieval, the
- * relevant data buffers are concatenated together and a header is added
- * to construct a fully-formed edit data stream.
+ * <p>Batches of edits are stored back to back in a ring buffer of the size
+ * of the capacity, which is allocated once when the first batch is stored.
+ * The buffer is a direct buffer outside of the Java heap if
+ * {@value DFSConfigKeys#DFS_JOURNALNODE_EDIT_CACHE_OFFHEAP_KEY} is enabled.
+ * The starting transaction ID, offset and length of each batch are kept in
+ * an index ordered by transaction ID. Upon retrieval, the relevant batches
+ * are looked up under the read lock, copied out of the ring buffer after
+ * releasing it, and a header is added to construct a fully-formed edit data
+ * stream.
  *
  * <p>The cache is of a limited size capacity determined by
  * {@value DFSConfigKeys#DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY}. If the capacity
@@ -77,8 +79,12 @@ class JournaledEditsCache {
   private static final int INVALID_LAYOUT_VERSION = 0;
   private static final long INVALID_TXN_ID = -1;
 
+  private static final int INITIAL_INDEX_SIZE = 16;
+
   /** The capacity, in bytes, of this cache. */
   private final int capacity;
+  /** Whether the ring buffer is a direct buffer. */
+  private final boolean offHeap;
 
   /**
    * Read/write lock pair wrapped in AutoCloseable; these refer to the same
@@ -90,13 +96,24 @@ class JournaledEditsCache {
   // ** Start lock-protected fields **
 
   /**
-   * Stores the actual data as a mapping of the StartTxnId of a batch of edits
-   * to the serialized batch of edits. Stores only contiguous ranges; that is,
-   * the last transaction ID in one batch is always one less than the first
-   * transaction ID in the next batch. Though the map is protected by the lock,
-   * individual data buffers are immutable and can be accessed without locking.
+   * Stores the serialized batches of edits. The batches are stored back to
+   * back starting from the offset of the oldest batch, wrapping around at
+   * the end of the buffer. Only absolute positions of the buffer are used,
+   * through duplicates, so it can be read concurrently. Null until the
+   * first batch is stored.
+   */
+  private ByteBuffer data;
+  /**
+   * The index of the batches in data, as a ring of size a power of two
+   * starting at firstBatch. Stores only contiguous ranges; that is, the last
+   * transaction ID in one batch is always one less than the first
+   * transaction ID in the next batch.
    */
-  private final NavigableMap<Long, byte[]> dataMap = new TreeMap<>();
+  private long[] batchStartTxnIds = new long[INITIAL_INDEX_SIZE];
+  private int[] batchOffsets = new int[INITIAL_INDEX_SIZE];
+  private int[] batchLengths = new int[INITIAL_INDEX_SIZE];
+  private int firstBatch;
+  private int numBatches;
   /** Stores the layout version currently present in the cache. */
   private int layoutVersion = INVALID_LAYOUT_VERSION;
   /** Stores the serialized version of the header for the current version. */
@@ -117,20 +134,28 @@ class JournaledEditsCache {
   private long initialTxnId;
   /** The current total size of all buffers in this cache. */
   private int totalSize;
+  /**
+   * Incremented whenever the cache is cleared, after which the ring buffer
+   * is refilled from its start.
+   */
+  private long generation;
 
   // ** End lock-protected fields **
 
   JournaledEditsCache(Configuration conf) {
     capacity = conf.getInt(DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
         DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT);
-    if (capacity > 0.9 * Runtime.getRuntime().maxMemory()) {
+    offHeap = conf.getBoolean(
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_OFFHEAP_KEY,
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_OFFHEAP_DEFAULT);
+    if (!offHeap && capacity > 0.9 * Runtime.getRuntime().maxMemory()) {
       Journal.LOG.warn(String.format("Cache capacity is set at %d bytes but " +
           "maximum JVM memory is only %d bytes. It is recommended that you " +
           "decrease the cache size or increase the heap size.",
           capacity, Runtime.getRuntime().maxMemory()));
     }
-    Journal.LOG.info("Enabling the journaled edits cache with a capacity " +
-        "of bytes: " + capacity);
+    Journal.LOG.info("Enabling the " + (offHeap ? "off-heap " : "") +
+        "journaled edits cache with a capacity of bytes: " + capacity);
     ReadWriteLock lock = new ReentrantReadWriteLock(true);
     readLock = new AutoCloseableLock(lock.readLock());
     writeLock = new AutoCloseableLock(lock.writeLock());
@@ -166,6 +191,12 @@ class JournaledEditsCache {
   int retrieveEdits(long requestedStartTxn, int maxTxns,
       List<ByteBuffer> outputBuffers) throws IOException {
     int txnCount = 0;
+    ByteBuffer ring;
+    int[] offsets;
+    int[] lengths;
+    int count = 0;
+    long firstTxn;
+    long readGeneration;
 
     try (AutoCloseableLock l = readLock.acquire()) {
       if (lowestTxnId == INVALID_TXN_ID || requestedStartTxn < lowestTxnId) {
@@ -174,38 +205,43 @@ int retrieveEdits(long requestedStartTxn, int maxTxns,
         return 0;
       }
       outputBuffers.add(layoutHeader);
-      Iterator<Map.Entry<Long, byte[]>> incrBuffIter =
-          dataMap.tailMap(dataMap.floorKey(requestedStartTxn), true)
-              .entrySet().iterator();
-      long prevTxn = requestedStartTxn;
-      byte[] prevBuf = null;
-      // Stop when maximum transactions reached...
-      while ((txnCount < maxTxns) &&
-          // ... or there are no more entries ...
-          (incrBuffIter.hasNext() || prevBuf != null)) {
-        long currTxn;
-        byte[] currBuf;
-        if (incrBuffIter.hasNext()) {
-          Map.Entry<Long, byte[]> ent = incrBuffIter.next();
-          currTxn = ent.getKey();
-          currBuf = ent.getValue();
-        } else {
-          // This accounts for the trailing entry
-          currTxn = highestTxnId + 1;
-          currBuf = null;
-        }
-        if (prevBuf != null) { // True except for the first loop iteration
-          outputBuffers.add(ByteBuffer.wrap(prevBuf));
-          // if prevTxn < requestedStartTxn, the extra transactions will get
-          // removed after the loop, so don't include them in the txn count
-          txnCount += currTxn - Math.max(requestedStartTxn, prevTxn);
-        }
-        prevTxn = currTxn;
-        prevBuf = currBuf;
+      int batch = findBatch(requestedStartTxn);
+      offsets = new int[numBatches - batch];
+      lengths = new int[numBatches - batch];
+      firstTxn = batchStartTxnIds[indexOf(batch)];
+      // Stop when maximum transactions reached or there are no more batches
+      for (; txnCount < maxTxns && batch < numBatches; batch++, count++) {
+        int i = indexOf(batch);
+        long currTxn = batchStartTxnIds[i];
+        long nextTxn = batch + 1 < numBatches ?
+            batchStartTxnIds[indexOf(batch + 1)] : highestTxnId + 1;
+        offsets[count] = batchOffsets[i];
+        lengths[count] = batchLengths[i];
+        // if currTxn < requestedStartTxn, the extra transactions will get
+        // removed after the loop, so don't include them in the txn count
+        txnCount += nextTxn - Math.max(requestedStartTxn, currTxn);
+      }
+      ring = data;
+      readGeneration = generation;
+    }
+    // Copy the batches out of the ring without holding the lock, so writers
+    // are not blocked by the copy. A writer only overwrites the ring where
+    // it evicted batches, so the copies are intact unless the oldest copied
+    // batch has been evicted meanwhile, which is checked afterwards.
+    for (int j = 0; j < count; j++) {
+      outputBuffers.add(ByteBuffer.wrap(readBatch(ring, offsets[j],
+          lengths[j])));
+    }
+    try (AutoCloseableLock l = readLock.acquire()) {
+      if (generation != readGeneration || lowestTxnId > firstTxn) {
+        throw new CacheMissException(
+            Math.max(0, lowestTxnId - requestedStartTxn),
+            "Txns starting at %d were evicted from the cache while being " +
+                "read.", requestedStartTxn);
       }
-      // Release the lock before doing operations on the buffers (deserializing
-      // to find transaction boundaries, and copying into an output buffer)
     }
+    // Operate on the copied buffers without the lock (deserializing to find
+    // transaction boundaries, and copying into an output buffer)
     // Remove extra leading transactions in the first buffer
     ByteBuffer firstBuf = outputBuffers.get(1); // 0th is the header
     firstBuf.position(
@@ -268,10 +304,10 @@ void storeEdits(byte[] inputData, long newStartTxn, long newEndTxn,
         initialize(newStartTxn);
       }
 
-      while ((totalSize + inputData.length) > capacity && !dataMap.isEmpty()) {
-        Map.Entry<Long, byte[]> lowest = dataMap.firstEntry();
-        dataMap.remove(lowest.getKey());
-        totalSize -= lowest.getValue().length;
+      while ((totalSize + inputData.length) > capacity && numBatches > 0) {
+        totalSize -= batchLengths[firstBatch];
+        firstBatch = indexOf(1);
+        numBatches--;
       }
       if (inputData.length > capacity) {
         initialize(INVALID_TXN_ID);
@@ -284,18 +320,103 @@ void storeEdits(byte[] inputData, long newStartTxn, long newEndTxn,
             DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY, capacity));
         return;
       }
-      if (dataMap.isEmpty()) {
+      if (numBatches == 0) {
         lowestTxnId = newStartTxn;
       } else {
-        lowestTxnId = dataMap.firstKey();
+        lowestTxnId = batchStartTxnIds[firstBatch];
       }
 
-      dataMap.put(newStartTxn, inputData);
+      addBatch(newStartTxn, inputData);
       highestTxnId = newEndTxn;
       totalSize += inputData.length;
     }
   }
 
+  /**
+   * Append a batch of edits to the ring buffer and the index. The caller
+   * must have made room for the batch.
+   */
+  private void addBatch(long startTxn, byte[] inputData) {
+    if (data == null) {
+      data = offHeap ? ByteBuffer.allocateDirect(capacity)
+          : ByteBuffer.allocate(capacity);
+    }
+    if (numBatches == batchStartTxnIds.length) {
+      // Double the index, moving the batches to the start of the arrays
+      int newSize = 2 * numBatches;
+      batchStartTxnIds = copyIndex(batchStartTxnIds, new long[newSize]);
+      batchOffsets = copyIndex(batchOffsets, new int[newSize]);
+      batchLengths = copyIndex(batchLengths, new int[newSize]);
+      firstBatch = 0;
+    }
+    int offset = 0;
+    if (numBatches > 0) {
+      int last = indexOf(numBatches - 1);
+      offset = (batchOffsets[last] + batchLengths[last]) % capacity;
+    }
+    int i = indexOf(numBatches);
+    batchStartTxnIds[i] = startTxn;
+    batchOffsets[i] = offset;
+    batchLengths[i] = inputData.length;
+    numBatches++;
+
+    ByteBuffer buf = data.duplicate();
+    buf.position(offset);
+    int tailLength = Math.min(inputData.length, capacity - offset);
+    buf.put(inputData, 0, tailLength);
+    if (tailLength < inputData.length) {
+      buf.position(0);
+      buf.put(inputData, tailLength, inputData.length - tailLength);
+    }
+  }
+
+  /**
+   * Copy one of the full index arrays to dest, starting with the oldest
+   * batch.
+   */
+  private <T> T copyIndex(T src, T dest) {
+    System.arraycopy(src, firstBatch, dest, 0, numBatches - firstBatch);
+    System.arraycopy(src, 0, dest, numBatches - firstBatch, firstBatch);
+    return dest;
+  }
+
+  /** Copy a batch of edits out of the ring buffer. */
+  private byte[] readBatch(ByteBuffer ring, int offset, int length) {
+    byte[] buf = new byte[length];
+    ByteBuffer src = ring.duplicate();
+    src.position(offset);
+    int tailLength = Math.min(length, capacity - offset);
+    src.get(buf, 0, tailLength);
+    if (tailLength < length) {
+      src.position(0);
+      src.get(buf, tailLength, length - tailLength);
+    }
+    return buf;
+  }
+
+  /** @return the index in the index arrays of the n-th oldest batch. */
+  private int indexOf(int batch) {
+    return (firstBatch + batch) & (batchStartTxnIds.length - 1);
+  }
+
+  /**
+   * @return the position, counted from the oldest batch, of the batch
+   *         containing the given transaction, which must be in the cache.
+   */
+  private int findBatch(long txnId) {
+    int low = 0;
+    int high = numBatches - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (batchStartTxnIds[indexOf(mid)] <= txnId) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
   /**
    * Skip through a given stream of edits until the given transaction ID is
    * found. Return the number of bytes that appear prior to the given
@@ -356,7 +477,9 @@ private void updateLayoutVersion(int newLayoutVersion, long newStartTxn)
    *                        is to remain empty at this time.
    */
   private void initialize(long newInitialTxnId) {
-    dataMap.clear();
+    generation++;
+    firstBatch = 0;
+    numBatches = 0;
     totalSize = 0;
     initialTxnId = newInitialTxnId;
     lowestTxnId = initialTxnId;
@@ -364,7 +487,7 @@ private void initialize(long newInitialTxnId) {
   }
 
   /**
-   * Return the underlying data buffer used to store information about the
+   * Return a copy of the data buffer used to store information about the
    * given transaction ID.
    *
    * @param txnId Transaction ID whose containing buffer should be fetched.
@@ -373,7 +496,27 @@ private void initialize(long newInitialTxnId) {
   @VisibleForTesting
   byte[] getRawDataForTests(long txnId) {
     try (AutoCloseableLock l = readLock.acquire()) {
-      return dataMap.floorEntry(txnId).getValue();
+      int i = indexOf(findBatch(txnId));
+      return readBatch(data, batchOffsets[i], batchLengths[i]);
+    }
+  }
+
+  /**
+   * Overwrite the data buffer used to store information about the given
+   * transaction ID.
+   *
+   * @param txnId Transaction ID whose containing buffer should be replaced.
+   * @param buf The new data, of the same length as the current one
+   */
+  @VisibleForTesting
+  void setRawDataForTests(long txnId, byte[] buf) {
+    try (AutoCloseableLock l = writeLock.acquire()) {
+      int i = indexOf(findBatch(txnId));
+      Preconditions.checkArgument(buf.length == batchLengths[i]);
+      ByteBuffer dest = data.duplicate();
+      for (int j = 0; j < buf.length; j++) {
+        dest.put((batchOffsets[i] + j) % capacity, buf[j]);
+      }
     }
   }
 
@@ -44,8 +44,13 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -108,6 +113,7 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
 import org.apache.hadoop.hdfs.server.protocol.KeyUpdateCommand;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
@@ -127,6 +133,8 @@
 import org.apache.hadoop.util.Time;
 
 import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.hadoop.util.Preconditions;
 
 import org.slf4j.Logger;
@@ -344,6 +352,18 @@ public int getPendingSPSPaths() {
 
   /** Block report thread for handling async reports. */
   private final BlockReportProcessingThread blockReportThread;
+  /**
+   * Diffs the full block reports of the storages of a datanode in parallel,
+   * null if they are processed one storage at a time.
+   */
+  private final ExecutorService reportDiffExecutor;
+  /**
+   * Chooses the targets of the reconstruction work of an iteration of the
+   * redundancy monitor in parallel, null if they are chosen one block at a
+   * time.
+   */
+  private final ExecutorService chooseTargetsExecutor;
+  private final int chooseTargetsThreads;
 
   /**
    * Store blocks {@literal ->} datanodedescriptor(s) map of corrupt replicas.
@@ -507,9 +527,19 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
         startupDelayBlockDeletionInMs,
         blockIdManager);
     this.markedDeleteQueue = new ConcurrentLinkedQueue<>();
-    // Compute the map capacity by allocating 2% of total memory
-    this.blocksMap = new BlocksMap(
-        LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_ENABLED_DEFAULT)) {
+      this.blocksMap = BlocksMap.createOffHeap(conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_CAPACITY_KEY,
+          DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_CAPACITY_DEFAULT));
+      LOG.info("Using blocks map with off-heap ids, initial capacity {}",
+          blocksMap.getCapacity());
+    } else {
+      // Compute the map capacity by allocating 2% of total memory
+      this.blocksMap = new BlocksMap(
+          LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+    }
     this.placementPolicies = new BlockPlacementPolicies(
         conf, datanodeManager.getFSClusterStats(),
         datanodeManager.getNetworkTopology(),
@@ -584,6 +614,34 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
         DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY,
         DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT);
     this.blockReportThread = new BlockReportProcessingThread(queueSize);
+    int reportDiffThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_DEFAULT);
+    if (reportDiffThreads > 1) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(reportDiffThreads,
+          reportDiffThreads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("Block report diff #%d").build());
+      executor.allowCoreThreadTimeOut(true);
+      this.reportDiffExecutor = executor;
+    } else {
+      this.reportDiffExecutor = null;
+    }
+    this.chooseTargetsThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_REDUNDANCY_CHOOSE_TARGETS_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REDUNDANCY_CHOOSE_TARGETS_THREADS_DEFAULT);
+    if (chooseTargetsThreads > 1) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+          chooseTargetsThreads, chooseTargetsThreads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("Reconstruction targets #%d").build());
+      executor.allowCoreThreadTimeOut(true);
+      this.chooseTargetsExecutor = executor;
+    } else {
+      this.chooseTargetsExecutor = null;
+    }
 
     this.deleteCorruptReplicaImmediately =
         conf.getBoolean(DFS_NAMENODE_CORRUPT_BLOCK_DELETE_IMMEDIATELY_ENABLED,
@@ -805,6 +863,12 @@ public void close() {
       markedDeleteBlockScrubberThread.join(3000);
     } catch (InterruptedException ie) {
     }
+    if (reportDiffExecutor != null) {
+      reportDiffExecutor.shutdownNow();
+    }
+    if (chooseTargetsExecutor != null) {
+      chooseTargetsExecutor.shutdownNow();
+    }
     datanodeManager.close();
     pendingReconstruction.stop();
     blocksMap.close();
@@ -1166,6 +1230,14 @@ public boolean commitOrCompleteLastBlock(BlockCollection bc,
     }
     
     final boolean committed = commitBlock(lastBlock, commitBlock);
+    if (committed) {
+      // the length of the block is now the committed one
+      if (iip != null) {
+        namesystem.getFSDirectory().invalidateContentSummaries(iip);
+      } else {
+        namesystem.getFSDirectory().invalidateContentSummaries((INodeFile) bc);
+      }
+    }
     if (committed && lastBlock.isStriped()) {
       // update scheduled size for DatanodeStorages that do not store any
       // internal blocks
@@ -2106,37 +2178,24 @@ int computeReconstructionWorkForBlocks(
     }
 
     // Step 2: choose target nodes for each reconstruction task
-    for (BlockReconstructionWork rw : reconWork) {
-      // Exclude all of the containing nodes from being targets.
-      // This list includes decommissioning or corrupt nodes.
-      final Set<Node> excludedNodes = new HashSet<>(rw.getContainingNodes());
-
-      // Exclude all nodes which already exists as targets for the block
-      List<DatanodeStorageInfo> targets =
-          pendingReconstruction.getTargets(rw.getBlock());
-      if (targets != null) {
-        for (DatanodeStorageInfo dn : targets) {
-          excludedNodes.add(dn.getDatanodeDescriptor());
-        }
+    if (chooseTargetsExecutor != null && reconWork.size() > 1) {
+      chooseTargetsInParallel(reconWork);
+    } else {
+      for (BlockReconstructionWork rw : reconWork) {
+        chooseTargets(rw);
       }
-
-      // choose replication targets: NOT HOLDING THE GLOBAL LOCK
-      final BlockPlacementPolicy placementPolicy =
-          placementPolicies.getPolicy(rw.getBlock().getBlockType());
-      rw.chooseTargets(placementPolicy, storagePolicySuite, excludedNodes);
     }
 
     // Step 3: add tasks to the DN
     namesystem.writeLock();
     try {
-      for (BlockReconstructionWork rw : reconWork) {
-        final DatanodeStorageInfo[] targets = rw.getTargets();
-        if (targets == null || targets.length == 0) {
-          rw.resetTargets();
-          continue;
-        }
-
-        synchronized (neededReconstruction) {
+      synchronized (neededReconstruction) {
+        for (BlockReconstructionWork rw : reconWork) {
+          final DatanodeStorageInfo[] targets = rw.getTargets();
+          if (targets == null || targets.length == 0) {
+            rw.resetTargets();
+            continue;
+          }
           if (validateReconstructionWork(rw)) {
             scheduledWork++;
           }
@@ -2303,6 +2362,72 @@ private void adjustSrcNodesAndIndices(BlockInfoStriped block,
     }
   }
 
+  /**
+   * Choose the targets of a reconstruction task. This doesn't hold the
+   * namesystem lock.
+   */
+  private void chooseTargets(BlockReconstructionWork rw) {
+    // Exclude all of the containing nodes from being targets.
+    // This list includes decommissioning or corrupt nodes.
+    final Set<Node> excludedNodes = new HashSet<>(rw.getContainingNodes());
+
+    // Exclude all nodes which already exists as targets for the block
+    List<DatanodeStorageInfo> targets =
+        pendingReconstruction.getTargets(rw.getBlock());
+    if (targets != null) {
+      for (DatanodeStorageInfo dn : targets) {
+        excludedNodes.add(dn.getDatanodeDescriptor());
+      }
+    }
+
+    // choose replication targets: NOT HOLDING THE GLOBAL LOCK
+    final BlockPlacementPolicy placementPolicy =
+        placementPolicies.getPolicy(rw.getBlock().getBlockType());
+    rw.chooseTargets(placementPolicy, storagePolicySuite, excludedNodes);
+  }
+
+  /**
+   * Choose the targets of the reconstruction tasks on the choose targets
+   * threads, each thread taking a contiguous share of the tasks, and wait
+   * for all of them.
+   */
+  private void chooseTargetsInParallel(
+      List<BlockReconstructionWork> reconWork) {
+    final int numBatches = Math.min(chooseTargetsThreads, reconWork.size());
+    final int batchSize = (reconWork.size() + numBatches - 1) / numBatches;
+    List<Future<?>> futures = new ArrayList<>(numBatches);
+    for (int start = 0; start < reconWork.size(); start += batchSize) {
+      final List<BlockReconstructionWork> batch = reconWork.subList(start,
+          Math.min(start + batchSize, reconWork.size()));
+      Runnable task = () -> {
+        for (BlockReconstructionWork rw : batch) {
+          chooseTargets(rw);
+        }
+      };
+      try {
+        futures.add(chooseTargetsExecutor.submit(task));
+      } catch (RejectedExecutionException e) {
+        // the executor is shut down
+        task.run();
+      }
+    }
+    RuntimeException failure = null;
+    for (Future<?> future : futures) {
+      try {
+        Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof RuntimeException ?
+              (RuntimeException) e.getCause() :
+              new IllegalStateException(e.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
   @VisibleForTesting
   boolean validateReconstructionWork(BlockReconstructionWork rw) {
     BlockInfo block = rw.getBlock();
@@ -2928,6 +3053,231 @@ public boolean processReport(final DatanodeID nodeID,
     return !node.hasStaleStorages();
   }
 
+  /**
+   * @return whether the full block reports of the storages of a datanode
+   *         should be processed together by
+   *         {@link #processReports(DatanodeID, StorageBlockReport[],
+   *         BlockReportContext)}.
+   */
+  public boolean isReportDiffParallel() {
+    return reportDiffExecutor != null;
+  }
+
+  /**
+   * All the given storages of a datanode are reporting all their blocks.
+   * Works like calling
+   * {@link #processReport(DatanodeID, DatanodeStorage, BlockListAsLongs,
+   * BlockReportContext)} for each storage, except that the reported blocks
+   * of the storages are looked up and compared with the blocks known for
+   * the storages in parallel. Only the resulting changes to the
+   * (storage{@literal -->}block list) and (block{@literal -->}storage list)
+   * maps are applied one storage at a time.
+   *
+   * The write lock is held while the reports are diffed, so the diff
+   * threads only read the blocks map and each one only reorders the block
+   * list of its own storage.
+   *
+   * @return true if all known storages of the given DN have finished reporting.
+   * @throws IOException
+   */
+  public boolean processReports(final DatanodeID nodeID,
+      final StorageBlockReport[] reports,
+      final BlockReportContext context) throws IOException {
+    namesystem.writeLock();
+    final long startTime = Time.monotonicNow(); //after acquiring write lock
+    final long endTime;
+    DatanodeDescriptor node;
+    final List<StorageReportDiff> diffs = new ArrayList<>(reports.length);
+    String strBlockReportId =
+        context != null ? Long.toHexString(context.getReportId()) : "";
+    String fullBrLeaseId =
+        context != null ? Long.toHexString(context.getLeaseId()) : "";
+
+    try {
+      node = datanodeManager.getDatanode(nodeID);
+      if (node == null || !node.isRegistered()) {
+        throw new IOException(
+            "ProcessReport from dead or unregistered node: " + nodeID);
+      }
+
+      // a storage reported twice must be diffed after its first report is
+      // applied, as for reports processed one storage at a time
+      boolean parallel = reportDiffExecutor != null;
+      Set<DatanodeStorageInfo> storages = new HashSet<>();
+      for (StorageBlockReport report : reports) {
+        DatanodeStorage storage = report.getStorage();
+        DatanodeStorageInfo storageInfo =
+            providedStorageMap.getStorage(node, storage);
+        if (storageInfo == null) {
+          storageInfo = node.updateStorage(storage);
+        }
+        if (namesystem.isInStartupSafeMode()
+            && !StorageType.PROVIDED.equals(storageInfo.getStorageType())
+            && storageInfo.getBlockReportCount() > 0) {
+          blockLog.info("BLOCK* processReport 0x{} with lease ID 0x{}: "
+              + "discarded non-initial block report from {}"
+              + " because namenode still in startup phase",
+              strBlockReportId, fullBrLeaseId, nodeID);
+          blockReportLeaseManager.removeLease(node);
+          continue;
+        }
+        parallel &= storages.add(storageInfo);
+        diffs.add(new StorageReportDiff(storageInfo, report.getBlocks()));
+      }
+
+      if (parallel) {
+        diffReportsInParallel(diffs);
+      }
+      for (StorageReportDiff diff : diffs) {
+        if (!parallel) {
+          diffReport(diff);
+        }
+        if (diff.first) {
+          blockLog.info("BLOCK* processReport 0x{} with lease ID 0x{}: "
+              + "Processing first storage report for {} from datanode {}",
+              strBlockReportId, fullBrLeaseId,
+              diff.storageInfo.getStorageID(),
+              nodeID);
+          processFirstBlockReport(diff.storageInfo, diff.report,
+              diff.storedBlocks);
+        } else if (diff.diff != null) {
+          diff.invalidatedBlocks = applyReportDiff(diff.storageInfo,
+              diff.diff);
+        }
+        diff.storageInfo.receivedBlockReport();
+      }
+    } finally {
+      endTime = Time.monotonicNow();
+      namesystem.writeUnlock("processReports");
+    }
+
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    for (StorageReportDiff diff : diffs) {
+      if (blockLog.isDebugEnabled()) {
+        for (Block b : diff.invalidatedBlocks) {
+          blockLog.debug("BLOCK* processReport 0x{} with lease ID 0x{}: {} " +
+              "on node {} size {} does not belong to any file.",
+              strBlockReportId, fullBrLeaseId, b, node, b.getNumBytes());
+        }
+      }
+      // the storages share the processing time
+      if (metrics != null) {
+        metrics.addStorageBlockReport(
+            (int) ((endTime - startTime) / diffs.size()));
+      }
+      blockLog.info("BLOCK* processReport 0x{} with lease ID 0x{}: from " +
+          "storage {} node {}, blocks: {}, hasStaleStorage: {}, " +
+          "invalidatedBlocks: {}", strBlockReportId, fullBrLeaseId,
+          diff.storageInfo.getStorageID(), nodeID,
+          diff.report == null ? 0 : diff.report.getNumberOfBlocks(),
+          node.hasStaleStorages(), diff.invalidatedBlocks.size());
+    }
+    blockLog.info("BLOCK* processReport 0x{} with lease ID 0x{}: processed " +
+        "{} storages of node {} in {} msecs", strBlockReportId,
+        fullBrLeaseId, diffs.size(), nodeID, (endTime - startTime));
+    return !node.hasStaleStorages();
+  }
+
+  /**
+   * The full block report of a storage, and what it changes for the storage.
+   */
+  private static final class StorageReportDiff {
+    private final DatanodeStorageInfo storageInfo;
+    private final BlockListAsLongs report;
+    /** Whether this is the first report of the storage. */
+    private boolean first;
+    /** For a first report, the stored block of each reported replica. */
+    private List<BlockInfo> storedBlocks;
+    /** For other reports, the changes to make. */
+    private ReportDiff diff;
+    private Collection<Block> invalidatedBlocks = Collections.emptyList();
+
+    StorageReportDiff(DatanodeStorageInfo storageInfo,
+        BlockListAsLongs report) {
+      this.storageInfo = storageInfo;
+      this.report = report;
+    }
+  }
+
+  /** The changes to make for the full block report of a storage. */
+  private static final class ReportDiff {
+    private final Collection<BlockInfoToAdd> toAdd = new ArrayList<>();
+    private final Collection<BlockInfo> toRemove = new HashSet<>();
+    private final Collection<Block> toInvalidate = new ArrayList<>();
+    private final Collection<BlockToMarkCorrupt> toCorrupt =
+        new ArrayList<>();
+    private final Collection<StatefulBlockInfo> toUC = new ArrayList<>();
+  }
+
+  /**
+   * Compare the report of a storage with the blocks known for it, without
+   * changing the blocks map.
+   */
+  private void diffReport(StorageReportDiff diff) {
+    diff.first = diff.storageInfo.getBlockReportCount() == 0;
+    if (diff.first) {
+      diff.storedBlocks = getStoredBlocks(diff.report);
+    } else if (!StorageType.PROVIDED.equals(
+        diff.storageInfo.getStorageType())) {
+      // Block reports for provided storage are not
+      // maintained by DN heartbeats
+      ReportDiff d = new ReportDiff();
+      reportDiff(diff.storageInfo, diff.report,
+          d.toAdd, d.toRemove, d.toInvalidate, d.toCorrupt, d.toUC);
+      diff.diff = d;
+    }
+  }
+
+  /**
+   * Diff the reports on the report diff threads and wait for all of them,
+   * as the caller holds the write lock for them.
+   */
+  private void diffReportsInParallel(List<StorageReportDiff> diffs)
+      throws IOException {
+    List<Future<?>> futures = new ArrayList<>(diffs.size());
+    for (StorageReportDiff diff : diffs) {
+      try {
+        futures.add(reportDiffExecutor.submit(() -> diffReport(diff)));
+      } catch (RejectedExecutionException e) {
+        // the executor is shut down
+        diffReport(diff);
+      }
+    }
+    Throwable failure = null;
+    for (Future<?> future : futures) {
+      try {
+        Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure != null) {
+      throw new IOException(failure);
+    }
+  }
+
+  /**
+   * @return the stored block of each replica of the report, null for the
+   *         replicas of unknown blocks.
+   */
+  private List<BlockInfo> getStoredBlocks(BlockListAsLongs report) {
+    if (report == null) {
+      return null;
+    }
+    List<BlockInfo> storedBlocks =
+        new ArrayList<>(report.getNumberOfBlocks());
+    for (BlockReportReplica iblk : report) {
+      storedBlocks.add(getStoredBlock(iblk));
+    }
+    return storedBlocks;
+  }
+
   public void removeBRLeaseIfNeeded(final DatanodeID nodeID,
       final BlockReportContext context) throws IOException {
     namesystem.writeLock();
@@ -3002,24 +3352,30 @@ Collection<Block> processReport(
     // Modify the (block-->datanode) map, according to the difference
     // between the old and new block report.
     //
-    Collection<BlockInfoToAdd> toAdd = new ArrayList<>();
-    Collection<BlockInfo> toRemove = new HashSet<>();
-    Collection<Block> toInvalidate = new ArrayList<>();
-    Collection<BlockToMarkCorrupt> toCorrupt = new ArrayList<>();
-    Collection<StatefulBlockInfo> toUC = new ArrayList<>();
+    ReportDiff diff = new ReportDiff();
     reportDiff(storageInfo, report,
-                 toAdd, toRemove, toInvalidate, toCorrupt, toUC);
+        diff.toAdd, diff.toRemove, diff.toInvalidate, diff.toCorrupt,
+        diff.toUC);
+    return applyReportDiff(storageInfo, diff);
+  }
 
+  /**
+   * Apply the changes found by diffing the full block report of a storage.
+   * @return the reported blocks which do not belong to any file.
+   */
+  private Collection<Block> applyReportDiff(
+      final DatanodeStorageInfo storageInfo,
+      final ReportDiff diff) throws IOException {
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     // Process the blocks on each queue
-    for (StatefulBlockInfo b : toUC) { 
+    for (StatefulBlockInfo b : diff.toUC) {
       addStoredBlockUnderConstruction(b, storageInfo);
     }
-    for (BlockInfo b : toRemove) {
+    for (BlockInfo b : diff.toRemove) {
       removeStoredBlock(b, node);
     }
     int numBlocksLogged = 0;
-    for (BlockInfoToAdd b : toAdd) {
+    for (BlockInfoToAdd b : diff.toAdd) {
       addStoredBlock(b.stored, b.reported, storageInfo, null,
           numBlocksLogged < maxNumBlocksToLog);
       numBlocksLogged++;
@@ -3028,14 +3384,14 @@ Collection<Block> processReport(
       blockLog.info("BLOCK* processReport: logged info for {} of {} " +
           "reported.", maxNumBlocksToLog, numBlocksLogged);
     }
-    for (Block b : toInvalidate) {
+    for (Block b : diff.toInvalidate) {
       addToInvalidates(b, node);
     }
-    for (BlockToMarkCorrupt b : toCorrupt) {
+    for (BlockToMarkCorrupt b : diff.toCorrupt) {
       markBlockAsCorrupt(b, storageInfo, node);
     }
 
-    return toInvalidate;
+    return diff.toInvalidate;
   }
 
   /**
@@ -3095,12 +3451,26 @@ public void markBlockReplicasAsCorrupt(Block oldBlock,
   void processFirstBlockReport(
       final DatanodeStorageInfo storageInfo,
       final BlockListAsLongs report) throws IOException {
+    processFirstBlockReport(storageInfo, report, null);
+  }
+
+  /**
+   * @param storedBlocks the stored blocks of the replicas of the report,
+   *                     in the order of the report, if they were already
+   *                     looked up
+   */
+  private void processFirstBlockReport(
+      final DatanodeStorageInfo storageInfo,
+      final BlockListAsLongs report,
+      final List<BlockInfo> storedBlocks) throws IOException {
     if (report == null) return;
     assert (namesystem.hasWriteLock());
     assert (storageInfo.getBlockReportCount() == 0);
 
+    int index = 0;
     for (BlockReportReplica iblk : report) {
       ReplicaState reportedState = iblk.getState();
+      final int replicaIndex = index++;
 
       if (LOG.isDebugEnabled()) {
         LOG.debug("Initial report of block {} on {} size {} replicaState = {}",
@@ -3114,7 +3484,9 @@ void processFirstBlockReport(
         continue;
       }
 
-      BlockInfo storedBlock = getStoredBlock(iblk);
+      BlockInfo storedBlock = storedBlocks != null
+          && replicaIndex < storedBlocks.size()
+          ? storedBlocks.get(replicaIndex) : getStoredBlock(iblk);
 
       // If block does not belong to any file, we check if it violates
       // an integrity assumption of Name node
@@ -3329,7 +3701,11 @@ private void queueReportedBlock(DatanodeStorageInfo storageInfo, Block block,
               " from datanode {} for later processing because {}.",
           block, reportedState, storageInfo.getDatanodeDescriptor(), reason);
     }
-    pendingDNMessages.enqueueReportedBlock(storageInfo, block, reportedState);
+    // reports of several storages may be diffed in parallel
+    synchronized (pendingDNMessages) {
+      pendingDNMessages.enqueueReportedBlock(storageInfo, block,
+          reportedState);
+    }
   }
 
   /**
@@ -22,6 +22,7 @@
 
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.hdfs.util.OffHeapLongGSet;
 import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
 
@@ -67,6 +68,8 @@ public void remove()  {
   private final int capacity;
   
   private GSet<Block, BlockInfo> blocks;
+  /** Same as {@link #blocks} if the map is kept off-heap, otherwise null. */
+  private OffHeapLongGSet<Block, BlockInfo> offHeapBlocks;
 
   private final LongAdder totalReplicatedBlocks = new LongAdder();
   private final LongAdder totalECBlockGroups = new LongAdder();
@@ -90,9 +93,32 @@ public Iterator<BlockInfo> iterator() {
     };
   }
 
+  /**
+   * Create a map indexed by block id in an {@link OffHeapLongGSet}, which
+   * grows on demand starting from the given capacity. Only the ids are
+   * kept off-heap; the elements stay on the heap.
+   */
+  static BlocksMap createOffHeap(int initialCapacity) {
+    return new BlocksMap(
+        new OffHeapLongGSet<>(initialCapacity, Block::getBlockId));
+  }
+
+  private BlocksMap(OffHeapLongGSet<Block, BlockInfo> offHeapBlocks) {
+    this.capacity = offHeapBlocks.getCapacity();
+    this.offHeapBlocks = offHeapBlocks;
+    this.blocks = offHeapBlocks;
+  }
+
+  boolean isOffHeap() {
+    return offHeapBlocks != null;
+  }
 
   void close() {
     clear();
+    if (offHeapBlocks != null) {
+      offHeapBlocks.close();
+      offHeapBlocks = null;
+    }
     blocks = null;
   }
   
@@ -218,6 +244,9 @@ Iterable<BlockInfo> getBlocks() {
   
   /** Get the capacity of the HashMap that stores blocks */
   int getCapacity() {
+    if (offHeapBlocks != null) {
+      return offHeapBlocks.getCapacity();
+    }
     return capacity;
   }
 
@@ -29,6 +29,7 @@
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.classification.VisibleForTesting;
 
@@ -225,8 +226,10 @@ public Type getType() {
    */
   private boolean disallowed = false;
 
-  // The number of replication work pending before targets are determined
-  private int pendingReplicationWithoutTargets = 0;
+  // The number of replication work pending before targets are determined.
+  // The targets may be chosen by several threads at a time.
+  private final AtomicInteger pendingReplicationWithoutTargets =
+      new AtomicInteger();
 
   // HB processing can use it to tell if it is the first HB since DN restarted
   private boolean heartbeatedSinceRegistration = false;
@@ -660,12 +663,12 @@ Iterator<BlockInfo> getBlockIterator(
 
   @VisibleForTesting
   public void incrementPendingReplicationWithoutTargets() {
-    pendingReplicationWithoutTargets++;
+    pendingReplicationWithoutTargets.incrementAndGet();
   }
 
   @VisibleForTesting
   public void decrementPendingReplicationWithoutTargets() {
-    pendingReplicationWithoutTargets--;
+    pendingReplicationWithoutTargets.decrementAndGet();
   }
 
   /**
@@ -720,7 +723,7 @@ void addBlocksToBeInvalidated(List<Block> blocklist) {
    * The number of work items that are pending to be replicated.
    */
   int getNumberOfBlocksToBeReplicated() {
-    return pendingReplicationWithoutTargets + replicateBlocks.size();
+    return pendingReplicationWithoutTargets.get() + replicateBlocks.size();
   }
 
   /**
@@ -752,6 +755,23 @@ public BlockInfo[] getLeaseRecoveryCommand(int maxTransfers) {
     return blocks.toArray(new BlockInfo[blocks.size()]);
   }
 
+  /**
+   * @return whether blocks are queued for this datanode to recover,
+   *         replicate, reconstruct, invalidate, cache or uncache.
+   */
+  boolean hasPendingBlockWork() {
+    if (recoverBlocks.size() > 0 || replicateBlocks.size() > 0
+        || erasurecodeBlocks.size() > 0) {
+      return true;
+    }
+    synchronized (invalidateBlocks) {
+      if (invalidateBlocks.size() > 0) {
+        return true;
+      }
+    }
+    return pendingCached.size() > 0 || pendingUncached.size() > 0;
+  }
+
   /**
    * Remove the specified number of blocks to be invalidated
    */
@@ -1781,47 +1781,13 @@ private void addCacheCommands(String blockPoolId, DatanodeDescriptor nodeinfo,
     }
   }
 
-  /** Handle heartbeat from datanodes. */
-  public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
-      StorageReport[] reports, final String blockPoolId,
-      long cacheCapacity, long cacheUsed, int xceiverCount,
-      int xmitsInProgress, int failedVolumes,
-      VolumeFailureSummary volumeFailureSummary,
-      @Nonnull SlowPeerReports slowPeers,
-      @Nonnull SlowDiskReports slowDisks) throws IOException {
-    final DatanodeDescriptor nodeinfo;
-    try {
-      nodeinfo = getDatanode(nodeReg);
-    } catch (UnregisteredNodeException e) {
-      return new DatanodeCommand[]{RegisterCommand.REGISTER};
-    }
-
-    // Check if this datanode should actually be shutdown instead.
-    if (nodeinfo != null && nodeinfo.isDisallowed()) {
-      setDatanodeDead(nodeinfo);
-      throw new DisallowedDatanodeException(nodeinfo);
-    }
-
-    if (nodeinfo == null || !nodeinfo.isRegistered()) {
-      return new DatanodeCommand[]{RegisterCommand.REGISTER};
-    }
-    heartbeatManager.updateHeartbeat(nodeinfo, reports, cacheCapacity,
-        cacheUsed, xceiverCount, failedVolumes, volumeFailureSummary);
-
-    // If we are in safemode, do not send back any recovery / replication
-    // requests. Don't even drain the existing queue of work.
-    if (namesystem.isInSafeMode()) {
-      return new DatanodeCommand[0];
-    }
-
-    // block recovery command
-    final BlockRecoveryCommand brCommand = getBlockRecoveryCommand(blockPoolId,
-        nodeinfo);
-    if (brCommand != null) {
-      return new DatanodeCommand[]{brCommand};
-    }
-
-    final List<DatanodeCommand> cmds = new ArrayList<>();
+  /**
+   * Add the commands for the blocks queued for a datanode to recover,
+   * replicate, reconstruct, invalidate, cache or uncache.
+   */
+  private void addBlockCommands(String blockPoolId,
+      DatanodeDescriptor nodeinfo, int xmitsInProgress,
+      List<DatanodeCommand> cmds) {
     // Allocate _approximately_ maxTransfers pending tasks to DataNode.
     // NN chooses pending tasks based on the ratio between the lengths of
     // replication and erasure-coded block queues.
@@ -1829,6 +1795,7 @@ public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
     int totalECBlocks = nodeinfo.getNumberOfBlocksToBeErasureCoded();
     int totalBlocks = totalReplicateBlocks + totalECBlocks;
     if (totalBlocks > 0) {
+
       int maxTransfers;
       if (nodeinfo.isDecommissionInProgress()) {
         maxTransfers = blockManager.getReplicationStreamsHardLimit()
@@ -1883,6 +1850,102 @@ public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
     }
     // cache commands
     addCacheCommands(blockPoolId, nodeinfo, cmds);
+  }
+
+  /** Handle heartbeat from datanodes. */
+  public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
+      StorageReport[] reports, final String blockPoolId,
+      long cacheCapacity, long cacheUsed, int xceiverCount,
+      int xmitsInProgress, int failedVolumes,
+      VolumeFailureSummary volumeFailureSummary,
+      @Nonnull SlowPeerReports slowPeers,
+      @Nonnull SlowDiskReports slowDisks) throws IOException {
+    final DatanodeDescriptor nodeinfo = updateHeartbeat(nodeReg, reports,
+        cacheCapacity, cacheUsed, xceiverCount, failedVolumes,
+        volumeFailureSummary);
+    if (nodeinfo == null) {
+      return new DatanodeCommand[]{RegisterCommand.REGISTER};
+    }
+    return getHeartbeatCommands(nodeReg, nodeinfo, blockPoolId,
+        xmitsInProgress, true, slowPeers, slowDisks);
+  }
+
+  /**
+   * Update the state and the statistics of a datanode from its heartbeat.
+   * This doesn't need the namesystem lock; it only takes the lock of the
+   * heartbeat shard of the datanode.
+   *
+   * @return the datanode, or null if it has to register again.
+   * @throws DisallowedDatanodeException if the datanode is not allowed to
+   *         connect to the namenode.
+   */
+  public DatanodeDescriptor updateHeartbeat(DatanodeRegistration nodeReg,
+      StorageReport[] reports, long cacheCapacity, long cacheUsed,
+      int xceiverCount, int failedVolumes,
+      VolumeFailureSummary volumeFailureSummary) throws IOException {
+    final DatanodeDescriptor nodeinfo;
+    try {
+      nodeinfo = getDatanode(nodeReg);
+    } catch (UnregisteredNodeException e) {
+      return null;
+    }
+
+    // Check if this datanode should actually be shutdown instead.
+    if (nodeinfo != null && nodeinfo.isDisallowed()) {
+      setDatanodeDead(nodeinfo);
+      throw new DisallowedDatanodeException(nodeinfo);
+    }
+
+    if (nodeinfo == null || !nodeinfo.isRegistered()) {
+      return null;
+    }
+    if (!heartbeatManager.updateHeartbeat(nodeinfo, reports, cacheCapacity,
+        cacheUsed, xceiverCount, failedVolumes, volumeFailureSummary)) {
+      // the datanode was removed after the check above
+      return null;
+    }
+    return nodeinfo;
+  }
+
+  /**
+   * @return whether the commands for the heartbeat of the datanode have to
+   *         be built under the namesystem read lock, as blocks are queued
+   *         for the datanode to recover, replicate, reconstruct, invalidate,
+   *         cache or uncache.
+   */
+  public boolean hasPendingBlockCommands(DatanodeDescriptor nodeinfo) {
+    return !namesystem.isInSafeMode() && nodeinfo.hasPendingBlockWork();
+  }
+
+  /**
+   * Build the commands to send back to a datanode for its heartbeat.
+   *
+   * @param includeBlockCommands whether to include the commands for the
+   *        blocks queued for the datanode. The caller has to hold the
+   *        namesystem read lock if so. Otherwise the queued blocks are left
+   *        for a later heartbeat.
+   */
+  public DatanodeCommand[] getHeartbeatCommands(DatanodeRegistration nodeReg,
+      DatanodeDescriptor nodeinfo, final String blockPoolId,
+      int xmitsInProgress, boolean includeBlockCommands,
+      @Nonnull SlowPeerReports slowPeers,
+      @Nonnull SlowDiskReports slowDisks) throws IOException {
+    // If we are in safemode, do not send back any recovery / replication
+    // requests. Don't even drain the existing queue of work.
+    if (namesystem.isInSafeMode()) {
+      return new DatanodeCommand[0];
+    }
+
+    final List<DatanodeCommand> cmds = new ArrayList<>();
+    if (includeBlockCommands) {
+      // block recovery command
+      final BlockRecoveryCommand brCommand =
+          getBlockRecoveryCommand(blockPoolId, nodeinfo);
+      if (brCommand != null) {
+        return new DatanodeCommand[]{brCommand};
+      }
+      addBlockCommands(blockPoolId, nodeinfo, xmitsInProgress, cmds);
+    }
     // key update command
     blockManager.addKeyUpdateCommand(cmds, nodeinfo);
 
@@ -25,148 +25,187 @@
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Datanode statistics.
  * For decommissioning/decommissioned nodes, only used capacity is counted.
+ *
+ * The totals are kept in {@link LongAdder}s, so the heartbeats of different
+ * datanodes update them without a common lock. The statistics per storage
+ * type are kept in shards, each with its own lock, and the statistics of a
+ * datanode are always added to and subtracted from the same shard.
  */
 class DatanodeStats {
 
-  private final StorageTypeStatsMap statsMap = new StorageTypeStatsMap();
-  private long capacityTotal = 0L;
-  private long capacityUsed = 0L;
-  private long capacityUsedNonDfs = 0L;
-  private long capacityRemaining = 0L;
-  private long blockPoolUsed = 0L;
-  private int xceiverCount = 0;
-  private long cacheCapacity = 0L;
-  private long cacheUsed = 0L;
-
-  private int nodesInService = 0;
-  private int nodesInServiceXceiverCount = 0;
-  private int expiredHeartbeats = 0;
-
-  synchronized void add(final DatanodeDescriptor node) {
-    xceiverCount += node.getXceiverCount();
+  private final StorageTypeStatsMap[] statsMaps;
+  private final LongAdder capacityTotal = new LongAdder();
+  private final LongAdder capacityUsed = new LongAdder();
+  private final LongAdder capacityUsedNonDfs = new LongAdder();
+  private final LongAdder capacityRemaining = new LongAdder();
+  private final LongAdder blockPoolUsed = new LongAdder();
+  private final LongAdder xceiverCount = new LongAdder();
+  private final LongAdder cacheCapacity = new LongAdder();
+  private final LongAdder cacheUsed = new LongAdder();
+
+  private final LongAdder nodesInService = new LongAdder();
+  private final LongAdder nodesInServiceXceiverCount = new LongAdder();
+  private final LongAdder expiredHeartbeats = new LongAdder();
+
+  DatanodeStats() {
+    this(1);
+  }
+
+  DatanodeStats(int numShards) {
+    statsMaps = new StorageTypeStatsMap[numShards];
+    for (int i = 0; i < numShards; i++) {
+      statsMaps[i] = new StorageTypeStatsMap();
+    }
+  }
+
+  /** @return the shard of the given datanode, out of numShards. */
+  static int getShard(DatanodeDescriptor node, int numShards) {
+    return (System.identityHashCode(node) & Integer.MAX_VALUE) % numShards;
+  }
+
+  void add(final DatanodeDescriptor node) {
+    xceiverCount.add(node.getXceiverCount());
     if (node.isInService()) {
-      capacityUsed += node.getDfsUsed();
-      capacityUsedNonDfs += node.getNonDfsUsed();
-      blockPoolUsed += node.getBlockPoolUsed();
-      nodesInService++;
-      nodesInServiceXceiverCount += node.getXceiverCount();
-      capacityTotal += node.getCapacity();
-      capacityRemaining += node.getRemaining();
-      cacheCapacity += node.getCacheCapacity();
-      cacheUsed += node.getCacheUsed();
+      capacityUsed.add(node.getDfsUsed());
+      capacityUsedNonDfs.add(node.getNonDfsUsed());
+      blockPoolUsed.add(node.getBlockPoolUsed());
+      nodesInService.increment();
+      nodesInServiceXceiverCount.add(node.getXceiverCount());
+      capacityTotal.add(node.getCapacity());
+      capacityRemaining.add(node.getRemaining());
+      cacheCapacity.add(node.getCacheCapacity());
+      cacheUsed.add(node.getCacheUsed());
     } else if (node.isDecommissionInProgress() ||
         node.isEnteringMaintenance()) {
-      cacheCapacity += node.getCacheCapacity();
-      cacheUsed += node.getCacheUsed();
+      cacheCapacity.add(node.getCacheCapacity());
+      cacheUsed.add(node.getCacheUsed());
     }
-    Set<StorageType> storageTypes = new HashSet<>();
-    for (DatanodeStorageInfo storageInfo : node.getStorageInfos()) {
-      if (storageInfo.getState() != DatanodeStorage.State.FAILED) {
-        statsMap.addStorage(storageInfo, node);
-        storageTypes.add(storageInfo.getStorageType());
+    final StorageTypeStatsMap statsMap =
+        statsMaps[getShard(node, statsMaps.length)];
+    synchronized (statsMap) {
+      Set<StorageType> storageTypes = new HashSet<>();
+      for (DatanodeStorageInfo storageInfo : node.getStorageInfos()) {
+        if (storageInfo.getState() != DatanodeStorage.State.FAILED) {
+          statsMap.addStorage(storageInfo, node);
+          storageTypes.add(storageInfo.getStorageType());
+        }
+      }
+      for (StorageType storageType : storageTypes) {
+        statsMap.addNode(storageType, node);
       }
-    }
-    for (StorageType storageType : storageTypes) {
-      statsMap.addNode(storageType, node);
     }
   }
 
-  synchronized void subtract(final DatanodeDescriptor node) {
-    xceiverCount -= node.getXceiverCount();
+  void subtract(final DatanodeDescriptor node) {
+    xceiverCount.add(-node.getXceiverCount());
     if (node.isInService()) {
-      capacityUsed -= node.getDfsUsed();
-      capacityUsedNonDfs -= node.getNonDfsUsed();
-      blockPoolUsed -= node.getBlockPoolUsed();
-      nodesInService--;
-      nodesInServiceXceiverCount -= node.getXceiverCount();
-      capacityTotal -= node.getCapacity();
-      capacityRemaining -= node.getRemaining();
-      cacheCapacity -= node.getCacheCapacity();
-      cacheUsed -= node.getCacheUsed();
+      capacityUsed.add(-node.getDfsUsed());
+      capacityUsedNonDfs.add(-node.getNonDfsUsed());
+      blockPoolUsed.add(-node.getBlockPoolUsed());
+      nodesInService.decrement();
+      nodesInServiceXceiverCount.add(-node.getXceiverCount());
+      capacityTotal.add(-node.getCapacity());
+      capacityRemaining.add(-node.getRemaining());
+      cacheCapacity.add(-node.getCacheCapacity());
+      cacheUsed.add(-node.getCacheUsed());
     } else if (node.isDecommissionInProgress() ||
         node.isEnteringMaintenance()) {
-      cacheCapacity -= node.getCacheCapacity();
-      cacheUsed -= node.getCacheUsed();
+      cacheCapacity.add(-node.getCacheCapacity());
+      cacheUsed.add(-node.getCacheUsed());
     }
-    Set<StorageType> storageTypes = new HashSet<>();
-    for (DatanodeStorageInfo storageInfo : node.getStorageInfos()) {
-      if (storageInfo.getState() != DatanodeStorage.State.FAILED) {
-        statsMap.subtractStorage(storageInfo, node);
-        storageTypes.add(storageInfo.getStorageType());
+    final StorageTypeStatsMap statsMap =
+        statsMaps[getShard(node, statsMaps.length)];
+    synchronized (statsMap) {
+      Set<StorageType> storageTypes = new HashSet<>();
+      for (DatanodeStorageInfo storageInfo : node.getStorageInfos()) {
+        if (storageInfo.getState() != DatanodeStorage.State.FAILED) {
+          statsMap.subtractStorage(storageInfo, node);
+          storageTypes.add(storageInfo.getStorageType());
+        }
+      }
+      for (StorageType storageType : storageTypes) {
+        statsMap.subtractNode(storageType, node);
       }
-    }
-    for (StorageType storageType : storageTypes) {
-      statsMap.subtractNode(storageType, node);
     }
   }
 
   /** Increment expired heartbeat counter. */
   void incrExpiredHeartbeats() {
-    expiredHeartbeats++;
+    expiredHeartbeats.increment();
   }
 
-  synchronized Map<StorageType, StorageTypeStats> getStatsMap() {
-    return statsMap.get();
+  Map<StorageType, StorageTypeStats> getStatsMap() {
+    final Map<StorageType, StorageTypeStats> merged =
+        new EnumMap<>(StorageType.class);
+    for (StorageTypeStatsMap statsMap : statsMaps) {
+      synchronized (statsMap) {
+        statsMap.addTo(merged);
+      }
+    }
+    return merged;
   }
 
-  synchronized long getCapacityTotal() {
-    return capacityTotal;
+  long getCapacityTotal() {
+    return capacityTotal.sum();
   }
 
-  synchronized long getCapacityUsed() {
-    return capacityUsed;
+  long getCapacityUsed() {
+    return capacityUsed.sum();
   }
 
-  synchronized long getCapacityRemaining() {
-    return capacityRemaining;
+  long getCapacityRemaining() {
+    return capacityRemaining.sum();
   }
 
-  synchronized long getBlockPoolUsed() {
-    return blockPoolUsed;
+  long getBlockPoolUsed() {
+    return blockPoolUsed.sum();
   }
 
-  synchronized int getXceiverCount() {
-    return xceiverCount;
+  int getXceiverCount() {
+    return xceiverCount.intValue();
   }
 
-  synchronized long getCacheCapacity() {
-    return cacheCapacity;
+  long getCacheCapacity() {
+    return cacheCapacity.sum();
   }
 
-  synchronized long getCacheUsed() {
-    return cacheUsed;
+  long getCacheUsed() {
+    return cacheUsed.sum();
   }
 
-  synchronized int getNodesInService() {
-    return nodesInService;
+  int getNodesInService() {
+    return nodesInService.intValue();
   }
 
-  synchronized int getNodesInServiceXceiverCount() {
-    return nodesInServiceXceiverCount;
+  int getNodesInServiceXceiverCount() {
+    return nodesInServiceXceiverCount.intValue();
   }
 
-  synchronized int getExpiredHeartbeats() {
-    return expiredHeartbeats;
+  int getExpiredHeartbeats() {
+    return expiredHeartbeats.intValue();
   }
 
-  synchronized float getCapacityRemainingPercent() {
-    return DFSUtilClient.getPercentRemaining(capacityRemaining, capacityTotal);
+  float getCapacityRemainingPercent() {
+    return DFSUtilClient.getPercentRemaining(getCapacityRemaining(),
+        getCapacityTotal());
   }
 
-  synchronized float getPercentBlockPoolUsed() {
-    return DFSUtilClient.getPercentUsed(blockPoolUsed, capacityTotal);
+  float getPercentBlockPoolUsed() {
+    return DFSUtilClient.getPercentUsed(getBlockPoolUsed(),
+        getCapacityTotal());
   }
 
-  synchronized long getCapacityUsedNonDFS() {
-    return capacityUsedNonDfs;
+  long getCapacityUsedNonDFS() {
+    return capacityUsedNonDfs.sum();
   }
 
-  synchronized float getCapacityUsedPercent() {
-    return DFSUtilClient.getPercentUsed(capacityUsed, capacityTotal);
+  float getCapacityUsedPercent() {
+    return DFSUtilClient.getPercentUsed(getCapacityUsed(), getCapacityTotal());
   }
 
   static final class StorageTypeStatsMap {
@@ -174,8 +213,16 @@ static final class StorageTypeStatsMap {
     private Map<StorageType, StorageTypeStats> storageTypeStatsMap =
         new EnumMap<>(StorageType.class);
 
-    private Map<StorageType, StorageTypeStats> get() {
-      return new EnumMap<>(storageTypeStatsMap);
+    private void addTo(Map<StorageType, StorageTypeStats> merged) {
+      for (Map.Entry<StorageType, StorageTypeStats> e :
+          storageTypeStatsMap.entrySet()) {
+        StorageTypeStats stats = merged.get(e.getKey());
+        if (stats == null) {
+          stats = new StorageTypeStats(e.getKey());
+          merged.put(e.getKey(), stats);
+        }
+        stats.add(e.getValue());
+      }
     }
 
     private void addNode(StorageType storageType,
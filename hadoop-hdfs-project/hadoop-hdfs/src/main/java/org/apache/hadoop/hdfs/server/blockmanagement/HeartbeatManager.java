@@ -40,8 +40,12 @@
 
 /**
  * Manage the heartbeats received from datanodes.
- * The datanode list and statistics are synchronized
- * by the heartbeat manager lock.
+ * The datanode list is synchronized by the heartbeat manager lock.
+ * The datanodes are split into shards, and a heartbeat only takes the lock of
+ * the shard of its datanode, so the heartbeats of datanodes in different
+ * shards are processed concurrently. Changes of the datanode list or of the
+ * admin state of a datanode take the heartbeat manager lock and then the
+ * lock of the shard.
  */
 class HeartbeatManager implements DatanodeStatistics {
   static final Logger LOG = LoggerFactory.getLogger(HeartbeatManager.class);
@@ -63,8 +67,14 @@ class HeartbeatManager implements DatanodeStatistics {
    */
   private final List<DatanodeDescriptor> datanodes = new ArrayList<>();
 
-  /** Statistics, which are synchronized by the heartbeat manager lock. */
-  private final DatanodeStats stats = new DatanodeStats();
+  /** The locks of the shards of the datanodes. */
+  private final Object[] shardLocks;
+
+  /**
+   * Statistics, which are updated under the lock of the shard of each
+   * datanode.
+   */
+  private final DatanodeStats stats;
 
   /** The time period to check for expired datanodes. */
   private final long heartbeatRecheckInterval;
@@ -96,6 +106,19 @@ class HeartbeatManager implements DatanodeStatistics {
     enableLogStaleNodes = conf.getBoolean(
         DFSConfigKeys.DFS_NAMENODE_ENABLE_LOG_STALE_DATANODE_KEY,
         DFSConfigKeys.DFS_NAMENODE_ENABLE_LOG_STALE_DATANODE_DEFAULT);
+    final int numShards = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_HEARTBEAT_SHARDS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_HEARTBEAT_SHARDS_DEFAULT);
+    if (numShards <= 0) {
+      throw new IllegalArgumentException(
+          DFSConfigKeys.DFS_NAMENODE_HEARTBEAT_SHARDS_KEY +
+          " must be positive, but is " + numShards);
+    }
+    shardLocks = new Object[numShards];
+    for (int i = 0; i < numShards; i++) {
+      shardLocks[i] = new Object();
+    }
+    stats = new DatanodeStats(numShards);
 
     if (avoidStaleDataNodesForWrite && staleInterval < recheckInterval) {
       this.heartbeatRecheckInterval = staleInterval;
@@ -112,6 +135,16 @@ void activate() {
     heartbeatThread.start();
   }
 
+  /** @return the lock of the shard of the given datanode. */
+  private Object getShardLock(DatanodeDescriptor node) {
+    return shardLocks[DatanodeStats.getShard(node, shardLocks.length)];
+  }
+
+  @VisibleForTesting
+  int getNumShards() {
+    return shardLocks.length;
+  }
+
   void close() {
     heartbeatThread.interrupt();
     try {
@@ -220,11 +253,13 @@ public long getProvidedCapacity() {
 
   synchronized void register(final DatanodeDescriptor d) {
     if (!d.isAlive()) {
-      addDatanode(d);
+      synchronized (getShardLock(d)) {
+        addDatanode(d);
 
-      //update its timestamp
-      d.updateHeartbeatState(StorageReport.EMPTY_ARRAY, 0L, 0L, 0, 0, null);
-      stats.add(d);
+        //update its timestamp
+        d.updateHeartbeatState(StorageReport.EMPTY_ARRAY, 0L, 0L, 0, 0, null);
+        stats.add(d);
+      }
     }
   }
 
@@ -235,105 +270,138 @@ synchronized DatanodeDescriptor[] getDatanodes() {
   synchronized void addDatanode(final DatanodeDescriptor d) {
     // update in-service node count
     datanodes.add(d);
-    d.setAlive(true);
+    synchronized (getShardLock(d)) {
+      d.setAlive(true);
+    }
   }
 
   void updateDnStat(final DatanodeDescriptor d){
-    stats.add(d);
+    synchronized (getShardLock(d)) {
+      stats.add(d);
+    }
   }
 
   synchronized void removeDatanode(DatanodeDescriptor node) {
-    if (node.isAlive()) {
-      stats.subtract(node);
-      datanodes.remove(node);
-      removeNodeFromStaleList(node);
-      node.setAlive(false);
+    synchronized (getShardLock(node)) {
+      if (node.isAlive()) {
+        stats.subtract(node);
+        datanodes.remove(node);
+        removeNodeFromStaleList(node);
+        node.setAlive(false);
+      }
     }
   }
 
-  synchronized void updateHeartbeat(final DatanodeDescriptor node,
+  /**
+   * Update the state and the statistics of a datanode from its heartbeat.
+   * This only takes the lock of the shard of the datanode.
+   *
+   * @return false if the datanode was removed or has to register again
+   *         meanwhile, and the heartbeat was ignored.
+   */
+  boolean updateHeartbeat(final DatanodeDescriptor node,
       StorageReport[] reports, long cacheCapacity, long cacheUsed,
       int xceiverCount, int failedVolumes,
       VolumeFailureSummary volumeFailureSummary) {
-    stats.subtract(node);
-    try {
-      blockManager.updateHeartbeat(node, reports, cacheCapacity, cacheUsed,
-          xceiverCount, failedVolumes, volumeFailureSummary);
-    } finally {
-      stats.add(node);
+    synchronized (getShardLock(node)) {
+      if (!node.isRegistered()) {
+        return false;
+      }
+      stats.subtract(node);
+      try {
+        blockManager.updateHeartbeat(node, reports, cacheCapacity, cacheUsed,
+            xceiverCount, failedVolumes, volumeFailureSummary);
+      } finally {
+        stats.add(node);
+      }
+      return true;
     }
   }
 
-  synchronized void updateLifeline(final DatanodeDescriptor node,
+  void updateLifeline(final DatanodeDescriptor node,
       StorageReport[] reports, long cacheCapacity, long cacheUsed,
       int xceiverCount, int failedVolumes,
       VolumeFailureSummary volumeFailureSummary) {
-    stats.subtract(node);
-    try {
-      // This intentionally calls updateHeartbeatState instead of
-      // updateHeartbeat, because we don't want to modify the
-      // heartbeatedSinceRegistration flag.  Arrival of a lifeline message does
-      // not count as arrival of the first heartbeat.
-      blockManager.updateHeartbeatState(node, reports, cacheCapacity, cacheUsed,
-          xceiverCount, failedVolumes, volumeFailureSummary);
-    } finally {
-      stats.add(node);
+    synchronized (getShardLock(node)) {
+      if (!node.isRegistered()) {
+        return;
+      }
+      stats.subtract(node);
+      try {
+        // This intentionally calls updateHeartbeatState instead of
+        // updateHeartbeat, because we don't want to modify the
+        // heartbeatedSinceRegistration flag.  Arrival of a lifeline message
+        // does not count as arrival of the first heartbeat.
+        blockManager.updateHeartbeatState(node, reports, cacheCapacity,
+            cacheUsed, xceiverCount, failedVolumes, volumeFailureSummary);
+      } finally {
+        stats.add(node);
+      }
     }
   }
 
   synchronized void startDecommission(final DatanodeDescriptor node) {
-    if (!node.isAlive()) {
-      LOG.info("Dead node {} is decommissioned immediately.", node);
-      node.setDecommissioned();
-    } else {
-      stats.subtract(node);
-      node.startDecommission();
-      stats.add(node);
+    synchronized (getShardLock(node)) {
+      if (!node.isAlive()) {
+        LOG.info("Dead node {} is decommissioned immediately.", node);
+        node.setDecommissioned();
+      } else {
+        stats.subtract(node);
+        node.startDecommission();
+        stats.add(node);
+      }
     }
   }
 
   synchronized void startMaintenance(final DatanodeDescriptor node) {
-    if (!node.isAlive()) {
-      LOG.info("Dead node {} is put in maintenance state immediately.", node);
-      node.setInMaintenance();
-    } else {
-      stats.subtract(node);
-      if (node.isDecommissioned()) {
-        LOG.info("Decommissioned node " + node + " is put in maintenance state"
-            + " immediately.");
-        node.setInMaintenance();
-      } else if (blockManager.getMinReplicationToBeInMaintenance() == 0) {
-        LOG.info("MinReplicationToBeInMaintenance is set to zero. " + node +
-            " is put in maintenance state" + " immediately.");
+    synchronized (getShardLock(node)) {
+      if (!node.isAlive()) {
+        LOG.info("Dead node {} is put in maintenance state immediately.",
+            node);
         node.setInMaintenance();
       } else {
-        node.startMaintenance();
+        stats.subtract(node);
+        if (node.isDecommissioned()) {
+          LOG.info("Decommissioned node " + node +
+              " is put in maintenance state immediately.");
+          node.setInMaintenance();
+        } else if (blockManager.getMinReplicationToBeInMaintenance() == 0) {
+          LOG.info("MinReplicationToBeInMaintenance is set to zero. " + node +
+              " is put in maintenance state" + " immediately.");
+          node.setInMaintenance();
+        } else {
+          node.startMaintenance();
+        }
+        stats.add(node);
       }
-      stats.add(node);
     }
   }
 
   synchronized void stopMaintenance(final DatanodeDescriptor node) {
     LOG.info("Stopping maintenance of {} node {}",
         node.isAlive() ? "live" : "dead", node);
-    if (!node.isAlive()) {
-      node.stopMaintenance();
-    } else {
-      stats.subtract(node);
-      node.stopMaintenance();
-      stats.add(node);
+    synchronized (getShardLock(node)) {
+      if (!node.isAlive()) {
+        node.stopMaintenance();
+      } else {
+        stats.subtract(node);
+        node.stopMaintenance();
+        stats.add(node);
+      }
     }
   }
 
   synchronized void stopDecommission(final DatanodeDescriptor node) {
     LOG.info("Stopping decommissioning of {} node {}",
         node.isAlive() ? "live" : "dead", node);
-    if (!node.isAlive()) {
-      node.stopDecommission();
-    } else {
-      stats.subtract(node);
-      node.stopDecommission();
-      stats.add(node);
+    synchronized (getShardLock(node)) {
+      if (!node.isAlive()) {
+        node.stopDecommission();
+      } else {
+        stats.subtract(node);
+        node.stopDecommission();
+        stats.add(node);
+      }
     }
   }
 
@@ -128,6 +128,18 @@ public int getNodesInServiceXceiverCount() {
     nodesInService = other.nodesInService;
   }
 
+  /** Add the statistics of the same storage type counted separately. */
+  void add(StorageTypeStats other) {
+    assert storageType == other.storageType;
+    capacityTotal += other.capacityTotal;
+    capacityUsed += other.capacityUsed;
+    capacityNonDfsUsed += other.capacityNonDfsUsed;
+    capacityRemaining += other.capacityRemaining;
+    blockPoolUsed += other.blockPoolUsed;
+    nodesInService += other.nodesInService;
+    nodesInServiceXceiverCount += other.nodesInServiceXceiverCount;
+  }
+
   void addStorage(final DatanodeStorageInfo info,
       final DatanodeDescriptor node) {
     assert storageType == info.getStorageType();
@@ -36,6 +36,7 @@
 import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
+import org.apache.hadoop.metrics2.util.HistogramQuantiles;
 
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -269,9 +270,31 @@ public static DataNodeMetrics create(Configuration conf, String dnName) {
     // Percentile measurement is off by default, by watching no intervals
     int[] intervals = 
         conf.getInts(DFSConfigKeys.DFS_METRICS_PERCENTILES_INTERVALS_KEY);
+    DataNodeMetrics metrics = new DataNodeMetrics(name, sessionId, intervals,
+        jm);
+    if (conf.getBoolean(DFSConfigKeys.DFS_METRICS_QUANTILE_HISTOGRAM_ENABLE_KEY,
+        DFSConfigKeys.DFS_METRICS_QUANTILE_HISTOGRAM_ENABLE_DEFAULT)) {
+      metrics.useHistogramQuantiles();
+    }
     
-    return ms.register(name, null, new DataNodeMetrics(name, sessionId,
-        intervals, jm));
+    return ms.register(name, null, metrics);
+  }
+
+  /**
+   * Estimate the percentile latencies with {@link HistogramQuantiles}, which
+   * the threads update without contention.
+   */
+  private void useHistogramQuantiles() {
+    for (MutableQuantiles[] quantiles : new MutableQuantiles[][] {
+        packetAckRoundTripTimeNanosQuantiles, flushNanosQuantiles,
+        fsyncNanosQuantiles, sendDataPacketBlockedOnNetworkNanosQuantiles,
+        sendDataPacketTransferNanosQuantiles,
+        ramDiskBlocksEvictionWindowMsQuantiles,
+        ramDiskBlocksLazyPersistWindowMsQuantiles}) {
+      for (MutableQuantiles q : quantiles) {
+        q.setEstimator(new HistogramQuantiles(MutableQuantiles.quantiles));
+      }
+    }
   }
 
   public String name() { return name; }
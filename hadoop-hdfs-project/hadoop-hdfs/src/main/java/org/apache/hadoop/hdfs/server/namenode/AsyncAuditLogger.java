@@ -0,0 +1,298 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem.FSNamesystemAuditLogger;
+import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.metrics2.annotation.Metric;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An audit logger which writes the same messages as the default audit
+ * logger, but formats and writes them on a background thread, so the RPC
+ * handlers don't build and log the messages themselves. To use it, set
+ * {@link DFSConfigKeys#DFS_NAMENODE_AUDIT_LOGGERS_KEY} to the name of this
+ * class.
+ *
+ * The handlers copy the fields of each event into a preallocated ring of
+ * events. When the ring is full, because the audit log can't keep up, new
+ * events are dropped and counted by the DroppedEvents metric, instead of
+ * blocking the handlers.
+ */
+@InterfaceAudience.Private
+@Metrics(name = "AsyncAuditLogger", about = "Asynchronous audit logger",
+    context = "dfs")
+public class AsyncAuditLogger extends FSNamesystemAuditLogger
+    implements Closeable {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(AsyncAuditLogger.class);
+
+  static final String METRICS_SOURCE_NAME = "AsyncAuditLogger";
+
+  /** The maximum number of events written before ring slots are freed. */
+  private static final int MAX_BATCH_SIZE = 256;
+
+  /** The minimum interval between warnings about dropped events. */
+  private static final long DROP_WARN_INTERVAL_MS = 10000;
+
+  /** The fields of an audit event, reused for the events of a ring slot. */
+  private static final class Event {
+    private boolean succeeded;
+    private String userName;
+    private InetAddress addr;
+    private String cmd;
+    private String src;
+    private String dst;
+    private FileStatus status;
+    private CallerContext callerContext;
+    private String trackingId;
+    private String protocol;
+
+    void clear() {
+      userName = null;
+      addr = null;
+      cmd = null;
+      src = null;
+      dst = null;
+      status = null;
+      callerContext = null;
+      trackingId = null;
+      protocol = null;
+    }
+  }
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final AtomicLong droppedEvents = new AtomicLong();
+
+  private Event[] ring;
+  private int mask;
+  /** The next event to write. Only advanced by the writer thread. */
+  private long head;
+  /** The next free slot of the ring. */
+  private long tail;
+  private boolean running;
+  private boolean registeredMetrics;
+  private Daemon writer;
+
+  @Override
+  public void initialize(Configuration conf) {
+    super.initialize(conf);
+    int size = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_ASYNC_LOGGER_QUEUE_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_ASYNC_LOGGER_QUEUE_SIZE_DEFAULT);
+    if (size <= 0) {
+      throw new IllegalArgumentException(
+          DFSConfigKeys.DFS_NAMENODE_AUDIT_ASYNC_LOGGER_QUEUE_SIZE_KEY +
+          " must be positive, but is " + size);
+    }
+    size = Integer.highestOneBit(size - 1) << 1;
+    if (size == 0) {
+      size = 1;
+    }
+    ring = new Event[size];
+    for (int i = 0; i < size; i++) {
+      ring[i] = new Event();
+    }
+    mask = size - 1;
+
+    if (DefaultMetricsSystem.instance().getSource(
+        METRICS_SOURCE_NAME) == null) {
+      DefaultMetricsSystem.instance().register(METRICS_SOURCE_NAME,
+          "Asynchronous audit logger", this);
+      registeredMetrics = true;
+    }
+    running = true;
+    writer = new Daemon(this::writeEvents);
+    writer.setName("AsyncAuditLogger");
+    writer.start();
+    LOG.info("Writing the audit log on a background thread with a queue " +
+        "of {} events", size);
+  }
+
+  @Override
+  public void logAuditEvent(boolean succeeded, String userName,
+      InetAddress addr, String cmd, String src, String dst,
+      FileStatus status, CallerContext callerContext, UserGroupInformation ugi,
+      DelegationTokenSecretManager dtSecretManager) {
+    if (!isAuditLogged(cmd)) {
+      return;
+    }
+    // the tracking id and the protocol come from the handler thread
+    final String trackingId = getTokenTrackingId(ugi, dtSecretManager);
+    final String protocol = Server.getProtocol();
+    lock.lock();
+    try {
+      if (running) {
+        if (tail - head == ring.length) {
+          droppedEvents.incrementAndGet();
+          return;
+        }
+        Event e = ring[(int) tail & mask];
+        e.succeeded = succeeded;
+        e.userName = userName;
+        e.addr = addr;
+        e.cmd = cmd;
+        e.src = src;
+        e.dst = dst;
+        e.status = status;
+        e.callerContext = callerContext;
+        e.trackingId = trackingId;
+        e.protocol = protocol;
+        if (tail++ == head) {
+          notEmpty.signal();
+        }
+        return;
+      }
+    } finally {
+      lock.unlock();
+    }
+    // the logger is closed, so write the event on this thread
+    final StringBuilder sb = STRING_BUILDER.get();
+    sb.setLength(0);
+    appendAuditEvent(sb, succeeded, userName, addr, cmd, src, dst, status,
+        callerContext, trackingId, protocol);
+    logAuditMessage(sb.toString());
+  }
+
+  /**
+   * Write the events in the ring until the logger is closed and all the
+   * events queued before are written.
+   */
+  private void writeEvents() {
+    final StringBuilder sb = new StringBuilder();
+    long lastDropped = 0;
+    long lastDropWarnMs = 0;
+    while (true) {
+      final long start;
+      final long end;
+      lock.lock();
+      try {
+        while (head == tail && running) {
+          notEmpty.awaitUninterruptibly();
+        }
+        if (head == tail) {
+          return;
+        }
+        start = head;
+        end = Math.min(tail, start + MAX_BATCH_SIZE);
+      } finally {
+        lock.unlock();
+      }
+
+      for (long i = start; i < end; i++) {
+        Event e = ring[(int) i & mask];
+        try {
+          sb.setLength(0);
+          appendAuditEvent(sb, e.succeeded, e.userName, e.addr, e.cmd, e.src,
+              e.dst, e.status, e.callerContext, e.trackingId, e.protocol);
+          logAuditMessage(sb.toString());
+        } catch (RuntimeException re) {
+          LOG.warn("Failed to write audit event for {}", e.cmd, re);
+        }
+        e.clear();
+      }
+
+      lock.lock();
+      try {
+        head = end;
+      } finally {
+        lock.unlock();
+      }
+
+      long dropped = droppedEvents.get();
+      long now = Time.monotonicNow();
+      if (dropped > lastDropped &&
+          now - lastDropWarnMs >= DROP_WARN_INTERVAL_MS) {
+        LOG.warn("Dropped {} audit events as the queue of {} events was " +
+            "full", dropped - lastDropped, ring.length);
+        lastDropped = dropped;
+        lastDropWarnMs = now;
+      }
+    }
+  }
+
+  /**
+   * Stop the writer thread once it has written the queued events. Events
+   * logged afterwards are written by the caller.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (!running) {
+        return;
+      }
+      running = false;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("Interrupted while waiting for the audit log writer", e);
+    }
+    if (registeredMetrics) {
+      DefaultMetricsSystem.instance().unregisterSource(METRICS_SOURCE_NAME);
+      registeredMetrics = false;
+    }
+  }
+
+  @Metric(value = {"DroppedEvents",
+      "Number of audit events dropped because the queue was full"},
+      type = Metric.Type.COUNTER)
+  public long getDroppedEvents() {
+    return droppedEvents.get();
+  }
+
+  @Metric({"QueuedEvents", "Number of audit events waiting to be written"})
+  public int getQueuedEvents() {
+    lock.lock();
+    try {
+      return (int) (tail - head);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @VisibleForTesting
+  int getQueueSize() {
+    return ring.length;
+  }
+}
@@ -42,6 +42,13 @@ public class CheckpointConf {
   /** checkpoint once every this many transactions, regardless of time */
   private final long checkpointTxnCount;
 
+  /**
+   * minimum number of transactions for a checkpoint triggered by
+   * checkpointPeriod. Below it the periodic checkpoint is skipped; a
+   * checkpoint which is taken still saves a full image.
+   */
+  private final long checkpointPeriodMinTxnCount;
+
   /** maxium number of retries when merge errors occur */
   private final int maxRetriesOnMergeError;
 
@@ -63,6 +70,9 @@ public CheckpointConf(Configuration conf) {
         DFS_NAMENODE_CHECKPOINT_PERIOD_DEFAULT, TimeUnit.SECONDS);
     checkpointTxnCount = conf.getLong(DFS_NAMENODE_CHECKPOINT_TXNS_KEY, 
                                   DFS_NAMENODE_CHECKPOINT_TXNS_DEFAULT);
+    checkpointPeriodMinTxnCount = conf.getLong(
+        DFS_NAMENODE_CHECKPOINT_PERIOD_MIN_TXNS_KEY,
+        DFS_NAMENODE_CHECKPOINT_PERIOD_MIN_TXNS_DEFAULT);
     maxRetriesOnMergeError = conf.getInt(DFS_NAMENODE_CHECKPOINT_MAX_RETRIES_KEY,
                                   DFS_NAMENODE_CHECKPOINT_MAX_RETRIES_DEFAULT);
     legacyOivImageDir = conf.get(DFS_NAMENODE_LEGACY_OIV_IMAGE_DIR_KEY);
@@ -95,6 +105,24 @@ public long getTxnCount() {
     return checkpointTxnCount;
   }
 
+  public long getPeriodMinTxnCount() {
+    return checkpointPeriodMinTxnCount;
+  }
+
+  /**
+   * Decide whether to checkpoint. The transaction count triggers a
+   * checkpoint whether or not the checkpoint period expired.
+   *
+   * @param uncheckpointedTxns the transactions since the last checkpoint.
+   * @param periodExpired whether the checkpoint period expired.
+   * @return true if a checkpoint should be taken.
+   */
+  public boolean shouldCheckpoint(long uncheckpointedTxns,
+      boolean periodExpired) {
+    return uncheckpointedTxns >= checkpointTxnCount || (periodExpired
+        && uncheckpointedTxns >= checkpointPeriodMinTxnCount);
+  }
+
   public int getMaxRetriesOnMergeError() {
     return maxRetriesOnMergeError;
   }
@@ -142,13 +142,13 @@ public void run() {
       try {
         long now = monotonicNow();
         boolean shouldCheckpoint = false;
-        if(now >= lastCheckpointTime + checkpointPeriodMSec) {
-          shouldCheckpoint = true;
-        } else if(now >= lastEditLogCheckTime + periodMSec) {
+        boolean periodExpired =
+            now >= lastCheckpointTime + checkpointPeriodMSec;
+        if(periodExpired || now >= lastEditLogCheckTime + periodMSec) {
           long txns = countUncheckpointedTxns();
           lastEditLogCheckTime = now;
-          if(txns >= checkpointConf.getTxnCount())
-            shouldCheckpoint = true;
+          shouldCheckpoint =
+              checkpointConf.shouldCheckpoint(txns, periodExpired);
         }
         if(shouldCheckpoint) {
           doCheckpoint();
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.thirdparty.com.google.common.cache.Cache;
+import org.apache.hadoop.thirdparty.com.google.common.cache.CacheBuilder;
+
+/**
+ * A cache of the content summaries computed for the current state of
+ * directories, so repeated calls for the same large directory, e.g. from
+ * monitoring, don't walk the whole subtree under the namesystem lock each
+ * time.
+ *
+ * Entries never expire. Instead, every mutation of the namespace drops the
+ * summaries of the mutated inode and of all its ancestors, whose subtrees
+ * contain it, before the write lock is released. Mutations which change the
+ * summaries of descendants too, e.g. a storage policy or erasure coding
+ * policy inherited by a subtree, a snapshot, or a directory moved by a
+ * rename, drop all the summaries.
+ *
+ * The cache does not hold permissions. Callers check the access of the
+ * user to the subtree on every call, whether the summary is cached or not.
+ */
+@InterfaceAudience.Private
+class ContentSummaryCache {
+
+  private final Cache<Long, ContentSummary> summaries;
+
+  ContentSummaryCache(long maxEntries) {
+    summaries = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .build();
+  }
+
+  /** @return the cached summary of the directory, or null if there is none. */
+  ContentSummary get(long inodeId) {
+    return summaries.getIfPresent(inodeId);
+  }
+
+  void put(long inodeId, ContentSummary summary) {
+    summaries.put(inodeId, summary);
+  }
+
+  /** Drop the summaries of the inodes of the path. */
+  void invalidate(INodesInPath iip) {
+    if (summaries.size() == 0) {
+      return;
+    }
+    for (int i = 0; i < iip.length(); i++) {
+      final INode inode = iip.getINode(i);
+      if (inode != null) {
+        summaries.invalidate(inode.getId());
+      }
+    }
+  }
+
+  /** Drop the summaries of the inode and of its ancestors. */
+  void invalidate(INode inode) {
+    if (summaries.size() == 0) {
+      return;
+    }
+    for (; inode != null; inode = inode.getParent()) {
+      summaries.invalidate(inode.getId());
+    }
+  }
+
+  void clear() {
+    summaries.invalidateAll();
+  }
+}
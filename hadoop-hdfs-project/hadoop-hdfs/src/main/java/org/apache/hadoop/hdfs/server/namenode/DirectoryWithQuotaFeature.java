@@ -131,11 +131,13 @@ private void checkStoragespace(final INodeDirectory dir, final long computed) {
     }
   }
 
-  /** Update the space/namespace/type usage of the tree
+  /** Update the space/namespace/type usage of the tree. This is
+   * synchronized since writers holding disjoint namespace partition locks
+   * may update the usage of a common ancestor concurrently.
    * 
    * @param delta the change of the namespace/space/type usage
    */
-  public void addSpaceConsumed2Cache(QuotaCounts delta) {
+  public synchronized void addSpaceConsumed2Cache(QuotaCounts delta) {
     usage.add(delta);
   }
 
@@ -207,7 +209,8 @@ private void verifyQuotaByStorageType(EnumCounters<StorageType> typeDelta)
    * @throws QuotaExceededException if namespace, storagespace or storage type
    * space quota is violated after applying the deltas.
    */
-  void verifyQuota(QuotaCounts counts) throws QuotaExceededException {
+  synchronized void verifyQuota(QuotaCounts counts)
+      throws QuotaExceededException {
     verifyNamespaceQuota(counts.getNameSpace());
     verifyStoragespaceQuota(counts.getStorageSpace());
     verifyQuotaByStorageType(counts.getTypeSpaces());
@@ -218,6 +221,18 @@ boolean isQuotaSet() {
         quota.anyTypeSpaceCountGreaterOrEqual(0);
   }
 
+  /**
+   * @return true if a quota of the directory can be exceeded. The default
+   * quota of the root directory, whose namespace quota is Long.MAX_VALUE,
+   * can't be.
+   */
+  boolean isQuotaLimited() {
+    return (quota.getNameSpace() >= 0 &&
+        quota.getNameSpace() != DEFAULT_NAMESPACE_QUOTA) ||
+        quota.getStorageSpace() >= 0 ||
+        quota.anyTypeSpaceCountGreaterOrEqual(0);
+  }
+
   boolean isQuotaByStorageTypeSet() {
     return quota.anyTypeSpaceCountGreaterOrEqual(0);
   }
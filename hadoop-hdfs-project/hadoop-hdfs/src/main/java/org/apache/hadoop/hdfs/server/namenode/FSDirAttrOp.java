@@ -378,6 +378,7 @@ static INodeDirectory unprotectedSetQuota(
     final int latest = iip.getLatestSnapshotId();
     dirNode.recordModification(latest);
     dirNode.setQuota(fsd.getBlockStoragePolicySuite(), nsQuota, ssQuota, type);
+    fsd.invalidateContentSummaries(iip);
     return dirNode;
   }
 
@@ -440,6 +441,8 @@ static void unprotectedSetStoragePolicy(FSDirectory fsd, BlockManager bm,
           + iip.getPath());
     }
     final int snapshotId = iip.getLatestSnapshotId();
+    // the policy is inherited by the whole subtree
+    fsd.clearContentSummaries();
     if (inode.isFile()) {
       FSDirectory.LOG.debug("DIR* FSDirAAr.unprotectedSetStoragePolicy for " +
               "File.");
@@ -192,6 +192,8 @@ private static List<XAttr> setErasureCodingPolicyXAttr(final FSNamesystem fsn,
     final EnumSet<XAttrSetFlag> flag = hasEcXAttr ?
         EnumSet.of(XAttrSetFlag.REPLACE) : EnumSet.of(XAttrSetFlag.CREATE);
     FSDirXAttrOp.unprotectedSetXAttrs(fsd, srcIIP, xattrs, flag);
+    // the policy is inherited by the whole subtree
+    fsd.clearContentSummaries();
     return xattrs;
   }
 
@@ -336,6 +338,8 @@ private static List<XAttr> removeErasureCodingPolicyXAttr(
 
     final List<XAttr> xattrs = Lists.newArrayListWithCapacity(1);
     xattrs.add(ecXAttr);
+    // the policy is inherited by the whole subtree
+    fsd.clearContentSummaries();
     return FSDirXAttrOp.unprotectedRemoveXAttrs(fsd, srcIIP, xattrs);
   }
 
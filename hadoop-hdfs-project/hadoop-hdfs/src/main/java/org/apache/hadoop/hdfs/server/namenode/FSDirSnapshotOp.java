@@ -67,6 +67,7 @@ static void allowSnapshot(FSDirectory fsd, SnapshotManager snapshotManager,
     fsd.writeLock();
     try {
       snapshotManager.setSnapshottable(path, true);
+      fsd.clearContentSummaries();
     } finally {
       fsd.writeUnlock();
     }
@@ -79,6 +80,7 @@ static void disallowSnapshot(
     fsd.writeLock();
     try {
       snapshotManager.resetSnapshottable(path);
+      fsd.clearContentSummaries();
     } finally {
       fsd.writeUnlock();
     }
@@ -118,6 +120,7 @@ static String createSnapshot(
       snapshotPath = snapshotManager.createSnapshot(
           fsd.getFSNamesystem().getLeaseManager(),
           iip, snapshotRoot, snapshotName, now);
+      fsd.clearContentSummaries();
     } finally {
       fsd.writeUnlock();
     }
@@ -294,6 +297,7 @@ static INode.BlocksMapUpdateInfo deleteSnapshot(
     fsd.writeLock();
     try {
       snapshotManager.deleteSnapshot(iip, snapshotName, context, now);
+      fsd.clearContentSummaries();
       fsd.updateCount(iip, context.quotaDelta(), false);
       fsd.removeFromInodeMap(removedINodes);
       fsd.updateReplicationFactor(context.collectedBlocks()
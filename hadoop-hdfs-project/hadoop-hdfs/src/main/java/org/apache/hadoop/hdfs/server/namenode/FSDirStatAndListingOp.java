@@ -517,6 +517,19 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
         throw new FileNotFoundException("File does not exist: " + iip.getPath());
       }
       else {
+        ContentSummaryCache cache = fsd.getContentSummaryCache();
+        final boolean cacheable = cache != null && targetNode.isDirectory()
+            && iip.getPathSnapshotId() == Snapshot.CURRENT_STATE_ID;
+        // The walk checks the access of the user to each directory of the
+        // subtree and yields the lock while doing so. Only serve the cache
+        // to the users who need no such check.
+        if (cacheable && (pc == null || !fsd.isPermissionEnabled()
+            || pc.isSuperUser())) {
+          ContentSummary cs = cache.get(targetNode.getId());
+          if (cs != null) {
+            return cs;
+          }
+        }
         // Make it relinquish locks everytime contentCountLimit entries are
         // processed. 0 means disabled. I.e. blocking for the entire duration.
         ContentSummaryComputationContext cscc =
@@ -525,6 +538,11 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
         ContentSummary cs = targetNode.computeAndConvertContentSummary(
             iip.getPathSnapshotId(), cscc);
         fsd.addYieldCount(cscc.getYieldCount());
+        // Mutations may have run while the walk yielded the lock, so only
+        // cache the summary of a walk which held it from start to end.
+        if (cacheable && cscc.getYieldCount() == 0) {
+          cache.put(targetNode.getId(), cs);
+        }
         return cs;
       }
     } finally {
@@ -106,6 +106,8 @@ static void persistBlocks(
       FSDirectory fsd, String path, INodeFile file, boolean logRetryCache) {
     assert fsd.getFSNamesystem().hasWriteLock();
     Preconditions.checkArgument(file.isUnderConstruction());
+    // e.g. the length of the last block was updated
+    fsd.invalidateContentSummaries(file);
     fsd.getEditLog().logUpdateBlocks(path, file, logRetryCache);
     if(NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("persistBlocks: " + path
@@ -159,7 +159,11 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
+  private final ContentSummaryCache contentSummaryCache;
   private final INodeMap inodeMap; // Synchronized by dirLock
+  // Whether the inodeMap is also synchronized by itself, since writers
+  // holding disjoint namespace partition locks may update it concurrently.
+  private final boolean syncInodeMap;
   private long yieldCount = 0; // keep track of lock yield count.
   private int quotaInitThreads;
 
@@ -317,7 +321,19 @@ public enum DirOp {
   FSDirectory(FSNamesystem ns, Configuration conf) throws IOException {
     this.inodeId = new INodeId();
     rootDir = createRoot(ns);
-    inodeMap = INodeMap.newInstance(rootDir);
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_INODEMAP_OFFHEAP_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INODEMAP_OFFHEAP_ENABLED_DEFAULT)) {
+      inodeMap = INodeMap.newOffHeapInstance(rootDir, conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_INODEMAP_OFFHEAP_CAPACITY_KEY,
+          DFSConfigKeys.DFS_NAMENODE_INODEMAP_OFFHEAP_CAPACITY_DEFAULT));
+      LOG.info("Using inode map with off-heap ids");
+    } else {
+      inodeMap = INodeMap.newInstance(rootDir);
+    }
+    this.syncInodeMap = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_DEFAULT);
     this.isPermissionEnabled = conf.getBoolean(
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_KEY,
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_DEFAULT);
@@ -371,6 +387,17 @@ public enum DirOp {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    if (conf.getBoolean(DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_ENABLED_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_ENABLED_DEFAULT)) {
+      int contentSummaryCacheSize = conf.getInt(
+          DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_SIZE_DEFAULT);
+      this.contentSummaryCache =
+          new ContentSummaryCache(contentSummaryCacheSize);
+      LOG.info("Caching up to {} content summaries", contentSummaryCacheSize);
+    } else {
+      this.contentSummaryCache = null;
+    }
     
     // filesystem limits
     this.maxComponentLength = (int) conf.getLongBytes(
@@ -642,6 +669,41 @@ long getContentSleepMicroSec() {
     return contentSleepMicroSec;
   }
 
+  /** @return the cache of content summaries, or null if it is disabled. */
+  ContentSummaryCache getContentSummaryCache() {
+    return contentSummaryCache;
+  }
+
+  /**
+   * Drop the cached content summaries of the inodes of the path after a
+   * mutation of its last inode.
+   */
+  public void invalidateContentSummaries(INodesInPath iip) {
+    if (contentSummaryCache != null) {
+      contentSummaryCache.invalidate(iip);
+    }
+  }
+
+  /**
+   * Drop the cached content summaries of the inode and its ancestors after
+   * a mutation of the inode.
+   */
+  public void invalidateContentSummaries(INode inode) {
+    if (contentSummaryCache != null) {
+      contentSummaryCache.invalidate(inode);
+    }
+  }
+
+  /**
+   * Drop all the cached content summaries after a mutation which changes
+   * the summaries of a whole subtree.
+   */
+  void clearContentSummaries() {
+    if (contentSummaryCache != null) {
+      contentSummaryCache.clear();
+    }
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -654,7 +716,16 @@ FSEditLog getEditLog() {
    * Shutdown the filestore
    */
   @Override
-  public void close() throws IOException {}
+  public void close() throws IOException {
+    // The write lock excludes the readers and the partitioned writers of
+    // the inodeMap, which may not be synchronized by the inodeMap itself.
+    writeLock();
+    try {
+      inodeMap.close();
+    } finally {
+      writeUnlock();
+    }
+  }
 
   void markNameCacheInitialized() {
     writeLock();
@@ -992,6 +1063,7 @@ public void updateCount(INodesInPath iip, INode.QuotaDelta quotaDelta,
       INodeDirectory quotaDir = entry.getKey();
       quotaDir.getDirectoryWithQuotaFeature().addSpaceConsumed2Cache(
           entry.getValue().negation());
+      invalidateContentSummaries(quotaDir);
     }
   }
 
@@ -1001,6 +1073,7 @@ public void updateCount(INodesInPath iip, INode.QuotaDelta quotaDelta,
    * contained in snapshots.
    */
   void updateCountForDelete(final INode inode, final INodesInPath iip) {
+    invalidateContentSummaries(iip);
     if (getFSNamesystem().isImageLoaded() &&
         !inode.isInLatestSnapshot(iip.getLatestSnapshotId())) {
       QuotaCounts counts = inode.computeQuotaUsage(getBlockStoragePolicySuite());
@@ -1050,6 +1123,7 @@ void updateCount(INodesInPath iip, int numOfINodes,
                     QuotaCounts counts, boolean checkQuota)
                     throws QuotaExceededException {
     assert hasWriteLock();
+    invalidateContentSummaries(iip);
     if (!namesystem.isImageLoaded()) {
       //still initializing. do not check or update quotas.
       return;
@@ -1103,6 +1177,7 @@ public void updateSpaceForCompleteBlock(BlockInfo completeBlk,
     assert namesystem.hasWriteLock();
     INodesInPath iip = inodes != null ? inodes :
         INodesInPath.fromINode(namesystem.getBlockCollection(completeBlk));
+    invalidateContentSummaries(iip);
     INodeFile fileINode = iip.getLastINode().asFile();
     // Adjust disk space consumption if required
     final long diff;
@@ -1390,6 +1465,10 @@ public INodesInPath addLastINode(INodesInPath existing, INode inode,
     } else {
       if (!isRename) {
         copyINodeDefaultAcl(inode, modes);
+      } else if (inode.isDirectory()) {
+        // The subtree may inherit other storage and erasure coding policies
+        // at its new location, which changes the summaries inside it.
+        clearContentSummaries();
       }
       addToInodeMap(inode);
     }
@@ -1417,6 +1496,7 @@ INodesInPath addLastINodeNoQuotaCheck(INodesInPath existing, INode i) {
    */
   @VisibleForTesting
   public long removeLastINode(final INodesInPath iip) {
+    invalidateContentSummaries(iip);
     final int latestSnapshot = iip.getLatestSnapshotId();
     final INode last = iip.getLastINode();
     final INodeDirectory parent = iip.getINode(-2).asDirectory();
@@ -1481,11 +1561,20 @@ public INodeMap getINodeMap() {
   }
 
   /**
-   * This method is always called with writeLock of FSDirectory held.
+   * This method is always called with writeLock of FSDirectory held. With
+   * partitioned locking the inodeMap is additionally synchronized, since
+   * writers holding disjoint namespace partition locks may update it
+   * concurrently.
    */
   public final void addToInodeMap(INode inode) {
     if (inode instanceof INodeWithAdditionalFields) {
-      inodeMap.put(inode);
+      if (syncInodeMap) {
+        synchronized (inodeMap) {
+          inodeMap.put(inode);
+        }
+      } else {
+        inodeMap.put(inode);
+      }
       if (!inode.isSymlink()) {
         final XAttrFeature xaf = inode.getXAttrFeature();
         addEncryptionZone((INodeWithAdditionalFields) inode, xaf);
@@ -1554,7 +1643,13 @@ public final void removeFromInodeMap(List<? extends INode> inodes) {
     if (inodes != null) {
       for (INode inode : inodes) {
         if (inode != null && inode instanceof INodeWithAdditionalFields) {
-          inodeMap.remove(inode);
+          if (syncInodeMap) {
+            synchronized (inodeMap) {
+              inodeMap.remove(inode);
+            }
+          } else {
+            inodeMap.remove(inode);
+          }
           ezManager.removeEncryptionZone(inode.getId());
         }
       }
@@ -1567,12 +1662,22 @@ public final void removeFromInodeMap(List<? extends INode> inodes) {
    * @return The inode associated with the given id
    */
   public INode getInode(long id) {
-    return inodeMap.get(id);
+    if (!syncInodeMap) {
+      return inodeMap.get(id);
+    }
+    synchronized (inodeMap) {
+      return inodeMap.get(id);
+    }
   }
   
   @VisibleForTesting
   int getInodeMapSize() {
-    return inodeMap.size();
+    if (!syncInodeMap) {
+      return inodeMap.size();
+    }
+    synchronized (inodeMap) {
+      return inodeMap.size();
+    }
   }
 
   long totalInodes() {
@@ -45,6 +45,7 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
   // use separate mutex to avoid possible deadlock when stopping the thread.
   private final Object syncThreadLock = new Object();
   private Thread syncThread;
+  private Thread flushThread;
   private static final ThreadLocal<Edit> THREAD_EDIT = new ThreadLocal<Edit>();
 
   // requires concurrent access from caller threads and syncing thread.
@@ -53,7 +54,13 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
   // only accessed by syncing thread so no synchronization required.
   // queue is unbounded because it's effectively limited by the size
   // of the edit log buffer - ie. a sync will eventually be forced.
-  private final Deque<Edit> syncWaitQ = new ArrayDeque<Edit>();
+  private Deque<Edit> syncWaitQ = new ArrayDeque<Edit>();
+
+  // batches handed from the syncing thread to the flushing thread if the
+  // sync is overlapped with writing the next batch, else null.  holds one
+  // batch so the syncing thread stops writing edits when a batch is being
+  // flushed and the next one is already waiting.
+  private final BlockingQueue<SyncBatch> syncBatchQ;
 
   private long lastFull = 0;
 
@@ -67,6 +74,10 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
             DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE_DEFAULT);
 
     editPendingQ = new ArrayBlockingQueue<>(editPendingQSize);
+    boolean overlapSync = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_OVERLAP_SYNC,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_OVERLAP_SYNC_DEFAULT);
+    syncBatchQ = overlapSync ? new ArrayBlockingQueue<>(1) : null;
   }
 
   private boolean isSyncThreadAlive() {
@@ -81,22 +92,34 @@ private void startSyncThread() {
         syncThread = new Thread(this, this.getClass().getSimpleName());
         syncThread.start();
       }
+      if (syncBatchQ != null &&
+          (flushThread == null || !flushThread.isAlive())) {
+        flushThread = new Thread(this::runFlush,
+            this.getClass().getSimpleName() + "Flush");
+        flushThread.start();
+      }
     }
   }
 
   private void stopSyncThread() {
     synchronized(syncThreadLock) {
-      if (syncThread != null) {
-        try {
-          syncThread.interrupt();
-          syncThread.join();
-        } catch (InterruptedException e) {
-          // we're quitting anyway.
-        } finally {
-          syncThread = null;
-        }
+      // stop the syncing thread first so it doesn't wait on a full
+      // syncBatchQ forever.
+      syncThread = stopThread(syncThread);
+      flushThread = stopThread(flushThread);
+    }
+  }
+
+  private static Thread stopThread(Thread thread) {
+    if (thread != null) {
+      try {
+        thread.interrupt();
+        thread.join();
+      } catch (InterruptedException e) {
+        // we're quitting anyway.
       }
     }
+    return null;
   }
 
   @VisibleForTesting
@@ -259,16 +282,13 @@ public void run() {
           metrics.setPendingEditsCount(0);
         }
         if (doSync) {
-          // normally edit log exceptions cause the NN to terminate, but tests
-          // relying on ExitUtil.terminate need to see the exception.
-          RuntimeException syncEx = null;
-          try {
-            logSync(getLastWrittenTxId());
-          } catch (RuntimeException ex) {
-            syncEx = ex;
-          }
-          while ((edit = syncWaitQ.poll()) != null) {
-            edit.logSyncNotify(syncEx);
+          if (syncBatchQ != null) {
+            // the flushing thread syncs the batch while this thread writes
+            // the next edits into the other half of the double buffer.
+            syncBatchQ.put(new SyncBatch(getLastWrittenTxId(), syncWaitQ));
+            syncWaitQ = new ArrayDeque<Edit>();
+          } else {
+            syncAndNotify(getLastWrittenTxId(), syncWaitQ);
           }
         }
       }
@@ -279,6 +299,34 @@ public void run() {
     }
   }
 
+  private void runFlush() {
+    try {
+      while (true) {
+        SyncBatch batch = syncBatchQ.take();
+        syncAndNotify(batch.txid, batch.edits);
+      }
+    } catch (InterruptedException ie) {
+      LOG.info(Thread.currentThread().getName() + " was interrupted, exiting");
+    } catch (Throwable t) {
+      terminate(t);
+    }
+  }
+
+  private void syncAndNotify(long txid, Deque<Edit> edits) {
+    // normally edit log exceptions cause the NN to terminate, but tests
+    // relying on ExitUtil.terminate need to see the exception.
+    RuntimeException syncEx = null;
+    try {
+      logSync(txid);
+    } catch (RuntimeException ex) {
+      syncEx = ex;
+    }
+    Edit edit;
+    while ((edit = edits.poll()) != null) {
+      edit.logSyncNotify(syncEx);
+    }
+  }
+
   private void terminate(Throwable t) {
     String message = "Exception while edit logging: "+t.getMessage();
     LOG.error(message, t);
@@ -297,6 +345,17 @@ private Edit getEditInstance(FSEditLogOp op) {
     return edit;
   }
 
+  // edits waiting for the edit log to be synced up to txid.
+  private static class SyncBatch {
+    final long txid;
+    final Deque<Edit> edits;
+
+    SyncBatch(long txid, Deque<Edit> edits) {
+      this.txid = txid;
+      this.edits = edits;
+    }
+  }
+
   private abstract static class Edit {
     final FSEditLog log;
     final FSEditLogOp op;
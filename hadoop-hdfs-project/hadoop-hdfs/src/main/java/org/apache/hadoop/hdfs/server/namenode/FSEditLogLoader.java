@@ -181,6 +181,8 @@ long loadFSEdits(EditLogInputStream edits, long expectedStartingTxId,
       }
       long numEdits = loadEditRecords(edits, false, expectedStartingTxId,
           maxTxnsToRead, startOpt, recovery);
+      // Not every applied edit drops the cached summaries it changes.
+      fsNamesys.dir.clearContentSummaries();
       long endTime = timer.monotonicNow();
       LogAction postLogAction = loadEditsLogHelper.record("post", endTime,
           numEdits, edits.length(), endTime - startTime);
@@ -426,6 +426,15 @@ public void load(File curFile) throws IOException {
         }
 
         loadFilesUnderConstruction(in, supportSnapshot, counter);
+        if (supportSnapshot
+            && namesystem.getSnapshotManager().getNumSnapshots() > 0) {
+          // the directories which have changed below them since a snapshot
+          // are only tracked by the protobuf image loader
+          LOG.info("Snapshot diffs walk the whole tree of a snapshot until "
+              + "the namespace is loaded from a protobuf image.");
+          namesystem.getSnapshotManager()
+              .setSnapshotDiffSkipUnchangedSubtrees(false);
+        }
         prog.endStep(Phase.LOADING_FSIMAGE, step);
         // Now that the step is finished, set counter equal to total to adjust
         // for possible under-counting due to reference inodes.
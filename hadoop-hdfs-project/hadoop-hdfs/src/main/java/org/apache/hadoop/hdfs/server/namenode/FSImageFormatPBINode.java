@@ -18,19 +18,26 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -629,7 +636,7 @@ private void loadRootINode(INodeSection.INode p) {
   // the saver can directly write out fields referencing serial numbers.
   // the serial number maps will be compacted when loading.
   public final static class Saver {
-    private long numImageErrors;
+    private final AtomicLong numImageErrors = new AtomicLong();
 
     private static long buildPermissionStatus(INodeAttributes n) {
       return n.getPermissionLong();
@@ -737,62 +744,37 @@ public static INodeSection.INodeDirectory.Builder buildINodeDirectory(
       this.summary = summary;
       this.context = parent.getContext();
       this.fsn = context.getSourceNamesystem();
-      this.numImageErrors = 0;
     }
 
     void serializeINodeDirectorySection(OutputStream out) throws IOException {
       FSDirectory dir = fsn.getFSDirectory();
       Iterator<INodeWithAdditionalFields> iter = dir.getINodeMap()
           .getMapIterator();
-      final ArrayList<INodeReference> refList = parent.getSaverContext()
-          .getRefList();
-      int i = 0;
-      int outputInodes = 0;
-      while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        if (!n.isDirectory()) {
-          continue;
-        }
-
-        ReadOnlyList<INode> children = n.asDirectory().getChildrenList(
-            Snapshot.CURRENT_STATE_ID);
-        if (children.size() > 0) {
-          INodeDirectorySection.DirEntry.Builder b = INodeDirectorySection.
-              DirEntry.newBuilder().setParent(n.getId());
-          for (INode inode : children) {
-            // Error if the child inode doesn't exist in inodeMap
-            if (dir.getInode(inode.getId()) == null) {
-              FSImage.LOG.error(
-                  "FSImageFormatPBINode#serializeINodeDirectorySection: " +
-                      "Dangling child pointer found. Missing INode in " +
-                      "inodeMap: id=" + inode.getId() +
-                      "; path=" + inode.getFullPathName() +
-                      "; parent=" + (inode.getParent() == null ? "null" :
-                      inode.getParent().getFullPathName()));
-              ++numImageErrors;
-            }
-            if (!inode.isReference()) {
-              // Serialization must ensure that children are in order, related
-              // to HDFS-13693
-              b.addChildren(inode.getId());
-            } else {
-              refList.add(inode.asReference());
-              b.addRefChildren(refList.size() - 1);
-            }
-            outputInodes++;
+      if (parent.getSaveExecutor() != null) {
+        serializeInParallel(out, iter, true,
+            FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+      } else {
+        final ArrayList<INodeReference> refList = parent.getSaverContext()
+            .getRefList();
+        int i = 0;
+        int outputInodes = 0;
+        while (iter.hasNext()) {
+          INodeWithAdditionalFields n = iter.next();
+          if (!n.isDirectory()) {
+            continue;
           }
-          INodeDirectorySection.DirEntry e = b.build();
-          e.writeDelimitedTo(out);
-        }
+          outputInodes += serializeDirEntry(out, n.asDirectory(), refList,
+              numImageErrors);
 
-        ++i;
-        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
-          context.checkCancelled();
-        }
-        if (outputInodes >= parent.getInodesPerSubSection()) {
-          outputInodes = 0;
-          parent.commitSubSection(summary,
-              FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
+          if (outputInodes >= parent.getInodesPerSubSection()) {
+            outputInodes = 0;
+            parent.commitSubSection(summary,
+                FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+          }
         }
       }
       parent.commitSectionAndSubSection(summary,
@@ -800,6 +782,59 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
     }
 
+    /**
+     * Serialize the children of a directory, if it has any.
+     * @param refList the list to append the reference children to. If it is
+     *                null, nothing is written for a directory with reference
+     *                children, as the position of the references in the
+     *                list depends on the directories serialized before.
+     * @param errors counts the dangling children.
+     * @return the number of children serialized, or -1 if refList is null
+     *         and the directory has reference children.
+     */
+    private int serializeDirEntry(OutputStream out, INodeDirectory n,
+        List<INodeReference> refList, AtomicLong errors) throws IOException {
+      ReadOnlyList<INode> children = n.getChildrenList(
+          Snapshot.CURRENT_STATE_ID);
+      if (children.size() == 0) {
+        return 0;
+      }
+      if (refList == null) {
+        for (INode inode : children) {
+          if (inode.isReference()) {
+            return -1;
+          }
+        }
+      }
+      FSDirectory dir = fsn.getFSDirectory();
+      INodeDirectorySection.DirEntry.Builder b = INodeDirectorySection.
+          DirEntry.newBuilder().setParent(n.getId());
+      for (INode inode : children) {
+        // Error if the child inode doesn't exist in inodeMap
+        if (dir.getInode(inode.getId()) == null) {
+          FSImage.LOG.error(
+              "FSImageFormatPBINode#serializeINodeDirectorySection: " +
+                  "Dangling child pointer found. Missing INode in " +
+                  "inodeMap: id=" + inode.getId() +
+                  "; path=" + inode.getFullPathName() +
+                  "; parent=" + (inode.getParent() == null ? "null" :
+                  inode.getParent().getFullPathName()));
+          errors.incrementAndGet();
+        }
+        if (!inode.isReference()) {
+          // Serialization must ensure that children are in order, related
+          // to HDFS-13693
+          b.addChildren(inode.getId());
+        } else {
+          refList.add(inode.asReference());
+          b.addRefChildren(refList.size() - 1);
+        }
+      }
+      INodeDirectorySection.DirEntry e = b.build();
+      e.writeDelimitedTo(out);
+      return children.size();
+    }
+
     void serializeINodeSection(OutputStream out) throws IOException {
       INodeMap inodesMap = fsn.dir.getINodeMap();
 
@@ -808,18 +843,23 @@ void serializeINodeSection(OutputStream out) throws IOException {
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
 
-      int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
-      while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        save(out, n);
-        ++i;
-        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
-          context.checkCancelled();
-        }
-        if (i % parent.getInodesPerSubSection() == 0) {
-          parent.commitSubSection(summary,
-              FSImageFormatProtobuf.SectionName.INODE_SUB);
+      if (parent.getSaveExecutor() != null) {
+        serializeInParallel(out, iter, false,
+            FSImageFormatProtobuf.SectionName.INODE_SUB);
+      } else {
+        int i = 0;
+        while (iter.hasNext()) {
+          INodeWithAdditionalFields n = iter.next();
+          save(out, n);
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
+          if (i % parent.getInodesPerSubSection() == 0) {
+            parent.commitSubSection(summary,
+                FSImageFormatProtobuf.SectionName.INODE_SUB);
+          }
         }
       }
       parent.commitSectionAndSubSection(summary,
@@ -827,6 +867,174 @@ void serializeINodeSection(OutputStream out) throws IOException {
           FSImageFormatProtobuf.SectionName.INODE_SUB);
     }
 
+    /**
+     * Serialize the inodes, or the directory entries if dirEntries is set,
+     * in batches on the executor of the parent saver. Each batch goes to its
+     * own buffer and the buffers are written to out in the order of the
+     * iterator. Batches end where the single threaded saver commits a
+     * sub-section, so the section and its sub-sections are identical to the
+     * ones written by a single thread.
+     *
+     * Reference children are numbered in the order they are serialized, so
+     * once a batch contains one, it and all the following batches are
+     * serialized by this thread.
+     */
+    private void serializeInParallel(OutputStream out,
+        Iterator<INodeWithAdditionalFields> iter, boolean dirEntries,
+        FSImageFormatProtobuf.SectionName subSectionName) throws IOException {
+      final ExecutorService executor = parent.getSaveExecutor();
+      final int maxPending = 2 * parent.getSaveThreads();
+      final ArrayList<INodeReference> refList = parent.getSaverContext()
+          .getRefList();
+      final Batcher batcher = new Batcher(iter, dirEntries);
+      final Deque<SaveBatch> pending = new ArrayDeque<>();
+      boolean sequential = false;
+      while (true) {
+        while (!sequential && pending.size() < maxPending) {
+          SaveBatch batch = batcher.next();
+          if (batch == null) {
+            break;
+          }
+          batch.future = executor.submit(
+              () -> serializeBatch(batch.inodes, dirEntries));
+          pending.add(batch);
+        }
+
+        SaveBatch batch = pending.poll();
+        if (!sequential) {
+          if (batch == null) {
+            break;
+          }
+          SerializedBatch serialized = batch.get();
+          if (serialized != null) {
+            serialized.buffer.writeTo(out);
+            numImageErrors.addAndGet(serialized.errors.get());
+          } else {
+            LOG.info("Found a reference in the directory section, the rest " +
+                "of the section is serialized by a single thread.");
+            sequential = true;
+          }
+        } else if (batch != null) {
+          batch.future.cancel(false);
+        } else {
+          batch = batcher.next();
+          if (batch == null) {
+            break;
+          }
+        }
+        if (sequential) {
+          for (INodeWithAdditionalFields n : batch.inodes) {
+            serializeDirEntry(out, n.asDirectory(), refList, numImageErrors);
+          }
+        }
+
+        context.checkCancelled();
+        if (batch.endsSubSection) {
+          parent.commitSubSection(summary, subSectionName);
+        }
+      }
+    }
+
+    /**
+     * @return the serialized batch, or null if dirEntries is set and one of
+     *         the directories has reference children.
+     */
+    private SerializedBatch serializeBatch(
+        List<INodeWithAdditionalFields> inodes, boolean dirEntries)
+        throws IOException {
+      SerializedBatch batch = new SerializedBatch();
+      for (INodeWithAdditionalFields n : inodes) {
+        if (dirEntries) {
+          if (serializeDirEntry(batch.buffer, n.asDirectory(), null,
+              batch.errors) < 0) {
+            return null;
+          }
+        } else {
+          save(batch.buffer, n);
+        }
+      }
+      return batch;
+    }
+
+    /**
+     * Splits the inodes, or the directories if dirEntries is set, into
+     * batches which end wherever a sub-section is complete. A batch holds at
+     * most CHECK_CANCEL_INTERVAL entries, so cancellation is checked as
+     * often as in the single threaded saver.
+     */
+    private final class Batcher {
+      private final Iterator<INodeWithAdditionalFields> iter;
+      private final boolean dirEntries;
+      /** Inodes, or children for directories, in the current sub-section. */
+      private long outputInodes = 0;
+
+      Batcher(Iterator<INodeWithAdditionalFields> iter, boolean dirEntries) {
+        this.iter = iter;
+        this.dirEntries = dirEntries;
+      }
+
+      /** @return the next batch, or null if there are no more inodes. */
+      SaveBatch next() {
+        final int perSubSection = parent.getInodesPerSubSection();
+        final int maxSize = FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL;
+        List<INodeWithAdditionalFields> inodes = new ArrayList<>();
+        while (inodes.size() < maxSize && iter.hasNext()) {
+          INodeWithAdditionalFields n = iter.next();
+          if (!dirEntries) {
+            outputInodes++;
+          } else if (n.isDirectory()) {
+            outputInodes += n.asDirectory()
+                .getChildrenList(Snapshot.CURRENT_STATE_ID).size();
+          } else {
+            continue;
+          }
+          inodes.add(n);
+          if (outputInodes >= perSubSection) {
+            outputInodes = 0;
+            return new SaveBatch(inodes, true);
+          }
+        }
+        return inodes.isEmpty() ? null : new SaveBatch(inodes, false);
+      }
+    }
+
+    /** A batch of inodes to serialize on the save executor. */
+    private static final class SaveBatch {
+      private final List<INodeWithAdditionalFields> inodes;
+      /** Whether a sub-section is committed after this batch. */
+      private final boolean endsSubSection;
+      private Future<SerializedBatch> future;
+
+      SaveBatch(List<INodeWithAdditionalFields> inodes,
+          boolean endsSubSection) {
+        this.inodes = inodes;
+        this.endsSubSection = endsSubSection;
+      }
+
+      SerializedBatch get() throws IOException {
+        try {
+          return future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException(
+              "Interrupted while serializing the image");
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          throw new IOException(cause);
+        }
+      }
+    }
+
+    /** The serialized form of a batch of inodes or directory entries. */
+    private static final class SerializedBatch {
+      private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      /** The number of dangling children found in the batch. */
+      private final AtomicLong errors = new AtomicLong();
+    }
+
     void serializeFilesUCSection(OutputStream out) throws IOException {
       Collection<Long> filesWithUC = fsn.getLeaseManager()
               .getINodeIdWithLeases();
@@ -920,7 +1128,7 @@ private INodeSection.INode.Builder buildINodeCommon(INode n) {
      * @return the number of non-fatal errors detected.
      */
     public long getNumImageErrors() {
-      return numImageErrors;
+      return numImageErrors.get();
     }
   }
 
@@ -78,6 +78,7 @@
 import org.apache.hadoop.util.Lists;
 
 import org.apache.hadoop.thirdparty.com.google.common.collect.Maps;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.thirdparty.protobuf.CodedOutputStream;
 
 /**
@@ -630,6 +631,9 @@ public static final class Saver {
     private CompressionCodec codec;
     private OutputStream underlyingOutputStream;
     private Configuration conf;
+    // Serializes batches of inodes when the image is saved in parallel
+    private ExecutorService saveExecutor;
+    private int saveThreads;
 
     Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
@@ -653,6 +657,18 @@ public int getInodesPerSubSection() {
       return inodesPerSubSection;
     }
 
+    /**
+     * @return the pool serializing the inode sections, or null if they are
+     * serialized by the saving thread.
+     */
+    ExecutorService getSaveExecutor() {
+      return saveExecutor;
+    }
+
+    int getSaveThreads() {
+      return saveThreads;
+    }
+
     /**
      * Commit the length and offset of a fsimage section to the summary index,
      * including the sub section, which will be committed before the section is
@@ -728,6 +744,7 @@ long save(File file, FSImageCompression compression) throws IOException {
       enableSubSectionsIfRequired();
       FileOutputStream fout = new FileOutputStream(file);
       fileChannel = fout.getChannel();
+      saveExecutor = getSaveExecutorService();
       try {
         LOG.info("Saving image file {} using {}", file, compression);
         long startTime = monotonicNow();
@@ -738,10 +755,34 @@ long save(File file, FSImageCompression compression) throws IOException {
             (numErrors > 0 ? (" with" + numErrors + " errors") : ""));
         return numErrors;
       } finally {
+        if (saveExecutor != null) {
+          saveExecutor.shutdownNow();
+          saveExecutor = null;
+        }
         fout.close();
       }
     }
 
+    /**
+     * The inode sections are only serialized in parallel if they are split
+     * into sub-sections, as that is when a large image is expected.
+     * @return an ExecutorService with the configured number of threads, or
+     * null if the sections are serialized by the saving thread.
+     */
+    private ExecutorService getSaveExecutorService() {
+      saveThreads = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_THREADS_DEFAULT);
+      if (!writeSubSections || saveThreads <= 1) {
+        return null;
+      }
+      LOG.info("The inode sections will be serialized in parallel using {} " +
+          "threads", saveThreads);
+      return Executors.newFixedThreadPool(saveThreads,
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("FSImageSaver-%d").build());
+    }
+
     private void enableSubSectionsIfRequired() {
       boolean parallelEnabled = enableParallelSaveAndLoad(conf);
       int inodeThreshold = conf.getInt(
@@ -83,6 +83,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_SEGMENTS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_SEGMENTS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SHARED_EDITS_DIR_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_DEFAULT;
@@ -140,6 +142,7 @@
 import static org.apache.hadoop.hdfs.server.namenode.top.metrics.TopMetrics.TOPMETRICS_METRICS_SOURCE_NAME;
 
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.DataInput;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -177,6 +180,7 @@
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
@@ -311,6 +315,7 @@
 import org.apache.hadoop.hdfs.server.protocol.NamenodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
+import org.apache.hadoop.hdfs.server.protocol.RegisterCommand;
 import org.apache.hadoop.hdfs.server.protocol.SlowPeerReports;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
@@ -627,6 +632,13 @@ private boolean isClientPortInfoAbsent(CallerContext ctx){
    */
   private final ReentrantLock cpLock;
 
+  /**
+   * Write locked for the duration of an HA state transition, so that the
+   * HA state and the last txid can be read together without the namesystem
+   * lock, see {@link #getHAStatusHeartbeat()}.
+   */
+  private final StampedLock haStateLock = new StampedLock();
+
   /**
    * Used when this NN is in standby or observer state to read from the
    * shared edit log.
@@ -1156,9 +1168,11 @@ static RetryCache initRetryCache(Configuration conf) {
       LOG.info("Retry cache will use " + heapPercent
           + " of total heap and retry cache entry expiry time is "
           + entryExpiryMillis + " millis");
+      int segments = conf.getInt(DFS_NAMENODE_RETRY_CACHE_SEGMENTS_KEY,
+          DFS_NAMENODE_RETRY_CACHE_SEGMENTS_DEFAULT);
       long entryExpiryNanos = entryExpiryMillis * 1000 * 1000;
       return new RetryCache("NameNodeRetryCache", heapPercent,
-          entryExpiryNanos);
+          entryExpiryNanos, segments);
     }
     return null;
   }
@@ -1832,7 +1846,8 @@ public void writeUnlock(String opName,
 
   @Override
   public boolean hasWriteLock() {
-    return this.fsLock.isWriteLockedByCurrentThread();
+    return this.fsLock.isWriteLockedByCurrentThread() ||
+        this.fsLock.hasPartitionWriteLock();
   }
   @Override
   public boolean hasReadLock() {
@@ -1843,6 +1858,93 @@ public int getReadHoldCount() {
     return this.fsLock.getReadHoldCount();
   }
 
+  /**
+   * Acquire the lock protecting a namespace mutation of the given paths.
+   * If the namesystem lock is partitioned and every path lies below an
+   * existing partition root, only the partitions covering the paths are
+   * write locked. Otherwise this falls back to the global write lock.
+   *
+   * @param partitionable whether the operation supports partitioned locking.
+   * @param targetMustNotExist whether the last inode of each path must not
+   *                           exist for partitioned locking to be used.
+   * @param srcs the paths to be mutated.
+   * @return true if partition locks were taken, false for the write lock.
+   */
+  private boolean writeLockPartitions(boolean partitionable,
+      boolean targetMustNotExist, String... srcs) {
+    if (partitionable && fsLock.isPartitioned()) {
+      final int[] partitions = new int[srcs.length];
+      final byte[][][] components = new byte[srcs.length][][];
+      boolean eligible = true;
+      for (int i = 0; i < srcs.length && eligible; i++) {
+        if (!DFSUtil.isValidName(srcs[i]) ||
+            FSDirectory.isReservedName(srcs[i])) {
+          eligible = false;
+        } else {
+          components[i] = INode.getPathComponents(srcs[i]);
+          partitions[i] = fsLock.getPartition(components[i]);
+          eligible = partitions[i] >= 0;
+        }
+      }
+      if (eligible) {
+        fsLock.partitionWriteLock(partitions);
+        if (canMutatePartitions(components, targetMustNotExist)) {
+          return true;
+        }
+        fsLock.partitionWriteUnlock(FSNamesystemLock.OP_NAME_OTHER, null);
+      }
+    }
+    writeLock();
+    return false;
+  }
+
+  /**
+   * Partitioned writers run concurrently with each other, so they may only
+   * touch the subtrees below their partition roots. Snapshots and
+   * encryption zones are tracked across subtrees and thus always require the
+   * global write lock. So does a quota on the root or a partition root or
+   * between them: the writers of different partitions would verify it and
+   * then consume it without excluding each other, and could exceed it.
+   * Quotas below a partition root are only consumed by the writers of its
+   * partition, which exclude each other.
+   */
+  private boolean canMutatePartitions(byte[][][] components,
+      boolean targetMustNotExist) {
+    if (snapshotManager.getNumSnapshottableDirs() > 0
+        || dir.ezManager.getNumEncryptionZones() > 0) {
+      return false;
+    }
+    final int depth = fsLock.getPartitionDepth();
+    for (byte[][] pathComponents : components) {
+      final INodesInPath iip =
+          INodesInPath.resolve(dir.getRoot(), pathComponents);
+      for (int i = 0; i <= depth; i++) {
+        final INode inode = iip.getINode(i);
+        if (inode == null || !inode.isDirectory() || inode.isReference()) {
+          return false;
+        }
+        final DirectoryWithQuotaFeature quota =
+            inode.asDirectory().getDirectoryWithQuotaFeature();
+        if (quota != null && quota.isQuotaLimited()) {
+          return false;
+        }
+      }
+      if (targetMustNotExist && iip.getLastINode() != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeUnlockPartitions(boolean partitioned, String opName,
+      Supplier<String> lockReportInfoSupplier) {
+    if (partitioned) {
+      fsLock.partitionWriteUnlock(opName, lockReportInfoSupplier);
+    } else {
+      writeUnlock(opName, lockReportInfoSupplier);
+    }
+  }
+
   public int getWriteHoldCount() {
     return this.fsLock.getWriteHoldCount();
   }
@@ -1911,6 +2013,19 @@ void close() {
       } finally {
         IOUtils.cleanupWithLogger(LOG, dir);
         IOUtils.cleanupWithLogger(LOG, fsImage);
+        closeAuditLoggers();
+      }
+    }
+  }
+
+  /** Close the audit loggers that hold resources, e.g. a writer thread. */
+  private void closeAuditLoggers() {
+    if (auditLoggers == null) {
+      return;
+    }
+    for (AuditLogger logger : auditLoggers) {
+      if (logger instanceof Closeable) {
+        IOUtils.cleanupWithLogger(LOG, (Closeable) logger);
       }
     }
   }
@@ -2760,7 +2875,10 @@ private HdfsFileStatus startFileInt(String src,
     checkOperation(OperationCategory.WRITE);
     final FSPermissionChecker pc = getPermissionChecker();
     FSPermissionChecker.setOperationType(null);
-    writeLock();
+    // Overwriting or recovering an existing file and generating EDEKs need
+    // the global write lock.
+    final boolean partitioned =
+        writeLockPartitions(provider == null, true, src);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create file" + src);
@@ -2822,7 +2940,8 @@ private HdfsFileStatus startFileInt(String src,
         dir.writeUnlock();
       }
     } finally {
-      writeUnlock("create", getLockReportInfoSupplier(src, null, stat));
+      writeUnlockPartitions(partitioned, "create",
+          getLockReportInfoSupplier(src, null, stat));
       // There might be transactions logged while trying to recover the lease.
       // They need to be sync'ed even when an exception was thrown.
       if (!skipSync) {
@@ -3298,14 +3417,14 @@ boolean renameTo(String src, String dst, boolean logRetryCache)
     final FSPermissionChecker pc = getPermissionChecker();
     FSPermissionChecker.setOperationType(operationName);
     try {
-      writeLock();
+      final boolean partitioned = writeLockPartitions(true, false, src, dst);
       try {
         checkOperation(OperationCategory.WRITE);
         checkNameNodeSafeMode("Cannot rename " + src);
         ret = FSDirRenameOp.renameToInt(dir, pc, src, dst, logRetryCache);
       } finally {
         FileStatus status = ret != null ? ret.auditStat : null;
-        writeUnlock(operationName,
+        writeUnlockPartitions(partitioned, operationName,
             getLockReportInfoSupplier(src, dst, status));
       }
     } catch (AccessControlException e)  {
@@ -3330,7 +3449,7 @@ void renameTo(final String src, final String dst,
     final FSPermissionChecker pc = getPermissionChecker();
     FSPermissionChecker.setOperationType(operationName);
     try {
-      writeLock();
+      final boolean partitioned = writeLockPartitions(true, false, src, dst);
       try {
         checkOperation(OperationCategory.WRITE);
         checkNameNodeSafeMode("Cannot rename " + src);
@@ -3338,7 +3457,7 @@ void renameTo(final String src, final String dst,
             options);
       } finally {
         FileStatus status = res != null ? res.auditStat : null;
-        writeUnlock(operationName,
+        writeUnlockPartitions(partitioned, operationName,
             getLockReportInfoSupplier(src, dst, status));
       }
     } catch (AccessControlException e) {
@@ -3373,7 +3492,7 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
     FSPermissionChecker.setOperationType(operationName);
     boolean ret = false;
     try {
-      writeLock();
+      final boolean partitioned = writeLockPartitions(true, false, src);
       try {
         checkOperation(OperationCategory.WRITE);
         checkNameNodeSafeMode("Cannot delete " + src);
@@ -3381,7 +3500,8 @@ boolean delete(String src, boolean recursive, boolean logRetryCache)
             this, pc, src, recursive, logRetryCache);
         ret = toRemovedBlocks != null;
       } finally {
-        writeUnlock(operationName, getLockReportInfoSupplier(src));
+        writeUnlockPartitions(partitioned, operationName,
+            getLockReportInfoSupplier(src));
       }
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, src);
@@ -3512,14 +3632,14 @@ boolean mkdirs(String src, PermissionStatus permissions,
     final FSPermissionChecker pc = getPermissionChecker();
     FSPermissionChecker.setOperationType(operationName);
     try {
-      writeLock();
+      final boolean partitioned = writeLockPartitions(true, false, src);
       try {
         checkOperation(OperationCategory.WRITE);
         checkNameNodeSafeMode("Cannot create directory " + src);
         auditStat = FSDirMkdirOp.mkdirs(this, pc, src, permissions,
             createParent);
       } finally {
-        writeUnlock(operationName,
+        writeUnlockPartitions(partitioned, operationName,
             getLockReportInfoSupplier(src, null, auditStat));
       }
     } catch (AccessControlException e) {
@@ -4378,6 +4498,11 @@ String getRegistrationID() {
    * If a substantial amount of time passed since the last datanode
    * heartbeat then request an immediate block report.
    *
+   * The state and the statistics of the datanode are updated without the
+   * namesystem lock. The read lock is only taken to hand out the commands
+   * for the blocks queued for the datanode, to grant a block report lease,
+   * or to read the HA status during an HA state transition.
+   *
    * @return an array of datanode commands
    * @throws IOException
    */
@@ -4389,33 +4514,81 @@ HeartbeatResponse handleHeartbeat(DatanodeRegistration nodeReg,
       @Nonnull SlowPeerReports slowPeers,
       @Nonnull SlowDiskReports slowDisks)
           throws IOException {
-    readLock();
-    try {
-      //get datanode commands
-      DatanodeCommand[] cmds = blockManager.getDatanodeManager().handleHeartbeat(
-          nodeReg, reports, getBlockPoolId(), cacheCapacity, cacheUsed,
-          xceiverCount, xmitsInProgress, failedVolumes, volumeFailureSummary,
-          slowPeers, slowDisks);
-      long blockReportLeaseId = 0;
-      if (requestFullBlockReportLease) {
-        blockReportLeaseId =  blockManager.requestBlockReportLeaseId(nodeReg);
+    final DatanodeManager dm = blockManager.getDatanodeManager();
+    final DatanodeDescriptor nodeinfo = dm.updateHeartbeat(nodeReg, reports,
+        cacheCapacity, cacheUsed, xceiverCount, failedVolumes,
+        volumeFailureSummary);
+
+    //get datanode commands
+    DatanodeCommand[] cmds;
+    long blockReportLeaseId = 0;
+    if (nodeinfo == null) {
+      cmds = new DatanodeCommand[]{RegisterCommand.REGISTER};
+    } else if (requestFullBlockReportLease ||
+        dm.hasPendingBlockCommands(nodeinfo)) {
+      readLock();
+      try {
+        cmds = dm.getHeartbeatCommands(nodeReg, nodeinfo, getBlockPoolId(),
+            xmitsInProgress, true, slowPeers, slowDisks);
+        if (requestFullBlockReportLease) {
+          blockReportLeaseId = blockManager.requestBlockReportLeaseId(nodeReg);
+        }
+      } finally {
+        readUnlock("handleHeartbeat");
       }
+    } else {
+      cmds = dm.getHeartbeatCommands(nodeReg, nodeinfo, getBlockPoolId(),
+          xmitsInProgress, false, slowPeers, slowDisks);
+    }
 
-      //create ha status
-      final NNHAStatusHeartbeat haState = new NNHAStatusHeartbeat(
-          haContext.getState().getServiceState(),
-          getFSImage().getCorrectLastAppliedOrWrittenTxId());
+    final NNHAStatusHeartbeat haState = getHAStatusHeartbeat();
+
+    Set<String> slownodes = DatanodeManager.getSlowNodesUuidSet();
+    boolean isSlownode = slownodes.contains(nodeReg.getDatanodeUuid());
 
-      Set<String> slownodes = DatanodeManager.getSlowNodesUuidSet();
-      boolean isSlownode = slownodes.contains(nodeReg.getDatanodeUuid());
+    return new HeartbeatResponse(cmds, haState, rollingUpgradeInfo,
+        blockReportLeaseId, isSlownode);
+  }
 
-      return new HeartbeatResponse(cmds, haState, rollingUpgradeInfo,
-          blockReportLeaseId, isSlownode);
+  /**
+   * The HA state and the last applied or written txid, which the datanodes
+   * compare to decide which namenode is active, must come from the same
+   * side of an HA state transition. They are read without the namesystem
+   * lock unless a transition is in progress.
+   *
+   * @return the HA status to send to a datanode in a heartbeat response.
+   */
+  private NNHAStatusHeartbeat getHAStatusHeartbeat() {
+    final long stamp = haStateLock.tryOptimisticRead();
+    if (stamp != 0) {
+      final HAServiceState state = haContext.getState().getServiceState();
+      final long txid = getFSImage().getCorrectLastAppliedOrWrittenTxId();
+      if (haStateLock.validate(stamp)) {
+        return new NNHAStatusHeartbeat(state, txid);
+      }
+    }
+    readLock();
+    try {
+      return new NNHAStatusHeartbeat(haContext.getState().getServiceState(),
+          getFSImage().getCorrectLastAppliedOrWrittenTxId());
     } finally {
-      readUnlock("handleHeartbeat");
+      readUnlock("getHAStatusHeartbeat");
     }
   }
 
+  /**
+   * Mark the start of an HA state transition. Called with the write lock
+   * held, by the thread which then calls {@link #endHAStateTransition()}.
+   */
+  void beginHAStateTransition() {
+    haStateLock.asWriteLock().lock();
+  }
+
+  /** Mark the end of an HA state transition. */
+  void endHAStateTransition() {
+    haStateLock.asWriteLock().unlock();
+  }
+
   /**
    * Handles a lifeline message sent by a DataNode.  This method updates contact
    * information and statistics for the DataNode, so that it doesn't time out.
@@ -4475,6 +4648,7 @@ void checkAvailableResources() {
    */
   private void closeFile(String path, INodeFile file) {
     assert hasWriteLock();
+    dir.invalidateContentSummaries(file);
     // file is closed
     getEditLog().logCloseFile(path, file);
     NameNode.stateChangeLog.debug("closeFile: {} with {} blocks is persisted to the file system",
@@ -8773,63 +8947,83 @@ public void logAuditEvent(boolean succeeded, String userName,
         FileStatus status, CallerContext callerContext, UserGroupInformation ugi,
         DelegationTokenSecretManager dtSecretManager) {
 
-      if (auditLog.isDebugEnabled() ||
-          (auditLog.isInfoEnabled() && !debugCmdSet.contains(cmd))) {
+      if (isAuditLogged(cmd)) {
         final StringBuilder sb = STRING_BUILDER.get();
-        src = escapeJava(src);
-        dst = escapeJava(dst);
         sb.setLength(0);
-        sb.append("allowed=").append(succeeded).append("\t")
-            .append("ugi=").append(userName).append("\t")
-            .append("ip=").append(addr).append("\t")
-            .append("cmd=").append(cmd).append("\t")
-            .append("src=").append(src).append("\t")
-            .append("dst=").append(dst).append("\t");
-        if (null == status) {
-          sb.append("perm=null");
-        } else {
-          sb.append("perm=")
-              .append(status.getOwner()).append(":")
-              .append(status.getGroup()).append(":")
-              .append(status.getPermission());
-        }
-        if (logTokenTrackingId) {
-          sb.append("\t").append("trackingId=");
-          String trackingId = null;
-          if (ugi != null && dtSecretManager != null
-              && ugi.getAuthenticationMethod() == AuthenticationMethod.TOKEN) {
-            for (TokenIdentifier tid: ugi.getTokenIdentifiers()) {
-              if (tid instanceof DelegationTokenIdentifier) {
-                DelegationTokenIdentifier dtid =
-                    (DelegationTokenIdentifier)tid;
-                trackingId = dtSecretManager.getTokenTrackingId(dtid);
-                break;
-              }
-            }
+        appendAuditEvent(sb, succeeded, userName, addr, cmd, src, dst, status,
+            callerContext, getTokenTrackingId(ugi, dtSecretManager),
+            Server.getProtocol());
+        logAuditMessage(sb.toString());
+      }
+    }
+
+    /** @return whether an event for cmd is written to the audit log. */
+    boolean isAuditLogged(String cmd) {
+      return auditLog.isDebugEnabled() ||
+          (auditLog.isInfoEnabled() && !debugCmdSet.contains(cmd));
+    }
+
+    /**
+     * @return the tracking id of the delegation token the user authenticated
+     *         with, or null if there is none or tracking ids are not logged.
+     */
+    String getTokenTrackingId(UserGroupInformation ugi,
+        DelegationTokenSecretManager dtSecretManager) {
+      if (logTokenTrackingId && ugi != null && dtSecretManager != null
+          && ugi.getAuthenticationMethod() == AuthenticationMethod.TOKEN) {
+        for (TokenIdentifier tid: ugi.getTokenIdentifiers()) {
+          if (tid instanceof DelegationTokenIdentifier) {
+            DelegationTokenIdentifier dtid =
+                (DelegationTokenIdentifier)tid;
+            return dtSecretManager.getTokenTrackingId(dtid);
           }
-          sb.append(trackingId);
         }
-        sb.append("\t").append("proto=")
-            .append(Server.getProtocol());
-        if (isCallerContextEnabled &&
-            callerContext != null &&
-            callerContext.isContextValid()) {
-          sb.append("\t").append("callerContext=");
-          String context = escapeJava(callerContext.getContext());
-          if (context.length() > callerContextMaxLen) {
-            sb.append(context, 0, callerContextMaxLen);
-          } else {
-            sb.append(context);
-          }
-          if (callerContext.getSignature() != null &&
-              callerContext.getSignature().length > 0 &&
-              callerContext.getSignature().length <= callerSignatureMaxLen) {
-            sb.append(":")
-                .append(escapeJava(new String(callerContext.getSignature(),
-                CallerContext.SIGNATURE_ENCODING)));
-          }
+      }
+      return null;
+    }
+
+    /** Append an audit event to sb in the format of the audit log. */
+    void appendAuditEvent(StringBuilder sb, boolean succeeded,
+        String userName, InetAddress addr, String cmd, String src, String dst,
+        FileStatus status, CallerContext callerContext, String trackingId,
+        String protocol) {
+      src = escapeJava(src);
+      dst = escapeJava(dst);
+      sb.append("allowed=").append(succeeded).append("\t")
+          .append("ugi=").append(userName).append("\t")
+          .append("ip=").append(addr).append("\t")
+          .append("cmd=").append(cmd).append("\t")
+          .append("src=").append(src).append("\t")
+          .append("dst=").append(dst).append("\t");
+      if (null == status) {
+        sb.append("perm=null");
+      } else {
+        sb.append("perm=")
+            .append(status.getOwner()).append(":")
+            .append(status.getGroup()).append(":")
+            .append(status.getPermission());
+      }
+      if (logTokenTrackingId) {
+        sb.append("\t").append("trackingId=").append(trackingId);
+      }
+      sb.append("\t").append("proto=").append(protocol);
+      if (isCallerContextEnabled &&
+          callerContext != null &&
+          callerContext.isContextValid()) {
+        sb.append("\t").append("callerContext=");
+        String context = escapeJava(callerContext.getContext());
+        if (context.length() > callerContextMaxLen) {
+          sb.append(context, 0, callerContextMaxLen);
+        } else {
+          sb.append(context);
+        }
+        if (callerContext.getSignature() != null &&
+            callerContext.getSignature().length > 0 &&
+            callerContext.getSignature().length <= callerSignatureMaxLen) {
+          sb.append(":")
+              .append(escapeJava(new String(callerContext.getSignature(),
+              CallerContext.SIGNATURE_ENCODING)));
         }
-        logAuditMessage(sb.toString());
       }
     }
 
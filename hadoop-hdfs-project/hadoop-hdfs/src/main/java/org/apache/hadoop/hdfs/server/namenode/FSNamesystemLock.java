@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -32,6 +33,7 @@
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.log.LogThrottlingHelper;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
+import org.apache.hadoop.util.Preconditions;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Time;
 import org.apache.hadoop.util.Timer;
@@ -40,6 +42,12 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FAIR_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FAIR_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_DEFAULT;
@@ -63,11 +71,31 @@
  * most recent snapshot will be lost due to the use of
  * {@link MutableRatesWithAggregation}. However since threads are re-used
  * between operations this should not generally be an issue.
+ * <p>
+ * If {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_KEY}
+ * is true, the namespace is additionally divided into partitions rooted at the
+ * directories of a configured depth, each hashed to one of a fixed number of
+ * lock stripes. A namespace mutation confined to some partitions may then hold
+ * the coarse lock in shared (intention) mode plus the exclusive stripe locks
+ * of those partitions instead of the coarse write lock. To remain consistent
+ * with such writers, the first read lock acquired by a thread also takes every
+ * stripe in shared mode. Hold times of partitioned writes are reported through
+ * the same write lock metrics.
  */
 class FSNamesystemLock {
   @VisibleForTesting
   protected ReentrantReadWriteLock coarseLock;
 
+  /** Stripe locks of the namespace partitions, null if not partitioned. */
+  private final ReentrantReadWriteLock[] partitionLocks;
+  /** Depth of the directories acting as partition roots. */
+  private final int partitionDepth;
+  /** Partitions write locked by the current thread, if any. */
+  private final ThreadLocal<PartitionHold> partitionWriteHold =
+      new ThreadLocal<>();
+  /** Whether the current thread holds every stripe in shared mode. */
+  private final ThreadLocal<Boolean> partitionReadHold = new ThreadLocal<>();
+
   private final boolean metricsEnabled;
   private final MutableRatesWithAggregation detailedHoldTimeMetrics;
   private final Timer timer;
@@ -160,6 +188,31 @@ public Long initialValue() {
     FSNamesystem.LOG.info("Detailed lock hold time metrics enabled: " +
         this.metricsEnabled);
     this.detailedHoldTimeMetrics = detailedHoldTimeMetrics;
+
+    boolean partitioned = conf.getBoolean(
+        DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_KEY,
+        DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_DEFAULT);
+    this.partitionDepth = conf.getInt(DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY,
+        DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_DEFAULT);
+    if (partitioned) {
+      int numPartitions = conf.getInt(DFS_NAMENODE_FSLOCK_PARTITIONS_KEY,
+          DFS_NAMENODE_FSLOCK_PARTITIONS_DEFAULT);
+      if (numPartitions <= 0 || partitionDepth <= 0) {
+        throw new IllegalArgumentException("Invalid values of "
+            + DFS_NAMENODE_FSLOCK_PARTITIONS_KEY + "=" + numPartitions
+            + " and " + DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY + "="
+            + partitionDepth + ", both must be positive.");
+      }
+      this.partitionLocks = new ReentrantReadWriteLock[numPartitions];
+      for (int i = 0; i < numPartitions; i++) {
+        partitionLocks[i] = new ReentrantReadWriteLock(fair);
+      }
+    } else {
+      this.partitionLocks = null;
+    }
+    FSNamesystem.LOG.info("fsLock is partitioned: " + partitioned
+        + (partitioned ? " (partitions=" + partitionLocks.length
+            + ", depth=" + partitionDepth + ")" : ""));
   }
 
   public void readLock() {
@@ -184,6 +237,9 @@ public void readUnlock(String opName,
     final long readLockIntervalNanos =
         timer.monotonicNowNanos() - readLockHeldTimeStampNanos.get();
     final long currentTimeMs = timer.now();
+    if (needReport) {
+      releasePartitionReadLocks();
+    }
     coarseLock.readLock().unlock();
 
     if (needReport) {
@@ -348,6 +404,108 @@ private void writeUnlock(String opName, boolean suppressWriteLockReport,
     }
   }
 
+  /**
+   * @return true if the namespace is divided into lock partitions.
+   */
+  public boolean isPartitioned() {
+    return partitionLocks != null;
+  }
+
+  /**
+   * @return the depth of the directories acting as partition roots.
+   */
+  public int getPartitionDepth() {
+    return partitionDepth;
+  }
+
+  /**
+   * Get the lock partition of a path. The partition is determined by the
+   * names of the path's ancestors up to the partition depth, so it stays
+   * stable as long as no partition root is renamed, which requires the
+   * coarse write lock.
+   *
+   * @param components the path components, starting with the root.
+   * @return the partition index, or -1 if the path is not strictly below a
+   *         partition root or partitioning is disabled.
+   */
+  public int getPartition(byte[][] components) {
+    if (partitionLocks == null || components.length <= partitionDepth + 1) {
+      return -1;
+    }
+    int hash = 0;
+    for (int i = 1; i <= partitionDepth; i++) {
+      hash = 31 * hash + Arrays.hashCode(components[i]);
+    }
+    hash ^= (hash >>> 16);
+    return Math.floorMod(hash, partitionLocks.length);
+  }
+
+  /**
+   * Acquire the coarse lock in shared mode together with the exclusive locks
+   * of the given partitions. Partitions are locked in ascending order so that
+   * concurrent writers and readers cannot deadlock. This is not reentrant and
+   * must not be called while holding any other namesystem lock.
+   *
+   * @param partitions the partitions to lock, as returned by
+   *                   {@link #getPartition(byte[][])}.
+   */
+  public void partitionWriteLock(int... partitions) {
+    Preconditions.checkState(partitionLocks != null,
+        "Namesystem lock is not partitioned");
+    Preconditions.checkState(partitionWriteHold.get() == null
+        && coarseLock.getReadHoldCount() == 0
+        && !coarseLock.isWriteLockedByCurrentThread(),
+        "Partition write lock must not be nested");
+    final int[] sorted = Arrays.stream(partitions).sorted().distinct()
+        .toArray();
+    final long startNanos = timer.monotonicNowNanos();
+    coarseLock.readLock().lock();
+    for (int p : sorted) {
+      partitionLocks[p].writeLock().lock();
+    }
+    final long now = timer.monotonicNowNanos();
+    updateProcessingDetails(Timing.LOCKWAIT, now - startNanos);
+    partitionWriteHold.set(new PartitionHold(sorted, now));
+  }
+
+  /**
+   * Release the locks acquired by {@link #partitionWriteLock(int...)}. The
+   * hold time is reported as a write lock hold of the given operation.
+   *
+   * @param opName Operation name.
+   * @param lockReportInfoSupplier The info shown in the lock report.
+   */
+  public void partitionWriteUnlock(String opName,
+      Supplier<String> lockReportInfoSupplier) {
+    final PartitionHold hold = partitionWriteHold.get();
+    Preconditions.checkState(hold != null,
+        "Partition write lock is not held by the current thread");
+    final long holdNanos = timer.monotonicNowNanos() - hold.startNanos;
+    partitionWriteHold.remove();
+    for (int i = hold.partitions.length - 1; i >= 0; i--) {
+      partitionLocks[hold.partitions[i]].writeLock().unlock();
+    }
+    coarseLock.readLock().unlock();
+
+    addMetric(opName, holdNanos, true);
+    final long holdMs = TimeUnit.NANOSECONDS.toMillis(holdNanos);
+    if (holdMs >= writeLockReportingThresholdMs) {
+      numWriteLockLongHold.increment();
+      if (FSNamesystem.LOG.isDebugEnabled()) {
+        FSNamesystem.LOG.debug("Partition write lock held for {}ms by {}{}",
+            holdMs, opName, lockReportInfoSupplier != null ? " (" +
+                lockReportInfoSupplier.get() + ")" : "");
+      }
+    }
+  }
+
+  /**
+   * @return true if the current thread holds partition write locks.
+   */
+  public boolean hasPartitionWriteLock() {
+    return partitionWriteHold.get() != null;
+  }
+
   public int getReadHoldCount() {
     return coarseLock.getReadHoldCount();
   }
@@ -420,6 +578,12 @@ private void doLock(boolean isWrite) {
       coarseLock.writeLock().lock();
     } else {
       coarseLock.readLock().lock();
+      if (needPartitionReadLocks()) {
+        for (ReentrantReadWriteLock lock : partitionLocks) {
+          lock.readLock().lock();
+        }
+        partitionReadHold.set(Boolean.TRUE);
+      }
     }
     updateLockWait(startNanos, isWrite);
   }
@@ -431,10 +595,45 @@ private void doLockInterruptibly(boolean isWrite)
       coarseLock.writeLock().lockInterruptibly();
     } else {
       coarseLock.readLock().lockInterruptibly();
+      if (needPartitionReadLocks()) {
+        int locked = 0;
+        try {
+          for (; locked < partitionLocks.length; locked++) {
+            partitionLocks[locked].readLock().lockInterruptibly();
+          }
+        } catch (InterruptedException e) {
+          while (locked > 0) {
+            partitionLocks[--locked].readLock().unlock();
+          }
+          coarseLock.readLock().unlock();
+          throw e;
+        }
+        partitionReadHold.set(Boolean.TRUE);
+      }
     }
     updateLockWait(startNanos, isWrite);
   }
 
+  /**
+   * A thread needs the shared partition locks when it takes its first read
+   * lock, unless its coarse write lock or partition write locks already
+   * exclude all partitioned writers.
+   */
+  private boolean needPartitionReadLocks() {
+    return partitionLocks != null && coarseLock.getReadHoldCount() == 1
+        && !coarseLock.isWriteLockedByCurrentThread()
+        && partitionWriteHold.get() == null;
+  }
+
+  private void releasePartitionReadLocks() {
+    if (partitionLocks != null && partitionReadHold.get() != null) {
+      partitionReadHold.remove();
+      for (int i = partitionLocks.length - 1; i >= 0; i--) {
+        partitionLocks[i].readLock().unlock();
+      }
+    }
+  }
+
   private void updateLockWait(long startNanos, boolean isWrite) {
     long now = timer.monotonicNowNanos();
     updateProcessingDetails(Timing.LOCKWAIT, now - startNanos);
@@ -462,6 +661,19 @@ private static String getMetricName(String operationName, boolean isWrite) {
         LOCK_METRIC_SUFFIX;
   }
 
+  /**
+   * Partitions write locked by a thread and the time they were acquired.
+   */
+  private static class PartitionHold {
+    private final int[] partitions;
+    private final long startNanos;
+
+    PartitionHold(int[] partitions, long startNanos) {
+      this.partitions = partitions;
+      this.startNanos = startNanos;
+    }
+  }
+
   /**
    * Read lock Held Info.
    */
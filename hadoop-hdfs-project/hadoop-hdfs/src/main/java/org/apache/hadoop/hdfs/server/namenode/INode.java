@@ -682,6 +682,18 @@ public String toDetailString() {
         + ", " + getParentString() + ")";
   }
 
+  /**
+   * Record that a diff for the given snapshot was added to this inode in its
+   * directory and in the ancestors of the inode, so computing the diff
+   * between snapshots doesn't skip the subtrees containing the inode.
+   */
+  public final void markSnapshotDiffAdded(int snapshotId) {
+    INodeDirectory dir = isDirectory() ? asDirectory() : getParent();
+    for (; dir != null; dir = dir.getParent()) {
+      dir.updateLastSnapshotDiffId(snapshotId);
+    }
+  }
+
   /** @return the parent directory */
   public final INodeDirectory getParent() {
     return parent == null? null
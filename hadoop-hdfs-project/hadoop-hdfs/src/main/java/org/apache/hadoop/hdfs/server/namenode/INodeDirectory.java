@@ -74,6 +74,13 @@ public static INodeDirectory valueOf(INode inode, Object path
   static final byte[] ROOT_NAME = DFSUtil.string2Bytes("");
 
   private List<INode> children = null;
+
+  /**
+   * The id of the latest snapshot that a diff was added for by this
+   * directory or an inode below it. Computing the diff between snapshots
+   * skips the directories without diffs after the earlier snapshot.
+   */
+  private int lastSnapshotDiffId = Snapshot.NO_SNAPSHOT_ID;
   
   /** constructor */
   public INodeDirectory(long id, byte[] name, PermissionStatus permissions,
@@ -93,6 +100,7 @@ public INodeDirectory(INodeDirectory other, boolean adopt,
       Feature... featuresToCopy) {
     super(other);
     this.children = other.children;
+    this.lastSnapshotDiffId = other.lastSnapshotDiffId;
     if (adopt && this.children != null) {
       for (INode child : children) {
         child.setParent(this);
@@ -231,6 +239,21 @@ public DirectoryDiffList getDiffs() {
     DirectoryWithSnapshotFeature sf = getDirectoryWithSnapshotFeature();
     return sf != null ? sf.getDiffs() : null;
   }
+
+  /**
+   * @return the id of the latest snapshot that a diff was added for by this
+   *         directory or an inode below it, or
+   *         {@link Snapshot#NO_SNAPSHOT_ID} if there is none.
+   */
+  public int getLastSnapshotDiffId() {
+    return lastSnapshotDiffId;
+  }
+
+  void updateLastSnapshotDiffId(int snapshotId) {
+    if (snapshotId > lastSnapshotDiffId) {
+      lastSnapshotDiffId = snapshotId;
+    }
+  }
   
   @Override
   public INodeDirectoryAttributes getSnapshotINode(int snapshotId) {
@@ -23,6 +23,7 @@
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
+import org.apache.hadoop.hdfs.util.OffHeapLongGSet;
 import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
 
@@ -40,19 +41,40 @@ static INodeMap newInstance(INodeDirectory rootDir) {
     GSet<INode, INodeWithAdditionalFields> map =
         new LightWeightGSet<>(capacity);
     map.put(rootDir);
-    return new INodeMap(map);
+    return new INodeMap(map, null);
+  }
+
+  /**
+   * Create a map indexed by inode id in an {@link OffHeapLongGSet}, which
+   * grows on demand starting from the given capacity. Only the ids are
+   * kept off-heap; the elements stay on the heap.
+   */
+  static INodeMap newOffHeapInstance(INodeDirectory rootDir,
+      int initialCapacity) {
+    OffHeapLongGSet<INode, INodeWithAdditionalFields> map =
+        new OffHeapLongGSet<>(initialCapacity, INode::getId);
+    map.put(rootDir);
+    return new INodeMap(map, map);
   }
 
   /** Synchronized by external lock. */
   private final GSet<INode, INodeWithAdditionalFields> map;
+  /** Same as {@link #map} if the map is kept off-heap, otherwise null. */
+  private final OffHeapLongGSet<INode, INodeWithAdditionalFields> offHeapMap;
   
   public Iterator<INodeWithAdditionalFields> getMapIterator() {
     return map.iterator();
   }
 
-  private INodeMap(GSet<INode, INodeWithAdditionalFields> map) {
+  private INodeMap(GSet<INode, INodeWithAdditionalFields> map,
+      OffHeapLongGSet<INode, INodeWithAdditionalFields> offHeapMap) {
     Preconditions.checkArgument(map != null);
     this.map = map;
+    this.offHeapMap = offHeapMap;
+  }
+
+  boolean isOffHeap() {
+    return offHeapMap != null;
   }
   
   /**
@@ -88,6 +110,10 @@ public int size() {
    *         such {@link INode} in the map.
    */
   public INode get(long id) {
+    if (offHeapMap != null) {
+      // No need for a key object to look up an inode by its id.
+      return offHeapMap.get(id);
+    }
     INode inode = new INodeWithAdditionalFields(id, null, new PermissionStatus(
         "", "", new FsPermission((short) 0)), 0, 0) {
       
@@ -138,4 +164,16 @@ public byte getLocalStoragePolicyID() {
   public void clear() {
     map.clear();
   }
+
+  /**
+   * Clear the {@link #map} and release the direct memory of the off-heap
+   * map, if any. The map must not be used afterwards.
+   */
+  void close() {
+    if (offHeapMap != null) {
+      offHeapMap.close();
+    } else {
+      map.clear();
+    }
+  }
 }
@@ -23,14 +23,15 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -87,16 +88,29 @@ public class LeaseManager {
   private long hardLimit;
   static final int INODE_FILTER_WORKER_COUNT_MAX = 4;
   static final int INODE_FILTER_WORKER_TASK_MIN = 512;
+  /** The number of expiry buckets the hard limit period is split into. */
+  static final int EXPIRY_BUCKETS_PER_HARD_LIMIT = 1024;
   private long lastHolderUpdateTime;
   private String internalLeaseHolder;
 
   //
   // Used for handling lock-leases
   // Mapping: leaseHolder -> Lease
+  // Modified under the LeaseManager lock, but read without it so lease
+  // renewals don't contend with the lease monitor.
   //
-  private final HashMap<String, Lease> leases = new HashMap<>();
+  private final ConcurrentHashMap<String, Lease> leases =
+      new ConcurrentHashMap<>();
   // INodeID -> Lease
   private final TreeMap<Long, Lease> leasesById = new TreeMap<>();
+  //
+  // Leases by the bucket of time in which their hard limit expires, unless
+  // they are renewed. A renewal only updates the lease, it is moved to the
+  // bucket of its new expiry when the monitor reaches its old bucket, so the
+  // monitor only examines the leases of the buckets which have expired.
+  //
+  private final TreeMap<Long, Set<Lease>> expiryBuckets = new TreeMap<>();
+  private long expiryBucketMs;
 
   private Daemon lmthread;
   private volatile boolean shouldRunMonitor;
@@ -106,9 +120,14 @@ public class LeaseManager {
     this.fsnamesystem = fsnamesystem;
     this.hardLimit = conf.getLong(DFSConfigKeys.DFS_LEASE_HARDLIMIT_KEY,
         DFSConfigKeys.DFS_LEASE_HARDLIMIT_DEFAULT) * 1000;
+    this.expiryBucketMs = getExpiryBucketMs(hardLimit);
     updateInternalLeaseHolder();
   }
 
+  private static long getExpiryBucketMs(long hardLimit) {
+    return Math.max(1, hardLimit / EXPIRY_BUCKETS_PER_HARD_LIMIT);
+  }
+
   // Update the internal lease holder with the current time stamp.
   private void updateInternalLeaseHolder() {
     this.lastHolderUpdateTime = Time.monotonicNow();
@@ -126,7 +145,7 @@ String getInternalLeaseHolder() {
   }
 
   Lease getLease(String holder) {
-    return leases.get(holder);
+    return holder == null ? null : leases.get(holder);
   }
 
   /**
@@ -353,6 +372,7 @@ synchronized Lease addLease(String holder, long inodeId) {
     if (lease == null) {
       lease = new Lease(holder);
       leases.put(holder, lease);
+      scheduleExpiry(lease, getExpiryBucket(lease));
     } else {
       renewLease(lease);
     }
@@ -381,6 +401,7 @@ private synchronized void removeLease(Lease lease, long inodeId) {
       if (leases.remove(lease.holder) == null) {
         LOG.error("{} not found", lease);
       }
+      unscheduleExpiry(lease);
     }
   }
 
@@ -400,6 +421,7 @@ synchronized void removeLease(String holder, INodeFile src) {
   synchronized void removeAllLeases() {
     leasesById.clear();
     leases.clear();
+    expiryBuckets.clear();
   }
 
   /**
@@ -417,11 +439,11 @@ synchronized Lease reassignLease(Lease lease, INodeFile src,
   /**
    * Renew the lease(s) held by the given client
    */
-  synchronized void renewLease(String holder) {
+  void renewLease(String holder) {
     renewLease(getLease(holder));
   }
 
-  synchronized void renewLease(Lease lease) {
+  void renewLease(Lease lease) {
     if (lease != null) {
       lease.renew();
     }
@@ -445,8 +467,10 @@ synchronized void renewAllLeases() {
    *************************************************************/
   class Lease {
     private final String holder;
-    private long lastUpdate;
+    private volatile long lastUpdate;
     private final HashSet<Long> files = new HashSet<>();
+    /** The expiry bucket the lease is in, guarded by the LeaseManager. */
+    private long expiryBucket;
 
     /** Only LeaseManager object can create a lease */
     private Lease(String h) {
@@ -504,21 +528,75 @@ long getLastUpdate() {
     }
   }
 
-  public void setLeasePeriod(long softLimit, long hardLimit) {
+  public synchronized void setLeasePeriod(long softLimit, long hardLimit) {
     this.softLimit = softLimit;
-    this.hardLimit = hardLimit; 
+    this.hardLimit = hardLimit;
+    this.expiryBucketMs = getExpiryBucketMs(hardLimit);
+    expiryBuckets.clear();
+    for (Lease lease : leases.values()) {
+      scheduleExpiry(lease, getExpiryBucket(lease));
+    }
+  }
+
+  /** @return the bucket in which the hard limit of the lease expires. */
+  private long getExpiryBucket(Lease lease) {
+    return (lease.lastUpdate + hardLimit) / expiryBucketMs;
+  }
+
+  private void scheduleExpiry(Lease lease, long bucket) {
+    lease.expiryBucket = bucket;
+    expiryBuckets.computeIfAbsent(bucket, b -> new HashSet<>()).add(lease);
+  }
+
+  private void unscheduleExpiry(Lease lease) {
+    Set<Lease> bucket = expiryBuckets.get(lease.expiryBucket);
+    if (bucket != null && bucket.remove(lease) && bucket.isEmpty()) {
+      expiryBuckets.remove(lease.expiryBucket);
+    }
   }
 
-  private synchronized Collection<Lease> getExpiredCandidateLeases() {
+  /**
+   * Examine the leases of the expiry buckets up to now. The leases renewed
+   * since they were scheduled are moved to the bucket of their new expiry.
+   * The expired leases are kept in the current bucket, so they are returned
+   * again until they are released.
+   */
+  @VisibleForTesting
+  synchronized Collection<Lease> getExpiredCandidateLeases() {
     final long now = Time.monotonicNow();
+    final long nowBucket = now / expiryBucketMs;
     Collection<Lease> expired = new HashSet<>();
-    for (Lease lease : leases.values()) {
-      if (lease.expiredHardLimit(now)) {
-        expired.add(lease);
+    List<Lease> renewed = new ArrayList<>();
+    Map.Entry<Long, Set<Lease>> bucket;
+    while ((bucket = expiryBuckets.firstEntry()) != null
+        && bucket.getKey() <= nowBucket) {
+      expiryBuckets.pollFirstEntry();
+      for (Lease lease : bucket.getValue()) {
+        if (lease.expiredHardLimit(now)) {
+          expired.add(lease);
+        } else {
+          renewed.add(lease);
+        }
       }
     }
+    for (Lease lease : expired) {
+      scheduleExpiry(lease, nowBucket);
+    }
+    for (Lease lease : renewed) {
+      scheduleExpiry(lease, getExpiryBucket(lease));
+    }
     return expired;
   }
+
+  /** @return the number of leases scheduled to expire in the buckets. */
+  @VisibleForTesting
+  synchronized int countScheduledLeases() {
+    int count = 0;
+    for (Set<Lease> bucket : expiryBuckets.values()) {
+      count += bucket.size();
+    }
+    return count;
+  }
   
   /******************************************************
    * Monitor checks for leases that have expired,
@@ -2183,10 +2183,12 @@ public void stopStandbyServices() throws IOException {
     public void writeLock() {
       namesystem.writeLock();
       namesystem.lockRetryCache();
+      namesystem.beginHAStateTransition();
     }
     
     @Override
     public void writeUnlock() {
+      namesystem.endHAStateTransition();
       namesystem.unlockRetryCache();
       namesystem.writeUnlock("HAState");
     }
@@ -1639,17 +1639,24 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
     boolean noStaleStorages = false;
     try {
       if (bm.checkBlockReportLease(context, nodeReg)) {
-        for (int r = 0; r < reports.length; r++) {
-          final BlockListAsLongs blocks = reports[r].getBlocks();
-          //
-          // BlockManager.processReport accumulates information of prior calls
-          // for the same node and storage, so the value returned by the last
-          // call of this loop is the final updated value for noStaleStorage.
-          //
-          final int index = r;
+        if (reports.length > 1 && bm.isReportDiffParallel()) {
+          // the storages are diffed in parallel within one block op
           noStaleStorages = bm.runBlockOp(() ->
-            bm.processReport(nodeReg, reports[index].getStorage(),
-                blocks, context));
+              bm.processReports(nodeReg, reports, context));
+        } else {
+          for (int r = 0; r < reports.length; r++) {
+            final BlockListAsLongs blocks = reports[r].getBlocks();
+            //
+            // BlockManager.processReport accumulates information of prior
+            // calls for the same node and storage, so the value returned by
+            // the last call of this loop is the final updated value for
+            // noStaleStorage.
+            //
+            final int index = r;
+            noStaleStorages = bm.runBlockOp(() ->
+                bm.processReport(nodeReg, reports[index].getStorage(),
+                    blocks, context));
+          }
         }
       }
     } catch (UnregisteredNodeException une) {
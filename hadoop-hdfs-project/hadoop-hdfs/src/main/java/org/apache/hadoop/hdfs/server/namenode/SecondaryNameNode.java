@@ -356,7 +356,8 @@ public void doWork() {
         final long now = Time.now();
 
         if (shouldCheckpointBasedOnCount() ||
-            monotonicNow >= lastCheckpointTime + 1000 * checkpointConf.getPeriod()) {
+            (monotonicNow >= lastCheckpointTime + 1000 * checkpointConf.getPeriod()
+                && shouldCheckpointBasedOnPeriod())) {
           doCheckpoint();
           lastCheckpointTime = monotonicNow;
           lastCheckpointWallclockTime = now;
@@ -668,6 +669,14 @@ boolean shouldCheckpointBasedOnCount() throws IOException {
     return countUncheckpointedTxns() >= checkpointConf.getTxnCount();
   }
 
+  /**
+   * @return true if there are enough uncheckpointed transactions for a
+   *         checkpoint once the checkpoint period has expired.
+   */
+  boolean shouldCheckpointBasedOnPeriod() throws IOException {
+    return countUncheckpointedTxns() >= checkpointConf.getPeriodMinTxnCount();
+  }
+
   /**
    * main() has some simple utility methods.
    * @param argv Command line parameters.
@@ -458,6 +458,12 @@ private void doWork() {
                 "which exceeds the configured threshold {}",
                 uncheckpointed, checkpointConf.getTxnCount());
             needCheckpoint = true;
+          } else if (secsSinceLast >= checkpointConf.getPeriod()
+              && uncheckpointed < checkpointConf.getPeriodMinTxnCount()) {
+            LOG.debug("Skipping checkpoint since there have only been {} " +
+                "txns since the last checkpoint, which is below the " +
+                "configured minimum {}", uncheckpointed,
+                checkpointConf.getPeriodMinTxnCount());
           } else if (secsSinceLast >= checkpointConf.getPeriod()) {
             LOG.info("Triggering checkpoint because it has been {} seconds " +
                 "since the last checkpoint, which exceeds the configured " +
@@ -121,6 +121,7 @@ public long totalFileOps(){
 
 
   @Metric("Journal transactions") MutableRate transactions;
+  final MutableQuantiles[] transactionsQuantiles;
   @Metric("Journal syncs") MutableRate syncs;
   final MutableQuantiles[] syncsQuantiles;
   @Metric("Journal transactions batched in sync")
@@ -173,6 +174,7 @@ public long totalFileOps(){
     registry.tag(ProcessName, processName).tag(SessionId, sessionId);
     
     final int len = intervals.length;
+    transactionsQuantiles = new MutableQuantiles[len];
     syncsQuantiles = new MutableQuantiles[len];
     numTransactionsBatchedInSync = new MutableQuantiles[len];
     storageBlockReportQuantiles = new MutableQuantiles[len];
@@ -187,6 +189,9 @@ public long totalFileOps(){
 
     for (int i = 0; i < len; i++) {
       int interval = intervals[i];
+      transactionsQuantiles[i] = registry.newQuantiles(
+          "transactions" + interval + "s",
+          "Journal transactions", "ops", "latency", interval);
       syncsQuantiles[i] = registry.newQuantiles(
           "syncs" + interval + "s",
           "Journal syncs", "ops", "latency", interval);
@@ -367,6 +372,9 @@ public void setPendingEditsCount(int size) {
 
   public void addTransaction(long latency) {
     transactions.add(latency);
+    for (MutableQuantiles q : transactionsQuantiles) {
+      q.add(latency);
+    }
   }
 
   public void incrTransactionsBatchedInSync(long count) {
@@ -115,6 +115,7 @@ public final void deleteSnapshotDiff(INode.ReclaimContext reclaimContext,
 
   /** Add an {@link AbstractINodeDiff} for the given snapshot. */
   final D addDiff(int latestSnapshotId, N currentINode) {
+    currentINode.markSnapshotDiffAdded(latestSnapshotId);
     return addLast(createDiff(latestSnapshotId, currentINode));
   }
 
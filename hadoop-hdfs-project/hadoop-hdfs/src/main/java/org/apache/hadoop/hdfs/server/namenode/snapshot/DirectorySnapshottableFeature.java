@@ -293,6 +293,8 @@ public void computeContentSummary4Snapshot(final BlockStoragePolicySuite bsps,
    * @param from The name of the start point of the comparison. Null indicating
    *          the current tree.
    * @param to The name of the end point. Null indicating the current tree.
+   * @param skipUnchangedSubtrees whether to skip the directories without
+   *          changes below them after the earlier snapshot.
    * @return The difference between the start/end points.
    * @throws SnapshotException If there is no snapshot matching the starting
    *           point, or if endSnapshotName is not null but cannot be identified
@@ -300,7 +302,8 @@ public void computeContentSummary4Snapshot(final BlockStoragePolicySuite bsps,
    */
   SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRootDir,
       final INodeDirectory snapshotDiffScopeDir, final String from,
-      final String to) throws SnapshotException {
+      final String to, boolean skipUnchangedSubtrees)
+      throws SnapshotException {
     Preconditions.checkArgument(snapshotDiffScopeDir
         .isDescendantOfSnapshotRoot(snapshotRootDir));
     Snapshot fromSnapshot = getSnapshotByName(snapshotRootDir, from);
@@ -315,7 +318,9 @@ SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRootDir,
     // so that the file paths in the diff report are relative to the
     // snapshot scope dir.
     computeDiffRecursively(snapshotDiffScopeDir, snapshotDiffScopeDir,
-        new ArrayList<>(), diffs);
+        new ArrayList<>(), diffs,
+        getMinChangedSnapshotId(diffs.isFromEarlier() ? diffs.getFrom() :
+            diffs.getTo(), skipUnchangedSubtrees));
     return diffs;
   }
 
@@ -339,6 +344,8 @@ SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRootDir,
    *           as the no of entries exceeded the snapshotdiffentry limit. -1
    *           indicates, the snapshotdiff computation needs to start right
    *           from the startPath provided.
+   * @param skipUnchangedSubtrees whether to skip the directories without
+   *           changes below them after the earlier snapshot.
    *
    * @return The difference between the start/end points.
    * @throws SnapshotException If there is no snapshot matching the starting
@@ -348,7 +355,8 @@ SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRootDir,
   SnapshotDiffListingInfo computeDiff(final INodeDirectory snapshotRootDir,
       final INodeDirectory snapshotDiffScopeDir, final String from,
       final String to, byte[] startPath, int index,
-      int snapshotDiffReportEntriesLimit) throws SnapshotException {
+      int snapshotDiffReportEntriesLimit, boolean skipUnchangedSubtrees)
+      throws SnapshotException {
     Preconditions.checkArgument(
         snapshotDiffScopeDir.isDescendantOfSnapshotRoot(snapshotRootDir));
     Snapshot fromSnapshot = getSnapshotByName(snapshotRootDir, from);
@@ -363,10 +371,35 @@ SnapshotDiffListingInfo computeDiff(final INodeDirectory snapshotRootDir,
             fromSnapshot, toSnapshot, snapshotDiffReportEntriesLimit);
     diffs.setLastIndex(index);
     computeDiffRecursively(snapshotDiffScopeDir, snapshotDiffScopeDir,
-        new ArrayList<byte[]>(), diffs, resumePath, 0, toProcess);
+        new ArrayList<byte[]>(), diffs, resumePath, 0, toProcess,
+        getMinChangedSnapshotId(diffs.getEarlier(), skipUnchangedSubtrees));
     return diffs;
   }
 
+  /**
+   * @return the id of the earlier snapshot if unchanged subtrees are skipped,
+   *         otherwise {@link Snapshot#NO_SNAPSHOT_ID}.
+   */
+  private static int getMinChangedSnapshotId(Snapshot earlier,
+      boolean skipUnchangedSubtrees) {
+    return skipUnchangedSubtrees ? earlier.getId() : Snapshot.NO_SNAPSHOT_ID;
+  }
+
+  /**
+   * A directory may only have changed between two snapshots if a diff for a
+   * snapshot no earlier than the first was added below it, as the diffs are
+   * added for the latest snapshot when an inode first changes after it.
+   * References are always visited as their ancestors are only tracked along
+   * their current path.
+   *
+   * @return whether the diff walk needs to visit the child.
+   */
+  private static boolean mayHaveChanged(INode child,
+      int minChangedSnapshotId) {
+    return !child.isDirectory() || child.isReference()
+        || child.asDirectory().getLastSnapshotDiffId() >= minChangedSnapshotId;
+  }
+
   /**
    * Find the snapshot matching the given name.
    *
@@ -400,9 +433,12 @@ public Snapshot getSnapshotByName(INodeDirectory snapshotRoot,
    * @param parentPath Relative path (corresponding to the snapshot root) of
    *                   the node's parent.
    * @param diffReport data structure used to store the diff.
+   * @param minChangedSnapshotId the subtrees without diffs for this or a
+   *                             later snapshot are skipped.
    */
   private void computeDiffRecursively(final INodeDirectory snapshotDir,
-      INode node, List<byte[]> parentPath, SnapshotDiffInfo diffReport) {
+      INode node, List<byte[]> parentPath, SnapshotDiffInfo diffReport,
+      int minChangedSnapshotId) {
     final Snapshot earlierSnapshot = diffReport.isFromEarlier() ?
         diffReport.getFrom() : diffReport.getTo();
     final Snapshot laterSnapshot = diffReport.isFromEarlier() ?
@@ -438,9 +474,10 @@ private void computeDiffRecursively(final INodeDirectory snapshotDir,
             diffReport.setRenameTarget(child.getId(), renameTargetPath);
           }
         }
-        if (toProcess) {
+        if (toProcess && mayHaveChanged(child, minChangedSnapshotId)) {
           parentPath.add(name);
-          computeDiffRecursively(snapshotDir, child, parentPath, diffReport);
+          computeDiffRecursively(snapshotDir, child, parentPath, diffReport,
+              minChangedSnapshotId);
           parentPath.remove(parentPath.size() - 1);
         }
       }
@@ -471,10 +508,13 @@ private void computeDiffRecursively(final INodeDirectory snapshotDir,
    *                    snapshotRoot.
    * @param processFlag indicates that the dir/file where the snapshotdiff
    *                    computation has to start is processed or not.
+   * @param minChangedSnapshotId the subtrees without diffs for this or a
+   *                    later snapshot are skipped.
    */
   private boolean computeDiffRecursively(final INodeDirectory snapshotDir,
        INode node, List<byte[]> parentPath, SnapshotDiffListingInfo diffReport,
-       final byte[][] resume, int level, boolean processFlag) {
+       final byte[][] resume, int level, boolean processFlag,
+       int minChangedSnapshotId) {
     final Snapshot earlier = diffReport.getEarlier();
     final Snapshot later = diffReport.getLater();
     byte[][] relativePath = parentPath.toArray(new byte[parentPath.size()][]);
@@ -515,11 +555,14 @@ private boolean computeDiffRecursively(final INodeDirectory snapshotDir,
           if (renameTargetPath != null) {
             toProcess = true;
           }
+        } else if (toProcess && processFlag) {
+          // the child on the path to resume from is always visited
+          toProcess = mayHaveChanged(child, minChangedSnapshotId);
         }
         if (toProcess) {
           parentPath.add(name);
           processFlag = computeDiffRecursively(snapshotDir, child, parentPath,
-              diffReport, resume, level, processFlag);
+              diffReport, resume, level, processFlag, minChangedSnapshotId);
           parentPath.remove(parentPath.size() - 1);
           if (!processFlag) {
             return false;
@@ -186,6 +186,7 @@ private void loadSnapshots(InputStream in, int size) throws IOException {
     public void loadSnapshotDiffSection(InputStream in) throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
+      final List<INode> inodesWithDiffs = new ArrayList<>();
       while (true) {
         SnapshotDiffSection.DiffEntry entry = SnapshotDiffSection.DiffEntry
             .parseDelimitedFrom(in);
@@ -204,6 +205,16 @@ public void loadSnapshotDiffSection(InputStream in) throws IOException {
               refList);
           break;
         }
+        if (entry.getNumOfDiff() > 0) {
+          inodesWithDiffs.add(inode);
+        }
+      }
+      // the parents of the deleted inodes are set while loading the diffs of
+      // their parents, so mark the ancestors once all the diffs are loaded
+      for (INode inode : inodesWithDiffs) {
+        inode.markSnapshotDiffAdded(inode.isFile() ?
+            inode.asFile().getDiffs().getLastSnapshotId() :
+            inode.asDirectory().getDiffs().getLastSnapshotId());
       }
     }
 
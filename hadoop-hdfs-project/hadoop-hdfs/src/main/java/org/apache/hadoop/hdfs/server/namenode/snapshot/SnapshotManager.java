@@ -125,6 +125,11 @@ public void initThreadLocals() {
    * directory.
    */
   private final boolean snapshotDiffAllowSnapRootDescendant;
+  /**
+   * If true, snapshot diffs skip the directories without changes below them
+   * after the earlier snapshot.
+   */
+  private volatile boolean snapshotDiffSkipUnchangedSubtrees;
 
   private final AtomicInteger numSnapshots = new AtomicInteger();
   private static final int SNAPSHOT_ID_BIT_WIDTH = 28;
@@ -152,6 +157,10 @@ public SnapshotManager(final Configuration conf, final FSDirectory fsdir)
         DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_ALLOW_SNAP_ROOT_DESCENDANT,
         DFSConfigKeys.
             DFS_NAMENODE_SNAPSHOT_DIFF_ALLOW_SNAP_ROOT_DESCENDANT_DEFAULT);
+    this.snapshotDiffSkipUnchangedSubtrees = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_SKIP_UNCHANGED_SUBTREES,
+        DFSConfigKeys.
+            DFS_NAMENODE_SNAPSHOT_DIFF_SKIP_UNCHANGED_SUBTREES_DEFAULT);
     this.maxSnapshotLimit = conf.getInt(
         DFSConfigKeys.
             DFS_NAMENODE_SNAPSHOT_MAX_LIMIT,
@@ -165,6 +174,8 @@ public SnapshotManager(final Configuration conf, final FSDirectory fsdir)
         + skipCaptureAccessTimeOnlyChange
         + ", snapshotDiffAllowSnapRootDescendant: "
         + snapshotDiffAllowSnapRootDescendant
+        + ", snapshotDiffSkipUnchangedSubtrees: "
+        + snapshotDiffSkipUnchangedSubtrees
         + ", maxSnapshotFSLimit: "
         + maxSnapshotFSLimit
         + ", maxSnapshotLimit: "
@@ -201,6 +212,15 @@ void setCaptureOpenFiles(boolean captureOpenFiles) {
     this.captureOpenFiles = captureOpenFiles;
   }
 
+  /**
+   * Set whether snapshot diffs skip the unchanged subtrees. The image loader
+   * of the legacy format doesn't record which directories have changed
+   * below them, so it disables the skipping.
+   */
+  public void setSnapshotDiffSkipUnchangedSubtrees(boolean skip) {
+    this.snapshotDiffSkipUnchangedSubtrees = skip;
+  }
+
   /**
    * @return skipCaptureAccessTimeOnlyChange
    */
@@ -718,7 +738,8 @@ public SnapshotDiffReport diff(final INodesInPath iip,
     }
     final SnapshotDiffInfo diffs = snapshotRootDir
         .getDirectorySnapshottableFeature().computeDiff(
-            snapshotRootDir, snapshotDescendantDir, from, to);
+            snapshotRootDir, snapshotDescendantDir, from, to,
+            snapshotDiffSkipUnchangedSubtrees);
     return diffs != null ? diffs.generateReport() : new SnapshotDiffReport(
         snapshotPath, from, to, Collections.<DiffReportEntry> emptyList());
   }
@@ -745,7 +766,8 @@ public SnapshotDiffReportListing diff(final INodesInPath iip,
     final SnapshotDiffListingInfo diffs =
         snapshotRootDir.getDirectorySnapshottableFeature()
             .computeDiff(snapshotRootDir, snapshotDescendantDir, from, to,
-                startPath, index, snapshotDiffReportLimit);
+                startPath, index, snapshotDiffReportLimit,
+                snapshotDiffSkipUnchangedSubtrees);
     return diffs != null ? diffs.generateReport() :
         new SnapshotDiffReportListing();
   }
@@ -0,0 +1,397 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ToLongFunction;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.util.CleanerUtil;
+import org.apache.hadoop.util.GSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link GSet} whose elements are identified by a long, such as a block
+ * id or an inode id, backed by an open-addressing hash table whose long
+ * keys are kept in direct memory.
+ *
+ * Only the index keys are off-heap: they are copied into fixed-width slabs
+ * of direct memory, 8 bytes per slot, so that probing compares keys without
+ * dereferencing the elements it passes over. The elements themselves, and
+ * a parallel array of references to them, stay on the heap. The heap cost
+ * is therefore about the one of the reference array of a
+ * {@link org.apache.hadoop.util.LightWeightGSet} of the same capacity; what
+ * changes is that the table is sized from the number of elements and grows
+ * on demand, instead of being a fixed share of the heap. Collisions are
+ * resolved with linear probing. A removal marks its slot as removed instead
+ * of shifting the following entries back, so an entry never moves while it
+ * is in the table. Once three quarters of the slots are used or marked, the
+ * entries are rehashed into a new table, which is twice as large if they
+ * fill more than half of the old one.
+ *
+ * This class is not thread safe. It is meant for the namesystem maps which
+ * rely on the namesystem lock. Its iterator does not fail on concurrent
+ * modification, see {@link #iterator()}.
+ *
+ * @param <K> Key type for looking up the elements
+ * @param <E> Element type, which must be a subclass of K
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class OffHeapLongGSet<K, E extends K> implements GSet<K, E> {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(OffHeapLongGSet.class);
+
+  public static final int MAX_CAPACITY = 1 << 30;
+  public static final int MIN_CAPACITY = 16;
+  /** Each slab holds at most 2^26 keys, i.e. 512 MB. */
+  private static final int SLAB_SHIFT = 26;
+  private static final int SLAB_MASK = (1 << SLAB_SHIFT) - 1;
+
+  /** Extracts the long key of an element or of a lookup key. */
+  private final ToLongFunction<? super K> keyFunction;
+  /** Off-heap keys, indexed by slot. */
+  private LongBuffer[] keys;
+  private ByteBuffer[] slabs;
+  /**
+   * Stored elements, indexed by slot. A null entry marks a free slot and
+   * {@link #REMOVED} a slot whose element was removed.
+   */
+  private Object[] values;
+  private int mask;
+  private int size = 0;
+  /** The number of slots marked as {@link #REMOVED}. */
+  private int removed = 0;
+  private int threshold;
+
+  /** Marks a slot whose element was removed; probing goes on past it. */
+  private static final Object REMOVED = new Object();
+
+  private Collection<E> valuesView;
+
+  /**
+   * @param initialCapacity the initial number of slots. It is rounded up to
+   *                        a power of two.
+   * @param keyFunction maps an element or a lookup key to its long key.
+   */
+  public OffHeapLongGSet(int initialCapacity,
+      ToLongFunction<? super K> keyFunction) {
+    this.keyFunction = keyFunction;
+    allocate(tableSizeFor(initialCapacity));
+  }
+
+  private static int tableSizeFor(int capacity) {
+    if (capacity >= MAX_CAPACITY) {
+      return MAX_CAPACITY;
+    } else if (capacity <= MIN_CAPACITY) {
+      return MIN_CAPACITY;
+    }
+    final int a = Integer.highestOneBit(capacity);
+    return a == capacity ? a : a << 1;
+  }
+
+  private void allocate(int capacity) {
+    final int slotsPerSlab = Math.min(capacity, 1 << SLAB_SHIFT);
+    final int numSlabs = capacity / slotsPerSlab;
+    slabs = new ByteBuffer[numSlabs];
+    keys = new LongBuffer[numSlabs];
+    for (int i = 0; i < numSlabs; i++) {
+      slabs[i] = ByteBuffer.allocateDirect(slotsPerSlab * Long.BYTES)
+          .order(ByteOrder.nativeOrder());
+      keys[i] = slabs[i].asLongBuffer();
+    }
+    values = new Object[capacity];
+    removed = 0;
+    mask = capacity - 1;
+    threshold = capacity == MAX_CAPACITY ? capacity - 1 : capacity / 4 * 3;
+  }
+
+  private void free(ByteBuffer[] buffers) {
+    if (buffers == null) {
+      return;
+    }
+    if (CleanerUtil.UNMAP_SUPPORTED) {
+      try {
+        for (ByteBuffer b : buffers) {
+          CleanerUtil.getCleaner().freeBuffer(b);
+        }
+      } catch (IOException e) {
+        LOG.info("Failed to free the off-heap map", e);
+      }
+    } else {
+      LOG.trace(CleanerUtil.UNMAP_NOT_SUPPORTED_REASON);
+    }
+  }
+
+  private long getKey(int slot) {
+    return keys[slot >>> SLAB_SHIFT].get(slot & SLAB_MASK);
+  }
+
+  private void setKey(int slot, long key) {
+    keys[slot >>> SLAB_SHIFT].put(slot & SLAB_MASK, key);
+  }
+
+  @SuppressWarnings("unchecked")
+  private E element(int slot) {
+    return (E) values[slot];
+  }
+
+  /** Spread sequentially allocated ids over the table. */
+  private int home(long key) {
+    final long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  /** @return the slot holding the given key, or -1 if absent. */
+  private int find(long key) {
+    for (int i = home(key);; i = (i + 1) & mask) {
+      if (values[i] == null) {
+        return -1;
+      } else if (values[i] != REMOVED && getKey(i) == key) {
+        return i;
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** @return the number of slots in the table. */
+  public int getCapacity() {
+    return values == null ? 0 : values.length;
+  }
+
+  /** @return the number of bytes of direct memory held by the table. */
+  @VisibleForTesting
+  public long getOffHeapBytes() {
+    return (long) getCapacity() * Long.BYTES;
+  }
+
+  @Override
+  public boolean contains(K key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public E get(K key) {
+    if (key == null) {
+      throw new NullPointerException("key == null");
+    }
+    return get(keyFunction.applyAsLong(key));
+  }
+
+  /**
+   * Look up an element by its long key, without the need for a key object.
+   * @param key the long key.
+   * @return the stored element if it exists. Otherwise, return null.
+   */
+  public E get(long key) {
+    final int i = find(key);
+    return i < 0 ? null : element(i);
+  }
+
+  @Override
+  public E put(E element) {
+    if (element == null) {
+      throw new UnsupportedOperationException(
+          "Null element is not supported.");
+    }
+    final long key = keyFunction.applyAsLong(element);
+    int i = home(key);
+    int free = -1;
+    for (; values[i] != null; i = (i + 1) & mask) {
+      if (values[i] == REMOVED) {
+        if (free < 0) {
+          free = i;
+        }
+      } else if (getKey(i) == key) {
+        final E previous = element(i);
+        values[i] = element;
+        return previous;
+      }
+    }
+    if (free >= 0) {
+      // reuse the first removed slot of the probe sequence
+      i = free;
+      removed--;
+    } else if (size + removed >= threshold) {
+      if (size >= threshold && values.length == MAX_CAPACITY) {
+        throw new IllegalStateException(
+            "Off-heap map is full with " + size + " elements");
+      }
+      // grow if the elements fill more than half of the table, otherwise
+      // only drop the removed slots
+      resize(size > values.length / 2 && values.length < MAX_CAPACITY ?
+          values.length << 1 : values.length);
+      i = home(key);
+      while (values[i] != null) {
+        i = (i + 1) & mask;
+      }
+    }
+    setKey(i, key);
+    values[i] = element;
+    size++;
+    return null;
+  }
+
+  @Override
+  public E remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("key == null");
+    }
+    final int i = find(keyFunction.applyAsLong(key));
+    if (i < 0) {
+      return null;
+    }
+    final E element = element(i);
+    // Mark the slot instead of shifting the following entries back, so that
+    // an iterator does not miss an entry moved behind it.
+    values[i] = REMOVED;
+    removed++;
+    size--;
+    return element;
+  }
+
+  private void resize(int newCapacity) {
+    final Object[] oldValues = values;
+    final LongBuffer[] oldKeys = keys;
+    final ByteBuffer[] oldSlabs = slabs;
+    final long start = System.nanoTime();
+    allocate(newCapacity);
+    for (int slot = 0; slot < oldValues.length; slot++) {
+      if (oldValues[slot] != null && oldValues[slot] != REMOVED) {
+        final long key = oldKeys[slot >>> SLAB_SHIFT].get(slot & SLAB_MASK);
+        int i = home(key);
+        while (values[i] != null) {
+          i = (i + 1) & mask;
+        }
+        setKey(i, key);
+        values[i] = oldValues[slot];
+      }
+    }
+    free(oldSlabs);
+    LOG.debug("Rehashed the off-heap map into {} slots in {} ms",
+        newCapacity, (System.nanoTime() - start) / 1000000);
+  }
+
+  @Override
+  public void clear() {
+    if (values != null) {
+      Arrays.fill(values, null);
+    }
+    size = 0;
+    removed = 0;
+  }
+
+  /** Release the direct memory. The set must not be used afterwards. */
+  public void close() {
+    clear();
+    free(slabs);
+    slabs = null;
+    keys = null;
+    values = null;
+  }
+
+  @Override
+  public Collection<E> values() {
+    if (valuesView == null) {
+      valuesView = new AbstractCollection<E>() {
+        @Override
+        public Iterator<E> iterator() {
+          return OffHeapLongGSet.this.iterator();
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
+    }
+    return valuesView;
+  }
+
+  /**
+   * Not tracking any modifications to set. As this set will be used always
+   * under FSNameSystem lock, modifications will not cause any
+   * ConcurrentModificationExceptions, and the lock may be released between
+   * two calls to the iterator, like the mis-replicated block scan of the
+   * BlockManager does. Every element which is in the set for the whole
+   * iteration is returned exactly once: removals do not move the other
+   * entries, and once the entries are rehashed into a new table, the
+   * iterator goes on through the old one and skips the elements which were
+   * removed or replaced since. Elements added during the iteration may be
+   * missed.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private final Object[] table = values;
+      private int next = 0;
+
+      /** @return whether the element of the slot is still in the set. */
+      private boolean isCurrent(int slot) {
+        final Object v = table[slot];
+        if (v == null || v == REMOVED) {
+          return false;
+        } else if (table == values) {
+          return true;
+        }
+        // the table was replaced by a rehash and is no longer updated
+        @SuppressWarnings("unchecked")
+        final E e = (E) v;
+        return values != null && get(keyFunction.applyAsLong(e)) == e;
+      }
+
+      @Override
+      public boolean hasNext() {
+        while (next < table.length && !isCurrent(next)) {
+          next++;
+        }
+        return next < table.length;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public E next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return (E) table[next++];
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(size=" + size
+        + ", capacity=" + getCapacity() + ")";
+  }
+}
@@ -43,6 +43,7 @@ public static void corruptJournaledEditsCache(long txid, Journal journal) {
     for (int i = 6; i < buf.length; i += 9) {
       buf[i] -= 10;
     }
+    cache.setRawDataForTests(txid, buf);
   }
 
 }
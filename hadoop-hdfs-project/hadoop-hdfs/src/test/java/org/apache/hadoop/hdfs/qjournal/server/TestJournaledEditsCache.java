@@ -25,6 +25,7 @@
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
@@ -35,6 +36,8 @@
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.createGabageTxns;
 import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.createTxnData;
@@ -49,6 +52,8 @@
  * {@link Journal}.
  */
 public class TestJournaledEditsCache {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(TestJournaledEditsCache.class);
 
   private static final int EDITS_CAPACITY = 100;
 
@@ -146,6 +151,35 @@ public void testCacheAboveCapacity() throws Exception {
         thirdCapacity * 5);
   }
 
+  @Test
+  public void testCacheOffHeapWrapAround() throws Exception {
+    // Use txn IDs of the same number of digits so all edits are the same size
+    int startTxn = 1000;
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+        createTxnData(startTxn, 1).length * EDITS_CAPACITY);
+    conf.setBoolean(DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_OFFHEAP_KEY,
+        true);
+    cache = new JournaledEditsCache(conf);
+    // Batches of 3 edits don't divide the capacity, so they wrap around the
+    // end of the buffer
+    int batchSize = 3;
+    int endTxn = startTxn + EDITS_CAPACITY * 6 - 1;
+    for (int txn = startTxn; txn <= endTxn; txn += batchSize) {
+      storeEdits(txn, txn + batchSize - 1);
+    }
+    int lowestTxn = endTxn - EDITS_CAPACITY / batchSize * batchSize + 1;
+    try {
+      cache.retrieveEdits(lowestTxn - 1, 10, new ArrayList<>());
+      fail();
+    } catch (IOException ioe) {
+      // expected
+    }
+    assertTxnCountAndContents(lowestTxn, EDITS_CAPACITY * 2, endTxn);
+    assertTxnCountAndContents(lowestTxn + 1, 10, lowestTxn + 10);
+    assertTxnCountAndContents(endTxn - 1, 10, endTxn);
+  }
+
   @Test
   public void testCacheSingleAdditionAboveCapacity() throws Exception {
     LogCapturer logs = LogCapturer.captureLogs(Journal.LOG);
@@ -210,6 +244,40 @@ public void testCacheEditsWithGaps() throws Exception {
     assertTxnCountAndContents(10, 10, 15);
   }
 
+  /**
+   * Read the oldest edits while they are being evicted by a writer. The
+   * batches are copied without the lock, so each read must either return
+   * the intact edits or fail with a cache miss.
+   */
+  @Test
+  public void testReadWhileEvicting() throws Exception {
+    storeEdits(1, EDITS_CAPACITY);
+    final AtomicLong lastStored = new AtomicLong(EDITS_CAPACITY);
+    final int lastTxn = 50 * EDITS_CAPACITY;
+    Thread writer = new Thread(() -> {
+      try {
+        for (int txn = EDITS_CAPACITY + 1; txn <= lastTxn; txn++) {
+          storeEdits(txn, txn);
+          lastStored.set(txn);
+        }
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    writer.start();
+    int misses = 0;
+    while (lastStored.get() < lastTxn) {
+      int startTxn = (int) lastStored.get() - EDITS_CAPACITY + 2;
+      try {
+        assertTxnCountAndContents(startTxn, 10, startTxn + 9);
+      } catch (JournaledEditsCache.CacheMissException cme) {
+        misses++;
+      }
+    }
+    writer.join();
+    LOG.info("{} reads missed the cache", misses);
+  }
+
   @Test(expected = JournaledEditsCache.CacheMissException.class)
   public void testReadUninitializedCache() throws Exception {
     cache.retrieveEdits(1, 10, new ArrayList<>());
@@ -539,6 +539,54 @@ public void testDeleteCorruptReplicaWithStatleStorages() throws Exception {
     }
   }
 
+  /**
+   * Test that the storage reports of the block reports are diffed in
+   * parallel, for the first reports after a restart and the later ones.
+   */
+  @Test(timeout = 120000)
+  public void testParallelBlockReportDiff() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY, 4);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(2).storagesPerDatanode(3).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        DFSTestUtil.createFile(fs, new Path("/file" + i), 1024, (short) 2, i);
+      }
+      cluster.restartNameNode(true);
+      BlockManager blockManager = cluster.getNamesystem().getBlockManager();
+      assertTrue(blockManager.isReportDiffParallel());
+      // the NameNode leaves safe mode after the first datanode has reported
+      for (int i = 0; i < 10; i++) {
+        DFSTestUtil.waitReplication(fs, new Path("/file" + i), (short) 2);
+      }
+      assertFalse(cluster.getNamesystem().isInSafeMode());
+      assertEquals(10, blockManager.getTotalBlocks());
+      assertEquals(0, blockManager.getMissingBlocksCount());
+
+      // the later reports are diffed against the stored blocks
+      cluster.triggerBlockReports();
+      for (DataNode dn : cluster.getDataNodes()) {
+        DatanodeDescriptor node = blockManager.getDatanodeManager()
+            .getDatanode(dn.getDatanodeId());
+        for (DatanodeStorageInfo storage : node.getStorageInfos()) {
+          assertTrue(storage.getBlockReportCount() > 1);
+        }
+      }
+      for (int i = 0; i < 10; i++) {
+        ExtendedBlock block =
+            DFSTestUtil.getFirstBlock(fs, new Path("/file" + i));
+        assertEquals(2, blockManager.getStoredBlock(block.getLocalBlock())
+            .numNodes());
+      }
+      assertEquals(0, blockManager.getCorruptBlocks());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   /**
    * Tell the block manager that replication is completed for the given
    * pipeline.
@@ -2014,4 +2062,28 @@ public void testValidateReconstructionWorkAndRacksNotEnough() {
     // validateReconstructionWork return false, need to perform resetTargets().
     assertNull(work.getTargets());
   }
+
+  @Test
+  public void testOffHeapBlocksMap() {
+    BlocksMap map = BlocksMap.createOffHeap(4);
+    assertTrue(map.isOffHeap());
+    BlockCollection bc = mock(BlockCollection.class);
+    for (long id = 0; id < 1000; id++) {
+      map.addBlockCollection(
+          new BlockInfoContiguous(new Block(id, 0, 1000L), (short) 3), bc);
+    }
+    assertEquals(1000, map.size());
+    assertEquals(1000, map.getReplicatedBlocks());
+    assertTrue(map.getCapacity() >= 1024);
+    for (long id = 0; id < 1000; id += 2) {
+      BlockInfo stored = map.getStoredBlock(new Block(id));
+      stored.setBlockCollectionId(INodeId.INVALID_INODE_ID);
+      map.removeBlock(stored);
+    }
+    assertEquals(500, map.size());
+    assertNull(map.getStoredBlock(new Block(0)));
+    assertEquals(1, map.getStoredBlock(new Block(1)).getBlockId());
+    map.close();
+    assertEquals(0, map.size());
+  }
 }
\ No newline at end of file
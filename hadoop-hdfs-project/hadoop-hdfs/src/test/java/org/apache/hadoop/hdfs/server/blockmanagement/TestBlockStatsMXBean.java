@@ -250,8 +250,6 @@ public void testStorageTypeLoad() throws Exception {
     HeartbeatManager heartbeatManager =
         cluster.getNamesystem().getBlockManager().getDatanodeManager()
             .getHeartbeatManager();
-    Map<StorageType, StorageTypeStats> storageTypeStatsMap =
-        heartbeatManager.getStorageTypeStats();
     DistributedFileSystem dfs = cluster.getFileSystem();
 
     // Create a file with HOT storage policy.
@@ -277,12 +275,14 @@ public void testStorageTypeLoad() throws Exception {
 
     // The load would be 2*replication since both the
     // write xceiver & packet responder threads are counted.
-    GenericTestUtils.waitFor(() -> storageTypeStatsMap.get(StorageType.DISK)
-        .getNodesInServiceXceiverCount() == 6, 100, 5000);
+    GenericTestUtils.waitFor(() -> heartbeatManager.getStorageTypeStats()
+        .get(StorageType.DISK).getNodesInServiceXceiverCount() == 6, 100,
+        5000);
 
     // The count for ARCHIVE should be independent of the value of DISK.
-    GenericTestUtils.waitFor(() -> storageTypeStatsMap.get(StorageType.ARCHIVE)
-        .getNodesInServiceXceiverCount() == 6, 100, 5000);
+    GenericTestUtils.waitFor(() -> heartbeatManager.getStorageTypeStats()
+        .get(StorageType.ARCHIVE).getNodesInServiceXceiverCount() == 6, 100,
+        5000);
 
     // The total count should stay unaffected, that is sum of load from all
     // datanodes.
@@ -22,8 +22,15 @@
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ha.HAServiceProtocol.HAServiceState;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
@@ -32,6 +39,8 @@
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.server.common.GenerationStamp;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
 import org.apache.hadoop.hdfs.server.datanode.InternalDataNodeTestUtils;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
@@ -42,6 +51,8 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.HeartbeatResponse;
+import org.apache.hadoop.hdfs.server.protocol.NNHAStatusHeartbeat;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
@@ -262,6 +273,110 @@ public void testHeartbeatBlockRecovery() throws Exception {
     }
   }
 
+  /**
+   * Test that {@link FSNamesystem#handleHeartbeat} only waits for the
+   * namesystem lock when blocks are queued for the datanode.
+   */
+  @Test
+  public void testHeartbeatWithoutNamesystemLock() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_HEARTBEAT_SHARDS_KEY, 4);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      cluster.waitActive();
+      final DataNode dn = cluster.getDataNodes().get(0);
+      DataNodeTestUtils.setHeartbeatsDisabledForTests(dn, true);
+      final FSNamesystem namesystem = cluster.getNamesystem();
+      final HeartbeatManager hm = namesystem.getBlockManager(
+          ).getDatanodeManager().getHeartbeatManager();
+      assertEquals(4, hm.getNumShards());
+      final DatanodeRegistration nodeReg = InternalDataNodeTestUtils.
+          getDNRegistrationForBP(dn, namesystem.getBlockPoolId());
+      final DatanodeDescriptor dd =
+          NameNodeAdapter.getDatanode(namesystem, nodeReg);
+      final Callable<DatanodeCommand[]> heartbeat =
+          () -> NameNodeAdapter.sendHeartBeat(nodeReg, dd, namesystem, false)
+              .getCommands();
+
+      namesystem.writeLock();
+      try {
+        // nothing to dispatch, so the heartbeat doesn't need the lock
+        final long lastUpdate = dd.getLastUpdateMonotonic();
+        Thread.sleep(10);
+        assertEquals(0, executor.submit(heartbeat)
+            .get(30, TimeUnit.SECONDS).length);
+        assertTrue(dd.getLastUpdateMonotonic() > lastUpdate);
+        assertEquals(dd.getCapacity(), hm.getCapacityTotal());
+        assertEquals(1, hm.getNumDatanodesInService());
+
+        // the blocks to invalidate are handed out under the lock
+        dd.addBlocksToBeInvalidated(Collections.singletonList(
+            new Block(1, 0, GenerationStamp.LAST_RESERVED_STAMP)));
+        Future<DatanodeCommand[]> cmds = executor.submit(heartbeat);
+        Thread.sleep(500);
+        assertFalse(cmds.isDone());
+        namesystem.writeUnlock();
+        assertEquals(1, cmds.get(30, TimeUnit.SECONDS).length);
+        assertEquals(DatanodeProtocol.DNA_INVALIDATE,
+            cmds.get()[0].getAction());
+      } finally {
+        if (namesystem.hasWriteLock()) {
+          namesystem.writeUnlock();
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Test that a heartbeat does not read the HA state and the last txid of
+   * the namenode while an HA state transition is in progress.
+   */
+  @Test
+  public void testHeartbeatDuringHAStateTransition() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      cluster.waitActive();
+      final DataNode dn = cluster.getDataNodes().get(0);
+      DataNodeTestUtils.setHeartbeatsDisabledForTests(dn, true);
+      final FSNamesystem namesystem = cluster.getNamesystem();
+      final DatanodeRegistration nodeReg = InternalDataNodeTestUtils.
+          getDNRegistrationForBP(dn, namesystem.getBlockPoolId());
+      final DatanodeDescriptor dd =
+          NameNodeAdapter.getDatanode(namesystem, nodeReg);
+
+      Future<HeartbeatResponse> response;
+      namesystem.writeLock();
+      try {
+        NameNodeAdapter.beginHAStateTransition(namesystem);
+        try {
+          response = executor.submit(() -> NameNodeAdapter.sendHeartBeat(
+              nodeReg, dd, namesystem, false));
+          Thread.sleep(1000);
+          assertFalse(response.isDone());
+        } finally {
+          NameNodeAdapter.endHAStateTransition(namesystem);
+        }
+      } finally {
+        namesystem.writeUnlock();
+      }
+      final NNHAStatusHeartbeat haStatus =
+          response.get(30, TimeUnit.SECONDS).getNameNodeHaState();
+      assertEquals(HAServiceState.ACTIVE, haStatus.getState());
+      assertEquals(
+          namesystem.getFSImage().getCorrectLastAppliedOrWrittenTxId(),
+          haStatus.getTxId());
+    } finally {
+      executor.shutdownNow();
+      cluster.shutdown();
+    }
+  }
+
   @Test
   public void testHeartbeatStopWatch() throws Exception {
    Namesystem ns = Mockito.mock(Namesystem.class);
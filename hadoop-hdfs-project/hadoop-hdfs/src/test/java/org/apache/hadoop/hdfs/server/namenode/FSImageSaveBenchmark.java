@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Benchmark of the wall time of saving the fsimage, as a checkpoint does,
+ * against the number of threads serializing the inode sections, see
+ * {@link DFSConfigKeys#DFS_IMAGE_PARALLEL_SAVE_THREADS_KEY}.
+ *
+ * The namespace is synthetic: directories below the root, each holding the
+ * same number of empty files. The inodes are added to the directory tree
+ * directly, without edits, so large namespaces can be built quickly. The
+ * image is written with sub-sections, which the parallel saver requires.
+ * The heap of the JVM must hold the whole namespace, so 100 million inodes
+ * need a heap of tens of GB.
+ *
+ * Usage: FSImageSaveBenchmark [-inodes N] [-filesPerDir F]
+ *                             [-threads T1,T2,...] [-sections S] [-saves R]
+ */
+public class FSImageSaveBenchmark {
+  static final String USAGE = "Usage: FSImageSaveBenchmark [-inodes N] " +
+      "[-filesPerDir F] [-threads T1,T2,...] [-sections S] [-saves R]";
+
+  private final int numInodes;
+  private final int filesPerDir;
+  private final int[] threads;
+  private final int numSections;
+  private final int numSaves;
+
+  FSImageSaveBenchmark(int numInodes, int filesPerDir, int[] threads,
+      int numSections, int numSaves) {
+    this.numInodes = numInodes;
+    this.filesPerDir = filesPerDir;
+    this.threads = threads;
+    this.numSections = numSections;
+    this.numSaves = numSaves;
+  }
+
+  /**
+   * Add the directories and files of the synthetic namespace.
+   * @return the number of inodes added.
+   */
+  private long populate(FSNamesystem fsn) {
+    final FSDirectory fsd = fsn.getFSDirectory();
+    final PermissionStatus perm = PermissionStatus.createImmutable(
+        "user", "group", FsPermission.createImmutable((short) 0755));
+    final long now = Time.now();
+    final int numDirs = Math.max(1, numInodes / (filesPerDir + 1));
+    long added = 0;
+    fsn.writeLock();
+    try {
+      INodeDirectory root = fsd.getRoot();
+      for (int d = 0; d < numDirs; d++) {
+        INodeDirectory dir = new INodeDirectory(fsd.allocateNewInodeId(),
+            DFSUtil.string2Bytes(String.format("dir%08d", d)), perm, now);
+        root.addChild(dir);
+        fsd.addToInodeMap(dir);
+        added++;
+        for (int f = 0; f < filesPerDir; f++) {
+          INodeFile file = new INodeFile(fsd.allocateNewInodeId(),
+              DFSUtil.string2Bytes(String.format("file%06d", f)), perm, now,
+              now, BlockInfo.EMPTY_ARRAY, (short) 3, 128L * 1024 * 1024);
+          dir.addChild(file);
+          fsd.addToInodeMap(file);
+          added++;
+        }
+      }
+    } finally {
+      fsn.writeUnlock();
+    }
+    return added;
+  }
+
+  void run() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY,
+        numSections);
+    try (MiniDFSCluster cluster =
+             new MiniDFSCluster.Builder(conf).numDataNodes(0).build()) {
+      cluster.waitActive();
+      long start = Time.monotonicNow();
+      long added = populate(cluster.getNamesystem());
+      System.out.printf("Added %d inodes in %d ms%n", added,
+          Time.monotonicNow() - start);
+
+      DistributedFileSystem fs = cluster.getFileSystem();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      for (int t : threads) {
+        cluster.getNameNode().getConf().setInt(
+            DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_THREADS_KEY, t);
+        long total = 0;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < numSaves; i++) {
+          start = Time.monotonicNow();
+          fs.saveNamespace();
+          long elapsed = Time.monotonicNow() - start;
+          total += elapsed;
+          min = Math.min(min, elapsed);
+        }
+        System.out.printf("threads=%d: save avg %d ms, min %d ms%n", t,
+            total / numSaves, min);
+      }
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numInodes = 1000000;
+    int filesPerDir = 100;
+    int[] threads = {1, 2, 4, 8};
+    int numSections = 16;
+    int numSaves = 3;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+      if (args[i].equals("-inodes")) {
+        numInodes = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-filesPerDir")) {
+        filesPerDir = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-threads")) {
+        String[] values = args[++i].split(",");
+        threads = new int[values.length];
+        for (int j = 0; j < values.length; j++) {
+          threads[j] = Integer.parseInt(values[j].trim());
+        }
+      } else if (args[i].equals("-sections")) {
+        numSections = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-saves")) {
+        numSaves = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+    }
+
+    new FSImageSaveBenchmark(numInodes, filesPerDir, threads, numSections,
+        numSaves).run();
+  }
+}
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.util.Time;
+
+/**
+ * Benchmark of the lease monitor of {@link LeaseManager} with many open
+ * files.
+ *
+ * Each client holds the lease of one file. The clients renew their leases
+ * while the monitor looks for expired leases, then every other client stops
+ * renewing and its lease expires and is released by the monitor. For both
+ * phases the benchmark reports how long each check of the monitor held the
+ * LeaseManager lock, which is the time it blocks the other lease operations,
+ * and how many leases the renewer threads renewed.
+ *
+ * Usage: LeaseManagerBenchmark [-leases N] [-hardLimitMs T]
+ *                              [-renewers R] [-checks C]
+ */
+public class LeaseManagerBenchmark {
+  static final String USAGE = "Usage: LeaseManagerBenchmark [-leases N] " +
+      "[-hardLimitMs T] [-renewers R] [-checks C]";
+
+  /** The results of the checks of one phase of the benchmark. */
+  static final class Result {
+    private long checks;
+    private long totalCheckNanos;
+    private long maxCheckNanos;
+    private long expired;
+    private long renewals;
+    private long elapsedMs;
+
+    void addCheck(long nanos, int expiredLeases) {
+      checks++;
+      totalCheckNanos += nanos;
+      maxCheckNanos = Math.max(maxCheckNanos, nanos);
+      expired += expiredLeases;
+    }
+
+    long getExpired() {
+      return expired;
+    }
+
+    long getRenewals() {
+      return renewals;
+    }
+
+    void print(String phase) {
+      System.out.printf("%s: %d checks, lock hold avg %.3f ms, max %.3f ms, " +
+          "%d expired leases, %d renewals per second%n", phase, checks,
+          checks == 0 ? 0 : totalCheckNanos / 1e6 / checks,
+          maxCheckNanos / 1e6, expired,
+          elapsedMs == 0 ? 0 : renewals * 1000 / elapsedMs);
+    }
+  }
+
+  private final int numLeases;
+  private final long hardLimitMs;
+  private final int numRenewers;
+  private final int numChecks;
+  private final LeaseManager lm;
+  private volatile boolean renewing;
+  /** Whether the clients with an odd index renew their leases. */
+  private volatile boolean oddRenewing;
+  private final AtomicLong renewals = new AtomicLong();
+
+  LeaseManagerBenchmark(int numLeases, long hardLimitMs, int numRenewers,
+      int numChecks) {
+    this.numLeases = numLeases;
+    this.hardLimitMs = hardLimitMs;
+    this.numRenewers = numRenewers;
+    this.numChecks = numChecks;
+    // the monitor checks below don't touch the namesystem
+    this.lm = new LeaseManager(null);
+    lm.setLeasePeriod(hardLimitMs / 2, hardLimitMs);
+  }
+
+  private static String holder(int i) {
+    return "client-" + i;
+  }
+
+  /** @return the results of the phase with renewals and with expiries. */
+  Result[] run() throws InterruptedException {
+    for (int i = 0; i < numLeases; i++) {
+      lm.addLease(holder(i), INodeId.ROOT_INODE_ID + 1 + i);
+    }
+
+    renewing = true;
+    oddRenewing = true;
+    List<Thread> renewers = new ArrayList<>();
+    for (int r = 0; r < numRenewers; r++) {
+      final int first = r;
+      Thread t = new Thread(() -> renew(first), "Renewer-" + r);
+      t.setDaemon(true);
+      t.start();
+      renewers.add(t);
+    }
+
+    Result renewPhase = runChecks(false);
+    oddRenewing = false;
+    Result expirePhase = runChecks(true);
+
+    renewing = false;
+    for (Thread t : renewers) {
+      t.join();
+    }
+    return new Result[] {renewPhase, expirePhase};
+  }
+
+  private void renew(int first) {
+    while (renewing) {
+      for (int i = first; i < numLeases && renewing; i += numRenewers) {
+        if (i % 2 == 0 || oddRenewing) {
+          lm.renewLease(holder(i));
+          renewals.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  /**
+   * Run the monitor checks over a hard limit period.
+   * @param release whether the expired leases are released.
+   */
+  private Result runChecks(boolean release) throws InterruptedException {
+    final Result result = new Result();
+    final long interval = Math.max(1, hardLimitMs / numChecks);
+    final long renewalsBefore = renewals.get();
+    final long start = Time.monotonicNow();
+    // an extra check after the hard limit, so all the leases which were
+    // not renewed have expired
+    for (int c = 0; c <= numChecks; c++) {
+      Thread.sleep(interval);
+      long checkStart = System.nanoTime();
+      Collection<LeaseManager.Lease> expired = lm.getExpiredCandidateLeases();
+      if (release) {
+        for (LeaseManager.Lease lease : expired) {
+          int i = Integer.parseInt(lease.getHolder().substring(
+              "client-".length()));
+          lm.removeLease(INodeId.ROOT_INODE_ID + 1 + i);
+        }
+      }
+      result.addCheck(System.nanoTime() - checkStart, expired.size());
+    }
+    result.elapsedMs = Time.monotonicNow() - start;
+    result.renewals = renewals.get() - renewalsBefore;
+    return result;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numLeases = 1000000;
+    long hardLimitMs = 10000;
+    int numRenewers = 4;
+    int numChecks = 20;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+      if (args[i].equals("-leases")) {
+        numLeases = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-hardLimitMs")) {
+        hardLimitMs = Long.parseLong(args[++i]);
+      } else if (args[i].equals("-renewers")) {
+        numRenewers = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-checks")) {
+        numChecks = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+    }
+
+    LeaseManagerBenchmark bench = new LeaseManagerBenchmark(numLeases,
+        hardLimitMs, numRenewers, numChecks);
+    Result[] results = bench.run();
+    results[0].print("Renewing " + numLeases + " leases");
+    results[1].print("Expiring " + numLeases / 2 + " leases");
+  }
+}
@@ -20,6 +20,7 @@
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
@@ -33,6 +34,7 @@
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.crypto.CryptoProtocolVersion;
+import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
 import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.permission.FsPermission;
@@ -73,7 +75,9 @@
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.net.DNS;
+import org.apache.hadoop.net.DNSToSwitchMapping;
 import org.apache.hadoop.net.NetworkTopology;
+import org.apache.hadoop.net.TableMapping;
 import org.apache.hadoop.security.Groups;
 import org.apache.hadoop.security.RefreshUserMappingsProtocol;
 import org.apache.hadoop.security.UserGroupInformation;
@@ -174,6 +178,7 @@ abstract class OperationStatsBase {
     protected int  numOpsExecuted = 0;    // number of operations executed
     protected long cumulativeTime = 0;    // sum of times for each op
     protected long elapsedTime = 0;       // time from start to finish
+    protected long numEditsLogged = 0;    // transactions logged meanwhile
     protected boolean keepResults = false;// don't clean base directory on exit
     protected Level logLevel;             // logging level, ERROR by default
     protected int ugcRefreshCount = 0;    // user group cache refresh count
@@ -240,8 +245,10 @@ abstract class OperationStatsBase {
     void benchmark() throws IOException {
       daemons = new ArrayList<StatsDaemon>();
       long start = 0;
+      long startTxId = 0;
       try {
         numOpsExecuted = 0;
+        numEditsLogged = 0;
         cumulativeTime = 0;
         if(numThreads < 1)
           return;
@@ -261,6 +268,7 @@ void benchmark() throws IOException {
         setNameNodeLoggingLevel(logLevel);
         for(tIdx=0; tIdx < numThreads; tIdx++)
           daemons.add(new StatsDaemon(tIdx, opsPerThread[tIdx], this));
+        startTxId = nameNodeProto.getTransactionID();
         start = Time.now();
         LOG.info("Starting " + numOpsRequired + " " + getOpName() + "(s).");
         for(StatsDaemon d : daemons)
@@ -275,6 +283,7 @@ void benchmark() throws IOException {
           // System.out.println(d.toString() + ": ops Exec = " + d.localNumOpsExecuted);
         }
       }
+      numEditsLogged = nameNodeProto.getTransactionID() - startTxId;
     }
 
     private boolean isInProgress() {
@@ -316,6 +325,14 @@ long getAverageTime() {
       return elapsedTime == 0 ? 0 : 1000*(double)numOpsExecuted / elapsedTime;
     }
 
+    long getNumEditsLogged() {
+      return numEditsLogged;
+    }
+
+    double getEditsPerSecond() {
+      return elapsedTime == 0 ? 0 : 1000*(double)numEditsLogged / elapsedTime;
+    }
+
     String getBaseDir() {
       return baseDir;
     }
@@ -383,6 +400,10 @@ void printStats() {
       LOG.info("Elapsed Time: " + getElapsedTime());
       LOG.info(" Ops per sec: " + getOpsPerSecond());
       LOG.info("Average Time: " + getAverageTime());
+      if (getNumEditsLogged() > 0) {
+        LOG.info("Edits logged: " + getNumEditsLogged());
+        LOG.info("Edits per sec: " + getEditsPerSecond());
+      }
     }
   }
 
@@ -967,11 +988,14 @@ private static class TinyDatanode implements Comparable<String> {
     
     NamespaceInfo nsInfo;
     DatanodeRegistration dnRegistration;
-    DatanodeStorage storage; //only one storage 
+    DatanodeStorage storage; // the first storage
+    DatanodeStorage[] storages;
     final List<BlockReportReplica> blocks;
     int nrBlocks; // actual number of blocks
-    BlockListAsLongs blockReportList;
+    StorageBlockReport[] blockReports;
     final int dnIdx;
+    // the IP address to register with, the default IP address if null
+    String ipAddr;
 
     private static int getNodePort(int num) throws IOException {
       int port = 1 + num;
@@ -980,9 +1004,19 @@ private static int getNodePort(int num) throws IOException {
     }
 
     TinyDatanode(int dnIdx, int blockCapacity) throws IOException {
+      this(dnIdx, blockCapacity, 1);
+    }
+
+    /**
+     * @param nrStorages the number of storages, the blocks are spread over
+     *                   them round robin.
+     */
+    TinyDatanode(int dnIdx, int blockCapacity, int nrStorages)
+        throws IOException {
       this.dnIdx = dnIdx;
       this.blocks = Arrays.asList(new BlockReportReplica[blockCapacity]);
       this.nrBlocks = 0;
+      this.storages = new DatanodeStorage[nrStorages];
     }
 
     @Override
@@ -998,7 +1032,8 @@ void register() throws IOException {
       // get versions from the namenode
       nsInfo = nameNodeProto.versionRequest();
       dnRegistration = new DatanodeRegistration(
-          new DatanodeID(DNS.getDefaultIP("default"),
+          new DatanodeID(
+              ipAddr != null ? ipAddr : DNS.getDefaultIP("default"),
               DNS.getDefaultHost("default", "default"),
               DataNode.generateUuid(), getNodePort(dnIdx),
               DFSConfigKeys.DFS_DATANODE_HTTP_DEFAULT_PORT,
@@ -1010,10 +1045,14 @@ void register() throws IOException {
       dnRegistration = dataNodeProto.registerDatanode(dnRegistration);
       dnRegistration.setNamespaceInfo(nsInfo);
       //first block reports
-      storage = new DatanodeStorage(DatanodeStorage.generateUuid());
-      final StorageBlockReport[] reports = {
-          new StorageBlockReport(storage, BlockListAsLongs.EMPTY)
-      };
+      final StorageBlockReport[] reports =
+          new StorageBlockReport[storages.length];
+      for (int i = 0; i < storages.length; i++) {
+        storages[i] = new DatanodeStorage(DatanodeStorage.generateUuid());
+        reports[i] = new StorageBlockReport(storages[i],
+            BlockListAsLongs.EMPTY);
+      }
+      storage = storages[0];
       dataNodeProto.blockReport(dnRegistration, bpid, reports,
               new BlockReportContext(1, 0, System.nanoTime(), 0L));
     }
@@ -1023,12 +1062,27 @@ void register() throws IOException {
      * Ignore reply commands.
      */
     void sendHeartbeat() throws IOException {
+      sendHeartbeat(true);
+    }
+
+    /**
+     * Send a heartbeat to the name-node.
+     * Ignore reply commands.
+     *
+     * @param requestFullBlockReportLease whether to ask for a lease to send
+     *                                    a full block report.
+     */
+    void sendHeartbeat(boolean requestFullBlockReportLease)
+        throws IOException {
       // register datanode
       // TODO:FEDERATION currently a single block pool is supported
-      StorageReport[] rep = { new StorageReport(storage, false,
-          DF_CAPACITY, DF_USED, DF_CAPACITY - DF_USED, DF_USED, 0L) };
+      StorageReport[] rep = new StorageReport[storages.length];
+      for (int i = 0; i < storages.length; i++) {
+        rep[i] = new StorageReport(storages[i], false,
+            DF_CAPACITY, DF_USED, DF_CAPACITY - DF_USED, DF_USED, 0L);
+      }
       DatanodeCommand[] cmds = dataNodeProto.sendHeartbeat(dnRegistration, rep,
-          0L, 0L, 0, 0, 0, null, true,
+          0L, 0L, 0, 0, 0, null, requestFullBlockReportLease,
           SlowPeerReports.EMPTY_REPORT, SlowDiskReports.EMPTY_REPORT)
           .getCommands();
       if(cmds != null) {
@@ -1052,17 +1106,30 @@ boolean addBlock(Block blk) {
       return true;
     }
 
+    /** @return the storage of the block at the given index. */
+    DatanodeStorage getStorage(int blockIdx) {
+      return storages[blockIdx % storages.length];
+    }
+
     void formBlockReport() {
       // fill remaining slots with blocks that do not exist
       for (int idx = blocks.size()-1; idx >= nrBlocks; idx--) {
         Block block = new Block(blocks.size() - idx, 0, 0);
         blocks.set(idx, new BlockReportReplica(block));
       }
-      blockReportList = BlockListAsLongs.encode(blocks);
+      blockReports = new StorageBlockReport[storages.length];
+      for (int i = 0; i < storages.length; i++) {
+        List<BlockReportReplica> storageBlocks = new ArrayList<>();
+        for (int idx = i; idx < blocks.size(); idx += storages.length) {
+          storageBlocks.add(blocks.get(idx));
+        }
+        blockReports[i] = new StorageBlockReport(storages[i],
+            BlockListAsLongs.encode(storageBlocks));
+      }
     }
 
-    BlockListAsLongs getBlockReportList() {
-      return blockReportList;
+    StorageBlockReport[] getBlockReports() {
+      return blockReports;
     }
 
     @Override
@@ -1076,8 +1143,11 @@ public int compareTo(String xferAddr) {
     @SuppressWarnings("unused") // keep it for future blockReceived benchmark
     int replicateBlocks() throws IOException {
       // register datanode
-      StorageReport[] rep = { new StorageReport(storage,
-          false, DF_CAPACITY, DF_USED, DF_CAPACITY - DF_USED, DF_USED, 0) };
+      StorageReport[] rep = new StorageReport[storages.length];
+      for (int i = 0; i < storages.length; i++) {
+        rep[i] = new StorageReport(storages[i],
+            false, DF_CAPACITY, DF_USED, DF_CAPACITY - DF_USED, DF_USED, 0);
+      }
       DatanodeCommand[] cmds = dataNodeProto.sendHeartbeat(dnRegistration,
           rep, 0L, 0L, 0, 0, 0, null, true,
           SlowPeerReports.EMPTY_REPORT, SlowDiskReports.EMPTY_REPORT)
@@ -1137,11 +1207,14 @@ class BlockReportStats extends OperationStatsBase {
     static final String OP_BLOCK_REPORT_NAME = "blockReport";
     static final String OP_BLOCK_REPORT_USAGE = 
       "-op blockReport [-datanodes T] [-reports N] " +
-      "[-blocksPerReport B] [-blocksPerFile F] [-blockSize S]";
+      "[-blocksPerReport B] [-blocksPerFile F] [-blockSize S] " +
+      "[-storagesPerDatanode D]";
 
     private int blocksPerReport;
     private int blocksPerFile;
+    private int storagesPerDatanode;
     private TinyDatanode[] datanodes; // array of data-nodes sorted by name
+    private int numRacks = 1;
 
     BlockReportStats(List<String> args) {
       super();
@@ -1149,6 +1222,7 @@ class BlockReportStats extends OperationStatsBase {
       numOpsRequired = 30;
       this.blocksPerReport = 100;
       this.blocksPerFile = 10;
+      this.storagesPerDatanode = 1;
       // set heartbeat interval to 3 min, so that expiration were 40 min
       config.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 3 * 60);
       parseArguments(args);
@@ -1163,6 +1237,37 @@ private int getNumDatanodes() {
       return numThreads;
     }
 
+    /**
+     * Spread the data-nodes round robin over the given number of racks. The
+     * data-nodes register with a loopback address of their own, which the
+     * name-node created by the benchmark maps to the rack of the data-node.
+     */
+    void setNumRacks(int numRacks) throws IOException {
+      this.numRacks = numRacks;
+      File mappingFile = File.createTempFile("racks", ".txt");
+      mappingFile.deleteOnExit();
+      try (PrintWriter out = new PrintWriter(mappingFile, "UTF-8")) {
+        for (int idx = 0; idx < getNumDatanodes(); idx++) {
+          out.println(getIpAddr(idx) + " " + getRack(idx));
+        }
+      }
+      config.setClass(
+          CommonConfigurationKeysPublic.NET_TOPOLOGY_NODE_SWITCH_MAPPING_IMPL_KEY,
+          TableMapping.class, DNSToSwitchMapping.class);
+      config.set(
+          CommonConfigurationKeysPublic.NET_TOPOLOGY_TABLE_MAPPING_FILE_KEY,
+          mappingFile.getAbsolutePath());
+    }
+
+    private String getRack(int dnIdx) {
+      return "/rack" + dnIdx % numRacks;
+    }
+
+    private String getIpAddr(int dnIdx) {
+      return "127." + (1 + dnIdx / 65536) + "." + (dnIdx / 256 % 256) + "." +
+          dnIdx % 256;
+    }
+
     @Override
     String getOpName() {
       return OP_BLOCK_REPORT_NAME;
@@ -1187,6 +1292,9 @@ void parseArguments(List<String> args) {
         } else if (args.get(i).equals("-blockSize")) {
           if(i+1 == args.size())  printUsage();
           blockSize = Integer.parseInt(args.get(++i));
+        } else if (args.get(i).equals("-storagesPerDatanode")) {
+          if(i+1 == args.size())  printUsage();
+          storagesPerDatanode = Integer.parseInt(args.get(++i));
         } else if(!ignoreUnrelatedOptions)
           printUsage();
       }
@@ -1201,7 +1309,11 @@ void generateInputs(int[] ignore) throws IOException {
       datanodes = new TinyDatanode[nrDatanodes];
       // create data-nodes
       for(int idx=0; idx < nrDatanodes; idx++) {
-        datanodes[idx] = new TinyDatanode(idx, blocksPerReport);
+        datanodes[idx] = new TinyDatanode(idx, blocksPerReport,
+            storagesPerDatanode);
+        if (numRacks > 1) {
+          datanodes[idx].ipAddr = getIpAddr(idx);
+        }
         datanodes[idx].register();
         datanodes[idx].sendHeartbeat();
       }
@@ -1254,12 +1366,14 @@ private ExtendedBlock addBlocks(String fileName, String clientName)
         prevBlock = loc.getBlock();
         for(DatanodeInfo dnInfo : loc.getLocations()) {
           int dnIdx = dnInfo.getXferPort() - 1;
+          int blockIdx = datanodes[dnIdx].nrBlocks;
           datanodes[dnIdx].addBlock(loc.getBlock().getLocalBlock());
           ReceivedDeletedBlockInfo[] rdBlocks = { new ReceivedDeletedBlockInfo(
               loc.getBlock().getLocalBlock(),
               ReceivedDeletedBlockInfo.BlockStatus.RECEIVED_BLOCK, null) };
           StorageReceivedDeletedBlocks[] report = { new StorageReceivedDeletedBlocks(
-              new DatanodeStorage(datanodes[dnIdx].storage.getStorageID()),
+              new DatanodeStorage(
+                  datanodes[dnIdx].getStorage(blockIdx).getStorageID()),
               rdBlocks) };
           dataNodeProto.blockReceivedAndDeleted(datanodes[dnIdx].dnRegistration,
               bpid, report);
@@ -1312,9 +1426,8 @@ long executeOp(int daemonId, int inputIdx, String ignore) throws IOException {
       assert daemonId < numThreads : "Wrong daemonId.";
       TinyDatanode dn = datanodes[daemonId];
       long start = Time.now();
-      StorageBlockReport[] report = { new StorageBlockReport(
-          dn.storage, dn.getBlockReportList()) };
-      dataNodeProto.blockReport(dn.dnRegistration, bpid, report,
+      dataNodeProto.blockReport(dn.dnRegistration, bpid,
+          dn.getBlockReports(),
           new BlockReportContext(1, 0, System.nanoTime(), 0L));
       long end = Time.now();
       return end-start;
@@ -1334,10 +1447,145 @@ void printResults() {
       LOG.info("datanodes = " + numThreads + " " + blockDistribution);
       LOG.info("blocksPerReport = " + blocksPerReport);
       LOG.info("blocksPerFile = " + blocksPerFile);
+      LOG.info("storagesPerDatanode = " + storagesPerDatanode);
       printStats();
+      LOG.info("Storage reports per sec: " + getStorageReportsPerSecond());
+    }
+
+    double getStorageReportsPerSecond() {
+      return getOpsPerSecond() * storagesPerDatanode;
     }
   }   // end BlockReportStats
 
+  /**
+   * Heartbeat statistics.
+   *
+   * Each thread sends heartbeats on behalf of a share of the data-nodes,
+   * which are registered but have no blocks. Apart from the throughput,
+   * the latency percentiles of the heartbeat calls are reported.
+   */
+  class HeartbeatStats extends OperationStatsBase {
+    static final String OP_HEARTBEAT_NAME = "heartbeat";
+    static final String OP_HEARTBEAT_USAGE =
+        "-op heartbeat [-threads T] [-datanodes D] [-heartbeats N] " +
+        "[-storagesPerDatanode S]";
+
+    private int numDatanodes;
+    private int storagesPerDatanode;
+    private TinyDatanode[] datanodes;
+    /** The latency of each heartbeat in nanoseconds, per thread. */
+    private long[][] latencies;
+
+    HeartbeatStats(List<String> args) {
+      super();
+      numThreads = 10;
+      numOpsRequired = 1000;
+      numDatanodes = 100;
+      storagesPerDatanode = 1;
+      // set heartbeat interval to 3 min, so that expiration were 40 min
+      config.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 3 * 60);
+      parseArguments(args);
+    }
+
+    @Override
+    String getOpName() {
+      return OP_HEARTBEAT_NAME;
+    }
+
+    @Override
+    void parseArguments(List<String> args) {
+      boolean ignoreUnrelatedOptions = verifyOpArgument(args);
+      for (int i = 2; i < args.size(); i++) {       // parse command line
+        if (args.get(i).equals("-heartbeats")) {
+          if (i + 1 == args.size())  printUsage();
+          numOpsRequired = Integer.parseInt(args.get(++i));
+        } else if (args.get(i).equals("-threads")) {
+          if (i + 1 == args.size())  printUsage();
+          numThreads = Integer.parseInt(args.get(++i));
+        } else if (args.get(i).equals("-datanodes")) {
+          if (i + 1 == args.size())  printUsage();
+          numDatanodes = Integer.parseInt(args.get(++i));
+        } else if (args.get(i).equals("-storagesPerDatanode")) {
+          if (i + 1 == args.size())  printUsage();
+          storagesPerDatanode = Integer.parseInt(args.get(++i));
+        } else if (!ignoreUnrelatedOptions)
+          printUsage();
+      }
+    }
+
+    @Override
+    void generateInputs(int[] opsPerThread) throws IOException {
+      datanodes = new TinyDatanode[numDatanodes];
+      LOG.info("Registering " + numDatanodes + " data-nodes.");
+      for (int idx = 0; idx < numDatanodes; idx++) {
+        datanodes[idx] = new TinyDatanode(idx, 0, storagesPerDatanode);
+        datanodes[idx].register();
+        datanodes[idx].sendHeartbeat();
+      }
+      latencies = new long[numThreads][];
+      for (int idx = 0; idx < numThreads; idx++) {
+        latencies[idx] = new long[opsPerThread[idx]];
+      }
+    }
+
+    /**
+     * Does not require the argument
+     */
+    @Override
+    String getExecutionArgument(int daemonId) {
+      return null;
+    }
+
+    @Override
+    long executeOp(int daemonId, int inputIdx, String ignore)
+        throws IOException {
+      TinyDatanode dn =
+          datanodes[(daemonId + inputIdx * numThreads) % numDatanodes];
+      long start = System.nanoTime();
+      dn.sendHeartbeat(false);
+      long nanos = System.nanoTime() - start;
+      latencies[daemonId][inputIdx] = nanos;
+      return nanos / 1000000;
+    }
+
+    @Override
+    void printResults() {
+      LOG.info("--- " + getOpName() + " inputs ---");
+      LOG.info("heartbeats = " + numOpsRequired);
+      LOG.info("nrThreads = " + numThreads);
+      LOG.info("datanodes = " + numDatanodes);
+      LOG.info("storagesPerDatanode = " + storagesPerDatanode);
+      printStats();
+      long[] sorted = getSortedLatencies();
+      if (sorted.length > 0) {
+        LOG.info("Latency us, p50: " + getPercentile(sorted, 50) +
+            ", p99: " + getPercentile(sorted, 99) +
+            ", max: " + sorted[sorted.length - 1] / 1000);
+      }
+    }
+
+    private long[] getSortedLatencies() {
+      int count = 0;
+      for (long[] l : latencies) {
+        count += l.length;
+      }
+      long[] sorted = new long[count];
+      int pos = 0;
+      for (long[] l : latencies) {
+        System.arraycopy(l, 0, sorted, pos, l.length);
+        pos += l.length;
+      }
+      Arrays.sort(sorted);
+      return sorted;
+    }
+
+    /** @return the percentile of the sorted latencies in microseconds. */
+    private long getPercentile(long[] sorted, int percentile) {
+      int idx = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+      return sorted[Math.max(idx, 0)] / 1000;
+    }
+  }   // end HeartbeatStats
+
   /**
    * Measures how fast redundancy monitor can compute data-node work.
    *
@@ -1348,29 +1596,39 @@ class ReplicationStats extends OperationStatsBase {
     static final String OP_REPLICATION_USAGE = 
         "-op replication [-datanodes T] [-nodesToDecommission D] " +
         "[-nodeReplicationLimit C] [-totalBlocks B] [-blockSize S] "
-        + "[-replication R]";
+        + "[-replication R] [-racks K] [-racksToKill L]";
 
     private final BlockReportStats blockReportObject;
     private int numDatanodes;
     private int nodesToDecommission;
     private int nodeReplicationLimit;
     private int totalBlocks;
+    private int numRacks;
+    private int racksToKill;
     private int numDecommissionedBlocks;
+    private int numKilledBlocks;
     private int numPendingBlocks;
 
-    ReplicationStats(List<String> args) {
+    ReplicationStats(List<String> args) throws IOException {
       super();
       numThreads = 1;
       numDatanodes = 10;
       nodesToDecommission = 1;
       nodeReplicationLimit = 100;
       totalBlocks = 100;
+      numRacks = 1;
+      racksToKill = 0;
       parseArguments(args);
       // number of operations is 4 times the number of decommissioned
       // blocks divided by the number of needed replications scanned 
       // by the redundancy monitor in one iteration
       numOpsRequired = (totalBlocks*replication*nodesToDecommission*2)
             / (numDatanodes*numDatanodes);
+      if (racksToKill > 0) {
+        // each iteration schedules at least one block until the
+        // replicas lost with the killed racks are all scheduled
+        numOpsRequired = Math.max(numOpsRequired, totalBlocks + 1);
+      }
 
       String[] blkReportArgs = {
           "-op", "blockReport",
@@ -1379,7 +1637,11 @@ class ReplicationStats extends OperationStatsBase {
           "-blocksPerFile", String.valueOf(numDatanodes),
           "-blockSize", String.valueOf(blockSize)};
       blockReportObject = new BlockReportStats(Arrays.asList(blkReportArgs));
+      if (numRacks > 1) {
+        blockReportObject.setNumRacks(numRacks);
+      }
       numDecommissionedBlocks = 0;
+      numKilledBlocks = 0;
       numPendingBlocks = 0;
     }
 
@@ -1410,9 +1672,18 @@ void parseArguments(List<String> args) {
         } else if (args.get(i).equals("-blockSize")) {
           if(i+1 == args.size())  printUsage();
           blockSize = Integer.parseInt(args.get(++i));
+        } else if (args.get(i).equals("-racks")) {
+          if(i+1 == args.size())  printUsage();
+          numRacks = Integer.parseInt(args.get(++i));
+        } else if (args.get(i).equals("-racksToKill")) {
+          if(i+1 == args.size())  printUsage();
+          racksToKill = Integer.parseInt(args.get(++i));
         } else if(!ignoreUnrelatedOptions)
           printUsage();
       }
+      if (racksToKill >= Math.max(numRacks, 2)) {
+        printUsage();
+      }
     }
 
     @Override
@@ -1431,9 +1702,17 @@ void generateInputs(int[] ignore) throws IOException {
       }
       // decommission data-nodes
       decommissionNodes();
+      // fail the data-nodes of whole racks
+      killRacks();
       // set node replication limit
       BlockManagerTestUtil.setNodeReplicationLimit(namesystem.getBlockManager(),
           nodeReplicationLimit);
+      if (racksToKill > 0) {
+        // the lost replicas are of the highest priority, which is only
+        // bounded by the hard limit
+        namesystem.getBlockManager().setReplicationStreamsHardLimit(
+            nodeReplicationLimit);
+      }
     }
 
     private void decommissionNodes() throws IOException {
@@ -1453,6 +1732,26 @@ private void decommissionNodes() throws IOException {
       clientProto.refreshNodes();
     }
 
+    /**
+     * Mark the data-nodes of the first racks dead, like when the switch of
+     * the racks fails, so their replicas have to be reconstructed.
+     */
+    private void killRacks() {
+      int nrDatanodes = blockReportObject.getNumDatanodes();
+      numKilledBlocks = 0;
+      for (int idx = 0; idx < nrDatanodes; idx++) {
+        if (idx % numRacks < racksToKill) {
+          TinyDatanode dn = blockReportObject.datanodes[idx];
+          numKilledBlocks += dn.nrBlocks;
+          BlockManagerTestUtil.noticeDeadDatanode(nameNode, dn.getXferAddr());
+        }
+      }
+      if (racksToKill > 0) {
+        LOG.info("Killed " + racksToKill + " of " + numRacks + " racks with "
+            + numKilledBlocks + " replicas.");
+      }
+    }
+
     /**
      * Does not require the argument
      */
@@ -1488,10 +1787,13 @@ void printResults() {
       LOG.info("numOpsRequired = " + numOpsRequired);
       LOG.info("datanodes = " + numDatanodes + " " + blockDistribution);
       LOG.info("decommissioned datanodes = " + nodesToDecommission);
+      LOG.info("racks = " + numRacks);
+      LOG.info("killed racks = " + racksToKill);
       LOG.info("datanode replication limit = " + nodeReplicationLimit);
       LOG.info("total blocks = " + totalBlocks);
       printStats();
       LOG.info("decommissioned blocks = " + numDecommissionedBlocks);
+      LOG.info("killed blocks = " + numKilledBlocks);
       LOG.info("pending replications = " + numPendingBlocks);
       LOG.info("replications per sec: " + getBlocksPerSecond());
     }
@@ -1513,6 +1815,7 @@ static void printUsage() {
         + " | \n\t" + FileStatusStats.OP_FILE_STATUS_USAGE
         + " | \n\t" + RenameFileStats.OP_RENAME_USAGE
         + " | \n\t" + BlockReportStats.OP_BLOCK_REPORT_USAGE
+        + " | \n\t" + HeartbeatStats.OP_HEARTBEAT_USAGE
         + " | \n\t" + ReplicationStats.OP_REPLICATION_USAGE
         + " | \n\t" + CleanAllStats.OP_CLEAN_USAGE
         + " | \n\t" + GENERAL_OPTIONS_USAGE
@@ -1588,6 +1891,10 @@ public int run(String[] aArgs) throws Exception {
         opStat = new BlockReportStats(args);
         ops.add(opStat);
       }
+      if (runAll || HeartbeatStats.OP_HEARTBEAT_NAME.equals(type)) {
+        opStat = new HeartbeatStats(args);
+        ops.add(opStat);
+      }
       if(runAll || ReplicationStats.OP_REPLICATION_NAME.equals(type)) {
         if (nnUri.getScheme() != null && nnUri.getScheme().equals("hdfs")) {
           LOG.warn("The replication test is ignored as it does not support " +
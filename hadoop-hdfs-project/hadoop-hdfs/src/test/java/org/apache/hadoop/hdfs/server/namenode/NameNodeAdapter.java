@@ -155,12 +155,27 @@ public static DelegationTokenSecretManager getDtSecretManager(
 
   public static HeartbeatResponse sendHeartBeat(DatanodeRegistration nodeReg,
       DatanodeDescriptor dd, FSNamesystem namesystem) throws IOException {
+    return sendHeartBeat(nodeReg, dd, namesystem, true);
+  }
+
+  public static HeartbeatResponse sendHeartBeat(DatanodeRegistration nodeReg,
+      DatanodeDescriptor dd, FSNamesystem namesystem,
+      boolean requestFullBlockReportLease) throws IOException {
     return namesystem.handleHeartbeat(nodeReg,
         BlockManagerTestUtil.getStorageReportsForDatanode(dd),
-        dd.getCacheCapacity(), dd.getCacheRemaining(), 0, 0, 0, null, true,
+        dd.getCacheCapacity(), dd.getCacheRemaining(), 0, 0, 0, null,
+        requestFullBlockReportLease,
         SlowPeerReports.EMPTY_REPORT, SlowDiskReports.EMPTY_REPORT);
   }
 
+  public static void beginHAStateTransition(FSNamesystem namesystem) {
+    namesystem.beginHAStateTransition();
+  }
+
+  public static void endHAStateTransition(FSNamesystem namesystem) {
+    namesystem.endHAStateTransition();
+  }
+
   public static boolean setReplication(final FSNamesystem ns,
       final String src, final short replication) throws IOException {
     return ns.setReplication(src, replication);
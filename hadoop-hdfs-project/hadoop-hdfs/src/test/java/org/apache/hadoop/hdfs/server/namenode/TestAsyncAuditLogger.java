@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem.FSNamesystemAuditLogger;
+import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.event.Level;
+
+/**
+ * Tests for {@link AsyncAuditLogger}.
+ */
+public class TestAsyncAuditLogger {
+
+  /** Collects the messages instead of writing them to the audit log. */
+  private static class CollectingAsyncAuditLogger extends AsyncAuditLogger {
+    private final List<String> messages =
+        Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch writable;
+
+    CollectingAsyncAuditLogger(CountDownLatch writable) {
+      this.writable = writable;
+    }
+
+    @Override
+    public void logAuditMessage(String message) {
+      try {
+        writable.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      messages.add(message);
+    }
+  }
+
+  /** Collects the messages of the default audit logger. */
+  private static class CollectingAuditLogger extends FSNamesystemAuditLogger {
+    private final List<String> messages = new ArrayList<>();
+
+    @Override
+    public void logAuditMessage(String message) {
+      messages.add(message);
+    }
+  }
+
+  private Configuration conf;
+
+  @Before
+  public void setUp() {
+    conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_KEY, true);
+    GenericTestUtils.setLogLevel(FSNamesystem.auditLog, Level.INFO);
+  }
+
+  private static void logEvents(HdfsAuditLogger logger, int count) {
+    FileStatus status = new FileStatus(0, true, 0, 0, 0, 0,
+        FsPermission.getDefault(), "owner", "group", new Path("/dir"));
+    CallerContext context = new CallerContext.Builder("context").build();
+    for (int i = 0; i < count; i++) {
+      logger.logAuditEvent(i % 2 == 0, "user" + i,
+          InetAddress.getLoopbackAddress(), "cmd", "/src\t" + i, "/dst",
+          status, context, null, null);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testSameMessagesAsDefaultLogger() throws Exception {
+    CollectingAuditLogger expected = new CollectingAuditLogger();
+    expected.initialize(conf);
+    logEvents(expected, 100);
+
+    CollectingAsyncAuditLogger logger =
+        new CollectingAsyncAuditLogger(new CountDownLatch(0));
+    logger.initialize(conf);
+    try {
+      logEvents(logger, 100);
+    } finally {
+      logger.close();
+    }
+    assertEquals(expected.messages, logger.messages);
+    assertEquals(0, logger.getDroppedEvents());
+    assertEquals(0, logger.getQueuedEvents());
+  }
+
+  @Test(timeout = 60000)
+  public void testDropEventsWhenQueueIsFull() throws Exception {
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_ASYNC_LOGGER_QUEUE_SIZE_KEY, 3);
+    CountDownLatch writable = new CountDownLatch(1);
+    CollectingAsyncAuditLogger logger =
+        new CollectingAsyncAuditLogger(writable);
+    logger.initialize(conf);
+    assertEquals(4, logger.getQueueSize());
+    try {
+      // the writer holds the first event while it waits, so the queue
+      // takes the first 4 events and drops the rest
+      logEvents(logger, 10);
+      assertEquals(6, logger.getDroppedEvents());
+      assertEquals(4, logger.getQueuedEvents());
+      writable.countDown();
+    } finally {
+      logger.close();
+    }
+    assertEquals(4, logger.messages.size());
+    assertTrue(logger.messages.get(0).contains("ugi=user0\t"));
+    assertTrue(logger.messages.get(3).contains("ugi=user3\t"));
+
+    // events logged after the logger is closed are written by the caller
+    logEvents(logger, 1);
+    assertEquals(5, logger.messages.size());
+  }
+
+  @Test(timeout = 120000)
+  public void testAsyncAuditLoggerOnNameNode() throws Exception {
+    conf.set(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY,
+        AsyncAuditLogger.class.getName());
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(0).build();
+    try {
+      cluster.waitActive();
+      FSNamesystem fsn = cluster.getNamesystem();
+      assertTrue(fsn.getAuditLoggers().get(0) instanceof AsyncAuditLogger);
+      GenericTestUtils.LogCapturer auditlog =
+          GenericTestUtils.LogCapturer.captureLogs(FSNamesystem.auditLog);
+      DistributedFileSystem fs = cluster.getFileSystem();
+      fs.mkdirs(new Path("/async"));
+      GenericTestUtils.waitFor(() -> auditlog.getOutput().contains(
+          "cmd=mkdirs\tsrc=/async\t"), 10, 10000);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
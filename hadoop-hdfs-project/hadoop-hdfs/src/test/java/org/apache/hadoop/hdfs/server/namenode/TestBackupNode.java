@@ -206,6 +206,44 @@ public void startBackupNodeWithIncorrectAuthentication() throws IOException {
   public void testCheckpointNode() throws Exception {
     testCheckpoint(StartupOption.CHECKPOINT);
   }
+
+  /**
+   * The transaction count must trigger a checkpoint even after the
+   * checkpoint period expired, when the period's minimum transaction count
+   * is higher than the transaction count.
+   */
+  @Test(timeout = 120000)
+  public void testCheckpointNodeTxnCountAfterPeriod() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_NAMENODE_BACKUP_HTTP_ADDRESS_KEY, "localhost:0");
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_PERIOD_KEY, 1);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_CHECK_PERIOD_KEY, 1);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_TXNS_KEY, 10);
+    conf.setLong(
+        DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_PERIOD_MIN_TXNS_KEY, 1000);
+    MiniDFSCluster cluster = null;
+    BackupNode backup = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+      FileSystem fileSys = cluster.getFileSystem();
+      backup = startBackupNode(conf, StartupOption.CHECKPOINT, 1);
+      for (int i = 0; i < 20; i++) {
+        assertTrue(fileSys.mkdirs(new Path("/txncount" + i)));
+      }
+      final long txid = cluster.getNameNodeRpc().getTransactionID();
+      final NNStorage nnStorage = cluster.getNameNode().getFSImage()
+          .getStorage();
+      GenericTestUtils.waitFor(
+          () -> nnStorage.getMostRecentCheckpointTxId() >= txid, 100, 30000);
+    } finally {
+      if (backup != null) {
+        backup.stop();
+      }
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
   
   /**
    * Ensure that the backupnode will tail edits from the NN
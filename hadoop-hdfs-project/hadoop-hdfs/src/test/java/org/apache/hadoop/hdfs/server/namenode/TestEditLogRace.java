@@ -85,15 +85,19 @@ public class TestEditLogRace {
   @Parameters
   public static Collection<Object[]> data() {
     Collection<Object[]> params = new ArrayList<Object[]>();
-    params.add(new Object[]{ false });
-    params.add(new Object[]{ true });
+    params.add(new Object[]{ false, false });
+    params.add(new Object[]{ true, false });
+    params.add(new Object[]{ true, true });
     return params;
   }
 
   private static boolean useAsyncEditLog;
+  private static boolean overlapEditLogSync;
 
-  public TestEditLogRace(boolean useAsyncEditLog) {
+  public TestEditLogRace(boolean useAsyncEditLog,
+      boolean overlapEditLogSync) {
     TestEditLogRace.useAsyncEditLog = useAsyncEditLog;
+    TestEditLogRace.overlapEditLogSync = overlapEditLogSync;
   }
 
   private static final String NAME_DIR = MiniDFSCluster.getBaseDirectory() + "name-0-1";
@@ -376,6 +380,8 @@ private Configuration getConf() {
     Configuration conf = new HdfsConfiguration();
     conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING,
         useAsyncEditLog);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_OVERLAP_SYNC,
+        overlapEditLogSync);
     FileSystem.setDefaultUri(conf, "hdfs://localhost:0");
     conf.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
     conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY, NAME_DIR);
@@ -32,8 +32,10 @@
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.hdfs.StripedFileTestUtil;
@@ -1120,6 +1122,134 @@ public void testParallelSaveAndLoad() throws IOException {
     }
   }
 
+  /**
+   * The inode sections saved in parallel must be identical to the ones
+   * saved by a single thread.
+   */
+  @Test
+  public void testParallelSaveWithSaveThreads() throws IOException {
+    Configuration conf = new Configuration();
+
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = createAndLoadParallelFSImage(conf);
+      DistributedFileSystem fs = cluster.getFileSystem();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      List<byte[]> serial = getINodeSections(cluster);
+
+      cluster.getNameNode().getConf().setInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_THREADS_KEY, 4);
+      fs.saveNamespace();
+      List<byte[]> parallel = getINodeSections(cluster);
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      assertEquals(serial.size(), parallel.size());
+      for (int i = 0; i < serial.size(); i++) {
+        assertArrayEquals(serial.get(i), parallel.get(i));
+      }
+
+      FsImageProto.FileSummary summary = FSImageTestUtil.
+          getLatestImageSummary(cluster);
+      ArrayList<Section> sections = Lists.newArrayList(
+          summary.getSectionsList());
+      ArrayList<Section> inodeSubSections =
+          getSubSectionsOfName(sections, SectionName.INODE_SUB);
+      ArrayList<Section> dirSubSections =
+          getSubSectionsOfName(sections, SectionName.INODE_DIR_SUB);
+      assertEquals(4, inodeSubSections.size());
+      assertEquals(4, dirSubSections.size());
+      ensureSubSectionsAlignWithParent(inodeSubSections,
+          getSubSectionsOfName(sections, SectionName.INODE).get(0));
+      ensureSubSectionsAlignWithParent(dirSubSections,
+          getSubSectionsOfName(sections, SectionName.INODE_DIR).get(0));
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  /**
+   * @return the contents of the inode and directory sections and their
+   * sub-sections of the latest image, in the order of the summary.
+   */
+  private List<byte[]> getINodeSections(MiniDFSCluster cluster)
+      throws IOException {
+    File image = FSImageTestUtil.findLatestImageFile(FSImageTestUtil
+        .getFSImage(cluster.getNameNode()).getStorage().getStorageDir(0));
+    List<byte[]> contents = new ArrayList<>();
+    try (RandomAccessFile raFile = new RandomAccessFile(image, "r")) {
+      for (Section s : FSImageUtil.loadSummary(raFile).getSectionsList()) {
+        SectionName name = SectionName.fromString(s.getName());
+        if (name == SectionName.INODE || name == SectionName.INODE_SUB ||
+            name == SectionName.INODE_DIR ||
+            name == SectionName.INODE_DIR_SUB) {
+          byte[] b = new byte[(int) s.getLength()];
+          raFile.seek(s.getOffset());
+          raFile.readFully(b);
+          contents.add(b);
+        }
+      }
+    }
+    return contents;
+  }
+
+  /**
+   * Directories with reference children make the parallel saver fall back
+   * to serializing the rest of the directory section in the saving thread.
+   */
+  @Test
+  public void testParallelSaveWithReferences() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_SAVE_THREADS_KEY, 4);
+    File workingDir = GenericTestUtils.getTestDir();
+    File preRestartTree = new File(workingDir, "preRestartParallelTree");
+    File postRestartTree = new File(workingDir, "postRestartParallelTree");
+
+    try (MiniDFSCluster cluster =
+             new MiniDFSCluster.Builder(conf).numDataNodes(0).build()) {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path baseDir = new Path("/snapshottable");
+      fs.mkdirs(baseDir);
+      fs.allowSnapshot(baseDir);
+      for (int i = 0; i < 10; i++) {
+        Path dir = new Path(baseDir, Integer.toString(i));
+        for (int j = 0; j < 5; j++) {
+          fs.create(new Path(dir, Integer.toString(j)), (short) 1).close();
+        }
+      }
+      fs.createSnapshot(baseDir, "s0");
+      for (int i = 0; i < 10; i += 3) {
+        Path dir = new Path(baseDir, Integer.toString(i));
+        fs.rename(new Path(dir, "0"), new Path(baseDir, "renamed" + i));
+      }
+      SnapshotTestHelper.dumpTree2File(
+          cluster.getNamesystem().getFSDirectory(), preRestartTree);
+
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+      cluster.restartNameNode();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+
+      for (int i = 0; i < 10; i += 3) {
+        assertTrue(fs.exists(new Path(baseDir, "renamed" + i)));
+        assertTrue(fs.exists(
+            new Path(baseDir, ".snapshot/s0/" + i + "/0")));
+      }
+      SnapshotTestHelper.dumpTree2File(
+          cluster.getNamesystem().getFSDirectory(), postRestartTree);
+      SnapshotTestHelper.compareDumpedTreeInFile(
+          preRestartTree, postRestartTree, true);
+    }
+  }
+
   @Test
   public void testNoParallelSectionsWithCompressionEnabled()
       throws IOException {
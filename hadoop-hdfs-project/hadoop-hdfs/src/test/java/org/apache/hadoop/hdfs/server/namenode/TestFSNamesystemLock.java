@@ -445,4 +445,91 @@ public void testFSWriteLockReportSuppressed() throws Exception {
         "Number of suppressed write-lock reports:"));
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testPartitionedLockPartitions() {
+    Configuration conf = new Configuration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY, 1);
+    FSNamesystemLock fsLock = new FSNamesystemLock(conf, null);
+    assertTrue(fsLock.isPartitioned());
+
+    // The root and the partition roots themselves are not partitioned.
+    assertEquals(-1, fsLock.getPartition(INode.getPathComponents("/")));
+    assertEquals(-1, fsLock.getPartition(INode.getPathComponents("/user")));
+    // Paths below the same partition root map to the same partition.
+    int p = fsLock.getPartition(INode.getPathComponents("/user/a"));
+    assertTrue(p >= 0);
+    assertEquals(p, fsLock.getPartition(INode.getPathComponents("/user/b/c")));
+
+    FSNamesystemLock coarse = new FSNamesystemLock(new Configuration(), null);
+    assertFalse(coarse.isPartitioned());
+    assertEquals(-1, coarse.getPartition(INode.getPathComponents("/user/a")));
+  }
+
+  @Test(timeout = 30000)
+  public void testPartitionedLockCompatibility() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_KEY, 4);
+    final FSNamesystemLock fsLock = new FSNamesystemLock(conf, null);
+    ExecutorService helper = Executors.newFixedThreadPool(2);
+    try {
+      fsLock.partitionWriteLock(0);
+      assertTrue(fsLock.hasPartitionWriteLock());
+      assertFalse(fsLock.isWriteLockedByCurrentThread());
+      // Nested read locks do not block on the held partition.
+      fsLock.readLock();
+      fsLock.readUnlock();
+
+      // Writers of other partitions proceed concurrently.
+      assertTrue(helper.submit(() -> {
+        fsLock.partitionWriteLock(1, 2);
+        fsLock.partitionWriteUnlock("other", null);
+        return true;
+      }).get(10, TimeUnit.SECONDS));
+
+      // Readers and the coarse writer are excluded.
+      final CountDownLatch readLocked = new CountDownLatch(1);
+      helper.execute(() -> {
+        fsLock.readLock();
+        readLocked.countDown();
+        fsLock.readUnlock();
+      });
+      assertFalse(readLocked.await(200, TimeUnit.MILLISECONDS));
+      assertFalse(fsLock.coarseLock.writeLock().tryLock());
+      fsLock.partitionWriteUnlock("test", null);
+      assertFalse(fsLock.hasPartitionWriteLock());
+      assertTrue(readLocked.await(10, TimeUnit.SECONDS));
+    } finally {
+      helper.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testPartitionedLockHoldMetrics() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY, true);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_KEY, true);
+    FakeTimer timer = new FakeTimer();
+    MetricsRegistry registry = new MetricsRegistry("Test");
+    MutableRatesWithAggregation rates =
+        registry.newRatesWithAggregation("Test");
+    FSNamesystemLock fsLock = new FSNamesystemLock(conf, rates, timer);
+
+    fsLock.partitionWriteLock(0);
+    timer.advance(1);
+    fsLock.partitionWriteUnlock("mkdirs", null);
+    fsLock.writeLock();
+    timer.advance(3);
+    fsLock.writeUnlock("mkdirs", false);
+
+    MetricsRecordBuilder rb = MetricsAsserts.mockMetricsRecordBuilder();
+    rates.snapshot(rb, true);
+    assertGauge("FSNWriteLockMkdirsNanosAvgTime", 2000000.0, rb);
+    assertCounter("FSNWriteLockMkdirsNanosNumOps", 2L, rb);
+    assertCounter("FSNWriteLockOverallNanosNumOps", 2L, rb);
+  }
+}
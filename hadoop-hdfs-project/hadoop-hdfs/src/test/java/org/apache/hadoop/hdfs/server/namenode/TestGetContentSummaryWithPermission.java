@@ -26,6 +26,7 @@
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.junit.After;
@@ -36,6 +37,8 @@
 
 import static org.apache.hadoop.fs.permission.FsAction.READ_EXECUTE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -191,6 +194,91 @@ public void testGetContentSummaryNonSuperUser() throws Exception {
     verifySummary(summary, 2, 1, 10);
   }
 
+  /**
+   * Test that cached content summaries are served until the subtree
+   * changes and always match the subtree walk. Other users than the
+   * superuser are not served from the cache, so that the walk checks their
+   * access to the subtree.
+   */
+  @Test
+  public void testGetContentSummaryWithCache() throws Exception {
+    cluster.getConfiguration(0).setBoolean(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_ENABLED_KEY, true);
+    cluster.restartNameNode();
+    dfs = cluster.getFileSystem();
+
+    final Path foo = new Path("/fooCached");
+    final Path bar = new Path(foo, "barCached");
+    final Path baz1 = new Path(bar, "baz1");
+    final Path baz2 = new Path(bar, "baz2");
+    final Path other = new Path("/otherCached");
+    dfs.mkdirs(bar);
+    dfs.mkdirs(other);
+    DFSTestUtil.createFile(dfs, baz1, 10, REPLICATION, 0L);
+    final UserGroupInformation userUgi =
+        UserGroupInformation.createUserForTesting(
+            "randomUser", new String[]{"randomGroup"});
+
+    ContentSummary summary = getCheckedContentSummary(foo);
+    verifySummary(summary, 2, 1, 10);
+    // the summary is cached, also across mutations outside of the subtree
+    DFSTestUtil.createFile(dfs, new Path(other, "baz"), 10, REPLICATION, 0L);
+    assertSame(summary, getCheckedContentSummary(foo));
+
+    // mutations inside the subtree are reflected at once
+    DFSTestUtil.createFile(dfs, baz2, 20, REPLICATION, 0L);
+    verifySummary(getCheckedContentSummary(foo), 2, 2, 30);
+    dfs.setReplication(baz2, (short) 1);
+    getCheckedContentSummary(foo);
+    dfs.setStoragePolicy(bar, HdfsConstants.COLD_STORAGE_POLICY_NAME);
+    getCheckedContentSummary(foo);
+    dfs.setQuota(foo, 100, HdfsConstants.QUOTA_DONT_SET);
+    assertEquals(100, getCheckedContentSummary(foo).getQuota());
+    dfs.rename(baz1, new Path(other, "baz1"));
+    verifySummary(getCheckedContentSummary(foo), 2, 1, 20);
+    dfs.delete(bar, true);
+    verifySummary(getCheckedContentSummary(foo), 1, 0, 0);
+
+    // another user gets a summary computed by the walk
+    dfs.mkdirs(bar);
+    summary = getCheckedContentSummary(foo);
+    assertSame(summary, getCheckedContentSummary(foo));
+    ContentSummary userSummary =
+        userUgi.doAs((PrivilegedExceptionAction<ContentSummary>)
+            () -> cluster.getNameNodeRpc().getContentSummary(
+                foo.toString()));
+    assertNotSame(summary, userSummary);
+    assertEquals(summary, userSummary);
+
+    // and is denied access to the subtree, while the summary is cached
+    summary = getCheckedContentSummary(foo);
+    dfs.setPermission(bar, new FsPermission((short)0));
+    assertSame(summary, getCheckedContentSummary(foo));
+    try {
+      userUgi.doAs((PrivilegedExceptionAction<ContentSummary>)
+          () -> cluster.getNameNodeRpc().getContentSummary(
+              foo.toString()));
+      fail("Should've fail due to access control exception.");
+    } catch (AccessControlException e) {
+      assertTrue(e.getMessage().contains("Permission denied"));
+    }
+  }
+
+  /** @return the summary of the path, checked against the subtree walk. */
+  private ContentSummary getCheckedContentSummary(Path path)
+      throws Exception {
+    ContentSummary summary =
+        cluster.getNameNodeRpc().getContentSummary(path.toString());
+    assertEquals(computeContentSummary(path), summary);
+    return summary;
+  }
+
+  private ContentSummary computeContentSummary(Path path) throws Exception {
+    FSDirectory fsd = cluster.getNamesystem().getFSDirectory();
+    return fsd.getINode(path.toString()).computeContentSummary(
+        fsd.getBlockStoragePolicySuite());
+  }
+
   private void verifySummary(ContentSummary summary, int dirCount,
       int fileCount, int length) {
     assertEquals(dirCount, summary.getDirectoryCount());
@@ -22,6 +22,7 @@
 import static org.apache.hadoop.hdfs.protocol.BlockType.STRIPED;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -477,7 +478,45 @@ public void testValueOf () throws IOException {
    */
   @Test
   public void testInodeId() throws IOException {
+    testInodeId(new Configuration());
+  }
+
+  /**
+   * This test verifies the inode map functionality when the map is kept
+   * off-heap.
+   */
+  @Test
+  public void testInodeIdWithOffHeapINodeMap() throws IOException {
     Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_INODEMAP_OFFHEAP_ENABLED_KEY,
+        true);
+    testInodeId(conf);
+  }
+
+  @Test
+  public void testOffHeapINodeMap() {
+    INodeDirectory root = new INodeDirectory(INodeId.ROOT_INODE_ID,
+        INodeDirectory.ROOT_NAME, perm, 0L);
+    INodeMap map = INodeMap.newOffHeapInstance(root, 4);
+    try {
+      assertTrue(map.isOffHeap());
+      assertSame(root, map.get(INodeId.ROOT_INODE_ID));
+      for (long id = INodeId.ROOT_INODE_ID + 1;
+           id <= INodeId.ROOT_INODE_ID + 100; id++) {
+        map.put(createINodeFile(id));
+      }
+      assertEquals(101, map.size());
+      INode inode = map.get(INodeId.ROOT_INODE_ID + 50);
+      assertEquals(INodeId.ROOT_INODE_ID + 50, inode.getId());
+      map.remove(inode);
+      assertNull(map.get(INodeId.ROOT_INODE_ID + 50));
+      assertEquals(100, map.size());
+    } finally {
+      map.close();
+    }
+  }
+
+  private void testInodeId(Configuration conf) throws IOException {
     conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY,
         DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_DEFAULT);
     MiniDFSCluster cluster = null;
@@ -514,6 +553,8 @@ public void testInodeId() throws IOException {
       // Ensure right inode ID is returned in file status
       HdfsFileStatus fileStatus = nnrpc.getFileInfo("/test1/file");
       assertEquals(expectedLastInodeId, fileStatus.getFileId());
+      assertEquals("file",
+          fsn.dir.getInode(expectedLastInodeId).getLocalName());
 
       // Rename a directory
       // Last inode ID and inode map size should not change
@@ -37,6 +37,7 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.util.Lists;
+import org.apache.hadoop.util.Time;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -45,6 +46,7 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -103,6 +105,52 @@ public void testCheckLease() throws InterruptedException {
     assertTrue(lm.countLease() < numLease);
   }
 
+  /**
+   * Check that the monitor only finds the leases which were not renewed, and
+   * that released leases are no longer scheduled to expire.
+   */
+  @Test
+  public void testExpiredCandidateLeases() throws Exception {
+    LeaseManager lm = new LeaseManager(makeMockFsNameSystem());
+    lm.setLeasePeriod(100L, 500L);
+    lm.addLease("expiring", INodeId.ROOT_INODE_ID + 1);
+    lm.addLease("renewing", INodeId.ROOT_INODE_ID + 2);
+    lm.addLease("removed", INodeId.ROOT_INODE_ID + 3);
+    lm.removeLease(INodeId.ROOT_INODE_ID + 3);
+    assertEquals(2, lm.countScheduledLeases());
+    assertTrue(lm.getExpiredCandidateLeases().isEmpty());
+
+    long start = Time.monotonicNow();
+    while (Time.monotonicNow() - start < 1000L) {
+      lm.renewLease("renewing");
+      Thread.sleep(10);
+    }
+    Collection<LeaseManager.Lease> expired = lm.getExpiredCandidateLeases();
+    assertEquals(1, expired.size());
+    assertEquals("expiring", expired.iterator().next().getHolder());
+    assertEquals(2, lm.countScheduledLeases());
+
+    // an expired lease is found again until it is released
+    assertEquals(1, lm.getExpiredCandidateLeases().size());
+    lm.removeLease(INodeId.ROOT_INODE_ID + 1);
+    assertTrue(lm.getExpiredCandidateLeases().isEmpty());
+    assertEquals(1, lm.countScheduledLeases());
+  }
+
+  /**
+   * Run {@link LeaseManagerBenchmark} with a small number of leases.
+   */
+  @Test
+  public void testLeaseManagerBenchmark() throws Exception {
+    LeaseManagerBenchmark.Result[] results =
+        new LeaseManagerBenchmark(10000, 2000L, 2, 10).run();
+    results[0].print("Renewing");
+    results[1].print("Expiring");
+    assertEquals(0, results[0].getExpired());
+    assertTrue(results[0].getRenewals() > 0);
+    assertEquals(5000, results[1].getExpired());
+  }
+
   /**
    * Test whether the internal lease holder name is updated properly.
    */
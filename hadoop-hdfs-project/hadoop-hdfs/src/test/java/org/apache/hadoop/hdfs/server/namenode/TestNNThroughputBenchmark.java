@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -60,6 +61,25 @@ public void testNNThroughput() throws Exception {
     NNThroughputBenchmark.runBenchmark(conf, new String[] {"-op", "all"});
   }
 
+  /**
+   * This test runs the create benchmark with the edit log synced on a
+   * separate thread from the one writing the edits.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputWithOverlappedEditLogSync() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_OVERLAP_SYNC, true);
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    DFSTestUtil.formatNameNode(conf);
+    NNThroughputBenchmark.runBenchmark(conf, new String[] {"-op", "create",
+        "-threads", "16", "-files", "2000", "-filesPerDir", "100",
+        "-close"});
+  }
+
   /**
    * This test runs all benchmarks defined in {@link NNThroughputBenchmark},
    * with explicit local -fs option.
@@ -99,6 +119,35 @@ public void testNNThroughputAgainstRemoteNN() throws Exception {
     }
   }
 
+  /**
+   * This test runs the create benchmark against a mini DFS cluster which
+   * writes its audit log with {@link AsyncAuditLogger}.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputAgainstRemoteNNWithAsyncAuditLogger()
+      throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 16);
+    conf.set(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY,
+        AsyncAuditLogger.class.getName());
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+      cluster.waitActive();
+
+      final Configuration benchConf = new HdfsConfiguration();
+      benchConf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+      FileSystem.setDefaultUri(benchConf, cluster.getURI());
+      NNThroughputBenchmark.runBenchmark(benchConf, new String[] {"-op",
+          "create", "-threads", "16", "-files", "2000", "-filesPerDir", "100",
+          "-close"});
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   /**
    * This test runs {@link NNThroughputBenchmark} against a mini DFS cluster
    * with explicit -fs option.
@@ -187,4 +236,160 @@ public void testNNThroughputForBlockReportOp() throws Exception {
               "blockReport", "-datanodes", "3", "-reports", "2"});
     }
   }
+
+  /**
+   * This test runs the block report benchmark of {@link NNThroughputBenchmark}
+   * with several storages per datanode against a NameNode which diffs the
+   * storage reports of a block report in parallel.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputForBlockReportOpWithParallelDiff()
+      throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 16);
+    conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY, 4);
+    try (MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).
+        numDataNodes(3).build()) {
+      cluster.waitActive();
+      Assert.assertTrue(cluster.getNamesystem().getBlockManager()
+          .isReportDiffParallel());
+      final Configuration benchConf = new HdfsConfiguration();
+      benchConf.setInt(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 16);
+      benchConf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+      NNThroughputBenchmark.runBenchmark(benchConf,
+          new String[]{"-fs", cluster.getURI().toString(), "-op",
+              "blockReport", "-datanodes", "3", "-reports", "2",
+              "-blocksPerReport", "200", "-storagesPerDatanode", "4",
+              "-keepResults"});
+      Assert.assertTrue(cluster.getNamesystem().getBlockManager()
+          .getTotalBlocks() >= 200);
+    }
+  }
+
+  /**
+   * This test runs the heartbeat benchmark of {@link NNThroughputBenchmark}
+   * with more datanodes than threads.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputForHeartbeatOp() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_HEARTBEAT_SHARDS_KEY, 4);
+    try (MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).
+        numDataNodes(0).build()) {
+      cluster.waitActive();
+      final Configuration benchConf = new HdfsConfiguration();
+      NNThroughputBenchmark.runBenchmark(benchConf,
+          new String[]{"-fs", cluster.getURI().toString(), "-op",
+              "heartbeat", "-threads", "4", "-datanodes", "20",
+              "-heartbeats", "200", "-storagesPerDatanode", "2"});
+      Assert.assertEquals(20, cluster.getNamesystem().getBlockManager()
+          .getDatanodeManager().getNumLiveDataNodes());
+    }
+  }
+
+  /**
+   * This test runs the replication benchmark of {@link NNThroughputBenchmark}
+   * with a failed rack, choosing the targets of the lost replicas on several
+   * threads.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputForReplicationOpWithKilledRack()
+      throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_REDUNDANCY_CHOOSE_TARGETS_THREADS_KEY, 4);
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    DFSTestUtil.formatNameNode(conf);
+    NNThroughputBenchmark.runBenchmark(conf, new String[] {"-op",
+        "replication", "-datanodes", "12", "-racks", "3", "-racksToKill", "1",
+        "-nodesToDecommission", "0", "-totalBlocks", "300"});
+  }
+
+  /**
+   * This test runs the block report benchmark of {@link NNThroughputBenchmark}
+   * against a NameNode which keeps its blocks map off-heap.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputForBlockReportOpWithOffHeapBlocksMap()
+      throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 16);
+    conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_CAPACITY_KEY, 16);
+    try (MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).
+        numDataNodes(3).build()) {
+      cluster.waitActive();
+      final Configuration benchConf = new HdfsConfiguration();
+      benchConf.setInt(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 16);
+      benchConf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+      NNThroughputBenchmark.runBenchmark(benchConf,
+          new String[]{"-fs", cluster.getURI().toString(), "-op",
+              "blockReport", "-datanodes", "3", "-reports", "2",
+              "-blocksPerReport", "200", "-keepResults"});
+      Assert.assertTrue(cluster.getNamesystem().getBlockManager()
+          .getTotalBlocks() >= 200);
+    }
+  }
+
+  /**
+   * This test runs the open and fileStatus benchmarks of
+   * {@link NNThroughputBenchmark} with the inode map kept off-heap.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputWithOffHeapINodeMap() throws Exception {
+    for (String op : new String[] {"open", "fileStatus"}) {
+      final Configuration conf = new HdfsConfiguration();
+      conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+      conf.setBoolean(
+          DFSConfigKeys.DFS_NAMENODE_INODEMAP_OFFHEAP_ENABLED_KEY, true);
+      File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+      conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+          nameDir.getAbsolutePath());
+      DFSTestUtil.formatNameNode(conf);
+      NNThroughputBenchmark.runBenchmark(conf,
+          new String[] {"-op", op, "-threads", "4", "-files", "1000"});
+      cleanUp();
+    }
+  }
+
+  /**
+   * This test runs the create and mkdirs benchmarks of
+   * {@link NNThroughputBenchmark} with partitioned namesystem locking for an
+   * increasing number of threads. Each top-level directory generated below
+   * the benchmark's base directory is a separate lock partition, so the
+   * reported throughput should scale with the number of threads.
+   */
+  @Test(timeout = 300000)
+  public void testNNThroughputWithPartitionedLock() throws Exception {
+    for (int threads : new int[] {1, 4, 16}) {
+      String numThreads = String.valueOf(threads);
+      NNThroughputBenchmark.runBenchmark(getPartitionedLockConf(),
+          new String[] {"-op", "create", "-threads", numThreads,
+              "-files", "2000", "-filesPerDir", "16"});
+      NNThroughputBenchmark.runBenchmark(getPartitionedLockConf(),
+          new String[] {"-op", "mkdirs", "-threads", numThreads,
+              "-dirs", "2000", "-dirsPerDir", "16"});
+      cleanUp();
+    }
+  }
+
+  private static Configuration getPartitionedLockConf() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_KEY, true);
+    // Partition roots are /nnThroughputBenchmark/<op>/ThroughputBenchDirN.
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY, 3);
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    DFSTestUtil.formatNameNode(conf);
+    return conf;
+  }
 }
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests namespace mutations running concurrently under partitioned
+ * namesystem locking.
+ */
+public class TestPartitionedNamespaceLock {
+  private static final int NUM_PARTITIONS = 8;
+  private static final int OPS_PER_THREAD = 100;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONED_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_KEY, 4);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentMutations() throws Exception {
+    for (int p = 0; p < NUM_PARTITIONS; p++) {
+      assertTrue(fs.mkdirs(new Path("/p" + p)));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_PARTITIONS);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int p = 0; p < NUM_PARTITIONS; p++) {
+        final int partition = p;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            mutate(partition);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verifyNamespace();
+    // Replaying the edits must result in the same namespace.
+    cluster.restartNameNode(true);
+    fs = cluster.getFileSystem();
+    verifyNamespace();
+  }
+
+  /**
+   * Writers of different partitions consume a quota of their common
+   * ancestor, so they must not verify and consume it concurrently.
+   */
+  @Test(timeout = 120000)
+  public void testQuotaAbovePartitions() throws Exception {
+    for (int p = 0; p < NUM_PARTITIONS; p++) {
+      assertTrue(fs.mkdirs(new Path("/p" + p)));
+    }
+    final long used =
+        fs.getContentSummary(new Path("/")).getFileAndDirectoryCount();
+    final long quota = used + OPS_PER_THREAD;
+    fs.setQuota(new Path("/"), quota, HdfsConstants.QUOTA_DONT_SET);
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_PARTITIONS);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int p = 0; p < NUM_PARTITIONS; p++) {
+        final String base = "/p" + p;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+              try {
+                assertTrue(fs.mkdirs(new Path(base + "/d" + i)));
+              } catch (NSQuotaExceededException e) {
+                // expected once the quota is used up
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(quota, fs.getContentSummary(new Path("/"))
+        .getFileAndDirectoryCount());
+    assertEquals(quota, cluster.getNamesystem().getFSDirectory().getRoot()
+        .getDirectoryWithQuotaFeature().getSpaceConsumed().getNameSpace());
+  }
+
+  /**
+   * Runs mkdirs, create, rename within and across partitions and delete.
+   */
+  private void mutate(int partition) throws Exception {
+    final String base = "/p" + partition;
+    final String next = "/p" + ((partition + 1) % NUM_PARTITIONS);
+    for (int i = 0; i < OPS_PER_THREAD; i++) {
+      final Path dir = new Path(base + "/d" + i + "/sub");
+      assertTrue(fs.mkdirs(dir));
+      final Path file = new Path(base + "/f" + i);
+      fs.create(file, (short) 1).close();
+      assertTrue(fs.rename(file, new Path(dir, "f")));
+      if (i % 2 == 0) {
+        assertTrue(fs.delete(new Path(base + "/d" + i), true));
+      } else {
+        fs.create(new Path(base + "/x" + i), (short) 1).close();
+        assertTrue(fs.rename(new Path(base + "/x" + i),
+            new Path(next + "/y" + partition + "-" + i)));
+      }
+    }
+  }
+
+  private void verifyNamespace() throws Exception {
+    final int half = OPS_PER_THREAD / 2;
+    for (int p = 0; p < NUM_PARTITIONS; p++) {
+      ContentSummary summary = fs.getContentSummary(new Path("/p" + p));
+      // Every odd iteration leaves d_i, d_i/sub, d_i/sub/f and one file
+      // renamed in from the previous partition.
+      assertEquals(1 + 2 * half, summary.getDirectoryCount());
+      assertEquals(2 * half, summary.getFileCount());
+      assertFalse(fs.exists(new Path("/p" + p + "/d0")));
+    }
+
+    FSNamesystem fsn = cluster.getNamesystem();
+    FSDirectory fsd = fsn.getFSDirectory();
+    ContentSummary root = fs.getContentSummary(new Path("/"));
+    assertEquals(root.getDirectoryCount() + root.getFileCount(),
+        fsd.getInodeMapSize());
+    assertEquals(fsd.getInodeMapSize(), fsd.getRoot()
+        .getDirectoryWithQuotaFeature().getSpaceConsumed().getNameSpace());
+  }
+}
@@ -366,6 +366,36 @@ public void testCheckpointWhenNoNewTransactionsHappened()
         any(), Mockito.eq(NameNodeFile.IMAGE), any());
   }
   
+  /**
+   * Test that a checkpoint triggered by the checkpoint period is skipped
+   * until there are at least dfs.namenode.checkpoint.period.min-txns
+   * uncheckpointed transactions.
+   */
+  @Test(timeout = 300000)
+  public void testCheckpointPeriodMinTxns() throws Exception {
+    Configuration conf1 = cluster.getConfiguration(1);
+    conf1.setInt(DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_PERIOD_KEY, 0);
+    conf1.setInt(DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_TXNS_KEY, 1000);
+    conf1.setInt(DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_PERIOD_MIN_TXNS_KEY,
+        10);
+    cluster.restartNameNode(1);
+    nns[1] = cluster.getNameNode(1);
+
+    FSImage spyImage1 = NameNodeAdapter.spyOnFsImage(nns[1]);
+
+    // A few transactions are not enough for a periodic checkpoint.
+    doEdits(0, 2);
+    HATestUtil.waitForStandbyToCatchUp(nns[0], nns[1]);
+    Thread.sleep(2000);
+    Mockito.verify(spyImage1, Mockito.never())
+        .saveNamespace(any(), Mockito.eq(NameNodeFile.IMAGE), any());
+
+    doEdits(2, 12);
+    HATestUtil.waitForStandbyToCatchUp(nns[0], nns[1]);
+    Mockito.verify(spyImage1, Mockito.timeout(60000).atLeastOnce())
+        .saveNamespace(any(), Mockito.eq(NameNodeFile.IMAGE), any());
+  }
+
   /**
    * Test cancellation of ongoing checkpoints when failover happens
    * mid-checkpoint. 
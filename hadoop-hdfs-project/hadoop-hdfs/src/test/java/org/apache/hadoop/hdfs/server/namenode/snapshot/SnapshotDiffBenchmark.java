@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.snapshot;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
+import org.apache.hadoop.hdfs.server.namenode.FSDirectory.DirOp;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.namenode.INodesInPath;
+
+/**
+ * Benchmark of the snapshot diff of a large directory tree with a few
+ * changes between the snapshots.
+ *
+ * The benchmark creates a tree of directories with empty files, takes a
+ * snapshot, makes random changes to the files and directories (creates,
+ * deletes, renames and permission changes), and takes another snapshot. It
+ * then reports the latency of the diff of the two snapshots, and of the
+ * diff between the first snapshot and the current tree, with and without
+ * skipping the subtrees that have not changed.
+ *
+ * Usage: SnapshotDiffBenchmark [-dirs D] [-files F] [-changes C]
+ *                              [-iterations I]
+ */
+public class SnapshotDiffBenchmark {
+  static final String USAGE = "Usage: SnapshotDiffBenchmark [-dirs D] " +
+      "[-files F] [-changes C] [-iterations I]";
+
+  /** The latencies of the diffs computed in one mode. */
+  static final class Result {
+    private long diffs;
+    private long totalNanos;
+    private long maxNanos;
+    private long entries;
+    private long dirsProcessed;
+
+    void addDiff(long nanos, SnapshotDiffReport report) {
+      diffs++;
+      totalNanos += nanos;
+      maxNanos = Math.max(maxNanos, nanos);
+      entries = report.getDiffList().size();
+      dirsProcessed = report.getStats().getTotalDirsProcessed();
+    }
+
+    void print(String mode) {
+      System.out.printf("%s: %d diffs, avg %.3f ms, max %.3f ms, " +
+          "%d entries, %d directories processed%n", mode, diffs,
+          diffs == 0 ? 0 : totalNanos / 1e6 / diffs, maxNanos / 1e6,
+          entries, dirsProcessed);
+    }
+  }
+
+  private static final Path ROOT = new Path("/bench");
+
+  private final int numDirs;
+  private final int numFiles;
+  private final int numChanges;
+  private final int numIterations;
+  private final Random random = new Random(0);
+  private MiniDFSCluster cluster;
+
+  SnapshotDiffBenchmark(int numDirs, int numFiles, int numChanges,
+      int numIterations) {
+    this.numDirs = numDirs;
+    this.numFiles = numFiles;
+    this.numChanges = numChanges;
+    this.numIterations = numIterations;
+  }
+
+  private static Path dir(int d) {
+    return new Path(ROOT, "dir" + (d / 100) + "/dir" + d);
+  }
+
+  private void createTree(DistributedFileSystem fs) throws IOException {
+    for (int d = 0; d < numDirs; d++) {
+      Path dir = dir(d);
+      fs.mkdirs(dir);
+      for (int f = 0; f < numFiles; f++) {
+        fs.create(new Path(dir, "file" + f)).close();
+      }
+    }
+  }
+
+  private void makeChanges(DistributedFileSystem fs) throws IOException {
+    for (int c = 0; c < numChanges; c++) {
+      Path dir = dir(random.nextInt(numDirs));
+      Path file = new Path(dir, "file" + random.nextInt(numFiles));
+      switch (random.nextInt(4)) {
+      case 0:
+        fs.create(new Path(dir, "new" + c)).close();
+        break;
+      case 1:
+        fs.delete(file, false);
+        break;
+      case 2:
+        if (fs.exists(file)) {
+          fs.rename(file, new Path(dir(random.nextInt(numDirs)),
+              "renamed" + c));
+        }
+        break;
+      default:
+        if (fs.exists(file)) {
+          fs.setPermission(file, new FsPermission((short) 0600));
+        }
+        break;
+      }
+    }
+  }
+
+  private Result runDiffs(String from, String to, boolean skip)
+      throws IOException {
+    FSNamesystem fsn = cluster.getNamesystem();
+    SnapshotManager sm = fsn.getSnapshotManager();
+    sm.setSnapshotDiffSkipUnchangedSubtrees(skip);
+    Result result = new Result();
+    for (int i = 0; i < numIterations; i++) {
+      // compute the diff like the NameNode does, as the stats of the
+      // report are not sent to the client
+      fsn.readLock();
+      try {
+        long start = System.nanoTime();
+        INodesInPath iip = fsn.getFSDirectory().getINodesInPath(
+            ROOT.toString(), DirOp.READ);
+        SnapshotDiffReport report = sm.diff(iip, ROOT.toString(), from, to);
+        result.addDiff(System.nanoTime() - start, report);
+      } finally {
+        fsn.readUnlock();
+      }
+    }
+    return result;
+  }
+
+  void run() throws IOException {
+    HdfsConfiguration conf = new HdfsConfiguration();
+    // the files are empty, so the datanode stores no blocks
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      createTree(fs);
+      fs.allowSnapshot(ROOT);
+      fs.createSnapshot(ROOT, "s0");
+      makeChanges(fs);
+      fs.createSnapshot(ROOT, "s1");
+      makeChanges(fs);
+
+      for (boolean skip : new boolean[] {false, true}) {
+        String mode = skip ? "skipping unchanged subtrees" : "full walk";
+        runDiffs("s0", "s1", skip).print("s0 to s1, " + mode);
+        runDiffs("s0", "", skip).print("s0 to current, " + mode);
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numDirs = 10000;
+    int numFiles = 10;
+    int numChanges = 100;
+    int numIterations = 20;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+      if (args[i].equals("-dirs")) {
+        numDirs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-files")) {
+        numFiles = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-changes")) {
+        numChanges = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-iterations")) {
+        numIterations = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println(USAGE);
+        System.exit(-1);
+      }
+    }
+
+    System.out.printf("%d directories with %d files, %d changes between " +
+        "the snapshots%n", numDirs, numFiles, numChanges);
+    new SnapshotDiffBenchmark(numDirs, numFiles, numChanges, numIterations)
+        .run();
+  }
+}
@@ -37,6 +37,7 @@
 import org.apache.hadoop.fs.Options.Rename;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.DFSUtil;
@@ -49,8 +50,12 @@
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffReportEntry;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffType;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
+import org.apache.hadoop.hdfs.server.namenode.FSDirectory.DirOp;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+import org.apache.hadoop.hdfs.server.namenode.INodesInPath;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
 import org.apache.hadoop.test.GenericTestUtils;
@@ -1603,4 +1608,115 @@ public void testSnapshotDiffReportRemoteIterator2() throws Exception {
           + "supported for snapshotDiffReport between two snapshots"));
     }
   }
+
+  private SnapshotDiffReport computeDiff(Path snapshotDir, String from,
+      String to, boolean skipUnchangedSubtrees) throws IOException {
+    FSNamesystem fsn = cluster.getNamesystem();
+    fsn.getSnapshotManager().setSnapshotDiffSkipUnchangedSubtrees(
+        skipUnchangedSubtrees);
+    fsn.readLock();
+    try {
+      String path = snapshotDir.toString();
+      INodesInPath iip = fsn.getFSDirectory().getINodesInPath(path,
+          DirOp.READ);
+      return fsn.getSnapshotManager().diff(iip, path, from, to);
+    } finally {
+      fsn.readUnlock();
+    }
+  }
+
+  /**
+   * Verify the diff reports computed with and without skipping the unchanged
+   * subtrees are the same.
+   * @return the number of directories processed without and with skipping.
+   */
+  private long[] verifySkippedDiff(Path snapshotDir, String from, String to)
+      throws IOException {
+    SnapshotDiffReport full = computeDiff(snapshotDir, from, to, false);
+    SnapshotDiffReport skipped = computeDiff(snapshotDir, from, to, true);
+    LOG.info("Diff from {} to {}: {}", from, to, skipped);
+    assertEquals(full.getDiffList(), skipped.getDiffList());
+    long fullDirs = full.getStats().getTotalDirsProcessed();
+    long skippedDirs = skipped.getStats().getTotalDirsProcessed();
+    assertTrue(skippedDirs <= fullDirs);
+
+    // the listing resumes from a path in the subtrees
+    cluster.getNamesystem().getSnapshotManager()
+        .setSnapshotDiffSkipUnchangedSubtrees(false);
+    SnapshotDiffReport fullListing =
+        hdfs.getSnapshotDiffReport(snapshotDir, from, to);
+    cluster.getNamesystem().getSnapshotManager()
+        .setSnapshotDiffSkipUnchangedSubtrees(true);
+    SnapshotDiffReport skippedListing =
+        hdfs.getSnapshotDiffReport(snapshotDir, from, to);
+    assertEquals(fullListing.getDiffList(), skippedListing.getDiffList());
+    return new long[] {fullDirs, skippedDirs};
+  }
+
+  private void verifySkippedDiffs(Path snapshotDir) throws IOException {
+    long[] dirs = verifySkippedDiff(snapshotDir, "s0", "s2");
+    assertTrue("Processed " + dirs[1] + " of " + dirs[0] + " directories",
+        dirs[1] < dirs[0]);
+    verifySkippedDiff(snapshotDir, "s2", "s0");
+    verifySkippedDiff(snapshotDir, "s0", "");
+    verifySkippedDiff(snapshotDir, "", "s0");
+    verifySkippedDiff(snapshotDir, "s2", "");
+    verifySkippedDiff(snapshotDir, "s2", "s3");
+    verifySkippedDiff(new Path(snapshotDir, "dir8"), "n0", "");
+  }
+
+  /**
+   * Skipping the subtrees without changes between the snapshots must not
+   * change the diff report, also after the markers of the changed subtrees
+   * are rebuilt from the fsimage.
+   */
+  @Test(timeout = 120000)
+  public void testDiffReportSkipsUnchangedSubtrees() throws Exception {
+    final Path root = new Path(dir, "skip");
+    for (int i = 0; i < 20; i++) {
+      Path sub = new Path(root, "dir" + i + "/sub");
+      hdfs.mkdirs(new Path(sub, "deep"));
+      DFSTestUtil.createFile(hdfs, new Path(sub, "file"), 0, REPLICATION,
+          SEED);
+    }
+    cluster.getNamesystem().getSnapshotManager().setAllowNestedSnapshots(true);
+    hdfs.allowSnapshot(root);
+    hdfs.allowSnapshot(new Path(root, "dir8"));
+    hdfs.createSnapshot(root, "s0");
+    hdfs.createSnapshot(new Path(root, "dir8"), "n0");
+
+    DFSTestUtil.createFile(hdfs, new Path(root, "dir1/sub/deep/new"), 0,
+        REPLICATION, SEED);
+    hdfs.delete(new Path(root, "dir2/sub/file"), false);
+    hdfs.setPermission(new Path(root, "dir3/sub/deep"),
+        new FsPermission((short) 0700));
+    hdfs.rename(new Path(root, "dir4/sub/file"), new Path(root, "dir4/file"));
+    hdfs.rename(new Path(root, "dir5/sub"), new Path(root, "dir6/sub5"));
+    hdfs.setReplication(new Path(root, "dir7/sub/file"), (short) 1);
+    DFSTestUtil.createFile(hdfs, new Path(root, "dir8/sub/new"), 0,
+        REPLICATION, SEED);
+    hdfs.createSnapshot(root, "s1");
+
+    hdfs.delete(new Path(root, "dir9"), true);
+    DFSTestUtil.createFile(hdfs, new Path(root, "dir10/sub/deep/new"), 0,
+        REPLICATION, SEED);
+    hdfs.createSnapshot(root, "s2");
+    hdfs.setPermission(new Path(root, "dir11/sub"),
+        new FsPermission((short) 0700));
+    hdfs.createSnapshot(root, "s3");
+    hdfs.rename(new Path(root, "dir12/sub/deep"),
+        new Path(root, "dir13/sub/deep12"));
+    // the diffs of s1 are combined into the diffs of s0
+    hdfs.deleteSnapshot(root, "s1");
+
+    verifySkippedDiffs(root);
+
+    hdfs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+    hdfs.saveNamespace();
+    hdfs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+    cluster.restartNameNode(true);
+    hdfs = cluster.getFileSystem();
+    verifySkippedDiffs(root);
+  }
 }
+
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.junit.Test;
+
+/**
+ * Tests {@link OffHeapLongGSet}.
+ */
+public class TestOffHeapLongGSet {
+
+  private static Block newBlock(long id) {
+    return new Block(id, 0, 1000L);
+  }
+
+  private static OffHeapLongGSet<Block, Block> newSet(int capacity) {
+    return new OffHeapLongGSet<>(capacity, Block::getBlockId);
+  }
+
+  @Test
+  public void testPutGetRemove() {
+    OffHeapLongGSet<Block, Block> set = newSet(0);
+    assertEquals(OffHeapLongGSet.MIN_CAPACITY, set.getCapacity());
+    Block b1 = newBlock(1);
+    assertNull(set.put(b1));
+    assertSame(b1, set.get(new Block(1)));
+    assertSame(b1, set.get(1L));
+    assertTrue(set.contains(new Block(1, 10, 20)));
+    assertFalse(set.contains(new Block(2)));
+
+    Block replacement = newBlock(1);
+    assertSame(b1, set.put(replacement));
+    assertEquals(1, set.size());
+    assertSame(replacement, set.remove(new Block(1)));
+    assertNull(set.remove(new Block(1)));
+    assertEquals(0, set.size());
+    set.close();
+    assertEquals(0, set.getCapacity());
+  }
+
+  /**
+   * Compare against a {@link HashMap} under random inserts and removals of
+   * a small id range, which causes long probe sequences across the end of
+   * the table, many removed slots and rehashes.
+   */
+  @Test
+  public void testRandomOperations() {
+    final Random random = new Random(0xB10C);
+    OffHeapLongGSet<Block, Block> set = newSet(16);
+    Map<Long, Block> expected = new HashMap<>();
+    for (int i = 0; i < 200000; i++) {
+      final long id = random.nextInt(5000) - 2500;
+      if (random.nextInt(3) == 0) {
+        assertSame(expected.remove(id), set.remove(new Block(id)));
+      } else {
+        Block b = newBlock(id);
+        assertSame(expected.put(id, b), set.put(b));
+      }
+      assertEquals(expected.size(), set.size());
+    }
+    for (long id = -2500; id < 2500; id++) {
+      assertSame(expected.get(id), set.get(new Block(id)));
+    }
+    Set<Block> iterated = new HashSet<>();
+    for (Block b : set) {
+      assertTrue(iterated.add(b));
+    }
+    assertEquals(new HashSet<>(expected.values()), iterated);
+    assertEquals(expected.size(), set.values().size());
+    assertTrue(set.getCapacity() * 3L / 4 >= set.size());
+    assertEquals(set.getCapacity() * 8L, set.getOffHeapBytes());
+
+    set.clear();
+    assertEquals(0, set.size());
+    assertFalse(set.iterator().hasNext());
+    set.close();
+  }
+
+  /**
+   * Remove and add blocks while iterating, like the mis-replicated block
+   * scan may between two batches, and check that every block which stays in
+   * the set is returned exactly once, and no removed block after its
+   * removal, also when the table is rehashed during the iteration.
+   */
+  @Test
+  public void testModifyWhileIterating() {
+    final Random random = new Random(0xBEEF);
+    for (int round = 0; round < 20; round++) {
+      OffHeapLongGSet<Block, Block> set = newSet(16);
+      Set<Long> present = new HashSet<>();
+      for (long id = 0; id < 3000; id++) {
+        // ids in a small range, so that the clusters are long
+        set.put(newBlock(id * 7));
+        present.add(id * 7);
+      }
+      Set<Long> kept = new HashSet<>(present);
+      Set<Long> seen = new HashSet<>();
+      long nextId = 1000000;
+      final int capacity = set.getCapacity();
+      for (Block b : set) {
+        assertTrue("Removed " + b + " was returned",
+            present.contains(b.getBlockId()));
+        assertTrue("Returned " + b + " twice", seen.add(b.getBlockId()));
+        for (int i = 0; i < 3; i++) {
+          if (random.nextBoolean()) {
+            final long id = random.nextInt(3000) * 7L;
+            if (set.remove(new Block(id)) != null) {
+              present.remove(id);
+              kept.remove(id);
+            }
+          } else {
+            // may rehash the table
+            set.put(newBlock(nextId));
+            present.add(nextId++);
+          }
+        }
+      }
+      seen.retainAll(kept);
+      assertEquals(kept, seen);
+      assertTrue(set.getCapacity() > capacity);
+      assertEquals(present.size(), set.size());
+      set.close();
+    }
+  }
+}
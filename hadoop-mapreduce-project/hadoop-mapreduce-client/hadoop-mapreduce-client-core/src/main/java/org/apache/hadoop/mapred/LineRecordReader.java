@@ -33,7 +33,9 @@
 import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.CompressionInputStream;
 import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DirectDecompressorStream;
 import org.apache.hadoop.io.compress.SplitCompressionInputStream;
 import org.apache.hadoop.io.compress.SplittableCompressionCodec;
 import org.apache.hadoop.mapreduce.MRJobConfig;
@@ -121,8 +123,8 @@ public LineRecordReader(Configuration job, FileSplit split,
         MRJobConfig.INPUT_FILE_MANDATORY_PREFIX);
     fileIn = FutureIO.awaitFuture(builder.build());
     if (isCompressedInput()) {
-      decompressor = CodecPool.getDecompressor(codec);
       if (codec instanceof SplittableCompressionCodec) {
+        decompressor = CodecPool.getDecompressor(codec);
         final SplitCompressionInputStream cIn =
           ((SplittableCompressionCodec)codec).createInputStream(
             fileIn, decompressor, start, end,
@@ -139,8 +141,14 @@ public LineRecordReader(Configuration job, FileSplit split,
               codec.getClass().getSimpleName() + " compressed stream");
         }
 
-        in = new SplitLineReader(codec.createInputStream(fileIn,
-            decompressor), job, recordDelimiter);
+        // read into direct buffers if enabled and supported by the stream
+        CompressionInputStream cIn =
+            DirectDecompressorStream.create(codec, fileIn, job);
+        if (cIn == null) {
+          decompressor = CodecPool.getDecompressor(codec);
+          cIn = codec.createInputStream(fileIn, decompressor);
+        }
+        in = new SplitLineReader(cIn, job, recordDelimiter);
         filePosition = fileIn;
       }
     } else {
@@ -34,7 +34,9 @@
 import org.apache.hadoop.io.compress.SplitCompressionInputStream;
 import org.apache.hadoop.io.compress.SplittableCompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.CompressionInputStream;
 import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DirectDecompressorStream;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.RecordReader;
@@ -102,8 +104,8 @@ public void initialize(InputSplit genericSplit,
     CompressionCodec codec = new CompressionCodecFactory(job).getCodec(file);
     if (null!=codec) {
       isCompressedInput = true;
-      decompressor = CodecPool.getDecompressor(codec);
       if (codec instanceof SplittableCompressionCodec) {
+        decompressor = CodecPool.getDecompressor(codec);
         final SplitCompressionInputStream cIn =
           ((SplittableCompressionCodec)codec).createInputStream(
             fileIn, decompressor, start, end,
@@ -121,8 +123,14 @@ public void initialize(InputSplit genericSplit,
               codec.getClass().getSimpleName() + " compressed stream");
         }
 
-        in = new SplitLineReader(codec.createInputStream(fileIn,
-            decompressor), job, this.recordDelimiterBytes);
+        // read into direct buffers if enabled and supported by the stream
+        CompressionInputStream cIn =
+            DirectDecompressorStream.create(codec, fileIn, job);
+        if (cIn == null) {
+          decompressor = CodecPool.getDecompressor(codec);
+          cIn = codec.createInputStream(fileIn, decompressor);
+        }
+        in = new SplitLineReader(cIn, job, this.recordDelimiterBytes);
         filePosition = fileIn;
       }
     } else {
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.net.NetworkTopology;
+import org.apache.hadoop.net.Node;
+import org.apache.hadoop.net.NodeBase;
+
+/**
+ * Benchmark of the lookups of {@link NetworkTopology} done by the block
+ * placement of the NameNode: choosing the targets of a new block, excluding
+ * the nodes chosen already, and sorting the replicas of a block by their
+ * distance to the reader.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class NetworkTopologyBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Topology {
+    @Param({"5000"})
+    private int numNodes;
+
+    @Param({"200"})
+    private int numRacks;
+
+    private NetworkTopology topology;
+    private Node[] nodes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      topology = new NetworkTopology();
+      nodes = new Node[numNodes];
+      for (int i = 0; i < numNodes; i++) {
+        nodes[i] = new NodeBase("host" + i + ":9866",
+            "/rack" + (i % numRacks));
+        topology.add(nodes[i]);
+      }
+    }
+
+    Node randomNode() {
+      return nodes[ThreadLocalRandom.current().nextInt(nodes.length)];
+    }
+  }
+
+  /**
+   * Choose three targets like the default block placement policy: the
+   * writer, a node on another rack and a node on the rack of the second.
+   */
+  @Benchmark
+  public void chooseTarget(Topology t, Blackhole blackhole) {
+    Node writer = t.randomNode();
+    List<Node> excluded = new ArrayList<>(3);
+    excluded.add(writer);
+    Node second = t.topology.chooseRandom(
+        "~" + writer.getNetworkLocation(), excluded);
+    excluded.add(second);
+    Node third = t.topology.chooseRandom(second.getNetworkLocation(),
+        excluded);
+    blackhole.consume(third);
+  }
+
+  @Benchmark
+  public void sortByDistance(Topology t, Blackhole blackhole) {
+    Node reader = t.randomNode();
+    Node[] replicas = {t.randomNode(), t.randomNode(), t.randomNode()};
+    t.topology.sortByDistance(reader, replicas, replicas.length);
+    blackhole.consume(replicas);
+  }
+
+  @Benchmark
+  public void getDistance(Topology t, Blackhole blackhole) {
+    blackhole.consume(t.topology.getDistance(t.randomNode(),
+        t.randomNode()));
+  }
+
+  public static void main(String[] args) throws Exception {
+    OptionsBuilder opts = new OptionsBuilder();
+    opts.include("NetworkTopologyBenchmark");
+    opts.jvmArgs("-server", "-Xms256m", "-Xmx2g");
+    opts.forks(1);
+    new Runner(opts.build()).run();
+  }
+}